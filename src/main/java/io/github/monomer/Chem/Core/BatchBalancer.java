@@ -0,0 +1,295 @@
+package io.github.monomer.Chem.Core;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Balances large numbers of equations in parallel, e.g. a dataset with one equation per line. Equations are read in
+ * chunks, balanced on a work-stealing ForkJoinPool with only a bounded number of chunks in flight, and handed back one
+ * {@link Result} per line. A malformed or unbalanceable line produces a failed Result and never stops the run.
+ *
+ * <pre>{@code
+ * BatchBalancer.Stats stats = new BatchBalancer().balance(Path.of("reactions.txt"), Path.of("balanced.txt"));
+ * System.err.println(stats);
+ * }</pre>
+ *
+ * It can also be run from the command line as {@code BatchBalancer <input> [output] [--unordered]}.
+ *
+ * @author Elon Litman
+ * @version 1.7
+ * @see EquationBalancerUtil
+ */
+public final class BatchBalancer {
+
+    private static final int CHUNK_SIZE = 1024;
+
+    private final ForkJoinPool pool;
+
+    private final boolean ordered;
+
+    /**
+     * Creates a BatchBalancer on the common pool that delivers results in input order.
+     */
+    public BatchBalancer() {
+        this(ForkJoinPool.commonPool(), true);
+    }
+
+    /**
+     * @param pool The pool to balance on
+     * @param ordered Whether results are delivered in input order; if not, each chunk is delivered as soon as it is done
+     */
+    public BatchBalancer(ForkJoinPool pool, boolean ordered) {
+        this.pool = pool;
+        this.ordered = ordered;
+    }
+
+    /**
+     * The outcome of balancing one line.
+     */
+    public static final class Result {
+
+        // 1-based
+        public final long lineNumber;
+
+        public final String input;
+
+        // The balanced equation, or null if balancing failed
+        public final String balanced;
+
+        // Why balancing failed, or null if it succeeded
+        public final String error;
+
+        // Where in the input the equation could not be parsed, or -1
+        public final int errorPosition;
+
+        private Result(long lineNumber, String input, String balanced, String error, int errorPosition) {
+            this.lineNumber = lineNumber;
+            this.input = input;
+            this.balanced = balanced;
+            this.error = error;
+            this.errorPosition = errorPosition;
+        }
+
+        public boolean isSuccess() {
+            return error == null;
+        }
+
+        @Override
+        public String toString() {
+            return "Result{" +
+                    "lineNumber=" + lineNumber +
+                    ", input='" + input + '\'' +
+                    (isSuccess() ? ", balanced='" + balanced + '\'' : ", error='" + error + '\'') +
+                    '}';
+        }
+    }
+
+    /**
+     * Counters for a completed run.
+     */
+    public static final class Stats {
+
+        public final long lines;
+
+        public final long succeeded;
+
+        public final long failed;
+
+        public final long elapsedNanos;
+
+        private Stats(long lines, long succeeded, long failed, long elapsedNanos) {
+            this.lines = lines;
+            this.succeeded = succeeded;
+            this.failed = failed;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * @return The number of equations balanced (or rejected) per second
+         */
+        public double throughput() {
+            return elapsedNanos == 0 ? 0 : lines * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "Stats{" +
+                    "lines=" + lines +
+                    ", succeeded=" + succeeded +
+                    ", failed=" + failed +
+                    ", seconds=" + elapsedNanos / 1e9 +
+                    ", linesPerSecond=" + Math.round(throughput()) +
+                    '}';
+        }
+    }
+
+    /**
+     * A method that balances a single equation without throwing.
+     *
+     * @param lineNumber The line number to report
+     * @param equation The equation
+     * @return The Result
+     */
+    public static Result balanceLine(long lineNumber, String equation) {
+        try {
+            return new Result(lineNumber, equation, EquationBalancerUtil.getBalancedReaction(equation), null, -1);
+        } catch (EquationParseException e) {
+            return new Result(lineNumber, equation, null, e.getMessage(), e.getPosition());
+        } catch (RuntimeException e) {
+            String message = e.getMessage();
+            return new Result(lineNumber, equation, null, message == null ? e.getClass().getSimpleName() : message, -1);
+        }
+    }
+
+    /**
+     * A method that balances a stream of equations. Blank lines are skipped but still counted for line numbers. The sink
+     * is called from the calling thread only.
+     *
+     * @param equations The equations, one per element
+     * @param sink Receives one Result per non-blank equation
+     * @return The counters for the run
+     */
+    public Stats balance(Stream<String> equations, Consumer<? super Result> sink) {
+        long start = System.nanoTime();
+        long[] counters = new long[2];
+        Consumer<List<Result>> deliver = results -> {
+            for(Result result : results) {
+                counters[result.isSuccess() ? 0 : 1]++;
+                sink.accept(result);
+            }
+        };
+
+        int maxInFlight = 2 * pool.getParallelism() + 1;
+        ArrayDeque<ForkJoinTask<List<Result>>> inFlight = new ArrayDeque<>(maxInFlight);
+        Iterator<String> iterator = equations.iterator();
+        long lineNumber = 0;
+        while(iterator.hasNext()) {
+            List<String> chunk = new ArrayList<>(CHUNK_SIZE);
+            long firstLine = lineNumber + 1;
+            while(chunk.size() < CHUNK_SIZE && iterator.hasNext()) {
+                chunk.add(iterator.next());
+                lineNumber++;
+            }
+            inFlight.addLast(pool.submit(() -> balanceChunk(chunk, firstLine)));
+            if(inFlight.size() >= maxInFlight) {
+                deliver.accept(next(inFlight).join());
+            }
+        }
+        while(!inFlight.isEmpty()) {
+            deliver.accept(next(inFlight).join());
+        }
+        return new Stats(counters[0] + counters[1], counters[0], counters[1], System.nanoTime() - start);
+    }
+
+    /**
+     * A method that balances every line of a UTF-8 file.
+     *
+     * @param file The file of equations
+     * @param sink Receives one Result per non-blank line
+     * @return The counters for the run
+     * @throws IOException If the file cannot be read
+     */
+    public Stats balance(Path file, Consumer<? super Result> sink) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+             Stream<String> lines = reader.lines()) {
+            return balance(lines, sink);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * A method that balances every line of a UTF-8 file into another file. Each output line is either the balanced
+     * equation or a comment of the form {@code # line 12: <error>}.
+     *
+     * @param input The file of equations
+     * @param output The file to write
+     * @return The counters for the run
+     * @throws IOException If either file cannot be accessed
+     */
+    public Stats balance(Path input, Path output) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+            return balance(input, result -> {
+                try {
+                    writer.write(result.isSuccess() ? result.balanced : "# line " + result.lineNumber + ": " + result.error);
+                    writer.newLine();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+
+    // In order, the oldest chunk; otherwise the first finished chunk, or the oldest if none has finished
+    private ForkJoinTask<List<Result>> next(ArrayDeque<ForkJoinTask<List<Result>>> inFlight) {
+        if(!ordered) {
+            for(Iterator<ForkJoinTask<List<Result>>> it = inFlight.iterator(); it.hasNext(); ) {
+                ForkJoinTask<List<Result>> task = it.next();
+                if(task.isDone()) {
+                    it.remove();
+                    return task;
+                }
+            }
+        }
+        return inFlight.pollFirst();
+    }
+
+    private static List<Result> balanceChunk(List<String> chunk, long firstLine) {
+        List<Result> results = new ArrayList<>(chunk.size());
+        for(int i=0; i<chunk.size(); i++) {
+            String line = chunk.get(i);
+            if(!line.isBlank()) {
+                results.add(balanceLine(firstLine + i, line.strip()));
+            }
+        }
+        return results;
+    }
+
+    public static void main(String[] args) throws IOException {
+        List<String> paths = new ArrayList<>(2);
+        boolean ordered = true;
+        for(String arg : args) {
+            if(arg.equals("--unordered")) {
+                ordered = false;
+            } else {
+                paths.add(arg);
+            }
+        }
+        if(paths.isEmpty() || paths.size() > 2) {
+            System.err.println("Usage: BatchBalancer <input> [output] [--unordered]");
+            System.exit(2);
+        }
+
+        BatchBalancer balancer = new BatchBalancer(ForkJoinPool.commonPool(), ordered);
+        Stats stats;
+        if(paths.size() == 2) {
+            stats = balancer.balance(Path.of(paths.get(0)), Path.of(paths.get(1)));
+        } else {
+            BufferedWriter out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+            stats = balancer.balance(Path.of(paths.get(0)), result -> {
+                try {
+                    out.write(result.isSuccess() ? result.balanced : "# line " + result.lineNumber + ": " + result.error);
+                    out.newLine();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            out.flush();
+        }
+        System.err.println(stats);
+    }
+}
@@ -0,0 +1,464 @@
+package io.github.monomer.Chem.Core;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * A thread-safe, size-bounded cache with a W-TinyLFU eviction policy. Entries are admitted through a small LRU window
+ * and then compete for a place in the main segmented LRU (probation and protected), where a compact count-min sketch of
+ * recent access frequencies decides whether a newcomer is worth more than the entry it would displace. This keeps a
+ * steady working set of popular keys (e.g. H2O, CO2, O2) resident even under a stream of one-off keys.
+ *
+ * Reads are served from a ConcurrentHashMap without locking. Bookkeeping for the policy is done under a lock that
+ * readers only try to take; when it is contended, the access is simply not recorded, as it makes no difference to a
+ * frequency estimate.
+ *
+ * @author Elon Litman
+ * @version 1.7
+ * @param <K> The key type
+ * @param <V> The value type
+ * @see Compound
+ */
+public final class BoundedCache<K, V> {
+
+    private static final int WINDOW = 0;
+
+    private static final int PROBATION = 1;
+
+    private static final int PROTECTED = 2;
+
+    private final ConcurrentHashMap<K, Node<K, V>> data;
+
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    private final FrequencySketch sketch;
+
+    private final AccessOrderDeque<K, V> window = new AccessOrderDeque<>();
+
+    private final AccessOrderDeque<K, V> probation = new AccessOrderDeque<>();
+
+    private final AccessOrderDeque<K, V> protectedSegment = new AccessOrderDeque<>();
+
+    private final int maximumSize;
+
+    private final int maximumWindowSize;
+
+    private final int maximumProtectedSize;
+
+    // Guarded by evictionLock
+    private int windowSize;
+
+    private int protectedSize;
+
+    private int size;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maximumSize The maximum number of entries to keep
+     */
+    public BoundedCache(int maximumSize) {
+        if(maximumSize <= 0) {
+            throw new IllegalArgumentException("Illegal maximum size: " + maximumSize);
+        }
+        this.maximumSize = maximumSize;
+        // 1% admission window, and 80% of the main space protected
+        this.maximumWindowSize = Math.max(1, maximumSize / 100);
+        this.maximumProtectedSize = (int) ((maximumSize - maximumWindowSize) * 0.8);
+        this.data = new ConcurrentHashMap<>(Math.min(maximumSize, 1 << 16));
+        this.sketch = new FrequencySketch(maximumSize);
+    }
+
+    /**
+     * A method that returns the cached value for a key, if present.
+     *
+     * @param key The key
+     * @return The value, or null if the key is not cached
+     */
+    public V getIfPresent(K key) {
+        Node<K, V> node = data.get(key);
+        if(node == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        recordAccess(node);
+        return node.value;
+    }
+
+    /**
+     * A method that returns the cached value for a key, computing and caching it if absent. The loader is called at most
+     * once per absent key at a time; if it throws, nothing is cached and the exception propagates.
+     *
+     * @param key The key
+     * @param loader The function that computes the value
+     * @return The cached or newly computed value
+     */
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        Node<K, V> node = data.get(key);
+        if(node != null) {
+            hits.increment();
+            recordAccess(node);
+            return node.value;
+        }
+
+        boolean[] created = new boolean[1];
+        node = data.computeIfAbsent(key, k -> {
+            created[0] = true;
+            return new Node<>(k, loader.apply(k));
+        });
+        if(created[0]) {
+            misses.increment();
+            recordInsertion(node);
+        } else {
+            hits.increment();
+            recordAccess(node);
+        }
+        return node.value;
+    }
+
+    /**
+     * A method that removes every entry, without resetting the statistics.
+     */
+    public void clear() {
+        evictionLock.lock();
+        try {
+            data.clear();
+            window.clear();
+            probation.clear();
+            protectedSegment.clear();
+            windowSize = 0;
+            protectedSize = 0;
+            size = 0;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * @return The approximate number of entries
+     */
+    public int size() {
+        return data.size();
+    }
+
+    public int maximumSize() {
+        return maximumSize;
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    public long evictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return The fraction of lookups that were served from the cache, or 1 if there were none
+     */
+    public double hitRate() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 1.0 : (double) h / total;
+    }
+
+    /**
+     * @return A snapshot of the size and counters, which cannot reach the entries
+     */
+    public Stats stats() {
+        return new Stats(size(), maximumSize, hitCount(), missCount(), evictionCount());
+    }
+
+    /**
+     * An immutable snapshot of the statistics of a BoundedCache.
+     */
+    public static final class Stats {
+
+        public final int size;
+
+        public final int maximumSize;
+
+        public final long hitCount;
+
+        public final long missCount;
+
+        public final long evictionCount;
+
+        private Stats(int size, int maximumSize, long hitCount, long missCount, long evictionCount) {
+            this.size = size;
+            this.maximumSize = maximumSize;
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.evictionCount = evictionCount;
+        }
+
+        /**
+         * @return The fraction of lookups that were served from the cache, or 1 if there were none
+         */
+        public double hitRate() {
+            long total = hitCount + missCount;
+            return total == 0 ? 1.0 : (double) hitCount / total;
+        }
+
+        @Override
+        public String toString() {
+            return "Stats{" +
+                    "size=" + size +
+                    ", maximumSize=" + maximumSize +
+                    ", hits=" + hitCount +
+                    ", misses=" + missCount +
+                    ", evictions=" + evictionCount +
+                    '}';
+        }
+    }
+
+    private void recordAccess(Node<K, V> node) {
+        if(!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            sketch.increment(node.key.hashCode());
+            switch (node.queue) {
+                case WINDOW -> window.moveToBack(node);
+                case PROBATION -> {
+                    // A second hit promotes the entry to the protected segment
+                    probation.remove(node);
+                    node.queue = PROTECTED;
+                    protectedSegment.addLast(node);
+                    protectedSize++;
+                    if(protectedSize > maximumProtectedSize) {
+                        Node<K, V> demoted = protectedSegment.pollFirst();
+                        protectedSize--;
+                        demoted.queue = PROBATION;
+                        probation.addLast(demoted);
+                    }
+                }
+                case PROTECTED -> protectedSegment.moveToBack(node);
+                default -> {
+                    // Not yet (or no longer) part of the policy
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private void recordInsertion(Node<K, V> node) {
+        evictionLock.lock();
+        try {
+            if(data.get(node.key) != node) {
+                // Removed by clear() before we got here
+                return;
+            }
+            sketch.increment(node.key.hashCode());
+            node.queue = WINDOW;
+            window.addLast(node);
+            windowSize++;
+            size++;
+
+            Node<K, V> candidate = null;
+            if(windowSize > maximumWindowSize) {
+                candidate = window.pollFirst();
+                windowSize--;
+                candidate.queue = PROBATION;
+                probation.addLast(candidate);
+            }
+            while(size > maximumSize) {
+                evict(candidate);
+                candidate = null;
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    // Let the candidate leaving the window compete against the least recently used entry on probation
+    private void evict(Node<K, V> candidate) {
+        Node<K, V> victim = probation.peekFirst();
+        if(victim == null) {
+            victim = protectedSegment.peekFirst() != null ? protectedSegment.peekFirst() : window.peekFirst();
+        }
+        Node<K, V> evicted = victim;
+        if(candidate != null && candidate != victim && sketch.frequency(candidate.key.hashCode()) <= sketch.frequency(victim.key.hashCode())) {
+            evicted = candidate;
+        }
+
+        switch (evicted.queue) {
+            case WINDOW -> {
+                window.remove(evicted);
+                windowSize--;
+            }
+            case PROBATION -> probation.remove(evicted);
+            case PROTECTED -> {
+                protectedSegment.remove(evicted);
+                protectedSize--;
+            }
+        }
+        evicted.queue = -1;
+        size--;
+        data.remove(evicted.key, evicted);
+        evictions.increment();
+    }
+
+    @Override
+    public String toString() {
+        return "BoundedCache{" +
+                "size=" + size() +
+                ", maximumSize=" + maximumSize +
+                ", hits=" + hitCount() +
+                ", misses=" + missCount() +
+                ", evictions=" + evictionCount() +
+                '}';
+    }
+
+    private static final class Node<K, V> {
+        final K key;
+        final V value;
+        // One of WINDOW, PROBATION, PROTECTED, or -1 when outside the policy; guarded by evictionLock
+        int queue = -1;
+        Node<K, V> prev;
+        Node<K, V> next;
+
+        Node(K key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    // An intrusive doubly-linked list, ordered from least to most recently used
+    private static final class AccessOrderDeque<K, V> {
+        private Node<K, V> first;
+        private Node<K, V> last;
+
+        Node<K, V> peekFirst() {
+            return first;
+        }
+
+        void addLast(Node<K, V> node) {
+            node.prev = last;
+            node.next = null;
+            if(last == null) {
+                first = node;
+            } else {
+                last.next = node;
+            }
+            last = node;
+        }
+
+        Node<K, V> pollFirst() {
+            Node<K, V> node = first;
+            if(node != null) {
+                remove(node);
+            }
+            return node;
+        }
+
+        void remove(Node<K, V> node) {
+            if(node.prev == null) {
+                first = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+            if(node.next == null) {
+                last = node.prev;
+            } else {
+                node.next.prev = node.prev;
+            }
+            node.prev = null;
+            node.next = null;
+        }
+
+        void moveToBack(Node<K, V> node) {
+            if(node != last) {
+                remove(node);
+                addLast(node);
+            }
+        }
+
+        void clear() {
+            first = null;
+            last = null;
+        }
+    }
+
+    /**
+     * A count-min sketch of 4-bit counters, sixteen to a long, with periodic halving so that old popularity fades.
+     */
+    private static final class FrequencySketch {
+
+        private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+
+        private static final long RESET_MASK = 0x7777777777777777L;
+
+        private final long[] table;
+
+        private final int tableMask;
+
+        private final int sampleSize;
+
+        private int additions;
+
+        FrequencySketch(int maximumSize) {
+            int length = Integer.highestOneBit(Math.max(2, Math.min(maximumSize, 1 << 26)) - 1) << 1;
+            this.table = new long[length];
+            this.tableMask = length - 1;
+            this.sampleSize = 10 * Math.max(maximumSize, 1);
+        }
+
+        int frequency(int hashCode) {
+            int hash = spread(hashCode);
+            int frequency = Integer.MAX_VALUE;
+            for(int i=0; i<4; i++) {
+                frequency = Math.min(frequency, (int) ((table[indexOf(hash, i)] >>> offsetOf(hash, i)) & 0xfL));
+            }
+            return frequency;
+        }
+
+        void increment(int hashCode) {
+            int hash = spread(hashCode);
+            boolean added = false;
+            for(int i=0; i<4; i++) {
+                int index = indexOf(hash, i);
+                int offset = offsetOf(hash, i);
+                if(((table[index] >>> offset) & 0xfL) != 0xfL) {
+                    table[index] += 1L << offset;
+                    added = true;
+                }
+            }
+            if(added && ++additions == sampleSize) {
+                for(int i=0; i<table.length; i++) {
+                    table[i] = (table[i] >>> 1) & RESET_MASK;
+                }
+                additions /= 2;
+            }
+        }
+
+        private int indexOf(int hash, int i) {
+            long h = (hash + SEEDS[i]) * SEEDS[i];
+            h += h >>> 32;
+            return ((int) h) & tableMask;
+        }
+
+        // Each row uses a different quarter of the long, and the hash picks one of its four counters
+        private static int offsetOf(int hash, int i) {
+            return ((i << 2) + ((hash >>> (i << 3)) & 3)) << 2;
+        }
+
+        private static int spread(int x) {
+            x = ((x >>> 16) ^ x) * 0x45d9f3b;
+            x = ((x >>> 16) ^ x) * 0x45d9f3b;
+            return (x >>> 16) ^ x;
+        }
+    }
+}
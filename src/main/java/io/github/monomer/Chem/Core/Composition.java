@@ -0,0 +1,414 @@
+package io.github.monomer.Chem.Core;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An immutable elemental composition, stored as parallel primitive arrays of atomic numbers (in increasing order) and
+ * atom counts. Elements are identified purely by their atomic number, so composition arithmetic is a matter of array
+ * loops rather than hashing Element objects.
+ *
+ * @author Elon Litman
+ * @version 1.7
+ * @see Compound
+ * @see PeriodicTable
+ */
+public final class Composition {
+
+    private static final int[] EMPTY = new int[0];
+
+    private final int[] atomicNumbers;
+
+    private final int[] counts;
+
+    private Composition(int[] atomicNumbers, int[] counts) {
+        this.atomicNumbers = atomicNumbers;
+        this.counts = counts;
+    }
+
+    /**
+     * A method that creates a Composition from parallel arrays of atomic numbers and counts. Repeated atomic numbers are
+     * summed and zero counts are dropped.
+     *
+     * @param atomicNumbers The atomic numbers of the constituent elements, in any order
+     * @param counts The number of atoms of each element, aligned with atomicNumbers
+     * @return The Composition
+     */
+    public static Composition of(int[] atomicNumbers, int[] counts) {
+        if(atomicNumbers.length != counts.length) {
+            throw new IllegalArgumentException("Expected as many counts as atomic numbers");
+        }
+        Builder builder = new Builder();
+        for(int i=0; i<atomicNumbers.length; i++) {
+            builder.add(atomicNumbers[i], counts[i]);
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return The number of distinct elements in the Composition
+     */
+    public int size() {
+        return atomicNumbers.length;
+    }
+
+    public boolean isEmpty() {
+        return atomicNumbers.length == 0;
+    }
+
+    /**
+     * @param index A position between 0 and size() - 1
+     * @return The atomic number of the element at that position
+     */
+    public int atomicNumberAt(int index) {
+        return atomicNumbers[index];
+    }
+
+    /**
+     * @param index A position between 0 and size() - 1
+     * @return The number of atoms of the element at that position
+     */
+    public int countAt(int index) {
+        return counts[index];
+    }
+
+    /**
+     * @param atomicNumber The atomic number (Z) of an element
+     * @return The number of atoms of that element, or 0 if it is absent
+     */
+    public int countOf(int atomicNumber) {
+        int index = Arrays.binarySearch(atomicNumbers, atomicNumber);
+        return index >= 0 ? counts[index] : 0;
+    }
+
+    /**
+     * @param element An Element object
+     * @return The number of atoms of that element, or 0 if it is absent
+     */
+    public int countOf(Element element) {
+        return countOf((int) element.atomicNumber);
+    }
+
+    /**
+     * @return A copy of the atomic numbers, in increasing order
+     */
+    public int[] atomicNumbers() {
+        return atomicNumbers.clone();
+    }
+
+    /**
+     * @return A copy of the counts, aligned with atomicNumbers()
+     */
+    public int[] counts() {
+        return counts.clone();
+    }
+
+    /**
+     * @return The total number of atoms
+     */
+    public int atomCount() {
+        int total = 0;
+        for(int count : counts) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * A method that obtains the molar mass (g/mol) of the Composition from the columnar periodic table.
+     *
+     * @return The molar mass in double precision
+     */
+    public double molarMass() {
+        return PeriodicTable.columns().weightedSum(ElementColumns.Property.ATOMIC_MASS, atomicNumbers, counts);
+    }
+
+    /**
+     * A method that adds two compositions together, element by element.
+     *
+     * @param other The other Composition
+     * @return The sum of both Compositions
+     */
+    public Composition plus(Composition other) {
+        return plus(other, 1);
+    }
+
+    /**
+     * A method that adds a multiple of another composition to this one, e.g. for hydrates or reaction sides.
+     *
+     * @param other The other Composition
+     * @param multiplier The number of times the other Composition is added
+     * @return The resulting Composition
+     */
+    public Composition plus(Composition other, int multiplier) {
+        // Merge two sorted arrays
+        int[] z = new int[atomicNumbers.length + other.atomicNumbers.length];
+        int[] n = new int[z.length];
+        int i = 0, j = 0, k = 0;
+        while(i < atomicNumbers.length || j < other.atomicNumbers.length) {
+            int count;
+            if(j == other.atomicNumbers.length || (i < atomicNumbers.length && atomicNumbers[i] < other.atomicNumbers[j])) {
+                z[k] = atomicNumbers[i];
+                count = counts[i++];
+            } else if(i == atomicNumbers.length || other.atomicNumbers[j] < atomicNumbers[i]) {
+                z[k] = other.atomicNumbers[j];
+                count = Math.multiplyExact(other.counts[j++], multiplier);
+            } else {
+                z[k] = atomicNumbers[i];
+                count = Math.addExact(counts[i++], Math.multiplyExact(other.counts[j++], multiplier));
+            }
+            if(count != 0) {
+                n[k++] = count;
+            }
+        }
+        return new Composition(Arrays.copyOf(z, k), Arrays.copyOf(n, k));
+    }
+
+    /**
+     * @param multiplier The factor every count is multiplied by
+     * @return The scaled Composition
+     */
+    public Composition times(int multiplier) {
+        if(multiplier == 0) {
+            return new Composition(EMPTY, EMPTY);
+        }
+        int[] n = new int[counts.length];
+        for(int i=0; i<n.length; i++) {
+            n[i] = Math.multiplyExact(counts[i], multiplier);
+        }
+        return new Composition(atomicNumbers, n);
+    }
+
+    /**
+     * @return An occurrence mapping of the shared Element instances to their counts
+     */
+    public Map<Element, Integer> toElementMap() {
+        Map<Element, Integer> map = new HashMap<>(atomicNumbers.length * 2);
+        for(int i=0; i<atomicNumbers.length; i++) {
+            map.put(PeriodicTable.byAtomicNumber(atomicNumbers[i]), counts[i]);
+        }
+        return map;
+    }
+
+    /**
+     * @return An occurrence mapping of element names to their counts
+     */
+    public Map<String, Integer> toNameMap() {
+        Map<String, Integer> map = new HashMap<>(atomicNumbers.length * 2);
+        for(int i=0; i<atomicNumbers.length; i++) {
+            map.put(PeriodicTable.byAtomicNumber(atomicNumbers[i]).elementName, counts[i]);
+        }
+        return map;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Composition that = (Composition) o;
+        return Arrays.equals(atomicNumbers, that.atomicNumbers) && Arrays.equals(counts, that.counts);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(atomicNumbers) + Arrays.hashCode(counts);
+    }
+
+    /**
+     * A method that writes the Composition in Hill order: carbon first, then hydrogen, then every other element
+     * alphabetically by symbol. Without carbon, all elements (including hydrogen) are alphabetical.
+     *
+     * @return The Hill formula, e.g. C2H6O for ethanol
+     */
+    public String toHillFormula() {
+        Integer[] order = new Integer[atomicNumbers.length];
+        for(int i=0; i<order.length; i++) {
+            order[i] = i;
+        }
+        boolean hasCarbon = countOf(6) != 0;
+        Arrays.sort(order, (a, b) -> {
+            int ra = hillRank(atomicNumbers[a], hasCarbon);
+            int rb = hillRank(atomicNumbers[b], hasCarbon);
+            if(ra != rb) {
+                return Integer.compare(ra, rb);
+            }
+            return PeriodicTable.byAtomicNumber(atomicNumbers[a]).elementSymbol.compareTo(PeriodicTable.byAtomicNumber(atomicNumbers[b]).elementSymbol);
+        });
+
+        StringBuilder sb = new StringBuilder();
+        for(int i : order) {
+            sb.append(PeriodicTable.byAtomicNumber(atomicNumbers[i]).elementSymbol);
+            if(counts[i] != 1) {
+                sb.append(counts[i]);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static int hillRank(int atomicNumber, boolean hasCarbon) {
+        if(hasCarbon && atomicNumber == 6) return 0;
+        if(hasCarbon && atomicNumber == 1) return 1;
+        return 2;
+    }
+
+    @Override
+    public String toString() {
+        return toHillFormula();
+    }
+
+    /**
+     * A mutable, reusable accumulator for building Compositions. Counts are kept in a dense array indexed by atomic
+     * number, so adding atoms is a single array write.
+     */
+    public static final class Builder {
+
+        private final int[] dense;
+
+        // Atomic numbers that have been touched since the last reset, so build() and reset() need not scan all of dense
+        private final int[] touched;
+
+        private int touchedCount;
+
+        private final boolean[] isTouched;
+
+        public Builder() {
+            this.dense = new int[PeriodicTable.maxAtomicNumber() + 1];
+            this.touched = new int[dense.length];
+            this.isTouched = new boolean[dense.length];
+        }
+
+        /**
+         * @param atomicNumber The atomic number (Z) of the element
+         * @param count The number of atoms to add (may be negative)
+         * @return This Builder
+         */
+        public Builder add(int atomicNumber, int count) {
+            if(atomicNumber <= 0 || atomicNumber >= dense.length) {
+                throw new IllegalArgumentException("Unknown atomic number: " + atomicNumber);
+            }
+            if(!isTouched[atomicNumber]) {
+                isTouched[atomicNumber] = true;
+                touched[touchedCount++] = atomicNumber;
+            }
+            dense[atomicNumber] = Math.addExact(dense[atomicNumber], count);
+            return this;
+        }
+
+        /**
+         * @param composition The Composition to add
+         * @param multiplier The number of times it is added
+         * @return This Builder
+         */
+        public Builder add(Composition composition, int multiplier) {
+            for(int i=0; i<composition.atomicNumbers.length; i++) {
+                add(composition.atomicNumbers[i], Math.multiplyExact(composition.counts[i], multiplier));
+            }
+            return this;
+        }
+
+        /**
+         * @param other The Builder whose counts are added; it is not modified
+         * @param multiplier The number of times they are added (may be negative)
+         * @return This Builder
+         */
+        public Builder add(Builder other, int multiplier) {
+            for(int i=0; i<other.touchedCount; i++) {
+                int z = other.touched[i];
+                if(other.dense[z] != 0) {
+                    add(z, Math.multiplyExact(other.dense[z], multiplier));
+                }
+            }
+            return this;
+        }
+
+        /**
+         * @return Whether every count accumulated so far is zero
+         */
+        public boolean isEmpty() {
+            for(int i=0; i<touchedCount; i++) {
+                if(dense[touched[i]] != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @param atomicNumber The atomic number (Z) of the element
+         * @return The number of atoms of that element added so far
+         */
+        public int countOf(int atomicNumber) {
+            return dense[atomicNumber];
+        }
+
+        /**
+         * A method that copies the non-zero counts accumulated so far into caller-owned arrays, in increasing order of
+         * atomic number, without allocating.
+         *
+         * @param atomicNumbers The array the atomic numbers are written into
+         * @param counts The array the counts are written into
+         * @param offset The position in both arrays to start writing at
+         * @return The number of elements written
+         */
+        public int copyTo(int[] atomicNumbers, int[] counts, int offset) {
+            int k = offset;
+            for(int i=0; i<touchedCount; i++) {
+                int z = touched[i];
+                if(dense[z] != 0) {
+                    // Insertion sort: compositions only have a handful of elements
+                    int j = k++;
+                    while(j > offset && atomicNumbers[j - 1] > z) {
+                        atomicNumbers[j] = atomicNumbers[j - 1];
+                        counts[j] = counts[j - 1];
+                        j--;
+                    }
+                    atomicNumbers[j] = z;
+                    counts[j] = dense[z];
+                }
+            }
+            return k - offset;
+        }
+
+        /**
+         * @return The number of distinct elements touched since the last reset (an upper bound on the non-zero ones)
+         */
+        public int touchedCount() {
+            return touchedCount;
+        }
+
+        /**
+         * @return An immutable snapshot of the counts accumulated so far
+         */
+        public Composition build() {
+            int[] z = new int[touchedCount];
+            int k = 0;
+            for(int i=0; i<touchedCount; i++) {
+                if(dense[touched[i]] != 0) {
+                    z[k++] = touched[i];
+                }
+            }
+            z = Arrays.copyOf(z, k);
+            Arrays.sort(z);
+            int[] n = new int[k];
+            for(int i=0; i<k; i++) {
+                n[i] = dense[z[i]];
+            }
+            return new Composition(z, n);
+        }
+
+        /**
+         * Clears the Builder so it can be reused without allocating.
+         *
+         * @return This Builder
+         */
+        public Builder reset() {
+            for(int i=0; i<touchedCount; i++) {
+                dense[touched[i]] = 0;
+                isTouched[touched[i]] = false;
+            }
+            touchedCount = 0;
+            return this;
+        }
+    }
+}
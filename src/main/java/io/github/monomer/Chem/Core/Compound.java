@@ -1,10 +1,11 @@
 package io.github.monomer.Chem.Core;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
-import java.util.Scanner;
 
 /**
  * A class that constructs a Compound object from a molecular formula.
@@ -15,128 +16,74 @@ import java.util.Scanner;
  */
 public class Compound {
 
-    public String formula;
+    public final String formula;
 
-    public Map<Element, Integer> occurrences;
+    public final Map<Element, Integer> occurrences;
 
-    public Map<String, Integer> humanReadableOccurrences;
+    public final Map<String, Integer> humanReadableOccurrences;
+
+    // The composition indexed by atomic number, which all the arithmetic below works on
+    public final Composition composition;
+
+    // The net charge of the formula, e.g. -2 for SO4^2-
+    public final int charge;
+
+    private static final BoundedCache<String, Compound> CACHE = new BoundedCache<>(16_384);
 
     public Compound(String formula) throws IOException {
+        Composition.Builder builder = new Composition.Builder();
         this.formula = formula;
-        this.occurrences = parseFormula(formula);
+        this.charge = parse(formula, builder);
+        this.composition = builder.build();
+        this.occurrences = Collections.unmodifiableMap(composition.toElementMap());
+        this.humanReadableOccurrences = Collections.unmodifiableMap(composition.toNameMap());
     }
 
-    private static Map<String,String> getSymbolMap(){
-        Map<String, String> elementMap = new HashMap<>();
-
-        Scanner in = new Scanner(Constants.symbolsMap);
-
-        while(in.hasNext()){
-            String shortform = in.next();
-            String longform = in.next();
-            elementMap.put(shortform, longform);
-            elementMap.put(longform.toUpperCase(), longform);
-        }
+    /**
+     * A method that returns a shared Compound for a formula, parsing it only the first time it is seen (or after it has
+     * been evicted). Compounds are immutable, so the returned instance can be shared between callers.
+     *
+     * @param formula The molecular formula of the compound as a String
+     * @return The cached Compound
+     * @throws FormulaParseException If the formula is malformed; malformed formulas are not cached
+     */
+    public static Compound of(String formula) {
+        return CACHE.get(formula, f -> {
+            try {
+                return new Compound(f);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
 
-        return elementMap;
+    /**
+     * @return A snapshot of the hit, miss, and eviction counters of the cache behind {@link #of(String)}
+     */
+    public static BoundedCache.Stats cacheStats() {
+        return CACHE.stats();
     }
 
     /**
      * A method for parsing a molecular formula into an occurrence mapping of the constituent elements to their frequencies.
      *
-     * You can group element with parenthesis and apply counts to the groups (e.g. C2(HO)2).
-     * Any other symbols are stripped from the formula (e.g. - or +). Leaving them in does no harm
+     * You can group elements with parentheses or square brackets and apply counts to the groups (e.g. C2(HO)2 or K4[Fe(CN)6]),
+     * write hydrates with a dot (e.g. CuSO4·5H2O), label isotopes (e.g. [13C]H4), and end the formula with a charge (e.g. SO4^2-).
+     * See {@link FormulaParser} for the full notation.
      *
      * @param formula The molecular formula of the compound as a String
-     * @return A mapping of Elements to their frequencies in the Compound
+     * @return A mapping of Elements to their frequencies in the formula, which need not be this Compound's
+     * @throws FormulaParseException If the formula is malformed, with the position of the error
      */
-    public Map<Element, Integer> parseFormula(String formula) throws IOException {
-
-        Map<String, String> elementMap = getSymbolMap();
-
-        formula = formula.replaceAll("[^a-zA-Z\\d()]", "");
+    public Map<Element, Integer> parseFormula(String formula) {
+        Composition.Builder builder = new Composition.Builder();
+        parse(formula, builder);
+        return Collections.unmodifiableMap(builder.build().toElementMap());
+    }
 
-        Map<String,Integer> elementCounts = new HashMap<>();
-        int len = formula.length();
-        for(int i = 0; i < len;){
-            boolean isGroup = false;
-            if(formula.charAt(i) == '('){
-                i++;
-                isGroup = true;
-            }
-            int repeatCount = 1;
-            Map<String, Integer> atomsInGroup = new HashMap<>();
-            do{
-                int start = i;
-                int restore_i = 0;
-                String element = null;
-                String restoreElement = null;
-                while(i < len && Character.isLetter(formula.charAt(i))){
-                    i++;
-                    element = formula.substring(start, i);
-                    String elementFromMap = elementMap.get(element);
-                    if(elementFromMap == null)
-                        elementFromMap = elementMap.get(element.toUpperCase());
-                    if(elementFromMap != null){
-                        restore_i = i;
-                        restoreElement = elementFromMap;
-                    }
-                }
-                if(restoreElement != null){
-                    i = restore_i;
-                    element = restoreElement;
-                }
-
-                if(element == null || element.equals("")){
-                    System.out.println("Parse error: could not detect an element where one was expected in formula string.");
-                    System.out.println("Remaining formula to parse: " + formula.substring(i));
-                    System.exit(1);
-                }
-
-                start = i;
-                while(i < len && Character.isDigit(formula.charAt(i))){
-                    i++;
-                }
-                int count;
-                try {
-                    count = Integer.parseInt(formula.substring(start, i));
-                } catch(NumberFormatException e){
-                    count = 1;
-                }
-                /* System.out.println("element: "+element); */
-                atomsInGroup.put(element, count);
-                if(i < len && formula.charAt(i) == ')') {
-                    if(!isGroup) {
-                        System.out.println("Parse error: unmatched parenthesis detected...");
-                    }
-                    i++;
-                    isGroup = false;
-
-                    start = i;
-                    while(i < len && Character.isDigit(formula.charAt(i))) {
-                        i++;
-                    }
-
-                    try {
-                        repeatCount = Integer.parseInt(formula.substring(start, i));
-                    } catch(NumberFormatException ignored) {
-                        ;
-                    }
-                }
-            } while(isGroup);
-            for(String atomType : atomsInGroup.keySet()){
-                int currentValue = 0;
-                if(elementCounts.containsKey(atomType))
-                    currentValue = elementCounts.get(atomType);
-                elementCounts.put(atomType, currentValue + atomsInGroup.get(atomType) * repeatCount);
-            }
-        }
-        Map<Element, Integer> occurrenceMap = new HashMap<>();
-        for(String element : elementCounts.keySet()) {
-            occurrenceMap.put(new Element(element), elementCounts.get(element));
-        }
-        this.humanReadableOccurrences = elementCounts;
-        return occurrenceMap;
+    // Parses a formula into a Builder, returning its charge
+    private static int parse(String formula, Composition.Builder builder) {
+        return FormulaParser.forCurrentThread().parseInto(formula, builder);
     }
 
     /**
@@ -145,21 +92,17 @@ public class Compound {
      * @return A floating-point representation of the molar mass of the Compound
      */
     public float getMolarMass() {
-        float molarMass = 0f;
-        for(Element e : this.occurrences.keySet()) {
-            molarMass += e.atomicMass * this.occurrences.get(e);
-        }
-        return molarMass;
+        return (float) composition.molarMass();
     }
 
     /**
      * A method that gets the percentage composition by mass of a certain element in the Compound.
      *
      * @param element An Element object
-     * @return The percentage composition of mass of the Element in the Compound in floating-point precision
+     * @return The percentage composition of mass of the Element in the Compound in floating-point precision (0 if the Element is absent)
      */
     public float getPercentCompositionByMass(Element element) {
-        return (this.occurrences.get(element) * element.atomicMass) / this.getMolarMass() * 100;
+        return (composition.countOf(element) * element.atomicMass) / this.getMolarMass() * 100;
     }
 
     /**
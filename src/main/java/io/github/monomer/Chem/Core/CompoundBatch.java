@@ -0,0 +1,349 @@
+package io.github.monomer.Chem.Core;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * A bulk engine for evaluating many formulas at once. Formulas are parsed straight into primitive output columns
+ * (molar mass, element counts, and percent composition by mass) without building Compound, Element, or HashMap objects,
+ * and chunks of formulas are evaluated in parallel on the fork-join pool.
+ *
+ * <pre>{@code
+ * CompoundBatch.Columns columns = CompoundBatch.evaluate(formulas);
+ * double mass = columns.molarMass(0);
+ *
+ * // Stream a large file with bounded memory, receiving chunks in input order
+ * CompoundBatch.evaluate(Path.of("formulas.txt"), 65_536, chunk -> write(chunk));
+ * }</pre>
+ *
+ * @author Elon Litman
+ * @version 1.7
+ * @see Compound
+ * @see FormulaParser
+ */
+public final class CompoundBatch {
+
+    /**
+     * The default number of formulas evaluated together by one task.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 4096;
+
+    private static final double[] ATOMIC_MASSES = PeriodicTable.columns().column(ElementColumns.Property.ATOMIC_MASS);
+
+    private CompoundBatch() {
+        ;
+    }
+
+    /**
+     * The results for a run of formulas, as primitive columns. The elements of formula i are stored in compressed sparse
+     * row form: entries offset(i) (inclusive) to offset(i + 1) (exclusive) of the atomic number, count, and percent
+     * columns, in increasing order of atomic number.
+     */
+    public static final class Columns {
+
+        private final long firstIndex;
+
+        private final int size;
+
+        private final double[] molarMass;
+
+        private final int[] charge;
+
+        // The position of the parse error in each formula, or -1 if it parsed
+        private final int[] errorPosition;
+
+        private final int[] offsets;
+
+        private final int[] atomicNumbers;
+
+        private final int[] counts;
+
+        private final double[] percentByMass;
+
+        private Columns(long firstIndex, int size, double[] molarMass, int[] charge, int[] errorPosition, int[] offsets, int[] atomicNumbers, int[] counts, double[] percentByMass) {
+            this.firstIndex = firstIndex;
+            this.size = size;
+            this.molarMass = molarMass;
+            this.charge = charge;
+            this.errorPosition = errorPosition;
+            this.offsets = offsets;
+            this.atomicNumbers = atomicNumbers;
+            this.counts = counts;
+            this.percentByMass = percentByMass;
+        }
+
+        /**
+         * @return The index of the first formula of these Columns in the whole input
+         */
+        public long firstIndex() {
+            return firstIndex;
+        }
+
+        /**
+         * @return The number of formulas
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * @param i The row of a formula
+         * @return Its molar mass in g/mol, or NaN if it could not be parsed
+         */
+        public double molarMass(int i) {
+            return molarMass[i];
+        }
+
+        public int charge(int i) {
+            return charge[i];
+        }
+
+        public boolean isValid(int i) {
+            return errorPosition[i] < 0;
+        }
+
+        /**
+         * @param i The row of a formula
+         * @return The position of its parse error, or -1 if it parsed
+         */
+        public int errorPosition(int i) {
+            return errorPosition[i];
+        }
+
+        public int offset(int i) {
+            return offsets[i];
+        }
+
+        public int atomicNumberAt(int entry) {
+            return atomicNumbers[entry];
+        }
+
+        public int countAt(int entry) {
+            return counts[entry];
+        }
+
+        public double percentByMassAt(int entry) {
+            return percentByMass[entry];
+        }
+
+        /**
+         * @param i The row of a formula
+         * @param atomicNumber The atomic number (Z) of an element
+         * @return The number of atoms of that element in the formula
+         */
+        public int countOf(int i, int atomicNumber) {
+            for(int e=offsets[i]; e<offsets[i + 1]; e++) {
+                if(atomicNumbers[e] == atomicNumber) {
+                    return counts[e];
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * @param i The row of a formula
+         * @param atomicNumber The atomic number (Z) of an element
+         * @return The percentage composition by mass of that element in the formula
+         */
+        public double percentByMass(int i, int atomicNumber) {
+            for(int e=offsets[i]; e<offsets[i + 1]; e++) {
+                if(atomicNumbers[e] == atomicNumber) {
+                    return percentByMass[e];
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * @param i The row of a formula
+         * @return Its Composition as an object, for interoperating with the rest of the library
+         */
+        public Composition composition(int i) {
+            return Composition.of(Arrays.copyOfRange(atomicNumbers, offsets[i], offsets[i + 1]), Arrays.copyOfRange(counts, offsets[i], offsets[i + 1]));
+        }
+
+        /**
+         * @return A copy of the molar mass column
+         */
+        public double[] molarMasses() {
+            return Arrays.copyOf(molarMass, size);
+        }
+    }
+
+    /**
+     * A method that evaluates an array of formulas in parallel.
+     *
+     * @param formulas The molecular formulas
+     * @return The results, aligned with the input
+     */
+    public static Columns evaluate(String[] formulas) {
+        return evaluate(Arrays.asList(formulas));
+    }
+
+    /**
+     * A method that evaluates a list of formulas in parallel.
+     *
+     * @param formulas The molecular formulas
+     * @return The results, aligned with the input
+     */
+    public static Columns evaluate(List<String> formulas) {
+        int n = formulas.size();
+        int chunks = (n + DEFAULT_CHUNK_SIZE - 1) / DEFAULT_CHUNK_SIZE;
+        Columns[] parts = new Columns[chunks];
+        IntStream.range(0, chunks).parallel().forEach(c -> {
+            int from = c * DEFAULT_CHUNK_SIZE;
+            parts[c] = evaluateChunk(formulas.subList(from, Math.min(n, from + DEFAULT_CHUNK_SIZE)), from);
+        });
+        return concatenate(parts, n);
+    }
+
+    /**
+     * A method that evaluates a stream of formulas, holding at most a few chunks per core in memory at once. The sink
+     * is called from the calling thread with one Columns per chunk, in input order.
+     *
+     * @param formulas The molecular formulas
+     * @param chunkSize The number of formulas per chunk
+     * @param sink Receives the results of each chunk
+     */
+    public static void evaluate(Stream<String> formulas, int chunkSize, Consumer<? super Columns> sink) {
+        if(chunkSize <= 0) {
+            throw new IllegalArgumentException("Illegal chunk size: " + chunkSize);
+        }
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        int maxInFlight = 2 * pool.getParallelism() + 1;
+        ArrayDeque<ForkJoinTask<Columns>> inFlight = new ArrayDeque<>(maxInFlight);
+
+        Iterator<String> iterator = formulas.iterator();
+        long index = 0;
+        while(iterator.hasNext()) {
+            List<String> chunk = new ArrayList<>(chunkSize);
+            while(chunk.size() < chunkSize && iterator.hasNext()) {
+                chunk.add(iterator.next());
+            }
+            long firstIndex = index;
+            index += chunk.size();
+            inFlight.addLast(pool.submit(() -> evaluateChunk(chunk, firstIndex)));
+            // Back-pressure: wait for the oldest chunk before reading more
+            if(inFlight.size() >= maxInFlight) {
+                sink.accept(inFlight.pollFirst().join());
+            }
+        }
+        while(!inFlight.isEmpty()) {
+            sink.accept(inFlight.pollFirst().join());
+        }
+    }
+
+    /**
+     * A method that evaluates a file with one formula per line (blank lines are skipped), holding at most a few chunks
+     * per core in memory at once.
+     *
+     * @param file A UTF-8 text file of formulas
+     * @param chunkSize The number of formulas per chunk
+     * @param sink Receives the results of each chunk, in file order
+     * @throws IOException If the file cannot be read
+     */
+    public static void evaluate(Path file, int chunkSize, Consumer<? super Columns> sink) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+             Stream<String> lines = reader.lines()) {
+            evaluate(lines.map(String::strip).filter(line -> !line.isEmpty()), chunkSize, sink);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static Columns evaluateChunk(List<String> formulas, long firstIndex) {
+        int n = formulas.size();
+        double[] molarMass = new double[n];
+        int[] charge = new int[n];
+        int[] errorPosition = new int[n];
+        int[] offsets = new int[n + 1];
+        int[] atomicNumbers = new int[n * 4];
+        int[] counts = new int[n * 4];
+
+        FormulaParser parser = FormulaParser.forCurrentThread();
+        Composition.Builder builder = new Composition.Builder();
+        int entries = 0;
+        for(int i=0; i<n; i++) {
+            builder.reset();
+            errorPosition[i] = -1;
+            try {
+                charge[i] = parser.parseInto(formulas.get(i), builder);
+            } catch (FormulaParseException e) {
+                errorPosition[i] = e.getPosition();
+                molarMass[i] = Double.NaN;
+                offsets[i + 1] = entries;
+                continue;
+            }
+            if(entries + builder.touchedCount() > atomicNumbers.length) {
+                int capacity = Math.max(atomicNumbers.length * 2, entries + builder.touchedCount());
+                atomicNumbers = Arrays.copyOf(atomicNumbers, capacity);
+                counts = Arrays.copyOf(counts, capacity);
+            }
+            int written = builder.copyTo(atomicNumbers, counts, entries);
+            double mass = 0;
+            for(int e=entries; e<entries + written; e++) {
+                mass += ATOMIC_MASSES[atomicNumbers[e]] * counts[e];
+            }
+            molarMass[i] = mass;
+            entries += written;
+            offsets[i + 1] = entries;
+        }
+
+        double[] percentByMass = new double[entries];
+        for(int i=0; i<n; i++) {
+            for(int e=offsets[i]; e<offsets[i + 1]; e++) {
+                percentByMass[e] = ATOMIC_MASSES[atomicNumbers[e]] * counts[e] / molarMass[i] * 100;
+            }
+        }
+        return new Columns(firstIndex, n, molarMass, charge, errorPosition, offsets, atomicNumbers, counts, percentByMass);
+    }
+
+    private static Columns concatenate(Columns[] parts, int n) {
+        if(parts.length == 1) {
+            return parts[0];
+        }
+        int entries = 0;
+        for(Columns part : parts) {
+            entries += part.offsets[part.size];
+        }
+        double[] molarMass = new double[n];
+        int[] charge = new int[n];
+        int[] errorPosition = new int[n];
+        int[] offsets = new int[n + 1];
+        int[] atomicNumbers = new int[entries];
+        int[] counts = new int[entries];
+        double[] percentByMass = new double[entries];
+
+        int row = 0;
+        int entry = 0;
+        for(Columns part : parts) {
+            int partEntries = part.offsets[part.size];
+            System.arraycopy(part.molarMass, 0, molarMass, row, part.size);
+            System.arraycopy(part.charge, 0, charge, row, part.size);
+            System.arraycopy(part.errorPosition, 0, errorPosition, row, part.size);
+            for(int i=1; i<=part.size; i++) {
+                offsets[row + i] = entry + part.offsets[i];
+            }
+            System.arraycopy(part.atomicNumbers, 0, atomicNumbers, entry, partEntries);
+            System.arraycopy(part.counts, 0, counts, entry, partEntries);
+            System.arraycopy(part.percentByMass, 0, percentByMass, entry, partEntries);
+            row += part.size;
+            entry += partEntries;
+        }
+        return new Columns(0, n, molarMass, charge, errorPosition, offsets, atomicNumbers, counts, percentByMass);
+    }
+}
@@ -3,183 +3,263 @@ package io.github.monomer.Chem.Core;
 import io.github.monomer.Monomers.Monomer;
 import io.github.monomer.Polymers.Seq;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileReader;
+import java.io.DataInput;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Objects;
 
 /**
- * A class for instantiating Element objects.
+ * A class for instantiating Element objects. Elements are immutable; shared instances are available through
+ * {@link #of(String)} and the {@link PeriodicTable} registry.
  *
  * @author Elon Litman
  * @version 1.7
+ * @see PeriodicTable
  * @see Compound
  * @see Monomer
  * @see Seq
  */
 public class Element {
 
-    public float atomicNumber;
+    public final float atomicNumber;
 
-    public String elementName;
+    public final String elementName;
 
-    public String elementSymbol;
+    public final String elementSymbol;
 
-    public float atomicMass;
+    public final float atomicMass;
 
-    public float neutrons;
+    public final float neutrons;
 
-    public float protons;
+    public final float protons;
 
-    public float electrons;
+    public final float electrons;
 
-    public float period;
+    public final float period;
 
-    public float group;
+    public final float group;
 
     // The state of matter of the element at room temperature
-    public String phase;
+    public final String phase;
 
-    public boolean radioactive;
+    public final boolean radioactive;
 
-    public boolean natural;
+    public final boolean natural;
 
-    public boolean metal;
+    public final boolean metal;
 
-    public boolean nonmetal;
+    public final boolean nonmetal;
 
-    public boolean metalloid;
+    public final boolean metalloid;
 
-    public String type;
+    public final String type;
 
-    public String atomicRadius;
+    public final String atomicRadius;
 
     // Could be NaN
-    public String electronegativity;
+    public final String electronegativity;
 
     // Could be NaN
-    public String firstIonization;
+    public final String firstIonization;
 
-    public float density;
+    public final float density;
 
-    public float meltingPoint;
+    public final float meltingPoint;
 
-    public float boilingPoint;
+    public final float boilingPoint;
 
-    public float isotopes;
+    public final float isotopes;
 
-    public String discoverer;
+    public final String discoverer;
 
-    public float specificHeat;
+    public final float specificHeat;
 
-    public float shells;
+    public final float shells;
 
-    public float valence;
+    public final float valence;
 
-    public String config;
+    public final String config;
 
-    public float massNumber;
+    public final float massNumber;
 
+    /**
+     * Instantiate an Element from its symbol or name (e.g. "C" or "Carbon"). The data is copied from the shared
+     * PeriodicTable registry, so no file is read; prefer {@link #of(String)} to avoid the copy altogether.
+     *
+     * @param elementSymbol The symbol or name of the element, in any case
+     * @throws IOException Retained for source compatibility; the periodic table is loaded from the classpath
+     * @throws IllegalArgumentException If no such element exists
+     */
     public Element(String elementSymbol) throws IOException {
-        elementSymbol = elementSymbol.substring(0,1).toUpperCase() + elementSymbol.substring(1).toLowerCase();
+        this(PeriodicTable.lookup(elementSymbol));
+    }
 
-        String filePath = new File("").getAbsolutePath();
+    private Element(Element e) {
+        this.atomicNumber = e.atomicNumber;
+        this.elementName = e.elementName;
+        this.elementSymbol = e.elementSymbol;
+        this.atomicMass = e.atomicMass;
+        this.neutrons = e.neutrons;
+        this.protons = e.protons;
+        this.electrons = e.electrons;
+        this.period = e.period;
+        this.group = e.group;
+        this.phase = e.phase;
+        this.radioactive = e.radioactive;
+        this.natural = e.natural;
+        this.metal = e.metal;
+        this.nonmetal = e.nonmetal;
+        this.metalloid = e.metalloid;
+        this.type = e.type;
+        this.atomicRadius = e.atomicRadius;
+        this.electronegativity = e.electronegativity;
+        this.firstIonization = e.firstIonization;
+        this.density = e.density;
+        this.meltingPoint = e.meltingPoint;
+        this.boilingPoint = e.boilingPoint;
+        this.isotopes = e.isotopes;
+        this.discoverer = e.discoverer;
+        this.specificHeat = e.specificHeat;
+        this.shells = e.shells;
+        this.valence = e.valence;
+        this.config = e.config;
+        this.massNumber = e.massNumber;
+    }
 
-        BufferedReader reader = new BufferedReader(new FileReader(filePath + "/src/main/java/io/github/monomer/Chem/Core/PeriodicTable.csv"));
-        ArrayList<String> lines = new ArrayList<>();
-        String line;
-        while ((line = reader.readLine()) != null) {
-            lines.add(line);
-        }
+    // Used by the PeriodicTable registry with one row of PeriodicTable.csv (without the leading index column)
+    Element(String[] parsedElementRow) {
+        this.atomicNumber = parseFloat(parsedElementRow[0]);
 
-        String elementRow = null;
-        // Find the data on the element we need
-        for (String row : lines) {
-            String[] parsedRows = row.split(",");
-            if(parsedRows[3].equals(elementSymbol) || parsedRows[2].equals(elementSymbol)) {
-                elementRow = row;
-                break;
-            }
-        }
+        this.elementName = parsedElementRow[1];
+
+        this.elementSymbol = parsedElementRow[2];
 
-        assert elementRow != null;
-        ArrayList<String> parsedElementRow = new ArrayList<>(Arrays.asList(elementRow.split(",")));
-        parsedElementRow.remove(0);
+        this.atomicMass = parseFloat(parsedElementRow[3]);
 
-        // Initialize fields
-        this.atomicNumber = Float.parseFloat(parsedElementRow.get(0));
+        this.neutrons = parseFloat(parsedElementRow[4]);
 
-        this.elementName = parsedElementRow.get(1);
+        this.protons = parseFloat(parsedElementRow[5]);
 
-        this.elementSymbol = parsedElementRow.get(2);
+        this.electrons = parseFloat(parsedElementRow[6]);
 
-        this.atomicMass = Float.parseFloat(parsedElementRow.get(3));
+        this.period = parseFloat(parsedElementRow[7]);
 
-        this.neutrons = Float.parseFloat(parsedElementRow.get(4));
+        this.group = parseFloat(parsedElementRow[8]);
 
-        this.protons = Float.parseFloat(parsedElementRow.get(5));
+        this.phase = parsedElementRow[9];
 
-        this.electrons = Float.parseFloat(parsedElementRow.get(6));
+        this.radioactive = Boolean.parseBoolean(parsedElementRow[10]);
 
-        this.period = Float.parseFloat(parsedElementRow.get(7));
+        this.natural = Boolean.parseBoolean(parsedElementRow[11]);
 
-        this.group = Float.parseFloat(parsedElementRow.get(8));
+        this.metal = Boolean.parseBoolean(parsedElementRow[12]);
 
-        this.phase = parsedElementRow.get(9);
+        this.nonmetal = Boolean.parseBoolean(parsedElementRow[13]);
 
-        this.radioactive = Boolean.parseBoolean(parsedElementRow.get(10));
+        this.metalloid = Boolean.parseBoolean(parsedElementRow[14]);
 
-        this.natural = Boolean.parseBoolean(parsedElementRow.get(11));
+        this.type = parsedElementRow[15];
 
-        this.metal = Boolean.parseBoolean(parsedElementRow.get(12));
+        this.atomicRadius = parsedElementRow[16];
 
-        this.nonmetal = Boolean.parseBoolean(parsedElementRow.get(13));
+        this.electronegativity = parsedElementRow[17];
 
-        this.metalloid = Boolean.parseBoolean(parsedElementRow.get(14));
+        this.firstIonization = parsedElementRow[18];
 
-        this.type = parsedElementRow.get(15);
+        this.density = parseFloat(parsedElementRow[19]);
 
-        this.atomicRadius = parsedElementRow.get(16);
+        this.meltingPoint = parseFloat(parsedElementRow[20]);
 
-        this.electronegativity = parsedElementRow.get(17);
+        this.boilingPoint = parseFloat(parsedElementRow[21]);
 
-        this.firstIonization = parsedElementRow.get(18);
+        this.isotopes = parseFloat(parsedElementRow[22]);
 
-        this.density = Float.parseFloat(parsedElementRow.get(19));
+        this.discoverer = parsedElementRow[23];
 
-        this.meltingPoint = Float.parseFloat(parsedElementRow.get(20));
+        this.specificHeat = parseFloat(parsedElementRow[25]);
 
-        this.boilingPoint = Float.parseFloat(parsedElementRow.get(21));
+        this.shells = parseFloat(parsedElementRow[26]);
 
-        this.isotopes = Float.parseFloat(parsedElementRow.get(22));
+        this.valence = parseFloat(parsedElementRow[27]);
 
-        this.discoverer = parsedElementRow.get(23);
+        this.config = parsedElementRow[28];
 
-        this.specificHeat = Float.parseFloat(parsedElementRow.get(25));
+        this.massNumber = parseFloat(parsedElementRow[29]);
+    }
 
-        this.shells = Float.parseFloat(parsedElementRow.get(26));
+    // Used by the PeriodicTable registry with one record of the compiled PeriodicTable.bin, in PeriodicTable.BINARY_SCHEMA order
+    Element(DataInput in) throws IOException {
+        this.atomicNumber = in.readFloat();
+        this.elementName = in.readUTF();
+        this.elementSymbol = in.readUTF();
+        this.atomicMass = in.readFloat();
+        this.neutrons = in.readFloat();
+        this.protons = in.readFloat();
+        this.electrons = in.readFloat();
+        this.period = in.readFloat();
+        this.group = in.readFloat();
+        this.phase = in.readUTF();
+        this.radioactive = in.readBoolean();
+        this.natural = in.readBoolean();
+        this.metal = in.readBoolean();
+        this.nonmetal = in.readBoolean();
+        this.metalloid = in.readBoolean();
+        this.type = in.readUTF();
+        this.atomicRadius = in.readUTF();
+        this.electronegativity = in.readUTF();
+        this.firstIonization = in.readUTF();
+        this.density = in.readFloat();
+        this.meltingPoint = in.readFloat();
+        this.boilingPoint = in.readFloat();
+        this.isotopes = in.readFloat();
+        this.discoverer = in.readUTF();
+        this.specificHeat = in.readFloat();
+        this.shells = in.readFloat();
+        this.valence = in.readFloat();
+        this.config = in.readUTF();
+        this.massNumber = in.readFloat();
+    }
 
-        this.valence = Float.parseFloat(parsedElementRow.get(27));
+    // Missing values in the table are either empty or "Unknown"
+    private static float parseFloat(String value) {
+        if(value.isEmpty() || value.equals("Unknown")) {
+            return Float.NaN;
+        }
+        return Float.parseFloat(value);
+    }
 
-        this.config = parsedElementRow.get(28);
+    /**
+     * A method that returns the shared, immutable Element with the given symbol or name.
+     *
+     * @param symbolOrName The symbol or name of the element, in any case (e.g. "Na", "na", or "Sodium")
+     * @return The Element from the PeriodicTable registry
+     * @throws IllegalArgumentException If no such element exists
+     */
+    public static Element of(String symbolOrName) {
+        return PeriodicTable.lookup(symbolOrName);
+    }
 
-        this.massNumber = Float.parseFloat(parsedElementRow.get(29));
+    /**
+     * A method that returns the shared, immutable Element with the given atomic number.
+     *
+     * @param atomicNumber The atomic number (Z) of the element
+     * @return The Element from the PeriodicTable registry
+     * @throws IllegalArgumentException If there is no element with that atomic number
+     */
+    public static Element of(int atomicNumber) {
+        return PeriodicTable.byAtomicNumber(atomicNumber);
     }
 
+    // An element is fully determined by its atomic number, so identity is a single integer comparison
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         Element element = (Element) o;
-        return Float.compare(element.atomicNumber, atomicNumber) == 0 && Float.compare(element.atomicMass, atomicMass) == 0 && Float.compare(element.electrons, electrons) == 0 && Float.compare(element.period, period) == 0 && Float.compare(element.group, group) == 0 && radioactive == element.radioactive && natural == element.natural && metal == element.metal && nonmetal == element.nonmetal && metalloid == element.metalloid && Float.compare(element.density, density) == 0 && Float.compare(element.meltingPoint, meltingPoint) == 0 && Float.compare(element.boilingPoint, boilingPoint) == 0 && Float.compare(element.isotopes, isotopes) == 0 && Float.compare(element.specificHeat, specificHeat) == 0 && Float.compare(element.shells, shells) == 0 && Float.compare(element.valence, valence) == 0 && Float.compare(element.massNumber, massNumber) == 0 && elementName.equals(element.elementName) && elementSymbol.equals(element.elementSymbol) && phase.equals(element.phase) && type.equals(element.type) && atomicRadius.equals(element.atomicRadius) && electronegativity.equals(element.electronegativity) && firstIonization.equals(element.firstIonization) && discoverer.equals(element.discoverer) && config.equals(element.config);
+        return (int) atomicNumber == (int) element.atomicNumber;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(atomicNumber, elementName, elementSymbol, atomicMass, protons, electrons, period, group, phase, radioactive, natural, metal, nonmetal, metalloid, type, atomicRadius, electronegativity, firstIonization, density, meltingPoint, boilingPoint, isotopes, discoverer, specificHeat, shells, valence, config, massNumber);
+        return (int) atomicNumber;
     }
 
     @Override
@@ -0,0 +1,223 @@
+package io.github.monomer.Chem.Core;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * A columnar (struct-of-arrays) view of the periodic table. Every numeric property is held in its own primitive
+ * double[] indexed by atomic number, with missing values encoded as NaN, and every boolean property is held in a
+ * BitSet. Bulk property queries therefore become array gathers without touching any Element objects.
+ *
+ * @author Elon Litman
+ * @version 1.7
+ * @see PeriodicTable
+ * @see Element
+ */
+public final class ElementColumns {
+
+    /**
+     * The numeric properties of an element.
+     */
+    public enum Property {
+        ATOMIC_MASS,
+        NEUTRONS,
+        PROTONS,
+        ELECTRONS,
+        PERIOD,
+        GROUP,
+        ATOMIC_RADIUS,
+        ELECTRONEGATIVITY,
+        FIRST_IONIZATION,
+        DENSITY,
+        MELTING_POINT,
+        BOILING_POINT,
+        ISOTOPES,
+        SPECIFIC_HEAT,
+        SHELLS,
+        VALENCE,
+        MASS_NUMBER,
+        MONOISOTOPIC_MASS,
+    }
+
+    /**
+     * The boolean properties of an element.
+     */
+    public enum Flag {
+        RADIOACTIVE,
+        NATURAL,
+        METAL,
+        NONMETAL,
+        METALLOID,
+    }
+
+    // columns[property.ordinal()][atomicNumber]; index 0 is unused and NaN
+    private final double[][] columns;
+
+    private final BitSet[] flags;
+
+    private final int maxAtomicNumber;
+
+    ElementColumns(List<Element> elements, int maxAtomicNumber, double[] monoisotopicMasses) {
+        this.maxAtomicNumber = maxAtomicNumber;
+        this.columns = new double[Property.values().length][maxAtomicNumber + 1];
+        for(double[] column : columns) {
+            Arrays.fill(column, Double.NaN);
+        }
+        this.flags = new BitSet[Flag.values().length];
+        for(int i=0; i<flags.length; i++) {
+            flags[i] = new BitSet(maxAtomicNumber + 1);
+        }
+
+        for(Element e : elements) {
+            int z = (int) e.atomicNumber;
+            columns[Property.ATOMIC_MASS.ordinal()][z] = widen(e.atomicMass);
+            columns[Property.NEUTRONS.ordinal()][z] = widen(e.neutrons);
+            columns[Property.PROTONS.ordinal()][z] = widen(e.protons);
+            columns[Property.ELECTRONS.ordinal()][z] = widen(e.electrons);
+            columns[Property.PERIOD.ordinal()][z] = widen(e.period);
+            columns[Property.GROUP.ordinal()][z] = widen(e.group);
+            columns[Property.ATOMIC_RADIUS.ordinal()][z] = parseDouble(e.atomicRadius);
+            columns[Property.ELECTRONEGATIVITY.ordinal()][z] = parseDouble(e.electronegativity);
+            columns[Property.FIRST_IONIZATION.ordinal()][z] = parseDouble(e.firstIonization);
+            columns[Property.DENSITY.ordinal()][z] = widen(e.density);
+            columns[Property.MELTING_POINT.ordinal()][z] = widen(e.meltingPoint);
+            columns[Property.BOILING_POINT.ordinal()][z] = widen(e.boilingPoint);
+            columns[Property.ISOTOPES.ordinal()][z] = widen(e.isotopes);
+            columns[Property.SPECIFIC_HEAT.ordinal()][z] = widen(e.specificHeat);
+            columns[Property.SHELLS.ordinal()][z] = widen(e.shells);
+            columns[Property.VALENCE.ordinal()][z] = widen(e.valence);
+            columns[Property.MASS_NUMBER.ordinal()][z] = widen(e.massNumber);
+
+            columns[Property.MONOISOTOPIC_MASS.ordinal()][z] = monoisotopicMasses[z];
+
+            flags[Flag.RADIOACTIVE.ordinal()].set(z, e.radioactive);
+            flags[Flag.NATURAL.ordinal()].set(z, e.natural);
+            flags[Flag.METAL.ordinal()].set(z, e.metal);
+            flags[Flag.NONMETAL.ordinal()].set(z, e.nonmetal);
+            flags[Flag.METALLOID.ordinal()].set(z, e.metalloid);
+        }
+    }
+
+    // Widen through the shortest decimal representation, so 12.011f becomes 12.011 rather than 12.0109996795654
+    private static double widen(float value) {
+        return Float.isNaN(value) ? Double.NaN : Double.parseDouble(Float.toString(value));
+    }
+
+    // Some numeric properties are stored as Strings on Element and may be empty or "Unknown"
+    private static double parseDouble(String value) {
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException ignored) {
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * @return The highest atomic number in the table, i.e. the length of every column minus one
+     */
+    public int maxAtomicNumber() {
+        return maxAtomicNumber;
+    }
+
+    /**
+     * A method that gets a single property of a single element.
+     *
+     * @param property The property to read
+     * @param atomicNumber The atomic number (Z) of the element
+     * @return The value of the property, or NaN if it is unknown
+     */
+    public double get(Property property, int atomicNumber) {
+        return columns[property.ordinal()][atomicNumber];
+    }
+
+    /**
+     * A method that copies a whole property column.
+     *
+     * @param property The property to read
+     * @return A copy of the column, indexed by atomic number (index 0 is NaN)
+     */
+    public double[] column(Property property) {
+        return columns[property.ordinal()].clone();
+    }
+
+    /**
+     * A method that gathers a property for many atoms at once.
+     *
+     * @param property The property to read
+     * @param atomicNumbers The atomic numbers of the atoms
+     * @param out The array the values are written into; must be at least as long as atomicNumbers
+     */
+    public void gather(Property property, int[] atomicNumbers, double[] out) {
+        double[] column = columns[property.ordinal()];
+        for(int i=0; i<atomicNumbers.length; i++) {
+            out[i] = column[atomicNumbers[i]];
+        }
+    }
+
+    /**
+     * A method that gathers a property for many atoms at once.
+     *
+     * @param property The property to read
+     * @param atomicNumbers The atomic numbers of the atoms
+     * @return The values of the property, aligned with atomicNumbers
+     */
+    public double[] gather(Property property, int[] atomicNumbers) {
+        double[] out = new double[atomicNumbers.length];
+        gather(property, atomicNumbers, out);
+        return out;
+    }
+
+    /**
+     * A method that sums a property weighted by counts, e.g. the molar mass of a composition when the property is
+     * ATOMIC_MASS.
+     *
+     * @param property The property to sum
+     * @param atomicNumbers The atomic numbers of the constituent elements
+     * @param counts The number of atoms of each element, aligned with atomicNumbers
+     * @return The weighted sum, or NaN if the property is unknown for any of the elements
+     */
+    public double weightedSum(Property property, int[] atomicNumbers, int[] counts) {
+        double[] column = columns[property.ordinal()];
+        double sum = 0;
+        for(int i=0; i<atomicNumbers.length; i++) {
+            sum += column[atomicNumbers[i]] * counts[i];
+        }
+        return sum;
+    }
+
+    /**
+     * A method that tests a boolean property of a single element.
+     *
+     * @param flag The property to test
+     * @param atomicNumber The atomic number (Z) of the element
+     * @return Whether the element has the property
+     */
+    public boolean is(Flag flag, int atomicNumber) {
+        return flags[flag.ordinal()].get(atomicNumber);
+    }
+
+    /**
+     * A method that copies the set of elements with a boolean property.
+     *
+     * @param flag The property to select on
+     * @return A BitSet with the atomic numbers of every element that has the property
+     */
+    public BitSet flag(Flag flag) {
+        return (BitSet) flags[flag.ordinal()].clone();
+    }
+
+    /**
+     * A method that tests a boolean property for many atoms at once.
+     *
+     * @param flag The property to test
+     * @param atomicNumbers The atomic numbers of the atoms
+     * @param out The array the results are written into; must be at least as long as atomicNumbers
+     */
+    public void gather(Flag flag, int[] atomicNumbers, boolean[] out) {
+        BitSet bits = flags[flag.ordinal()];
+        for(int i=0; i<atomicNumbers.length; i++) {
+            out[i] = bits.get(atomicNumbers[i]);
+        }
+    }
+}
@@ -58,7 +58,7 @@ public final class EmpiricalFormulaUtil {
 
         // Divide each % by its atomic mass
         for(Element element : percentComposition.keySet()) {
-            Compound c = new Compound(element.elementSymbol);
+            Compound c = Compound.of(element.elementSymbol);
             moles.put(c, c.getAmounts("Grams", percentComposition.get(element)).get("Moles"));
         }
 
@@ -81,8 +81,8 @@ public final class EmpiricalFormulaUtil {
      * @return The empirical formula of the hydrocarbon
      */
     public static String getHydrocarbonFromCombustion(float CO2, float H2O) throws IOException {
-        Compound carbon = new Compound("C");
-        Compound hydrogen = new Compound("H");
+        Compound carbon = Compound.of("C");
+        Compound hydrogen = Compound.of("H");
 
         float molesC = carbon.getAmounts("Grams", CO2).get("Moles") * 2;
         float molesH = hydrogen.getAmounts("Grams", H2O).get("Moles");
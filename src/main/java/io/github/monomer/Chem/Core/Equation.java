@@ -0,0 +1,258 @@
+package io.github.monomer.Chem.Core;
+
+import java.util.Arrays;
+
+/**
+ * An immutable, parsed chemical equation: the terms on each side, with their coefficients, species, charges and
+ * phases, and the kind of arrow between the sides. Every species is already parsed into a Composition, so an Equation
+ * can be balanced or checked without touching its text again.
+ *
+ * <pre>{@code
+ * Equation equation = EquationParser.parse("2Na(s) + Cl2(g) --> 2NaCl(s)");
+ * Equation.Term salt = equation.term(2);  // coefficient 2, formula "NaCl", phase SOLID
+ * }</pre>
+ *
+ * @author Elon Litman
+ * @version 1.7
+ * @see EquationParser
+ */
+public final class Equation {
+
+    /**
+     * The arrow between the sides.
+     */
+    public enum Arrow {
+        // -->, ->, → or =
+        FORWARD("-->"),
+        // <=> or ⇌
+        REVERSIBLE("<=>");
+
+        public final String symbol;
+
+        Arrow(String symbol) {
+            this.symbol = symbol;
+        }
+    }
+
+    /**
+     * The state of matter written after a species.
+     */
+    public enum Phase {
+        SOLID("s"),
+        LIQUID("l"),
+        GAS("g"),
+        AQUEOUS("aq");
+
+        private static final Phase[] PHASES = values();
+
+        public final String symbol;
+
+        Phase(String symbol) {
+            this.symbol = symbol;
+        }
+
+        /**
+         * @param symbol A phase symbol as written between parentheses, e.g. "aq"
+         * @return The Phase, or null if the symbol is not one
+         */
+        public static Phase of(CharSequence symbol) {
+            for(Phase phase : PHASES) {
+                if(phase.symbol.contentEquals(symbol)) {
+                    return phase;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * One species on one side of an Equation.
+     */
+    public static final class Term {
+
+        // 1 if no coefficient was written
+        public final int coefficient;
+
+        public final boolean hasCoefficient;
+
+        // The species as written, without its coefficient, phase, or any whitespace, e.g. "Fe^3+"
+        public final String formula;
+
+        public final Composition composition;
+
+        public final int charge;
+
+        // null if no phase was written
+        public final Phase phase;
+
+        // Where the term starts in the parsed text
+        public final int position;
+
+        Term(int coefficient, boolean hasCoefficient, String formula, Composition composition, int charge, Phase phase, int position) {
+            this.coefficient = coefficient;
+            this.hasCoefficient = hasCoefficient;
+            this.formula = formula;
+            this.composition = composition;
+            this.charge = charge;
+            this.phase = phase;
+            this.position = position;
+        }
+
+        /**
+         * @return The species with its phase, e.g. "NaCl(aq)"
+         */
+        public String species() {
+            return phase == null ? formula : formula + "(" + phase.symbol + ")";
+        }
+
+        @Override
+        public String toString() {
+            return (coefficient == 1 ? "" : Integer.toString(coefficient)) + species();
+        }
+    }
+
+    private final Term[] terms;
+
+    private final int reactantCount;
+
+    private final Arrow arrow;
+
+    Equation(Term[] terms, int reactantCount, Arrow arrow) {
+        this.terms = terms;
+        this.reactantCount = reactantCount;
+        this.arrow = arrow;
+    }
+
+    /**
+     * @return The number of terms on both sides
+     */
+    public int size() {
+        return terms.length;
+    }
+
+    public int reactantCount() {
+        return reactantCount;
+    }
+
+    public int productCount() {
+        return terms.length - reactantCount;
+    }
+
+    /**
+     * @param index An index among the reactants followed by the products
+     * @return The Term at that index
+     */
+    public Term term(int index) {
+        return terms[index];
+    }
+
+    /**
+     * @param index An index among the reactants followed by the products
+     * @return Whether the Term at that index is a reactant
+     */
+    public boolean isReactant(int index) {
+        return index < reactantCount;
+    }
+
+    public Term[] reactants() {
+        return Arrays.copyOfRange(terms, 0, reactantCount);
+    }
+
+    public Term[] products() {
+        return Arrays.copyOfRange(terms, reactantCount, terms.length);
+    }
+
+    public Arrow arrow() {
+        return arrow;
+    }
+
+    public boolean isReversible() {
+        return arrow == Arrow.REVERSIBLE;
+    }
+
+    /**
+     * @return Whether any term was written with a coefficient
+     */
+    public boolean hasCoefficients() {
+        for(Term term : terms) {
+            if(term.hasCoefficient) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return The coefficients of the reactants followed by those of the products, 1 where none was written
+     */
+    public long[] coefficients() {
+        long[] coefficients = new long[terms.length];
+        for(int i=0; i<terms.length; i++) {
+            coefficients[i] = terms[i].coefficient;
+        }
+        return coefficients;
+    }
+
+    /**
+     * @return The formulas of the reactants followed by those of the products
+     */
+    public String[] formulas() {
+        String[] formulas = new String[terms.length];
+        for(int i=0; i<terms.length; i++) {
+            formulas[i] = terms[i].formula;
+        }
+        return formulas;
+    }
+
+    /**
+     * @return The Compositions of the reactants followed by those of the products
+     */
+    public Composition[] compositions() {
+        Composition[] compositions = new Composition[terms.length];
+        for(int i=0; i<terms.length; i++) {
+            compositions[i] = terms[i].composition;
+        }
+        return compositions;
+    }
+
+    /**
+     * @return The charges of the reactants followed by those of the products
+     */
+    public int[] charges() {
+        int[] charges = new int[terms.length];
+        for(int i=0; i<terms.length; i++) {
+            charges[i] = terms[i].charge;
+        }
+        return charges;
+    }
+
+    /**
+     * A method that writes the Equation with other coefficients, keeping its species, phases, and arrow.
+     *
+     * @param coefficients The coefficients of the reactants followed by those of the products; 1 is not written
+     * @return A String equation, e.g. "2H2(g) + O2(g) --> 2H2O(l)"
+     */
+    public String write(long[] coefficients) {
+        if(coefficients.length != terms.length) {
+            throw new IllegalArgumentException("Expected " + terms.length + " coefficients, but got " + coefficients.length);
+        }
+        StringBuilder sb = new StringBuilder(terms.length * 12);
+        for(int i=0; i<terms.length; i++) {
+            if(i == reactantCount) {
+                sb.append(' ').append(arrow.symbol).append(' ');
+            } else if(i > 0) {
+                sb.append(" + ");
+            }
+            if(coefficients[i] != 1) {
+                sb.append(coefficients[i]);
+            }
+            sb.append(terms[i].species());
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return write(coefficients());
+    }
+}
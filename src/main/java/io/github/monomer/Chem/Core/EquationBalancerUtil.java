@@ -2,1019 +2,398 @@ package io.github.monomer.Chem.Core;
 
 import io.github.monomer.Chem.Reactions.Reaction;
 
-import java.util.Collections;
-import java.util.Hashtable;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
 
 /**
- * A utility class that can be used to solve almost any chemical equation, though square brackets are not supported. These need to be expanded manually.
+ * A utility class that can be used to solve almost any chemical equation, including ones with grouped, hydrated, or charged species.
  *
  * @author Elon Litman
  * @version 1.7
  * @see EmpiricalFormulaUtil
+ * @see NullspaceUtil
  */
 public final class EquationBalancerUtil {
 
+    // Canonical reaction signature -> coefficients in canonical species order
+    private static final BoundedCache<String, long[]> MEMO = new BoundedCache<>(16_384);
+
+    // Per thread: a Builder for the net composition, reactants minus products
+    private static final ThreadLocal<Composition.Builder> SCRATCH = ThreadLocal.withInitial(Composition.Builder::new);
+
     /**
-     * A method that evaluates if a chemical equation is already balanced.
+     * A method that evaluates if a chemical equation is already balanced, i.e. if every element and the charge occur
+     * equally often on both sides once coefficients are applied. A species without a coefficient counts once.
      *
-     * @param equation A String equation
+     * @param equation A String equation, e.g. "2H2 + O2 --> 2H2O"
      * @return A boolean corresponding to whether the equation is balanced
+     * @throws EquationParseException If the equation is malformed
      */
     public static boolean isBalanced(String equation) {
-        String[] data = equation.split("-->");
-        String left = data[0].strip();
-        String right = data[1].strip();
-        int limitleft=0,limitright=0;
-        for(int i=0;i<left.length();i++)
-        {
-            if(Character.isUpperCase(left.charAt(i)))
-                limitleft++;
-        }
-        for(int i=0;i<right.length();i++)
-        {
-            if(Character.isUpperCase(right.charAt(i)))
-                limitright++;
-        }
-
-        String plus = "\\+";
-        String[] Left = left.split(plus);
-        String[] Right =right.split(plus);
-        String[] lout =new String[limitleft];
-        int[] lout1 =new int[limitleft];
-
-        String[] rout =new String[limitright];
-        int[] rout1 =new int[limitright];
-        int lind=0, rind=0;
-        for (String l : Left) {
-            int multiplier = 1;
-
-            for (int j = 0; j < l.length(); j++) {
-                char s = l.charAt(j);
-                if (Character.isDigit(s) && multiplier == 1) {
-                    multiplier = Character.getNumericValue(s);
-                    if (Character.isDigit(l.charAt(j + 1))) {
-                        j++;
-                        while (true) {
-                            if (j < l.length() && Character.isDigit(l.charAt(j))) {
-                                multiplier = multiplier * 10 + Character.getNumericValue(l.charAt(j));
-                                j++;
-
-                            } else {
-                                j--;
-                                break;
-                            }
-                        }
-                    }
-                }
-                if (Character.isUpperCase(s)) {
-                    int k = j + 1;
-                    String temp = s + "";
-                    while (true) {
-                        if (k < l.length()) {
-                            if (Character.isLowerCase(l.charAt(k))) {
-                                temp = temp + l.charAt(k);
-                            }
-                            if (Character.isUpperCase(l.charAt(k)) || Character.isDigit(l.charAt(k))) {
-                                break;
-                            }
-                            k++;
-                        } else
-                            break;
-                    }
-
-                    lout[lind] = temp;
-                    int coff = 1;
-                    if (k < l.length())
-                        if (Character.isDigit(l.charAt(k))) {
-                            coff = Character.getNumericValue(l.charAt(k));
-                            k++;
-                            while (true) {
-                                if (k < l.length() && Character.isDigit(l.charAt(k))) {
-                                    coff = coff * 10 + Character.getNumericValue(l.charAt(k));
-                                    k++;
-
-                                } else
-                                    break;
-                            }
-                        }
-                    lout1[lind] = coff * multiplier;
-                    j = k - 1;
-                    lind++;
-                }
-            }
-        }
-        for (String r : Right) {
-            int multiplier = 1;
-
-            for (int j = 0; j < r.length(); j++) {
-                char s = r.charAt(j);
-                if (Character.isDigit(s) && multiplier == 1) {
-                    multiplier = Character.getNumericValue(s);
-                    if (Character.isDigit(r.charAt(j + 1))) {
-                        j++;
-                        while (true) {
-                            if (j < r.length() && Character.isDigit(r.charAt(j))) {
-                                multiplier = multiplier * 10 + Character.getNumericValue(r.charAt(j));
-                                j++;
-
-                            } else {
-                                j--;
-                                break;
-                            }
-                        }
-                    }
-                }
-                if (Character.isUpperCase(s)) {
-                    int k = j + 1;
-                    String temp = s + "";
-                    while (true) {
-                        if (k < r.length()) {
-                            if (Character.isLowerCase(r.charAt(k))) {
-                                temp = temp + r.charAt(k);
-                            }
-                            if (Character.isUpperCase(r.charAt(k)) || Character.isDigit(r.charAt(k))) {
-                                break;
-                            }
-                            k++;
-                        } else
-                            break;
-                    }
-
-                    rout[rind] = temp;
-                    int coff = 1;
-                    if (k < r.length())
-                        if (Character.isDigit(r.charAt(k))) {
-                            coff = Character.getNumericValue(r.charAt(k));
-                            k++;
-                            while (true) {
-                                if (k < r.length() && Character.isDigit(r.charAt(k))) {
-                                    coff = coff * 10 + Character.getNumericValue(r.charAt(k));
-                                    k++;
-
-                                } else
-                                    break;
-                            }
-                        }
-                    rout1[rind] = coff * multiplier;
-                    j = k - 1;
-                    rind++;
-
-                }
-            }
-        }
-        for(int i=0; i<limitleft; i++) {
-            for(int j=i+1; j<limitleft; j++) {
-            if(lout[i].equals(lout[j]))
-            {
-                lout1[i]=lout1[i]+lout1[j];
-                lout1[j]=0;
-                lout[j]="xyzz";
-                limitleft--;
-            }
-        }
-        }
-        int r = limitright;
-        for(int i=0; i<r; i++) {
-            for(int j=i+1; j<r; j++) {
-                if(rout[i].equals(rout[j])) {
-                    rout1[i] = rout1[i] + rout1[j];
-                    rout1[j] = 0;
-                    rout[j] = "xyzz";
-                    limitright--;
-                }
-            }
-        }
+        Equation parsed = EquationParser.parse(equation);
+        Composition.Builder net = SCRATCH.get().reset();
+        long charge = 0;
+        for(int i=0; i<parsed.size(); i++) {
+            Equation.Term term = parsed.term(i);
+            int multiplier = parsed.isReactant(i) ? term.coefficient : -term.coefficient;
+            net.add(term.composition, multiplier);
+            charge += (long) multiplier * term.charge;
+        }
+        return charge == 0 && net.isEmpty();
+    }
 
-        int res = 0;
-        for(int i=0; i<lout.length; i++) {
-            for(int j=0;j<rout.length;j++) {
-                if(lout[i].equals(rout[j])) {
-                    if(lout1[i] != rout1[j]) {
-                        res++;
-                    }
-                }
-            }
-        }
-        return res == 0;
+    /**
+     * A method that evaluates if a set of Compounds is balanced by the given coefficients, without parsing anything.
+     *
+     * @param reactants The reactant Compounds
+     * @param products The product Compounds
+     * @param coefficients The coefficients of the reactants followed by those of the products
+     * @return A boolean corresponding to whether the reaction is balanced
+     * @throws IllegalArgumentException If there is not one coefficient per Compound
+     */
+    public static boolean isBalanced(Compound[] reactants, Compound[] products, long[] coefficients) {
+        if(coefficients.length != reactants.length + products.length) {
+            throw new IllegalArgumentException("Expected " + (reactants.length + products.length) + " coefficients, but got " + coefficients.length);
+        }
+        Composition.Builder net = SCRATCH.get().reset();
+        long charge = 0;
+        for(int i=0; i<coefficients.length; i++) {
+            Compound compound = i < reactants.length ? reactants[i] : products[i - reactants.length];
+            int multiplier = Math.toIntExact(i < reactants.length ? coefficients[i] : -coefficients[i]);
+            net.add(compound.composition, multiplier);
+            charge += (long) multiplier * compound.charge;
+        }
+        return charge == 0 && net.isEmpty();
     }
 
+    /**
+     * A method that evaluates if a Reaction is balanced. The species are taken from its already parsed Compounds, and the
+     * coefficients from its stored ones, or failing that from its equation.
+     *
+     * @param reaction A Reaction
+     * @return A boolean corresponding to whether the reaction is balanced
+     */
     public static boolean isBalanced(Reaction reaction) {
-        String equation = reaction.equation;
-        String[] data = equation.split("-->");
-        String left = data[0].strip();
-        String right = data[1].strip();
-        int limitleft=0,limitright=0;
-        for(int i=0;i<left.length();i++)
-        {
-            if(Character.isUpperCase(left.charAt(i)))
-                limitleft++;
-        }
-        for(int i=0;i<right.length();i++)
-        {
-            if(Character.isUpperCase(right.charAt(i)))
-                limitright++;
-        }
-
-        String plus = "\\+";
-        String[] Left = left.split(plus);
-        String[] Right =right.split(plus);
-        String[] lout =new String[limitleft];
-        int[] lout1 =new int[limitleft];
-
-        String[] rout =new String[limitright];
-        int[] rout1 =new int[limitright];
-        int lind=0, rind=0;
-        for (String l : Left) {
-            int multiplier = 1;
-
-            for (int j = 0; j < l.length(); j++) {
-                char s = l.charAt(j);
-                if (Character.isDigit(s) && multiplier == 1) {
-                    multiplier = Character.getNumericValue(s);
-                    if (Character.isDigit(l.charAt(j + 1))) {
-                        j++;
-                        while (true) {
-                            if (j < l.length() && Character.isDigit(l.charAt(j))) {
-                                multiplier = multiplier * 10 + Character.getNumericValue(l.charAt(j));
-                                j++;
-
-                            } else {
-                                j--;
-                                break;
-                            }
-                        }
-                    }
-                }
-                if (Character.isUpperCase(s)) {
-                    int k = j + 1;
-                    String temp = s + "";
-                    while (true) {
-                        if (k < l.length()) {
-                            if (Character.isLowerCase(l.charAt(k))) {
-                                temp = temp + l.charAt(k);
-                            }
-                            if (Character.isUpperCase(l.charAt(k)) || Character.isDigit(l.charAt(k))) {
-                                break;
-                            }
-                            k++;
-                        } else
-                            break;
-                    }
-
-                    lout[lind] = temp;
-                    int coff = 1;
-                    if (k < l.length())
-                        if (Character.isDigit(l.charAt(k))) {
-                            coff = Character.getNumericValue(l.charAt(k));
-                            k++;
-                            while (true) {
-                                if (k < l.length() && Character.isDigit(l.charAt(k))) {
-                                    coff = coff * 10 + Character.getNumericValue(l.charAt(k));
-                                    k++;
-
-                                } else
-                                    break;
-                            }
-                        }
-                    lout1[lind] = coff * multiplier;
-                    j = k - 1;
-                    lind++;
-                }
-            }
-        }
-        for (String r : Right) {
-            int multiplier = 1;
-
-            for (int j = 0; j < r.length(); j++) {
-                char s = r.charAt(j);
-                if (Character.isDigit(s) && multiplier == 1) {
-                    multiplier = Character.getNumericValue(s);
-                    if (Character.isDigit(r.charAt(j + 1))) {
-                        j++;
-                        while (true) {
-                            if (j < r.length() && Character.isDigit(r.charAt(j))) {
-                                multiplier = multiplier * 10 + Character.getNumericValue(r.charAt(j));
-                                j++;
-
-                            } else {
-                                j--;
-                                break;
-                            }
-                        }
-                    }
-                }
-                if (Character.isUpperCase(s)) {
-                    int k = j + 1;
-                    String temp = s + "";
-                    while (true) {
-                        if (k < r.length()) {
-                            if (Character.isLowerCase(r.charAt(k))) {
-                                temp = temp + r.charAt(k);
-                            }
-                            if (Character.isUpperCase(r.charAt(k)) || Character.isDigit(r.charAt(k))) {
-                                break;
-                            }
-                            k++;
-                        } else
-                            break;
-                    }
-
-                    rout[rind] = temp;
-                    int coff = 1;
-                    if (k < r.length())
-                        if (Character.isDigit(r.charAt(k))) {
-                            coff = Character.getNumericValue(r.charAt(k));
-                            k++;
-                            while (true) {
-                                if (k < r.length() && Character.isDigit(r.charAt(k))) {
-                                    coff = coff * 10 + Character.getNumericValue(r.charAt(k));
-                                    k++;
-
-                                } else
-                                    break;
-                            }
-                        }
-                    rout1[rind] = coff * multiplier;
-                    j = k - 1;
-                    rind++;
-
-                }
+        long[] coefficients = reaction.getStoredCoefficients();
+        if(coefficients != null) {
+            if(coefficients.length != reaction.reactants.length + reaction.products.length) {
+                return false;
             }
+            return isBalanced(reaction.reactants, reaction.products, coefficients);
         }
-        for(int i=0; i<limitleft; i++) {
-            for(int j=i+1; j<limitleft; j++) {
-                if(lout[i].equals(lout[j]))
-                {
-                    lout1[i]=lout1[i]+lout1[j];
-                    lout1[j]=0;
-                    lout[j]="xyzz";
-                    limitleft--;
-                }
-            }
+        Equation parsed = EquationParser.parse(reaction.equation);
+        if(parsed.reactantCount() != reaction.reactants.length || parsed.productCount() != reaction.products.length) {
+            return false;
         }
-        int r = limitright;
-        for(int i=0; i<r; i++) {
-            for(int j=i+1; j<r; j++) {
-                if(rout[i].equals(rout[j])) {
-                    rout1[i] = rout1[i] + rout1[j];
-                    rout1[j] = 0;
-                    rout[j] = "xyzz";
-                    limitright--;
-                }
-            }
-        }
-
-        int res = 0;
-        for(int i=0; i<lout.length; i++) {
-            for(int j=0;j<rout.length;j++) {
-                if(lout[i].equals(rout[j])) {
-                    if(lout1[i] != rout1[j]) {
-                        res++;
-                    }
-                }
-            }
-        }
-        return res == 0;
+        return isBalanced(reaction.reactants, reaction.products, parsed.coefficients());
     }
 
     /**
-     * Balances a chemical equation procedurally as shown in <a href="https://jaminsantiago.files.wordpress.com/2013/04/balancing-chemical-equations-easy-algebraic-method.pdf">...</a> using polyatomic replacement. This method can balance single replacement, double replacement, synthesis, decomposition, combustion, and redox reactions.
+     * Balances a chemical equation by solving for the integer nullspace of its element-by-species matrix (with an extra
+     * row for charge when any species is charged), using fraction-free Gaussian elimination. This method can balance
+     * single replacement, double replacement, synthesis, decomposition, combustion, and redox reactions, with any number
+     * of species, as long as the equation has exactly one balance up to scaling.
      *
-     * @param reaction An unbalanced String reaction
+     * @param reaction An unbalanced String reaction, e.g. "C6H12O6 + O2 --> CO2 + H2O"; any coefficients are ignored
      * @return A balanced String reaction
+     * @throws IllegalArgumentException If the equation is malformed or cannot be balanced
+     * @throws NotUniqueBalanceException If it has no unique balance
      */
     public static String getBalancedReaction(String reaction) {
-        String preReactantsString = reaction.split("-->")[0].strip();
-        String preProductsString = reaction.split("-->")[1].strip();
+        return getBalancedReaction(reaction, PolyatomicIons.common());
+    }
 
-        StringBuilder storeString = new StringBuilder();
-        for(int i=0; i<preReactantsString.length(); i++){
-            char character = preReactantsString.charAt(i);
-            if(Character.isLetter(character) || Character.isDigit(character) || character=='+' || character=='(' || character==')'){
-                storeString.append(character);
-            }
-        }
-        preReactantsString= storeString.toString();
-        storeString = new StringBuilder();
-        for(int i=0; i<preProductsString.length(); i++){
-            char character = preProductsString.charAt(i);
-            if(Character.isLetter(character) || Character.isDigit(character) || character=='+' || character=='(' || character==')'){
-                storeString.append(character);
-            }
-        }
-        preProductsString = storeString.toString();
-        String[] replacementArray = polyatomicReplacement(preReactantsString, preProductsString);
-        String reactantsString = replacementArray[0];
-        String productsString = replacementArray[1];
-        Hashtable<Integer, Hashtable<String, Integer>> reactants = parseString(reactantsString);
-        Hashtable<Integer, Hashtable<String, Integer>> products = parseString(productsString);
+    /**
+     * Balances a chemical equation like {@link #getBalancedReaction(String)}. If the equation has no unique balance, it
+     * is balanced again with every polyatomic ion that occurs on both sides held intact, which often singles out the
+     * intended reaction, e.g. a double replacement whose ions only change partners.
+     *
+     * @param reaction An unbalanced String reaction, e.g. "C6H12O6 + O2 --> CO2 + H2O"; any coefficients are ignored
+     * @param ions The polyatomic ions to hold intact if needed
+     * @return A balanced String reaction, keeping any phases and the kind of arrow
+     * @throws IllegalArgumentException If the equation is malformed or cannot be balanced
+     * @throws NotUniqueBalanceException If it has no unique balance
+     */
+    public static String getBalancedReaction(String reaction, PolyatomicIons ions) {
+        Equation parsed = EquationParser.parse(reaction);
+        long[] coefficients = getCoefficients(parsed.compositions(), parsed.charges(), parsed.reactantCount(), parsed.formulas(), ions);
+        return parsed.write(coefficients);
+    }
 
-        // Checking if same elements are in lists
-        LinkedList<String> reactantsElements = getElements(reactantsString);
-        Collections.sort(reactantsElements);
-        LinkedList<String> productsElements = getElements(productsString);
-        Collections.sort(productsElements);
-        LinkedList<String> elements;
-        boolean contain;
-        for (Object reactantsElement : reactantsElements) {
-            // Noinspection SuspiciousMethodCalls
-            contain = productsElements.contains(reactantsElement);
-            if (!contain) {
-                System.out.println("Error: Same elements need to be on both sides of the equation.");
-                System.exit(0);
-            }
-        }
-        for (Object productsElement : productsElements) {
-            // Noinspection SuspiciousMethodCalls
-            contain = reactantsElements.contains(productsElement);
-            if (!contain) {
-                System.out.println("Error: Same elements need to be on both sides of the equation.");
-                System.exit(0);
-            }
-        }
-        elements = reactantsElements;
+    /**
+     * A method that finds the smallest whole-number coefficients that balance a reaction.
+     *
+     * @param reactants The reactant Compounds
+     * @param products The product Compounds
+     * @return The coefficients of the reactants followed by those of the products
+     * @throws IllegalArgumentException If the reaction cannot be balanced
+     * @throws NotUniqueBalanceException If it has no unique balance
+     */
+    public static long[] getCoefficients(Compound[] reactants, Compound[] products) {
+        return getCoefficients(reactants, products, PolyatomicIons.common());
+    }
 
-        // Solving algorithm using two-variable simplified algebraic method
-        boolean a_used = false;
-        boolean b_used = false;
-        LinkedList<Fraction> reactantsA = new LinkedList<>();
-        LinkedList<Fraction> reactantsB = new LinkedList<>();
-        LinkedList<Boolean> reactantsFilled = new LinkedList<>();
-        for(int i=0; i<reactants.size(); i++){
-            reactantsA.addLast(new Fraction());
-            reactantsB.addLast(new Fraction());
-            reactantsFilled.addLast(false);
-        }
-        LinkedList<Fraction> productsA = new LinkedList<>();
-        LinkedList<Fraction> productsB = new LinkedList<>();
-        LinkedList<Boolean> productsFilled = new LinkedList<>();
-        for(int i=0; i<products.size(); i++){
-            productsA.addLast(new Fraction());
-            productsB.addLast(new Fraction());
-            productsFilled.addLast(false);
-        }
-        // First step
-        // One-to-one unfilled relationships
-        LinkedList<String> elementsUsed = new LinkedList<>();
-        for (String currentElement : elements) {
-            Integer reactantIndex = null;
-            Integer productIndex = null;
-            int counter = 0;
-            for (int j=0; j<reactants.size(); j++) {
-                Hashtable<String, Integer> compoundTable = reactants.get(j);
-                if (compoundTable.containsKey(currentElement)) {
-                    counter++;
-                    reactantIndex = j;
-                }
-            }
-            if (counter > 1) {
-                continue;
-            }
-            counter = 0;
-            for (int j = 0; j < products.size(); j++) {
-                Hashtable<String, Integer> compoundTable = products.get(j);
-                if (compoundTable.containsKey(currentElement)) {
-                    counter++;
-                    productIndex = j;
-                }
-            }
-            if (counter > 1) {
-                continue;
-            }
-            if (reactantIndex != null && productIndex != null) {
-                if (!reactantsFilled.get(reactantIndex) && !productsFilled.get(productIndex)) {
-                    // Create ratio
-                    Integer reactantQuantity = (reactants.get(reactantIndex)).get(currentElement);
-                    Integer productQuantity = (products.get(productIndex)).get(currentElement);
-                    Fraction reactantCoefficient;
-                    Fraction productCoefficient;
-                    if (reactantQuantity > productQuantity) {
-                        // Set reactant coefficient to 1 and product coefficient to ratio
-                        reactantCoefficient = new Fraction(1, 1);
-                        productCoefficient = new Fraction(reactantQuantity, productQuantity);
-                    } else if (reactantQuantity < productQuantity) {
-                        productCoefficient = new Fraction(1, 1);
-                        reactantCoefficient = new Fraction(productQuantity, reactantQuantity);
-                    } else {
-                        productCoefficient = new Fraction(1, 1);
-                        reactantCoefficient = new Fraction(1, 1);
-                    }
-                    elementsUsed.addLast(currentElement);
-                    reactantsFilled.set(reactantIndex, true);
-                    productsFilled.set(productIndex, true);
-                    if (!a_used ) {
-                        // Use a as the first variable
-                        a_used  = true;
-                        reactantsA.set(reactantIndex, reactantCoefficient);
-                        productsA.set(productIndex, productCoefficient);
-                    } else if (!b_used) {
-                        //Use b as the second variable
-                        b_used = true;
-                        reactantsB.set(reactantIndex, reactantCoefficient);
-                        productsB.set(productIndex, productCoefficient);
-                    } else {
-                        System.out.println("This equation uses more than two variables.");
-                        System.exit(0);
-                    }
-                }
-            }
-        }
-        //Remaining elements
-        for (String value : elementsUsed) {
-            elements.remove(value);
-        }
+    /**
+     * A method that finds the smallest whole-number coefficients that balance a reaction, holding polyatomic ions
+     * intact if the reaction has no unique balance otherwise.
+     *
+     * @param reactants The reactant Compounds
+     * @param products The product Compounds
+     * @param ions The polyatomic ions to hold intact if needed
+     * @return The coefficients of the reactants followed by those of the products
+     * @throws IllegalArgumentException If the reaction cannot be balanced
+     * @throws NotUniqueBalanceException If it has no unique balance
+     */
+    public static long[] getCoefficients(Compound[] reactants, Compound[] products, PolyatomicIons ions) {
+        Composition[] species = new Composition[reactants.length + products.length];
+        int[] charges = new int[species.length];
+        String[] formulas = new String[species.length];
+        for(int i=0; i<species.length; i++) {
+            Compound compound = i < reactants.length ? reactants[i] : products[i - reactants.length];
+            species[i] = compound.composition;
+            charges[i] = compound.charge;
+            formulas[i] = compound.formula;
+        }
+        return getCoefficients(species, charges, reactants.length, formulas, ions);
+    }
 
-        //Second step:
-        //One-to-one relationships with one filled and one unfilled
-        elementsUsed=new LinkedList<>();
-        for (String currentElement : elements) {
-            Integer reactantIndex = null;
-            Integer productIndex = null;
-            int counter = 0;
-            for (int j = 0; j < reactants.size(); j++) {
-                Hashtable<String, Integer> compoundTable = reactants.get(j);
-                if (compoundTable.containsKey(currentElement)) {
-                    counter++;
-                    reactantIndex = j;
-                }
-            }
-            if (counter > 1) {
-                continue;
-            }
-            counter = 0;
-            for (int j = 0; j < products.size(); j++) {
-                Hashtable<String, Integer> compoundTable = products.get(j);
-                if (compoundTable.containsKey(currentElement)) {
-                    counter++;
-                    productIndex = j;
-                }
-            }
-            if (counter > 1) {
-                continue;
-            }
-            if (reactantIndex != null && productIndex != null) {
-                if (!reactantsFilled.get(reactantIndex) ^ !productsFilled.get(productIndex)) {
-                    elementsUsed.addLast(currentElement);
-                    Integer reactantQuantity = (reactants.get(reactantIndex)).get(currentElement);
-                    Integer productQuantity = (products.get(productIndex)).get(currentElement);
-                    Fraction filledCoefficient;
-                    Fraction unfilledCoefficient;
-                    if (reactantsFilled.get(reactantIndex)) {
-                        // Product Side is unfilled
-                        if (reactantsA.get(reactantIndex).active) {
-                            // Use a as variable
-                            filledCoefficient = reactantsA.get(reactantIndex);
-                        } else {
-                            // Use b as variable
-                            filledCoefficient = reactantsB.get(reactantIndex);
-                        }
-                        unfilledCoefficient = Fraction.multiply(filledCoefficient, new Fraction(reactantQuantity, productQuantity));
-                        productsFilled.set(productIndex, true);
-                        if (reactantsA.get(reactantIndex).active) {
-                            productsA.set(productIndex, unfilledCoefficient);
-                        } else {
-                            productsB.set(productIndex, unfilledCoefficient);
-                        }
-                    } else {
-                        // Reactant Side is unfilled
-                        if (productsA.get(productIndex).active) {
-                            // Use a as variable
-                            filledCoefficient = productsA.get(productIndex);
-                        } else {
-                            // Use b as variable
-                            filledCoefficient = productsB.get(productIndex);
-                        }
-                        unfilledCoefficient = Fraction.multiply(filledCoefficient, new Fraction(productQuantity, reactantQuantity));
-                        reactantsFilled.set(reactantIndex, true);
-                        if (productsA.get(productIndex).active) {
-                            reactantsA.set(reactantIndex, unfilledCoefficient);
-                        } else {
-                            reactantsB.set(reactantIndex, unfilledCoefficient);
-                        }
-                    }
-                }
-            }
-        }
-        // Remaining elements
-        for (String value : elementsUsed) {
-            elements.remove(value);
-        }
+    /**
+     * A method that finds the smallest whole-number coefficients that balance a reaction. Results are memoized by the
+     * reaction's canonical signature, so balancing a reaction seen before (in any species order) costs a lookup and a
+     * permutation.
+     *
+     * @param species The Compositions of the reactants followed by those of the products
+     * @param charges The charge of each species, aligned with species
+     * @param reactantCount The number of reactants at the start of species
+     * @return The coefficients, aligned with species
+     * @throws IllegalArgumentException If the reaction cannot be balanced
+     * @throws NotUniqueBalanceException If it has no unique balance
+     */
+    public static long[] getCoefficients(Composition[] species, int[] charges, int reactantCount) {
+        // Put each side in canonical order, so that the same reaction written differently shares one memo entry
+        String[] keys = new String[species.length];
+        Integer[] order = new Integer[species.length];
+        for(int i=0; i<species.length; i++) {
+            keys[i] = speciesKey(species[i], charges[i]);
+            order[i] = i;
+        }
+        Arrays.sort(order, 0, reactantCount, Comparator.comparing(i -> keys[i]));
+        Arrays.sort(order, reactantCount, species.length, Comparator.comparing(i -> keys[i]));
+
+        StringBuilder signature = new StringBuilder(species.length * 8);
+        for(int k=0; k<order.length; k++) {
+            signature.append(k == 0 ? "" : k == reactantCount ? " --> " : " + ").append(keys[order[k]]);
+        }
+
+        long[] canonical = MEMO.get(signature.toString(), key -> {
+            Composition[] sortedSpecies = new Composition[species.length];
+            int[] sortedCharges = new int[species.length];
+            for(int k=0; k<order.length; k++) {
+                sortedSpecies[k] = species[order[k]];
+                sortedCharges[k] = charges[order[k]];
+            }
+            return unique(nullspaceOf(sortedSpecies, sortedCharges, reactantCount, new long[0][]));
+        });
+
+        // Permute back to the caller's order
+        long[] coefficients = new long[species.length];
+        for(int k=0; k<order.length; k++) {
+            coefficients[order[k]] = canonical[k];
+        }
+        return coefficients;
+    }
 
-        // Third Step:
-        // Complex relationship, all but one filled
-        int sizeOfElementsList=elements.size();
-        for(int k=0; k<sizeOfElementsList; k++){
-            if(!reactantsFilled.contains(false) && !productsFilled.contains(false)){
-                break;
+    // Balances by elements and charge, and if that leaves more than one independent balance, again with the ions that
+    // occur on both sides as extra conserved quantities
+    private static long[] getCoefficients(Composition[] species, int[] charges, int reactantCount, String[] formulas, PolyatomicIons ions) {
+        try {
+            return getCoefficients(species, charges, reactantCount);
+        } catch (NotUniqueBalanceException notUnique) {
+            long[][] ionRows = ionRows(formulas, reactantCount, ions);
+            if(ionRows.length == 0) {
+                throw notUnique;
             }
-            for (String currentElement : elements) {
-                Boolean unfilledIndexOnProduct = null;
-                Integer unfilledIndex = null;
-                LinkedList<Integer> reactantFilledIndexes = new LinkedList<>();
-                LinkedList<Integer> productFilledIndexes = new LinkedList<>();
-                int totalOccurrences = 0;
-                for (int j = 0; j < reactants.size(); j++) {
-                    Hashtable<String, Integer> compoundTable = reactants.get(j);
-                    if (compoundTable.containsKey(currentElement)) {
-                        totalOccurrences++;
-                        if (reactantsFilled.get(j))
-                            reactantFilledIndexes.addLast(j);
-                        else {
-                            unfilledIndex = j;
-                            unfilledIndexOnProduct = false;
-                        }
-                    }
-                }
-                for (int j = 0; j < products.size(); j++) {
-                    Hashtable<String, Integer> compoundTable = products.get(j);
-                    if (compoundTable.containsKey(currentElement)) {
-                        totalOccurrences++;
-                        if (productsFilled.get(j))
-                            productFilledIndexes.addLast(j);
-                        else {
-                            unfilledIndex = j;
-                            unfilledIndexOnProduct = true;
-                        }
-                    }
-                }
-                if (unfilledIndex != null && totalOccurrences == reactantFilledIndexes.size() + productFilledIndexes.size() + 1) {
-                    Fraction reactantASum = new Fraction(0, 1);
-                    Fraction reactantBSum = new Fraction(0, 1);
-                    for (int s : reactantFilledIndexes) {
-                        int quantity = reactants.get(s).get(currentElement);
-                        reactantASum = Fraction.add(reactantASum, Fraction.multiply(reactantsA.get(s), new Fraction(quantity, 1)));
-                        reactantBSum = Fraction.add(reactantBSum, Fraction.multiply(reactantsB.get(s), new Fraction(quantity, 1)));
-                    }
-                    Fraction productASum = new Fraction(0, 1);
-                    Fraction productBSum = new Fraction(0, 1);
-                    for (int s : productFilledIndexes) {
-                        int quantity = (products.get(s)).get(currentElement);
-                        productASum = Fraction.add(productASum, Fraction.multiply(productsA.get(s), new Fraction(quantity, 1)));
-                        productBSum = Fraction.add(productBSum, Fraction.multiply(productsB.get(s), new Fraction(quantity, 1)));
-                    }
-                    if (unfilledIndexOnProduct) {
-                        productsFilled.set(unfilledIndex, true);
-                        int unfilledQuantity = (products.get(unfilledIndex)).get(currentElement);
-                        // Create Ratio
-                        Fraction aCoefficient = Fraction.multiply( Fraction.subtract(reactantASum, productASum),new Fraction(1, unfilledQuantity));
-                        Fraction bCoefficient = Fraction.multiply( Fraction.subtract(reactantBSum, productBSum),new Fraction(1, unfilledQuantity));
-                        productsA.set(unfilledIndex, aCoefficient);
-                        productsB.set(unfilledIndex, bCoefficient);
-                    } else {
-                        reactantsFilled.set(unfilledIndex, true);
-                        int unfilledQuantity = (reactants.get(unfilledIndex)).get(currentElement);
-                        // Create Ratio
-                        Fraction aCoefficient = Fraction.multiply( Fraction.subtract(productASum, reactantASum),new Fraction(1, unfilledQuantity));
-                        Fraction bCoefficient = Fraction.multiply( Fraction.subtract(productBSum, reactantBSum),new Fraction(1, unfilledQuantity));
-                        reactantsA.set(unfilledIndex, aCoefficient);
-                        reactantsB.set(unfilledIndex, bCoefficient);
-                    }
-                    elements.remove(currentElement);
-                    break;
-                }
+            try {
+                return unique(nullspaceOf(species, charges, reactantCount, ionRows));
+            } catch (IllegalArgumentException e) {
+                throw notUnique;
             }
         }
+    }
 
-        //Final variable solution
-        LinkedList<Integer> reactantCoefficients;
-        LinkedList<Integer> productCoefficients;
-        if(b_used) {
-            String elementToUse = elements.get(0);
-            Fraction reactantASum = new Fraction(0, 1);
-            for (int i = 0; i < reactants.size(); i++) {
-                if (reactants.get(i).containsKey(elementToUse)) {
-                    reactantASum = Fraction.add(reactantASum, Fraction.multiply(reactantsA.get(i), new Fraction(reactants.get(i).get(elementToUse), 1)));
-                }
-            }
-            Fraction reactantBSum = new Fraction(0, 1);
-            for (int i = 0; i < reactants.size(); i++) {
-                if (reactants.get(i).containsKey(elementToUse)) {
-                    reactantBSum = Fraction.add(reactantBSum, Fraction.multiply(reactantsB.get(i), new Fraction(reactants.get(i).get(elementToUse), 1)));
-                }
-            }
-            Fraction productASum = new Fraction(0, 1);
-            for (int i = 0; i < products.size(); i++) {
-                if (products.get(i).containsKey(elementToUse)) {
-                    productASum = Fraction.add(productASum, Fraction.multiply(productsA.get(i), new Fraction(products.get(i).get(elementToUse), 1)));
+    // One row per ion found on both sides: its number of units in each species, with products negated
+    private static long[][] ionRows(String[] formulas, int reactantCount, PolyatomicIons ions) {
+        int[][] counts = new int[formulas.length][ions.size()];
+        for(int s=0; s<formulas.length; s++) {
+            ions.count(formulas[s], counts[s]);
+        }
+        List<long[]> rows = new ArrayList<>();
+        for(int ion=0; ion<ions.size(); ion++) {
+            boolean onLeft = false;
+            boolean onRight = false;
+            for(int s=0; s<formulas.length; s++) {
+                if(counts[s][ion] != 0) {
+                    onLeft |= s < reactantCount;
+                    onRight |= s >= reactantCount;
                 }
             }
-            Fraction productBSum = new Fraction(0, 1);
-            for (int i = 0; i < products.size(); i++) {
-                if (products.get(i).containsKey(elementToUse)) {
-                    productBSum = Fraction.add(productBSum, Fraction.multiply(productsB.get(i), new Fraction(products.get(i).get(elementToUse), 1)));
+            if(onLeft && onRight) {
+                long[] row = new long[formulas.length];
+                for(int s=0; s<formulas.length; s++) {
+                    row[s] = s < reactantCount ? counts[s][ion] : -counts[s][ion];
                 }
-            }
-            Fraction sumOfA;
-            Fraction sumOfB;
-            if ((reactantASum.getNumerator() / reactantASum.getDenominator()) >= (productASum.getNumerator() / productASum.getDenominator())) {
-                sumOfA = Fraction.subtract(reactantASum, productASum);
-                sumOfB = Fraction.subtract(productBSum, reactantBSum);
-            } else {
-                sumOfA = Fraction.subtract(productASum, reactantASum);
-                sumOfB = Fraction.subtract(reactantBSum, productBSum);
-            }
-            if (sumOfA.getNumerator() < 0 && sumOfB.getNumerator() < 0) {
-                sumOfA = Fraction.negate(sumOfA);
-                sumOfB = Fraction.negate(sumOfB);
-            }
-            // Turning sums into smallest whole numbers
-            // GCF and fractional restrictions
-            int GCF = Fraction.GCD(sumOfA.getNumerator(), sumOfB.getNumerator());
-            int LCD = Fraction.LCM(sumOfA.getDenominator(), sumOfB.getDenominator());
-            sumOfA = Fraction.multiply(sumOfA, new Fraction(LCD, GCF));
-            sumOfB = Fraction.multiply(sumOfB, new Fraction(LCD, GCF));
-            // Final solution
-            int varA = sumOfB.getNumerator() / sumOfB.getDenominator();
-            int varB = sumOfA.getNumerator() / sumOfA.getDenominator();
-            // Final check
-            int finalLCD = 1;
-            for (int i=0; i<reactants.size(); i++)
-                finalLCD = Fraction.LCM(finalLCD, Fraction.add(Fraction.multiply(reactantsA.get(i), new Fraction(varA, 1)), Fraction.multiply(reactantsB.get(i), new Fraction(varB,1))).getDenominator());
-            for (int i=0; i<products.size(); i++)
-                finalLCD = Fraction.LCM(finalLCD, Fraction.add(Fraction.multiply(productsA.get(i), new Fraction(varA, 1)), Fraction.multiply(productsB.get(i), new Fraction(varB,1))).getDenominator());
-            varA *= finalLCD;
-            varB *= finalLCD;
-            // Final substitution
-            reactantCoefficients = new LinkedList<>();
-            for (int i = 0; i < reactants.size(); i++) {
-                Fraction coefficientSumFraction = Fraction.add(Fraction.multiply(reactantsA.get(i), new Fraction(varA, 1)), Fraction.multiply(reactantsB.get(i), new Fraction(varB, 1)));
-                reactantCoefficients.addLast(coefficientSumFraction.getNumerator() / coefficientSumFraction.getDenominator());
-            }
-            productCoefficients = new LinkedList<>();
-            for (int i = 0; i < products.size(); i++) {
-                Fraction coefficientSumFraction = Fraction.add(Fraction.multiply(productsA.get(i), new Fraction(varA, 1)), Fraction.multiply(productsB.get(i), new Fraction(varB, 1)));
-                productCoefficients.addLast(coefficientSumFraction.getNumerator() / coefficientSumFraction.getDenominator());
-            }
-        } else {
-            // Only variable A was used
-            int LCD = 1;
-            for(Fraction f: reactantsA){
-                LCD = Fraction.LCM(LCD, f.getDenominator());
-            }
-            for(Fraction f: productsA){
-                LCD = Fraction.LCM(LCD, f.getDenominator());
-            }
-            // Scaling
-            reactantCoefficients = new LinkedList<>();
-            for(Fraction f : reactantsA){
-                reactantCoefficients.addLast(Fraction.multiply(f, new Fraction(LCD, 1)).getNumerator());
-            }
-            productCoefficients = new LinkedList<>();
-            for(Fraction f: productsA){
-                productCoefficients.addLast(Fraction.multiply(f, new Fraction(LCD, 1)).getNumerator());
-            }
-        }
-        // Final display
-        StringBuilder reactantString = new StringBuilder();
-        String[] reactantsArray=(preReactantsString.replace(" ","")).split("\\+");
-        for (int i=0; i<reactants.size(); i++) {
-            if(reactantCoefficients.get(i).equals(1)) {
-                reactantString.append(reactantsArray[i]);
-            } else {
-                reactantString.append(reactantCoefficients.get(i)).append(reactantsArray[i]);
-            }
-            if(i<reactants.size()-1) {
-                reactantString.append(" + ");
+                rows.add(row);
             }
         }
-        StringBuilder productString= new StringBuilder();
-        String[] productsArray=(preProductsString.replace(" ","")).split("\\+");
-        for (int i=0; i<products.size(); i++) {
-            if(productCoefficients.get(i).equals(1)) {
-                productString.append(productsArray[i]);
-            } else {
-                productString.append(productCoefficients.get(i)).append(productsArray[i]);
-            }
-            if(i<products.size()-1){
-                productString.append(" + ");
-            }
-        }
-        return reactantString + " --> " + productString;
+        return rows.toArray(new long[0][]);
     }
 
     /**
-     * Parses string to get Hashtable representation of a side of a chemical equation.
+     * A method that computes the canonical signature of a reaction: each side's species in Hill notation (with any
+     * charge appended), sorted, so that equations differing only in species order, whitespace, or formula notation
+     * share a signature.
      *
-     * @param inputString String representation of a side of a chemical equation.
-     * @return Hashtable representation of a chemical equation side
+     * @param reactants The reactant Compounds
+     * @param products The product Compounds
+     * @return The signature, e.g. "C6H12O6 + O2 --> CO2 + H2O"
      */
-    private static Hashtable<Integer, Hashtable<String, Integer>> parseString(String inputString){
-        Hashtable<Integer, Hashtable<String, Integer>> compoundTable= new Hashtable<>();
-        String storeString = "";
-        int index = 0;
-        for (int j=0; j<inputString.length(); j++) {
-            if (Character.toString(inputString.charAt(j)).equals("+")) {
-                compoundTable.put(index, parseCompound(storeString));
-                storeString="";
-                index=index+1;
+    public static String getSignature(Compound[] reactants, Compound[] products) {
+        String[] left = new String[reactants.length];
+        for(int i=0; i<left.length; i++) {
+            left[i] = speciesKey(reactants[i].composition, reactants[i].charge);
+        }
+        String[] right = new String[products.length];
+        for(int i=0; i<right.length; i++) {
+            right[i] = speciesKey(products[i].composition, products[i].charge);
+        }
+        Arrays.sort(left);
+        Arrays.sort(right);
+        return String.join(" + ", left) + " --> " + String.join(" + ", right);
+    }
 
-            }
-            else {
-                storeString = storeString.concat(Character.toString(inputString.charAt(j)));
-            }
-        }
-        compoundTable.put(index, parseCompound(storeString));
-        return compoundTable;
+    private static String speciesKey(Composition composition, int charge) {
+        String hill = composition.toHillFormula();
+        return charge == 0 ? hill : hill + (charge > 0 ? "+" : "") + charge;
+    }
+
+    /**
+     * @return A snapshot of the hit, miss, and eviction counters of the memo of balanced signatures behind
+     * {@link #getCoefficients}
+     */
+    public static BoundedCache.Stats memoStats() {
+        return MEMO.stats();
     }
 
     /**
-     * Replaces common polyatomic ions with their own custom element.
+     * A method that writes a balanced equation for a set of Compounds, using their formulas as given.
      *
-     * @param reactantStr String representation of reactant side
-     * @param productStr String representation of product side
-     * @return Packaged version of new reactant and product strings
+     * @param reactants The reactant Compounds
+     * @param products The product Compounds
+     * @return A balanced String reaction
+     * @throws IllegalArgumentException If the reaction cannot be balanced
+     * @throws NotUniqueBalanceException If it has no unique balance
      */
-    private static String[] polyatomicReplacement(String reactantStr, String productStr){
-        reactantStr = reactantStr.replace(" ", "");
-        productStr = productStr.replace(" ", "");
-        String[] replacementNames = {"A", "D", "E", "G", "J", "L", "M", "Q", "R", "X"};
-        String[] commonIons = {"NH4", "C2H3O2", "HCO3","HSO4", "ClO", "ClO3", "ClO2", "OCN", "CN", "H2PO4", "OH", "NO3", "NO2", "ClO4", "MnO4", "SCN", "CO3", "CrO4", "Cr2O7", "HPO4", "SO4", "SO3", "S2O3", "BO3", "PO4"};
-        int index=0;
-        for(String ion: commonIons){
-            if(reactantStr.contains(ion) && productStr.contains(ion)){
-                reactantStr = reactantStr.replace(ion, replacementNames[index]);
-                productStr = productStr.replace(ion, replacementNames[index]);
-                index++;
-            }
-        }
-        return new String[] {reactantStr, productStr};
+    public static String getBalancedReaction(Compound[] reactants, Compound[] products) {
+        return writeEquation(reactants, products, getCoefficients(reactants, products));
     }
 
     /**
-     * Parses each compound to get Hashtable of elements and quantities in compound
+     * A method that writes an equation for a set of Compounds with the given coefficients, using their formulas as given
+     * and omitting coefficients of 1.
      *
-     * @param inputString String representation of compound
-     * @return Hashtable representation of compound
+     * @param reactants The reactant Compounds
+     * @param products The product Compounds
+     * @param coefficients The coefficients of the reactants followed by those of the products
+     * @return A String reaction, e.g. "2H2 + O2 --> 2H2O"
      */
-    private static Hashtable<String, Integer> parseCompound(String inputString) {
-        Hashtable<String, Integer> dictionary = new Hashtable<>();
-        String symbol = "";
-        String numString = "";
-        StringBuilder paranthesesStoreString = new StringBuilder();
-        boolean parenthesesOn = false;
-        boolean parenthesesEnd = false;
-        String parenthesesScaler = "";
-        for (int i=0; i<inputString.length(); i++) {
-            char character = inputString.charAt(i);
-            if (Character.isLetter(character)) {
-                // Checks that this is a letter
-                if (String.valueOf(character).toUpperCase().equals(String.valueOf(character))){
-                    if(!parenthesesOn && !parenthesesEnd) {
-                        // This is uppercase
-                        if (!symbol.equals("")) {
-                            // Symbol is filled and needs to be dumped
-                            if (!dictionary.containsKey(symbol)) {
-                                try {
-                                    dictionary.put(symbol, Integer.valueOf(numString));
-                                } catch (NumberFormatException exception) {
-                                    dictionary.put(symbol, 1);
-                                }
-                            } else {
-                                try {
-                                    dictionary.put(symbol, Integer.parseInt(numString) + dictionary.get(symbol));
-                                } catch (NumberFormatException exception) {
-                                    dictionary.put(symbol, 1 + dictionary.get(symbol));
-                                }
-                            }
-                            symbol = "";
-                            numString = "";
-                        }
-                        symbol = symbol.concat(String.valueOf(character));
-                    } else if(parenthesesOn && !parenthesesEnd){
-                        paranthesesStoreString.append(character);
-                    } else {
-                        Hashtable<String, Integer> parenthesesParse=parseCompound(paranthesesStoreString.toString());
-                        if(parenthesesScaler.equals(""))
-                            parenthesesScaler="1";
-                        for(String key: parenthesesParse.keySet()){
-                            if (!dictionary.containsKey(key)) {
-                                dictionary.put(key, parenthesesParse.get(key) * Integer.parseInt(parenthesesScaler));
-                            } else {
-                                dictionary.put(key, parenthesesParse.get(key) * Integer.parseInt(parenthesesScaler) + dictionary.get(key));
-                            }
-                        }
-                        paranthesesStoreString = new StringBuilder();
-                        parenthesesEnd = false;
-                        parenthesesScaler = "";
-                        symbol = symbol.concat(String.valueOf(character));
-                    }
-                }
-                else {
-                    if(!parenthesesOn)
-                        symbol = symbol.concat(String.valueOf(character));
-                    else
-                        paranthesesStoreString.append(character);
-                }
-            } else if (Character.isDigit(character)) {
-                // This is a number
-                if(!parenthesesOn && !parenthesesEnd) {
-                    numString = numString.concat(String.valueOf(character));
-                }else if(parenthesesEnd && !parenthesesOn){
-                    parenthesesScaler += character;
-                }else if(!parenthesesEnd){
-                    paranthesesStoreString.append(character);
-                }
-            } else if(character=='(') {
-                // Start Statement
-                if(!parenthesesEnd) {
-                    parenthesesOn = true;
-                    if (!dictionary.containsKey(symbol)) {
-                        try {
-                            dictionary.put(symbol, Integer.valueOf(numString));
-                        } catch (NumberFormatException exception) {
-                            dictionary.put(symbol, 1);
-                        }
-                    } else {
-                        try {
-                            dictionary.put(symbol, Integer.parseInt(numString) + dictionary.get(symbol));
-                        } catch (NumberFormatException exception) {
-                            dictionary.put(symbol, 1 + dictionary.get(symbol));
-                        }
-                    }
-                    symbol = "";
-                    numString = "";
+    public static String writeEquation(Compound[] reactants, Compound[] products, long[] coefficients) {
+        StringBuilder sb = new StringBuilder();
+        for(int i=0; i<coefficients.length; i++) {
+            if(i == reactants.length) {
+                sb.append(" --> ");
+            } else if(i > 0) {
+                sb.append(" + ");
+            }
+            if(coefficients[i] != 1) {
+                sb.append(coefficients[i]);
+            }
+            sb.append(i < reactants.length ? reactants[i].formula : products[i - reactants.length].formula);
+        }
+        return sb.toString();
+    }
+
+    // The integer nullspace of the element-by-species matrix, with a row for charge if any species is charged and any
+    // extra rows appended
+    private static long[][] nullspaceOf(Composition[] species, int[] charges, int reactantCount, long[][] extraRows) {
+        // One row per element (and one for charge), one column per species, with products negated
+        int[] rowOf = new int[PeriodicTable.maxAtomicNumber() + 1];
+        int[] reactantSide = new int[rowOf.length];
+        int[] productSide = new int[rowOf.length];
+        int rows = 0;
+        for(int s=0; s<species.length; s++) {
+            Composition composition = species[s];
+            for(int k=0; k<composition.size(); k++) {
+                int z = composition.atomicNumberAt(k);
+                if(reactantSide[z] == 0 && productSide[z] == 0) {
+                    rowOf[z] = rows++;
+                }
+                if(s < reactantCount) {
+                    reactantSide[z]++;
                 } else {
-                    Hashtable<String, Integer> parenthesesParse=parseCompound(paranthesesStoreString.toString());
-                    if(parenthesesScaler.equals(""))
-                        parenthesesScaler="1";
-                    for(String key: parenthesesParse.keySet()) {
-                        if (!dictionary.containsKey(key)) {
-                            dictionary.put(key, parenthesesParse.get(key)*Integer.parseInt(parenthesesScaler));
-                        } else {
-                            dictionary.put(key, parenthesesParse.get(key)*Integer.parseInt(parenthesesScaler) + dictionary.get(key));
-                        }
-                    }
-                    paranthesesStoreString = new StringBuilder();
-                    parenthesesOn = true;
-                    parenthesesEnd = false;
-                    parenthesesScaler = "";
+                    productSide[z]++;
                 }
-            } else if(character==')') {
-                // End statement
-                parenthesesEnd=true;
-                parenthesesOn=false;
             }
         }
-        if(!parenthesesEnd) {
-            if (numString.equals("")) {
-                numString = "1";
+        for(int z=1; z<rowOf.length; z++) {
+            if((reactantSide[z] == 0) != (productSide[z] == 0)) {
+                throw new IllegalArgumentException("Same elements need to be on both sides of the equation, but " + PeriodicTable.byAtomicNumber(z).elementSymbol + " is not");
             }
-            if (!dictionary.containsKey(symbol)) {
-                dictionary.put(symbol, Integer.valueOf(numString));
-            } else {
-                dictionary.put(symbol, Integer.parseInt(numString) + dictionary.get(symbol));
+        }
+        boolean charged = false;
+        for(int charge : charges) {
+            charged |= charge != 0;
+        }
+
+        int chargeRows = charged ? 1 : 0;
+        long[][] matrix = new long[rows + chargeRows + extraRows.length][];
+        for(int r=0; r<rows + chargeRows; r++) {
+            matrix[r] = new long[species.length];
+        }
+        System.arraycopy(extraRows, 0, matrix, rows + chargeRows, extraRows.length);
+        for(int s=0; s<species.length; s++) {
+            int sign = s < reactantCount ? 1 : -1;
+            Composition composition = species[s];
+            for(int k=0; k<composition.size(); k++) {
+                matrix[rowOf[composition.atomicNumberAt(k)]][s] = sign * (long) composition.countAt(k);
             }
-        } else {
-            Hashtable<String, Integer> parenthesesParse=parseCompound(paranthesesStoreString.toString());
-            if(parenthesesScaler.equals(""))
-                parenthesesScaler="1";
-            for(String key: parenthesesParse.keySet()){
-                if (!dictionary.containsKey(key)) {
-                    dictionary.put(key, parenthesesParse.get(key) * Integer.parseInt(parenthesesScaler));
-                } else {
-                    dictionary.put(key, parenthesesParse.get(key) * Integer.parseInt(parenthesesScaler) + dictionary.get(key));
-                }
+            if(charged) {
+                matrix[rows][s] = sign * (long) charges[s];
             }
         }
-        return dictionary;
+
+        try {
+            return NullspaceUtil.nullspace(matrix);
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("The coefficients of this equation are too large to represent", e);
+        }
     }
 
-    /**
-     * Gets all elements used on a side an equation
-     *
-     * @param inputString String representation of chemical equation side
-     * @return LinkedList of all elements on side
-     */
-    private static LinkedList<String> getElements(String inputString){
-        LinkedList<String> elements=new LinkedList<>();
-        String elementString="";
-        char character = 0;
-        for (int i=0; i<inputString.length(); i++){
-            character=inputString.charAt(i);
-            if (Character.isLetter(character)){
-                if (String.valueOf(character).toUpperCase().equals(String.valueOf(character))){
-                    if (!elementString.equals("")){
-                        if (!elements.contains(elementString)){
-                            elements.add(elementString);
-                        }
-                        elementString="";
-                    }
-                }
-                elementString = elementString.concat(Character.toString(character));
-            }
-            else if (Character.toString(character).equals("+")){
-                if (!elements.contains(elementString)){
-                    elements.add(elementString);
-                }
-                elementString="";
-            }
+    // The single, all-positive balance, if there is one
+    private static long[] unique(long[][] nullspace) {
+        if(nullspace.length == 0) {
+            throw new IllegalArgumentException("The equation cannot be balanced");
+        }
+        if(nullspace.length > 1) {
+            throw new NotUniqueBalanceException(nullspace.length);
         }
-        if (!Character.toString(character).equals("")){
-            if (!elements.contains(elementString)) {
-                elements.add(elementString);
+        long[] coefficients = nullspace[0];
+        for(long coefficient : coefficients) {
+            if(coefficient <= 0) {
+                throw new IllegalArgumentException("The equation cannot be balanced with every species taking part");
             }
         }
-        return elements;
+        return coefficients;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,35 @@
+package io.github.monomer.Chem.Core;
+
+/**
+ * Thrown when a chemical equation cannot be parsed. Carries the offending equation and the position of the error, which
+ * for an error inside a species is the position of that error within the whole equation.
+ *
+ * @author Elon Litman
+ * @version 1.7
+ * @see EquationParser
+ */
+public class EquationParseException extends IllegalArgumentException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String equation;
+
+    private final int position;
+
+    public EquationParseException(String message, CharSequence equation, int position) {
+        super(message + " at position " + position + " in equation \"" + equation + "\"");
+        this.equation = equation.toString();
+        this.position = position;
+    }
+
+    public String getEquation() {
+        return equation;
+    }
+
+    /**
+     * @return The zero-based index of the character where parsing failed
+     */
+    public int getPosition() {
+        return position;
+    }
+}
@@ -0,0 +1,237 @@
+package io.github.monomer.Chem.Core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A single-pass tokenizer for chemical equations. Terms, coefficients, phases and arrows are recognized character by
+ * character, and every species is handed to {@link FormulaParser} in place, so an equation is parsed without regular
+ * expressions, splitting, or intermediate strings beyond one formula per species.
+ *
+ * The following notation is understood:
+ * <ul>
+ *     <li>Forward arrows {@code -->}, {@code ->}, → and =, and reversible arrows {@code <=>} and ⇌</li>
+ *     <li>Coefficients before a species, with or without a space, e.g. 2H2O or 2 H2O</li>
+ *     <li>Charges in any notation FormulaParser accepts, e.g. Fe^3+, Fe+3, SO4^2- or [Fe(CN)6]4-</li>
+ *     <li>A phase after a species, e.g. NaCl(aq), H2O(l), CO2(g) or AgCl(s)</li>
+ * </ul>
+ * When any + is surrounded by whitespace, only such pluses separate species, so Na+ + Cl- reads as two ions. Otherwise
+ * every + separates species, except one that ends a species or follows a ^, so H2+O2 and Fe^3++Cl- both read as
+ * expected.
+ *
+ * Errors are reported as an {@link EquationParseException} with the position of the offending character in the whole
+ * equation, including errors inside a species.
+ *
+ * @author Elon Litman
+ * @version 1.7
+ * @see Equation
+ * @see FormulaParser
+ */
+public final class EquationParser {
+
+    private static final ThreadLocal<Composition.Builder> BUILDERS = ThreadLocal.withInitial(Composition.Builder::new);
+
+    private EquationParser() {
+        ;
+    }
+
+    /**
+     * A method that parses an equation.
+     *
+     * @param equation A chemical equation, e.g. "2H2(g) + O2(g) --> 2H2O(l)"
+     * @return The parsed Equation
+     * @throws EquationParseException If the equation is malformed or a species cannot be parsed
+     */
+    public static Equation parse(CharSequence equation) {
+        int len = equation.length();
+        boolean spaced = hasSpacedSeparator(equation);
+        List<Equation.Term> terms = new ArrayList<>(4);
+        Composition.Builder builder = BUILDERS.get();
+        FormulaParser parser = FormulaParser.forCurrentThread();
+        Equation.Arrow arrow = null;
+        int reactantCount = 0;
+
+        int pos = skipWhitespace(equation, 0);
+        while(true) {
+            int termStart = pos;
+
+            // Coefficient
+            int coefficient = 1;
+            boolean hasCoefficient = false;
+            if(pos < len && isDigit(equation.charAt(pos))) {
+                long value = 0;
+                while(pos < len && isDigit(equation.charAt(pos))) {
+                    value = value * 10 + (equation.charAt(pos++) - '0');
+                    if(value > Integer.MAX_VALUE) {
+                        throw new EquationParseException("Coefficient too large", equation, termStart);
+                    }
+                }
+                if(value == 0) {
+                    throw new EquationParseException("Coefficient must be positive", equation, termStart);
+                }
+                coefficient = (int) value;
+                hasCoefficient = true;
+                pos = skipWhitespace(equation, pos);
+            }
+
+            // Species, up to a separating +, an arrow, or the end
+            int speciesStart = pos;
+            int speciesEnd = pos;
+            boolean whitespace = false;
+            while(pos < len) {
+                char c = equation.charAt(pos);
+                if((c == '+' && isSeparator(equation, pos, speciesStart, spaced)) || arrowLength(equation, pos) > 0) {
+                    break;
+                }
+                if(Character.isWhitespace(c)) {
+                    whitespace = true;
+                } else {
+                    speciesEnd = pos + 1;
+                }
+                pos++;
+            }
+            if(speciesEnd == speciesStart) {
+                throw new EquationParseException("Expected a species", equation, speciesStart);
+            }
+
+            // A trailing phase, e.g. (aq)
+            Equation.Phase phase = null;
+            int formulaEnd = speciesEnd;
+            if(equation.charAt(speciesEnd - 1) == ')') {
+                int open = speciesEnd - 2;
+                while(open >= speciesStart && equation.charAt(open) >= 'a' && equation.charAt(open) <= 'z') {
+                    open--;
+                }
+                if(open >= speciesStart && open < speciesEnd - 2 && equation.charAt(open) == '(') {
+                    CharSequence symbol = equation.subSequence(open + 1, speciesEnd - 1);
+                    phase = Equation.Phase.of(symbol);
+                    if(phase == null) {
+                        throw new EquationParseException("Unknown phase '" + symbol + "'", equation, open);
+                    }
+                    formulaEnd = open;
+                    while(formulaEnd > speciesStart && Character.isWhitespace(equation.charAt(formulaEnd - 1))) {
+                        formulaEnd--;
+                    }
+                }
+            }
+            if(formulaEnd == speciesStart) {
+                throw new EquationParseException("Expected a species before phase", equation, speciesStart);
+            }
+
+            CharSequence species = equation.subSequence(speciesStart, formulaEnd);
+            int charge;
+            try {
+                charge = parser.parseInto(species, builder.reset());
+            } catch (FormulaParseException e) {
+                throw new EquationParseException(e.getReason(), equation, speciesStart + e.getPosition());
+            }
+            String formula = whitespace ? withoutWhitespace(species) : species.toString();
+            terms.add(new Equation.Term(coefficient, hasCoefficient, formula, builder.build(), charge, phase, termStart));
+
+            if(pos == len) {
+                if(arrow == null) {
+                    throw new EquationParseException("Expected an arrow", equation, len);
+                }
+                break;
+            }
+            int arrowLength = arrowLength(equation, pos);
+            if(arrowLength > 0) {
+                if(arrow != null) {
+                    throw new EquationParseException("Expected only one arrow", equation, pos);
+                }
+                arrow = isReversibleArrow(equation, pos) ? Equation.Arrow.REVERSIBLE : Equation.Arrow.FORWARD;
+                reactantCount = terms.size();
+                pos += arrowLength;
+            } else {
+                // A separating +
+                pos++;
+            }
+            pos = skipWhitespace(equation, pos);
+        }
+        return new Equation(terms.toArray(new Equation.Term[0]), reactantCount, arrow);
+    }
+
+    // The length of the arrow starting at pos, or 0 if there is none
+    private static int arrowLength(CharSequence equation, int pos) {
+        char c = equation.charAt(pos);
+        if(c == '→' || c == '⇌' || c == '=') {
+            return 1;
+        }
+        if(c == '-') {
+            if(startsWith(equation, pos, "-->")) {
+                return 3;
+            }
+            return startsWith(equation, pos, "->") ? 2 : 0;
+        }
+        return c == '<' && startsWith(equation, pos, "<=>") ? 3 : 0;
+    }
+
+    private static boolean isReversibleArrow(CharSequence equation, int pos) {
+        return equation.charAt(pos) == '⇌' || equation.charAt(pos) == '<';
+    }
+
+    // Whether the + at pos separates two species rather than belonging to a charge
+    private static boolean isSeparator(CharSequence equation, int pos, int speciesStart, boolean spaced) {
+        int len = equation.length();
+        boolean spaceBefore = pos > 0 && Character.isWhitespace(equation.charAt(pos - 1));
+        boolean spaceAfter = pos + 1 < len && Character.isWhitespace(equation.charAt(pos + 1));
+        if(spaced) {
+            return spaceBefore && spaceAfter;
+        }
+        if(spaceBefore) {
+            return true;
+        }
+        // A charge ends its species (possibly before a phase or another +), or follows a ^ with optional digits
+        if(pos + 1 == len || spaceAfter || equation.charAt(pos + 1) == '+' || arrowLength(equation, pos + 1) > 0
+                || (equation.charAt(pos + 1) == '(' && pos + 2 < len && equation.charAt(pos + 2) >= 'a' && equation.charAt(pos + 2) <= 'z')) {
+            return false;
+        }
+        int k = pos - 1;
+        while(k > speciesStart && isDigit(equation.charAt(k))) {
+            k--;
+        }
+        return k < speciesStart || equation.charAt(k) != '^';
+    }
+
+    private static boolean hasSpacedSeparator(CharSequence equation) {
+        for(int i=1; i<equation.length() - 1; i++) {
+            if(equation.charAt(i) == '+' && Character.isWhitespace(equation.charAt(i - 1)) && Character.isWhitespace(equation.charAt(i + 1))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean startsWith(CharSequence equation, int pos, String prefix) {
+        if(pos + prefix.length() > equation.length()) {
+            return false;
+        }
+        for(int i=0; i<prefix.length(); i++) {
+            if(equation.charAt(pos + i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String withoutWhitespace(CharSequence species) {
+        StringBuilder sb = new StringBuilder(species.length());
+        for(int i=0; i<species.length(); i++) {
+            if(!Character.isWhitespace(species.charAt(i))) {
+                sb.append(species.charAt(i));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static int skipWhitespace(CharSequence equation, int pos) {
+        while(pos < equation.length() && Character.isWhitespace(equation.charAt(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
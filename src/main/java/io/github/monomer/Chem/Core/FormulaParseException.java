@@ -0,0 +1,44 @@
+package io.github.monomer.Chem.Core;
+
+/**
+ * Thrown when a molecular formula cannot be parsed. Carries the offending formula and the position of the error.
+ *
+ * @author Elon Litman
+ * @version 1.7
+ * @see FormulaParser
+ */
+public class FormulaParseException extends IllegalArgumentException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String reason;
+
+    private final String formula;
+
+    private final int position;
+
+    public FormulaParseException(String message, CharSequence formula, int position) {
+        super(message + " at position " + position + " in formula \"" + formula + "\"");
+        this.reason = message;
+        this.formula = formula.toString();
+        this.position = position;
+    }
+
+    /**
+     * @return What went wrong, without the formula and position
+     */
+    public String getReason() {
+        return reason;
+    }
+
+    public String getFormula() {
+        return formula;
+    }
+
+    /**
+     * @return The zero-based index of the character where parsing failed
+     */
+    public int getPosition() {
+        return position;
+    }
+}
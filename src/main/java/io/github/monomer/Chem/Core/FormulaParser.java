@@ -0,0 +1,373 @@
+package io.github.monomer.Chem.Core;
+
+import java.util.Arrays;
+
+/**
+ * A single-pass, character-level tokenizer for molecular formulas. Element symbols are resolved through a static
+ * direct-address table keyed on their (at most two) characters, and atom counts are written straight into a
+ * Composition.Builder, so parsing does not allocate strings or maps.
+ *
+ * The following notation is understood:
+ * <ul>
+ *     <li>Element symbols with optional counts, e.g. C6H12O6</li>
+ *     <li>Nested groups in parentheses or square brackets with optional counts, e.g. Ca3(PO4)2 or K4[Fe(CN)6]</li>
+ *     <li>Hydrates and adducts separated by a dot, with an optional leading coefficient, e.g. CuSO4·5H2O (·, •, . and * are all accepted)</li>
+ *     <li>Isotope labels in square brackets, e.g. [13C]H4 or [2H]2O, which are counted under their element</li>
+ *     <li>A trailing charge, e.g. NH4+, Fe+++, SO4-2, SO4^2- or [Fe(CN)6]4-</li>
+ *     <li>A trailing phase, e.g. NaCl(aq), which is ignored</li>
+ * </ul>
+ * A lowercase letter that cannot continue the preceding symbol starts a new one, so case-folded input such as C6h12o6
+ * or hcl is still read as C6H12O6 or HCl. Where both readings are symbols the longer one wins, so co2 is Co2.
+ * Digits directly after an element are always its count, so Cu2+ is Cu2 with a charge of +1; write Cu+2 or Cu^2+ for
+ * the copper(II) ion. Only after a closing square bracket are digits followed by a sign read as the charge.
+ *
+ * A FormulaParser reuses its scratch buffers between calls and is therefore not thread-safe; the static
+ * {@link #parse(CharSequence)} keeps one per thread.
+ *
+ * @author Elon Litman
+ * @version 1.7
+ * @see Compound
+ * @see Composition
+ */
+public final class FormulaParser {
+
+    // SYMBOLS[(first - 'A') * 27 + (second == none ? 0 : second - 'a' + 1)] is the atomic number, or 0 if unknown
+    private static final byte[] SYMBOLS = new byte[26 * 27];
+
+    static {
+        for(Element e : PeriodicTable.elements()) {
+            String symbol = e.elementSymbol;
+            if(symbol.length() <= 2) {
+                SYMBOLS[symbolIndex(symbol.charAt(0), symbol.length() == 2 ? symbol.charAt(1) : 0)] = (byte) e.atomicNumber;
+            }
+        }
+    }
+
+    private static final ThreadLocal<FormulaParser> PARSERS = ThreadLocal.withInitial(FormulaParser::new);
+
+    private static final ThreadLocal<Composition.Builder> BUILDERS = ThreadLocal.withInitial(Composition.Builder::new);
+
+    // Atoms seen so far, in order; group multipliers are applied to ranges of these in place
+    private int[] atomicNumbers = new int[32];
+
+    private int[] counts = new int[32];
+
+    private int size;
+
+    // One entry per open bracket: where its atoms start, which bracket opened it, and where
+    private int[] groupStarts = new int[8];
+
+    private char[] groupOpeners = new char[8];
+
+    private int[] groupPositions = new int[8];
+
+    private int depth;
+
+    private CharSequence formula;
+
+    private int charge;
+
+    /**
+     * A method that parses a formula into a new Composition.
+     *
+     * @param formula The molecular formula, e.g. "Ca3(PO4)2"
+     * @return The elemental Composition
+     * @throws FormulaParseException If the formula is malformed or contains unknown elements
+     */
+    public static Composition parse(CharSequence formula) {
+        Composition.Builder builder = BUILDERS.get().reset();
+        PARSERS.get().parseInto(formula, builder);
+        return builder.build();
+    }
+
+    /**
+     * @return This thread's shared FormulaParser
+     */
+    public static FormulaParser forCurrentThread() {
+        return PARSERS.get();
+    }
+
+    /**
+     * A method that parses a formula and adds its atoms to a Composition.Builder, without allocating.
+     *
+     * @param formula The molecular formula, e.g. "Ca3(PO4)2"
+     * @param out The Builder the atom counts are added to
+     * @return The net charge of the formula (0 if none is given)
+     * @throws FormulaParseException If the formula is malformed or contains unknown elements
+     */
+    public int parseInto(CharSequence formula, Composition.Builder out) {
+        this.formula = formula;
+        this.size = 0;
+        this.depth = 0;
+        this.charge = 0;
+        try {
+            parse();
+            for(int i=0; i<size; i++) {
+                out.add(atomicNumbers[i], counts[i]);
+            }
+            return charge;
+        } catch (ArithmeticException e) {
+            throw new FormulaParseException("Atom count overflow", formula, formula.length());
+        } finally {
+            this.formula = null;
+        }
+    }
+
+    private void parse() {
+        int len = formula.length();
+        int pos = 0;
+        // The current dot-separated part starts at this atom, and is multiplied by its leading coefficient
+        int partStart = 0;
+        int partMultiplier = 1;
+        boolean atPartStart = true;
+
+        while(pos < len) {
+            char c = formula.charAt(pos);
+            if(Character.isWhitespace(c)) {
+                pos++;
+            } else if(atPartStart && isDigit(c)) {
+                int start = pos;
+                pos = skipDigits(pos);
+                partMultiplier = readNumber(start, pos);
+                atPartStart = false;
+            } else if((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z')) {
+                atPartStart = false;
+                pos = readElement(pos);
+                int end = skipDigits(pos);
+                addAtom(lastAtomicNumber, end > pos ? readNumber(pos, end) : 1);
+                pos = end;
+            } else if(c == '[' && pos + 1 < len && isDigit(formula.charAt(pos + 1))) {
+                atPartStart = false;
+                pos = readIsotope(pos);
+            } else if(c == '(' && pos + 1 < len && formula.charAt(pos + 1) >= 'a' && formula.charAt(pos + 1) <= 'z') {
+                pos = readPhase(pos);
+            } else if(c == '(' || c == '[') {
+                atPartStart = false;
+                openGroup(c, pos);
+                pos++;
+            } else if(c == ')' || c == ']') {
+                pos = closeGroup(c, pos);
+            } else if(c == '·' || c == '•' || c == '.' || c == '*') {
+                if(depth > 0) {
+                    throw new FormulaParseException("Unclosed '" + groupOpeners[depth - 1] + "' before hydrate separator", formula, groupPositions[depth - 1]);
+                }
+                if(size == partStart) {
+                    throw new FormulaParseException("Expected an element before hydrate separator", formula, pos);
+                }
+                multiply(partStart, partMultiplier);
+                partStart = size;
+                partMultiplier = 1;
+                atPartStart = true;
+                pos++;
+            } else if(c == '+' || c == '-' || c == '^') {
+                pos = readCharge(pos);
+            } else {
+                throw new FormulaParseException("Unexpected character '" + c + "'", formula, pos);
+            }
+        }
+
+        if(depth > 0) {
+            throw new FormulaParseException("Unclosed '" + groupOpeners[depth - 1] + "'", formula, groupPositions[depth - 1]);
+        }
+        if(size == partStart) {
+            throw new FormulaParseException("Expected an element", formula, len);
+        }
+        multiply(partStart, partMultiplier);
+    }
+
+    // Set by readElement, to avoid returning two values
+    private int lastAtomicNumber;
+
+    private int readElement(int pos) {
+        // A lowercase letter can only start a symbol if the formula was case-folded, e.g. "C6h12o6"
+        char first = Character.toUpperCase(formula.charAt(pos));
+        char second = pos + 1 < formula.length() ? formula.charAt(pos + 1) : 0;
+        if(second >= 'a' && second <= 'z') {
+            int z = SYMBOLS[symbolIndex(first, second)];
+            if(z != 0) {
+                lastAtomicNumber = z;
+                return pos + 2;
+            }
+        }
+        // Otherwise the lowercase letter, if any, starts the next symbol, e.g. "ch4" or "Hcl"
+        int z = SYMBOLS[symbolIndex(first, (char) 0)];
+        if(z == 0) {
+            String symbol = second >= 'a' && second <= 'z' ? "" + first + second : "" + first;
+            throw new FormulaParseException("Unknown element '" + symbol + "'", formula, pos);
+        }
+        lastAtomicNumber = z;
+        return pos + 1;
+    }
+
+    // [13C], optionally followed by a count
+    private int readIsotope(int pos) {
+        int start = pos;
+        int digitsEnd = skipDigits(pos + 1);
+        int massNumber = readNumber(pos + 1, digitsEnd);
+        pos = digitsEnd;
+        if(pos >= formula.length() || formula.charAt(pos) < 'A' || formula.charAt(pos) > 'Z') {
+            throw new FormulaParseException("Expected an element after isotope mass number", formula, pos);
+        }
+        pos = readElement(pos);
+        if(massNumber < lastAtomicNumber) {
+            throw new FormulaParseException("Mass number " + massNumber + " is smaller than the atomic number", formula, start);
+        }
+        if(pos >= formula.length() || formula.charAt(pos) != ']') {
+            throw new FormulaParseException("Expected ']' to close isotope label", formula, pos);
+        }
+        pos++;
+        int end = skipDigits(pos);
+        addAtom(lastAtomicNumber, end > pos ? readNumber(pos, end) : 1);
+        return end;
+    }
+
+    // (aq), (s), (l) or (g), which may only be followed by whitespace
+    private int readPhase(int pos) {
+        int close = pos + 1;
+        while(close < formula.length() && formula.charAt(close) >= 'a' && formula.charAt(close) <= 'z') {
+            close++;
+        }
+        if(close >= formula.length() || formula.charAt(close) != ')') {
+            throw new FormulaParseException("Expected ')' to close phase", formula, close);
+        }
+        String phase = formula.subSequence(pos + 1, close).toString();
+        if(!(phase.equals("aq") || phase.equals("s") || phase.equals("l") || phase.equals("g"))) {
+            throw new FormulaParseException("Unknown phase '" + phase + "'", formula, pos);
+        }
+        expectEnd(close + 1);
+        return formula.length();
+    }
+
+    private void openGroup(char opener, int pos) {
+        if(depth == groupStarts.length) {
+            groupStarts = Arrays.copyOf(groupStarts, depth * 2);
+            groupOpeners = Arrays.copyOf(groupOpeners, depth * 2);
+            groupPositions = Arrays.copyOf(groupPositions, depth * 2);
+        }
+        groupStarts[depth] = size;
+        groupOpeners[depth] = opener;
+        groupPositions[depth] = pos;
+        depth++;
+    }
+
+    private int closeGroup(char closer, int pos) {
+        if(depth == 0) {
+            throw new FormulaParseException("Unmatched '" + closer + "'", formula, pos);
+        }
+        char opener = groupOpeners[depth - 1];
+        if((opener == '(' && closer != ')') || (opener == '[' && closer != ']')) {
+            throw new FormulaParseException("Expected '" + (opener == '(' ? ')' : ']') + "' but found '" + closer + "'", formula, pos);
+        }
+        int start = groupStarts[--depth];
+        if(start == size) {
+            throw new FormulaParseException("Empty group", formula, groupPositions[depth]);
+        }
+        pos++;
+        int end = skipDigits(pos);
+        // A complex ion such as [Fe(CN)6]4- carries its charge right after the bracket
+        if(closer == ']' && end > pos && end < formula.length() && (formula.charAt(end) == '+' || formula.charAt(end) == '-')) {
+            int magnitude = readNumber(pos, end);
+            charge = formula.charAt(end) == '+' ? magnitude : -magnitude;
+            expectEnd(end + 1);
+            return formula.length();
+        }
+        multiply(start, end > pos ? readNumber(pos, end) : 1);
+        return end;
+    }
+
+    // +, -, +++, +2, -2, ^2+, ^2-, ^+ or ^-, which may only be followed by whitespace (or a phase)
+    private int readCharge(int pos) {
+        int len = formula.length();
+        int magnitude;
+        char sign;
+        if(formula.charAt(pos) == '^') {
+            pos++;
+            int end = skipDigits(pos);
+            magnitude = end > pos ? readNumber(pos, end) : 1;
+            if(end >= len || (formula.charAt(end) != '+' && formula.charAt(end) != '-')) {
+                throw new FormulaParseException("Expected '+' or '-' after '^'", formula, end);
+            }
+            sign = formula.charAt(end);
+            pos = end + 1;
+        } else {
+            sign = formula.charAt(pos);
+            int repeat = 0;
+            while(pos < len && formula.charAt(pos) == sign) {
+                repeat++;
+                pos++;
+            }
+            int end = skipDigits(pos);
+            if(end > pos && repeat > 1) {
+                throw new FormulaParseException("Ambiguous charge", formula, pos);
+            }
+            magnitude = end > pos ? readNumber(pos, end) : repeat;
+            pos = end;
+        }
+        charge = sign == '+' ? magnitude : -magnitude;
+
+        // Allow a phase after the charge, e.g. Na+(aq)
+        while(pos < len && Character.isWhitespace(formula.charAt(pos))) {
+            pos++;
+        }
+        if(pos < len && formula.charAt(pos) == '(') {
+            return readPhase(pos);
+        }
+        expectEnd(pos);
+        return len;
+    }
+
+    private void expectEnd(int pos) {
+        for(int i=pos; i<formula.length(); i++) {
+            if(!Character.isWhitespace(formula.charAt(i))) {
+                throw new FormulaParseException("Unexpected character '" + formula.charAt(i) + "' after end of formula", formula, i);
+            }
+        }
+    }
+
+    private void addAtom(int atomicNumber, int count) {
+        if(size == atomicNumbers.length) {
+            atomicNumbers = Arrays.copyOf(atomicNumbers, size * 2);
+            counts = Arrays.copyOf(counts, size * 2);
+        }
+        atomicNumbers[size] = atomicNumber;
+        counts[size] = count;
+        size++;
+    }
+
+    private void multiply(int from, int multiplier) {
+        if(multiplier != 1) {
+            for(int i=from; i<size; i++) {
+                counts[i] = Math.multiplyExact(counts[i], multiplier);
+            }
+        }
+    }
+
+    private int skipDigits(int pos) {
+        while(pos < formula.length() && isDigit(formula.charAt(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private int readNumber(int start, int end) {
+        int value = 0;
+        for(int i=start; i<end; i++) {
+            value = Math.addExact(Math.multiplyExact(value, 10), formula.charAt(i) - '0');
+        }
+        if(value == 0) {
+            throw new FormulaParseException("Count must be positive", formula, start);
+        }
+        return value;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static int symbolIndex(char first, char second) {
+        if(first < 'A' || first > 'Z') {
+            return 0;
+        }
+        return (first - 'A') * 27 + (second == 0 ? 0 : second - 'a' + 1);
+    }
+}
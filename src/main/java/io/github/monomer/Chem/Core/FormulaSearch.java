@@ -0,0 +1,337 @@
+package io.github.monomer.Chem.Core;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * A reverse search from an exact (monoisotopic) mass to every elemental formula that fits it within a ppm window, the
+ * inverse of {@link Compound#getMolarMass()}. Counts are enumerated by branch and bound: elements are visited in a fixed
+ * order, the mass still needed after each choice must be reachable with the remaining elements' bounds, and the
+ * lightest element's count is solved for directly rather than enumerated. The outermost element is split across cores.
+ *
+ * <pre>{@code
+ * FormulaSearch search = FormulaSearch.builder()
+ *         .element("C", 0, 40).element("H", 0, 80).element("N", 0, 10).element("O", 0, 15)
+ *         .tolerance(3)
+ *         .build();
+ * List<FormulaSearch.Candidate> hits = search.find(180.06339);
+ * }</pre>
+ *
+ * @author Elon Litman
+ * @version 1.7
+ * @see PeriodicTable#monoisotopicMass(int)
+ * @see Composition
+ */
+public final class FormulaSearch {
+
+    // In search order; the last element is always the lightest
+    private final int[] atomicNumbers;
+
+    private final double[] masses;
+
+    private final int[] min;
+
+    private final int[] max;
+
+    private final int[] valences;
+
+    // The least and greatest mass that elements i, i + 1, ... can contribute together
+    private final double[] suffixMinMass;
+
+    private final double[] suffixMaxMass;
+
+    private final double ppm;
+
+    private final double minRdbe;
+
+    private final double maxRdbe;
+
+    private final boolean nitrogenRule;
+
+    private final boolean seniorRules;
+
+    private FormulaSearch(Builder builder) {
+        List<int[]> bounds = new ArrayList<>(builder.bounds.values());
+        // The lightest element goes last so its count can be solved for; the widest of the others goes first so that
+        // there is enough work to split across cores; the rest go heaviest first, which prunes soonest
+        bounds.sort(Comparator.comparingDouble(b -> -PeriodicTable.monoisotopicMass(b[0])));
+        int[] lightest = bounds.remove(bounds.size() - 1);
+        bounds.stream().max(Comparator.comparingInt(b -> b[2] - b[1])).ifPresent(widest -> {
+            bounds.remove(widest);
+            bounds.add(0, widest);
+        });
+        bounds.add(lightest);
+
+        int k = bounds.size();
+        this.atomicNumbers = new int[k];
+        this.masses = new double[k];
+        this.min = new int[k];
+        this.max = new int[k];
+        this.valences = new int[k];
+        for(int i=0; i<k; i++) {
+            int[] b = bounds.get(i);
+            atomicNumbers[i] = b[0];
+            masses[i] = PeriodicTable.monoisotopicMass(b[0]);
+            min[i] = b[1];
+            max[i] = b[2];
+            valences[i] = builder.valences.getOrDefault(b[0], defaultValence(b[0]));
+        }
+        this.suffixMinMass = new double[k + 1];
+        this.suffixMaxMass = new double[k + 1];
+        for(int i=k - 1; i>=0; i--) {
+            suffixMinMass[i] = suffixMinMass[i + 1] + min[i] * masses[i];
+            suffixMaxMass[i] = suffixMaxMass[i + 1] + max[i] * masses[i];
+        }
+
+        this.ppm = builder.ppm;
+        this.minRdbe = builder.minRdbe;
+        this.maxRdbe = builder.maxRdbe;
+        this.nitrogenRule = builder.nitrogenRule;
+        this.seniorRules = builder.seniorRules;
+    }
+
+    /**
+     * @return A Builder for configuring a search
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * A method that finds every formula within the configured bounds, tolerance, and rules whose monoisotopic mass
+     * matches the given mass.
+     *
+     * @param mass The measured monoisotopic mass of the neutral molecule, in Da
+     * @return The candidates, closest match first
+     */
+    public List<Candidate> find(double mass) {
+        double window = mass * ppm * 1e-6;
+        double lo = mass - window;
+        double hi = mass + window;
+
+        List<Candidate> candidates;
+        if(atomicNumbers.length == 1) {
+            candidates = new ArrayList<>();
+            search(0, 0, new int[1], lo, hi, mass, candidates);
+        } else {
+            int from = Math.max(min[0], ceil((lo - suffixMaxMass[1]) / masses[0]));
+            int to = Math.min(max[0], floor((hi - suffixMinMass[1]) / masses[0]));
+            candidates = IntStream.rangeClosed(from, to).parallel().mapToObj(c -> {
+                List<Candidate> found = new ArrayList<>();
+                int[] counts = new int[atomicNumbers.length];
+                counts[0] = c;
+                search(1, c * masses[0], counts, lo, hi, mass, found);
+                return found;
+            }).flatMap(List::stream).collect(Collectors.toCollection(ArrayList::new));
+        }
+        candidates.sort(Comparator.comparingDouble(candidate -> Math.abs(candidate.error)));
+        return candidates;
+    }
+
+    private void search(int i, double massSoFar, int[] counts, double lo, double hi, double target, List<Candidate> found) {
+        // Every count that leaves a remainder the later elements can still fill
+        int from = Math.max(min[i], ceil((lo - massSoFar - suffixMaxMass[i + 1]) / masses[i]));
+        int to = Math.min(max[i], floor((hi - massSoFar - suffixMinMass[i + 1]) / masses[i]));
+        if(i == atomicNumbers.length - 1) {
+            for(int c=from; c<=to; c++) {
+                counts[i] = c;
+                accept(counts, massSoFar + c * masses[i], target, found);
+            }
+            return;
+        }
+        for(int c=from; c<=to; c++) {
+            counts[i] = c;
+            search(i + 1, massSoFar + c * masses[i], counts, lo, hi, target, found);
+        }
+    }
+
+    private void accept(int[] counts, double mass, double target, List<Candidate> found) {
+        int atoms = 0;
+        int valenceSum = 0;
+        int oddValenceAtoms = 0;
+        int maxValence = 0;
+        for(int i=0; i<counts.length; i++) {
+            if(counts[i] != 0) {
+                atoms += counts[i];
+                valenceSum += counts[i] * valences[i];
+                if((valences[i] & 1) == 1) {
+                    oddValenceAtoms += counts[i];
+                }
+                maxValence = Math.max(maxValence, valences[i]);
+            }
+        }
+        if(atoms == 0) {
+            return;
+        }
+        // Rings plus double bonds: 1 + the sum over atoms of (valence - 2) / 2
+        double rdbe = 1 + (valenceSum - 2.0 * atoms) / 2;
+        if(rdbe < minRdbe || rdbe > maxRdbe) {
+            return;
+        }
+        // An even-electron molecule has an even number of odd-valence atoms, which makes an odd nominal mass imply an
+        // odd number of nitrogens
+        if(nitrogenRule && (oddValenceAtoms & 1) == 1) {
+            return;
+        }
+        // Senior's rules: the valence sum is even, at least twice the largest valence, and at least 2 * (atoms - 1)
+        if(seniorRules && ((valenceSum & 1) == 1 || valenceSum < 2 * maxValence || valenceSum < 2 * (atoms - 1))) {
+            return;
+        }
+        found.add(new Candidate(Composition.of(atomicNumbers, counts), mass, (mass - target) / target * 1e6, rdbe));
+    }
+
+    // The lowest common valence: the group number for groups 1 and 2, 3 and 4 for groups 13 and 14, 18 - group for
+    // groups 15 to 18, and 2 for the transition metals
+    private static int defaultValence(int atomicNumber) {
+        int group = (int) PeriodicTable.byAtomicNumber(atomicNumber).group;
+        if(group <= 2) {
+            return group;
+        } else if(group == 13 || group == 14) {
+            return group - 10;
+        } else if(group >= 15) {
+            return 18 - group;
+        }
+        return 2;
+    }
+
+    private static int ceil(double x) {
+        return (int) Math.max(Integer.MIN_VALUE, Math.ceil(x));
+    }
+
+    private static int floor(double x) {
+        return (int) Math.min(Integer.MAX_VALUE, Math.floor(x));
+    }
+
+    /**
+     * A formula that matches a searched mass.
+     */
+    public static final class Candidate {
+
+        public final Composition composition;
+
+        // The monoisotopic mass of the formula, in Da
+        public final double mass;
+
+        // The deviation from the searched mass, in ppm
+        public final double error;
+
+        // Rings plus double bonds
+        public final double rdbe;
+
+        private Candidate(Composition composition, double mass, double error, double rdbe) {
+            this.composition = composition;
+            this.mass = mass;
+            this.error = error;
+            this.rdbe = rdbe;
+        }
+
+        @Override
+        public String toString() {
+            return "Candidate{" +
+                    "formula=" + composition +
+                    ", mass=" + mass +
+                    ", error=" + error +
+                    ", rdbe=" + rdbe +
+                    '}';
+        }
+    }
+
+    /**
+     * Configures a FormulaSearch. By default the tolerance is 5 ppm, the RDBE must be at least 0, and both the nitrogen
+     * rule and Senior's rules are applied.
+     */
+    public static final class Builder {
+
+        // Atomic number -> {atomic number, min, max}, in the order added
+        private final Map<Integer, int[]> bounds = new LinkedHashMap<>();
+
+        private final Map<Integer, Integer> valences = new LinkedHashMap<>();
+
+        private double ppm = 5;
+
+        private double minRdbe = 0;
+
+        private double maxRdbe = Double.POSITIVE_INFINITY;
+
+        private boolean nitrogenRule = true;
+
+        private boolean seniorRules = true;
+
+        private Builder() {
+            ;
+        }
+
+        /**
+         * @param symbol The symbol of an element to allow, e.g. "N"
+         * @param min The least number of atoms of it
+         * @param max The greatest number of atoms of it
+         * @return This Builder
+         */
+        public Builder element(String symbol, int min, int max) {
+            int z = (int) PeriodicTable.lookup(symbol).atomicNumber;
+            if(min < 0 || max < min) {
+                throw new IllegalArgumentException("Illegal bounds for " + symbol + ": " + min + " to " + max);
+            }
+            if(Double.isNaN(PeriodicTable.monoisotopicMass(z))) {
+                throw new IllegalArgumentException("No monoisotopic mass is known for " + symbol);
+            }
+            bounds.put(z, new int[]{z, min, max});
+            return this;
+        }
+
+        /**
+         * @param symbol The symbol of an element
+         * @param valence The valence to use for it in the RDBE and Senior's rules, instead of its lowest common one
+         * @return This Builder
+         */
+        public Builder valence(String symbol, int valence) {
+            valences.put((int) PeriodicTable.lookup(symbol).atomicNumber, valence);
+            return this;
+        }
+
+        /**
+         * @param ppm The half-width of the mass window, in parts per million of the searched mass
+         * @return This Builder
+         */
+        public Builder tolerance(double ppm) {
+            if(!(ppm >= 0)) {
+                throw new IllegalArgumentException("Illegal tolerance: " + ppm);
+            }
+            this.ppm = ppm;
+            return this;
+        }
+
+        /**
+         * @param min The least number of rings plus double bonds
+         * @param max The greatest number of rings plus double bonds
+         * @return This Builder
+         */
+        public Builder rdbe(double min, double max) {
+            this.minRdbe = min;
+            this.maxRdbe = max;
+            return this;
+        }
+
+        public Builder nitrogenRule(boolean nitrogenRule) {
+            this.nitrogenRule = nitrogenRule;
+            return this;
+        }
+
+        public Builder seniorRules(boolean seniorRules) {
+            this.seniorRules = seniorRules;
+            return this;
+        }
+
+        public FormulaSearch build() {
+            if(bounds.isEmpty()) {
+                throw new IllegalStateException("At least one element must be allowed");
+            }
+            return new FormulaSearch(this);
+        }
+    }
+}
@@ -3,12 +3,14 @@ package io.github.monomer.Chem.Core;
 import java.util.Objects;
 
 /**
- * This helper class is used to represent basic fractions.
+ * This helper class is used to represent basic fractions. Arithmetic throws ArithmeticException on int overflow; use
+ * {@link Rational} for exact arithmetic that never overflows.
  *
  * @author Elon Litman
  * @version 1.7
  * @see VectorManipulationUtil
  * @see EmpiricalFormulaUtil
+ * @see Rational
  */
 public class Fraction{
     public boolean active;
@@ -81,26 +83,29 @@ public class Fraction{
     }
 
     /**
-     * Used to get GCF of two numbers.
+     * Used to get GCF of two numbers, iteratively with Stein's binary algorithm.
      *
      * @param a first number
      * @param b second number
-     * @return GCF of a and b
+     * @return GCF of a and b, which is never negative
      */
     public static int GCD(int a, int b) {
-        if (b==0) return a;
-        return GCD(b,a%b);
+        return Math.toIntExact(Rational.gcd(Math.abs((long) a), Math.abs((long) b)));
     }
 
     /**
-     * Used to get LCM of two numbers.
+     * Used to get LCM of two numbers. Divides before multiplying, and throws rather than overflowing.
      *
      * @param a first number
      * @param b second number
      * @return LCM of a and b
+     * @throws ArithmeticException If the LCM does not fit in an int
      */
     public static int LCM(int a, int b) {
-        return (a * b) / GCD(a, b);
+        if(a == 0 || b == 0) {
+            return 0;
+        }
+        return Math.abs(Math.multiplyExact(a / GCD(a, b), b));
     }
 
     public int getNumerator() {
@@ -119,7 +124,7 @@ public class Fraction{
      * @return Product of fractions
      */
     public static Fraction multiply(Fraction firstFraction, Fraction secondFraction){
-        return new Fraction(firstFraction.getNumerator()*secondFraction.getNumerator(), firstFraction.getDenominator()*secondFraction.getDenominator());
+        return new Fraction(Math.multiplyExact(firstFraction.getNumerator(), secondFraction.getNumerator()), Math.multiplyExact(firstFraction.getDenominator(), secondFraction.getDenominator()));
     }
 
     /**
@@ -132,9 +137,9 @@ public class Fraction{
     public static Fraction add(Fraction firstFraction, Fraction secondFraction){
         if (firstFraction.getNumerator()!=0 || secondFraction.getNumerator()!=0) {
             int additionLCM = LCM(firstFraction.getDenominator(), secondFraction.getDenominator());
-            int scaledFirstNumerator=firstFraction.getNumerator()*additionLCM/firstFraction.getDenominator();
-            int scaledSecondNumerator=secondFraction.getNumerator()*additionLCM/secondFraction.getDenominator();
-            return new Fraction(scaledFirstNumerator+scaledSecondNumerator, additionLCM);
+            int scaledFirstNumerator=Math.multiplyExact(firstFraction.getNumerator(), additionLCM/firstFraction.getDenominator());
+            int scaledSecondNumerator=Math.multiplyExact(secondFraction.getNumerator(), additionLCM/secondFraction.getDenominator());
+            return new Fraction(Math.addExact(scaledFirstNumerator, scaledSecondNumerator), additionLCM);
         } else if(!(firstFraction.getNumerator() == 0)) {
             return new Fraction(secondFraction.getNumerator(), secondFraction.getDenominator());
         } else {
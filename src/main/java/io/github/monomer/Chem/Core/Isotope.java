@@ -0,0 +1,63 @@
+package io.github.monomer.Chem.Core;
+
+import java.util.Objects;
+
+/**
+ * An immutable, naturally occurring isotope of an element, with its exact mass and natural abundance. Shared instances
+ * are available through {@link PeriodicTable#isotopes(int)}.
+ *
+ * @author Elon Litman
+ * @version 1.7
+ * @see PeriodicTable
+ * @see IsotopePattern
+ */
+public final class Isotope {
+
+    public final int atomicNumber;
+
+    // The number of protons plus neutrons, e.g. 13 for carbon-13
+    public final int massNumber;
+
+    // The exact mass in Da
+    public final double mass;
+
+    // The natural abundance as a fraction between 0 and 1
+    public final double abundance;
+
+    Isotope(int atomicNumber, int massNumber, double mass, double abundance) {
+        this.atomicNumber = atomicNumber;
+        this.massNumber = massNumber;
+        this.mass = mass;
+        this.abundance = abundance;
+    }
+
+    /**
+     * @return The Element this is an isotope of
+     */
+    public Element element() {
+        return PeriodicTable.byAtomicNumber(atomicNumber);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Isotope isotope = (Isotope) o;
+        return atomicNumber == isotope.atomicNumber && massNumber == isotope.massNumber;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(atomicNumber, massNumber);
+    }
+
+    @Override
+    public String toString() {
+        return "Isotope{" +
+                "element=" + element().elementSymbol +
+                ", massNumber=" + massNumber +
+                ", mass=" + mass +
+                ", abundance=" + abundance +
+                '}';
+    }
+}
@@ -0,0 +1,277 @@
+package io.github.monomer.Chem.Core;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * The aggregated isotopic distribution of a molecule: one peak per nominal mass, at the abundance-weighted average mass
+ * of every isotopic variant with that nominal mass. The distribution is the product of one polynomial per element
+ * (its isotopes' abundances, raised to the element's count), expanded by repeated squaring and multiplied out, with the
+ * negligible tails pruned after every step so large formulas stay cheap.
+ *
+ * <pre>{@code
+ * IsotopePattern pattern = IsotopePattern.of(Compound.of("C6H12O6"));
+ * for(int i=0; i<pattern.size(); i++) {
+ *     System.out.println(pattern.mass(i) + " " + pattern.relativeAbundance(i));
+ * }
+ * }</pre>
+ *
+ * @author Elon Litman
+ * @version 1.7
+ * @see Isotope
+ * @see PeriodicTable#isotopes(int)
+ */
+public final class IsotopePattern {
+
+    /**
+     * The default abundance, relative to the tallest peak, below which peaks are dropped.
+     */
+    public static final double DEFAULT_THRESHOLD = 1e-4;
+
+    // Absolute probability below which the tails of intermediate products are dropped, well below any reported peak
+    private static final double PRUNE_FACTOR = 1e-3;
+
+    private final double[] masses;
+
+    private final double[] abundances;
+
+    private final double maxAbundance;
+
+    private IsotopePattern(double[] masses, double[] abundances) {
+        this.masses = masses;
+        this.abundances = abundances;
+        double max = 0;
+        for(double abundance : abundances) {
+            max = Math.max(max, abundance);
+        }
+        this.maxAbundance = max;
+    }
+
+    /**
+     * A method that computes the isotopic pattern of a Compound with the default threshold.
+     *
+     * @param compound The Compound
+     * @return Its isotopic pattern
+     */
+    public static IsotopePattern of(Compound compound) {
+        return of(compound.composition, DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * A method that computes the isotopic pattern of a Composition with the default threshold.
+     *
+     * @param composition The Composition
+     * @return Its isotopic pattern
+     */
+    public static IsotopePattern of(Composition composition) {
+        return of(composition, DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * A method that computes the isotopic pattern of a Composition.
+     *
+     * @param composition The Composition
+     * @param threshold The abundance, relative to the tallest peak, below which peaks are dropped
+     * @return Its isotopic pattern
+     * @throws IllegalArgumentException If there is no isotope data for one of the elements
+     */
+    public static IsotopePattern of(Composition composition, double threshold) {
+        if(!(threshold >= 0 && threshold < 1)) {
+            throw new IllegalArgumentException("Illegal threshold: " + threshold);
+        }
+        double prune = threshold * PRUNE_FACTOR;
+        Distribution product = Distribution.UNIT;
+        for(int i=0; i<composition.size(); i++) {
+            if(composition.countAt(i) < 0) {
+                throw new IllegalArgumentException("Negative atom count in " + composition);
+            }
+            Distribution element = Distribution.of(composition.atomicNumberAt(i));
+            product = product.times(element.power(composition.countAt(i), prune), prune);
+        }
+        return product.toPattern(threshold);
+    }
+
+    /**
+     * A method that computes the isotopic patterns of many Compositions in parallel.
+     *
+     * @param compositions The Compositions
+     * @param threshold The abundance, relative to the tallest peak, below which peaks are dropped
+     * @return Their isotopic patterns, in the same order
+     */
+    public static List<IsotopePattern> ofAll(List<Composition> compositions, double threshold) {
+        return compositions.parallelStream().map(composition -> of(composition, threshold)).collect(Collectors.toList());
+    }
+
+    /**
+     * @return The number of peaks
+     */
+    public int size() {
+        return masses.length;
+    }
+
+    /**
+     * @param i A peak, between 0 and size() - 1, in order of increasing mass
+     * @return The abundance-weighted average mass of the peak, in Da
+     */
+    public double mass(int i) {
+        return masses[i];
+    }
+
+    /**
+     * @param i A peak, between 0 and size() - 1, in order of increasing mass
+     * @return The fraction of all molecules that fall in the peak
+     */
+    public double abundance(int i) {
+        return abundances[i];
+    }
+
+    /**
+     * @param i A peak, between 0 and size() - 1, in order of increasing mass
+     * @return The abundance of the peak relative to the tallest one
+     */
+    public double relativeAbundance(int i) {
+        return abundances[i] / maxAbundance;
+    }
+
+    /**
+     * @return The index of the tallest peak
+     */
+    public int basePeak() {
+        for(int i=0; i<abundances.length; i++) {
+            if(abundances[i] == maxAbundance) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public double[] masses() {
+        return masses.clone();
+    }
+
+    public double[] abundances() {
+        return abundances.clone();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("IsotopePattern{");
+        for(int i=0; i<masses.length; i++) {
+            sb.append(i == 0 ? "" : ", ").append(masses[i]).append('=').append(relativeAbundance(i));
+        }
+        return sb.append('}').toString();
+    }
+
+    /**
+     * A polynomial in nominal mass: bin i holds the probability of nominal mass base + i, together with the probability
+     * times the exact mass, so that the average mass of each bin survives multiplication.
+     */
+    private static final class Distribution {
+
+        static final Distribution UNIT = new Distribution(0, new double[]{1}, new double[]{0});
+
+        // Per element, built on first use
+        private static final Distribution[] ELEMENTS = new Distribution[PeriodicTable.maxAtomicNumber() + 1];
+
+        final int base;
+
+        final double[] probabilities;
+
+        // probability * mass, per bin
+        final double[] moments;
+
+        Distribution(int base, double[] probabilities, double[] moments) {
+            this.base = base;
+            this.probabilities = probabilities;
+            this.moments = moments;
+        }
+
+        static Distribution of(int atomicNumber) {
+            Distribution d = ELEMENTS[atomicNumber];
+            if(d == null) {
+                List<Isotope> isotopes = PeriodicTable.isotopes(atomicNumber);
+                if(isotopes.isEmpty()) {
+                    throw new IllegalArgumentException("No isotope data for " + PeriodicTable.byAtomicNumber(atomicNumber).elementName);
+                }
+                int base = isotopes.get(0).massNumber;
+                int length = isotopes.get(isotopes.size() - 1).massNumber - base + 1;
+                double[] p = new double[length];
+                double[] m = new double[length];
+                for(Isotope isotope : isotopes) {
+                    p[isotope.massNumber - base] += isotope.abundance;
+                    m[isotope.massNumber - base] += isotope.abundance * isotope.mass;
+                }
+                // A benign race: every thread builds an identical Distribution
+                d = new Distribution(base, p, m);
+                ELEMENTS[atomicNumber] = d;
+            }
+            return d;
+        }
+
+        Distribution times(Distribution other, double prune) {
+            int length = probabilities.length + other.probabilities.length - 1;
+            double[] p = new double[length];
+            double[] m = new double[length];
+            for(int i=0; i<probabilities.length; i++) {
+                double pi = probabilities[i];
+                double mi = moments[i];
+                for(int j=0; j<other.probabilities.length; j++) {
+                    // (pi * pj) * (mass_i + mass_j) = mi * pj + pi * mj
+                    p[i + j] += pi * other.probabilities[j];
+                    m[i + j] += mi * other.probabilities[j] + pi * other.moments[j];
+                }
+            }
+            return new Distribution(base + other.base, p, m).trim(prune);
+        }
+
+        // Exponentiation by squaring
+        Distribution power(int n, double prune) {
+            Distribution result = UNIT;
+            Distribution square = this;
+            while(n > 0) {
+                if((n & 1) == 1) {
+                    result = result.times(square, prune);
+                }
+                n >>>= 1;
+                if(n > 0) {
+                    square = square.times(square, prune);
+                }
+            }
+            return result;
+        }
+
+        // Drop the leading and trailing bins below the pruning limit
+        Distribution trim(double prune) {
+            int from = 0;
+            int to = probabilities.length;
+            while(from < to - 1 && probabilities[from] < prune) {
+                from++;
+            }
+            while(to - 1 > from && probabilities[to - 1] < prune) {
+                to--;
+            }
+            if(from == 0 && to == probabilities.length) {
+                return this;
+            }
+            return new Distribution(base + from, Arrays.copyOfRange(probabilities, from, to), Arrays.copyOfRange(moments, from, to));
+        }
+
+        IsotopePattern toPattern(double threshold) {
+            double max = 0;
+            for(double p : probabilities) {
+                max = Math.max(max, p);
+            }
+            double[] masses = new double[probabilities.length];
+            double[] abundances = new double[probabilities.length];
+            int k = 0;
+            for(int i=0; i<probabilities.length; i++) {
+                if(probabilities[i] > 0 && probabilities[i] >= threshold * max) {
+                    masses[k] = moments[i] / probabilities[i];
+                    abundances[k++] = probabilities[i];
+                }
+            }
+            return new IsotopePattern(Arrays.copyOf(masses, k), Arrays.copyOf(abundances, k));
+        }
+    }
+}
@@ -0,0 +1,413 @@
+package io.github.monomer.Chem.Core;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * A read-only library of formulas sorted by molar mass, stored in a file that is memory-mapped rather than loaded, so
+ * that a library of millions of formulas opens instantly and is queried without building Compound objects or copying
+ * it onto the heap. Every formula's molar mass, composition vector, and text are kept in separate columns, and a mass
+ * range query is a binary search over the mass column returning a view of the matching rows.
+ *
+ * <pre>{@code
+ * MassIndex.write(Path.of("library.mmi"), formulas);
+ * MassIndex index = MassIndex.open(Path.of("library.mmi"));
+ * MassIndex.View hits = index.range(180.0, 180.2);
+ * for(int i=0; i<hits.size(); i++) {
+ *     System.out.println(hits.formula(i) + " " + hits.molarMass(i));
+ * }
+ * }</pre>
+ *
+ * The file is laid out as a header followed by the columns, each mapped separately:
+ * <pre>
+ * int magic, int version, int count, int entries, int textBytes
+ * double[count]     molar masses, ascending
+ * int[count + 1]    offsets of each formula's entries
+ * int[entries]      atom counts
+ * int[count + 1]    offsets of each formula's text
+ * byte[entries]     atomic numbers
+ * byte[textBytes]   formulas, UTF-8
+ * </pre>
+ * Each column is mapped in one piece and so must stay under 2 GB. The atom counts fill first: at four elements per
+ * formula, a library tops out at about 130 million formulas.
+ *
+ * @author Elon Litman
+ * @version 1.7
+ * @see CompoundBatch
+ * @see Composition
+ */
+public final class MassIndex {
+
+    private static final int MAGIC = 0x4D504D49;
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_BYTES = 5 * Integer.BYTES;
+
+    private final int count;
+
+    private final DoubleBuffer masses;
+
+    private final IntBuffer entryOffsets;
+
+    private final IntBuffer counts;
+
+    private final IntBuffer textOffsets;
+
+    private final ByteBuffer atomicNumbers;
+
+    private final ByteBuffer text;
+
+    private MassIndex(int count, DoubleBuffer masses, IntBuffer entryOffsets, IntBuffer counts, IntBuffer textOffsets, ByteBuffer atomicNumbers, ByteBuffer text) {
+        this.count = count;
+        this.masses = masses;
+        this.entryOffsets = entryOffsets;
+        this.counts = counts;
+        this.textOffsets = textOffsets;
+        this.atomicNumbers = atomicNumbers;
+        this.text = text;
+    }
+
+    /**
+     * A method that builds an index file from a library of formulas.
+     *
+     * @param file The file to write
+     * @param formulas The molecular formulas
+     * @throws IOException If the file cannot be written
+     * @throws FormulaParseException If one of the formulas is invalid
+     * @throws IllegalArgumentException If a column would reach 2 GB
+     */
+    public static void write(Path file, List<String> formulas) throws IOException {
+        CompoundBatch.Columns columns = CompoundBatch.evaluate(formulas);
+        int n = columns.size();
+        for(int i=0; i<n; i++) {
+            if(!columns.isValid(i)) {
+                // Parse it again for the full error
+                FormulaParser.parse(formulas.get(i));
+            }
+        }
+
+        // Every column is mapped by a single FileChannel.map call, so none may reach 2 GB
+        long entries = 0;
+        for(int i=0; i<n; i++) {
+            entries += columns.offset(i + 1) - columns.offset(i);
+        }
+        checkColumn((long) n * Double.BYTES, "Molar mass");
+        checkColumn((n + 1L) * Integer.BYTES, "Offset");
+        checkColumn(entries * Integer.BYTES, "Atom count");
+
+        int[] order = new int[n];
+        double[] keys = columns.molarMasses();
+        for(int i=0; i<n; i++) {
+            order[i] = i;
+        }
+        sortByKey(keys, order, 0, n - 1);
+
+        byte[][] encoded = new byte[n][];
+        long textBytes = 0;
+        for(int i=0; i<n; i++) {
+            encoded[i] = formulas.get(i).getBytes(StandardCharsets.UTF_8);
+            textBytes += encoded[i].length;
+        }
+        checkColumn(textBytes, "Formula text");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(n);
+            out.writeInt((int) entries);
+            out.writeInt((int) textBytes);
+            for(double mass : keys) {
+                out.writeDouble(mass);
+            }
+            int offset = 0;
+            out.writeInt(offset);
+            for(int i : order) {
+                offset += columns.offset(i + 1) - columns.offset(i);
+                out.writeInt(offset);
+            }
+            for(int i : order) {
+                for(int e=columns.offset(i); e<columns.offset(i + 1); e++) {
+                    out.writeInt(columns.countAt(e));
+                }
+            }
+            offset = 0;
+            out.writeInt(offset);
+            for(int i : order) {
+                offset += encoded[i].length;
+                out.writeInt(offset);
+            }
+            for(int i : order) {
+                for(int e=columns.offset(i); e<columns.offset(i + 1); e++) {
+                    out.writeByte(columns.atomicNumberAt(e));
+                }
+            }
+            for(int i : order) {
+                out.write(encoded[i]);
+            }
+        }
+    }
+
+    private static void checkColumn(long bytes, String column) {
+        if(bytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(column + " column exceeds 2 GB, the most one mapping can hold");
+        }
+    }
+
+    // Quicksort of rows by mass on primitive arrays, which is several times faster than sorting boxed indices
+    private static void sortByKey(double[] keys, int[] order, int lo, int hi) {
+        while(hi - lo > 16) {
+            int mid = (lo + hi) >>> 1;
+            // Median of three as the pivot
+            if(keys[mid] < keys[lo]) swap(keys, order, mid, lo);
+            if(keys[hi] < keys[lo]) swap(keys, order, hi, lo);
+            if(keys[hi] < keys[mid]) swap(keys, order, hi, mid);
+            double pivot = keys[mid];
+            int i = lo;
+            int j = hi;
+            while(i <= j) {
+                while(keys[i] < pivot) i++;
+                while(keys[j] > pivot) j--;
+                if(i <= j) {
+                    swap(keys, order, i++, j--);
+                }
+            }
+            // Recurse into the smaller half to bound the stack depth
+            if(j - lo < hi - i) {
+                sortByKey(keys, order, lo, j);
+                lo = i;
+            } else {
+                sortByKey(keys, order, i, hi);
+                hi = j;
+            }
+        }
+        for(int i=lo + 1; i<=hi; i++) {
+            double key = keys[i];
+            int row = order[i];
+            int j = i - 1;
+            while(j >= lo && keys[j] > key) {
+                keys[j + 1] = keys[j];
+                order[j + 1] = order[j];
+                j--;
+            }
+            keys[j + 1] = key;
+            order[j + 1] = row;
+        }
+    }
+
+    private static void swap(double[] keys, int[] order, int i, int j) {
+        double key = keys[i];
+        keys[i] = keys[j];
+        keys[j] = key;
+        int row = order[i];
+        order[i] = order[j];
+        order[j] = row;
+    }
+
+    /**
+     * A method that memory-maps an index file. The file is not read up front, and stays mapped for as long as the
+     * MassIndex is reachable.
+     *
+     * @param file An index file written by {@link #write(Path, List)}
+     * @return The MassIndex
+     * @throws IOException If the file cannot be read or is not an index file
+     */
+    public static MassIndex open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+            if(header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException(file + " is not a version " + VERSION + " mass index");
+            }
+            int count = header.getInt();
+            int entries = header.getInt();
+            int textBytes = header.getInt();
+            if(count < 0 || entries < 0 || textBytes < 0 || (long) count * Double.BYTES > Integer.MAX_VALUE || (long) entries * Integer.BYTES > Integer.MAX_VALUE) {
+                throw new IOException(file + " is corrupt or has a column too large to map");
+            }
+
+            long position = HEADER_BYTES;
+            ByteBuffer masses = channel.map(FileChannel.MapMode.READ_ONLY, position, (long) count * Double.BYTES);
+            position += (long) count * Double.BYTES;
+            ByteBuffer entryOffsets = channel.map(FileChannel.MapMode.READ_ONLY, position, (count + 1L) * Integer.BYTES);
+            position += (count + 1L) * Integer.BYTES;
+            ByteBuffer counts = channel.map(FileChannel.MapMode.READ_ONLY, position, (long) entries * Integer.BYTES);
+            position += (long) entries * Integer.BYTES;
+            ByteBuffer textOffsets = channel.map(FileChannel.MapMode.READ_ONLY, position, (count + 1L) * Integer.BYTES);
+            position += (count + 1L) * Integer.BYTES;
+            ByteBuffer atomicNumbers = channel.map(FileChannel.MapMode.READ_ONLY, position, entries);
+            position += entries;
+            ByteBuffer text = channel.map(FileChannel.MapMode.READ_ONLY, position, textBytes);
+            if(position + textBytes != channel.size()) {
+                throw new IOException(file + " is truncated or corrupt");
+            }
+            return new MassIndex(count, masses.asDoubleBuffer(), entryOffsets.asIntBuffer(), counts.asIntBuffer(), textOffsets.asIntBuffer(), atomicNumbers, text);
+        }
+    }
+
+    /**
+     * @return The number of formulas in the index
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * A method that finds every formula with a molar mass in [min, max].
+     *
+     * @param min The least molar mass, in g/mol
+     * @param max The greatest molar mass, in g/mol
+     * @return A view of the matching formulas, in order of increasing mass
+     */
+    public View range(double min, double max) {
+        int from = lowerBound(min);
+        int to = max < min ? from : upperBound(max);
+        return new View(from, to - from);
+    }
+
+    /**
+     * A method that finds every formula with a molar mass within a tolerance of a target.
+     *
+     * @param mass The target molar mass, in g/mol
+     * @param tolerance The half-width of the window, in g/mol
+     * @return A view of the matching formulas, in order of increasing mass
+     */
+    public View near(double mass, double tolerance) {
+        return range(mass - tolerance, mass + tolerance);
+    }
+
+    /**
+     * @return A view of every formula in the index
+     */
+    public View all() {
+        return new View(0, count);
+    }
+
+    // The first row with mass >= value
+    private int lowerBound(double value) {
+        int lo = 0;
+        int hi = count;
+        while(lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if(masses.get(mid) < value) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // The first row with mass > value
+    private int upperBound(double value) {
+        int lo = 0;
+        int hi = count;
+        while(lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if(masses.get(mid) <= value) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * A window onto a run of consecutive rows of the index. Reading from a View goes straight to the mapped file.
+     */
+    public final class View {
+
+        private final int first;
+
+        private final int size;
+
+        private View(int first, int size) {
+            this.first = first;
+            this.size = size;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        /**
+         * @return The row of the index this View starts at
+         */
+        public int firstRow() {
+            return first;
+        }
+
+        /**
+         * @param i A position between 0 and size() - 1
+         * @return The molar mass of the formula, in g/mol
+         */
+        public double molarMass(int i) {
+            return masses.get(row(i));
+        }
+
+        /**
+         * @param i A position between 0 and size() - 1
+         * @return The formula, as it was given to {@link #write(Path, List)}
+         */
+        public String formula(int i) {
+            int row = row(i);
+            int from = textOffsets.get(row);
+            byte[] bytes = new byte[textOffsets.get(row + 1) - from];
+            text.get(from, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * @param i A position between 0 and size() - 1
+         * @param atomicNumber The atomic number (Z) of an element
+         * @return The number of atoms of that element in the formula
+         */
+        public int countOf(int i, int atomicNumber) {
+            int row = row(i);
+            for(int e=entryOffsets.get(row); e<entryOffsets.get(row + 1); e++) {
+                if((atomicNumbers.get(e) & 0xff) == atomicNumber) {
+                    return counts.get(e);
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * @param i A position between 0 and size() - 1
+         * @return The Composition of the formula
+         */
+        public Composition composition(int i) {
+            int row = row(i);
+            int from = entryOffsets.get(row);
+            int length = entryOffsets.get(row + 1) - from;
+            int[] z = new int[length];
+            int[] n = new int[length];
+            for(int e=0; e<length; e++) {
+                z[e] = atomicNumbers.get(from + e) & 0xff;
+                n[e] = counts.get(from + e);
+            }
+            return Composition.of(z, n);
+        }
+
+        private int row(int i) {
+            if(i < 0 || i >= size) {
+                throw new IndexOutOfBoundsException("Index " + i + " out of bounds for length " + size);
+            }
+            return first + i;
+        }
+    }
+}
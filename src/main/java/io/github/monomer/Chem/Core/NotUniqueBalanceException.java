@@ -0,0 +1,28 @@
+package io.github.monomer.Chem.Core;
+
+/**
+ * Thrown when a chemical equation balances in more than one independent way, i.e. it combines several reactions whose
+ * proportions the equation alone does not fix. Carries the number of independent reactions.
+ *
+ * @author Elon Litman
+ * @version 1.7
+ * @see EquationBalancerUtil
+ */
+public class NotUniqueBalanceException extends IllegalArgumentException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int independentReactions;
+
+    public NotUniqueBalanceException(int independentReactions) {
+        super("The equation has no unique balance: it combines " + independentReactions + " independent reactions");
+        this.independentReactions = independentReactions;
+    }
+
+    /**
+     * @return The dimension of the space of balances, at least 2
+     */
+    public int getIndependentReactions() {
+        return independentReactions;
+    }
+}
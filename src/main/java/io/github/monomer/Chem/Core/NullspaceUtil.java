@@ -0,0 +1,223 @@
+package io.github.monomer.Chem.Core;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * A utility class for exact integer nullspaces, as needed to balance reactions (the nullspace of the element-by-species
+ * matrix) and to find conservation laws. Matrices are reduced by fraction-free Gauss-Jordan elimination (Bareiss), in
+ * which every division is exact, so no fractions are ever formed. The elimination runs on longs with checked arithmetic
+ * and is repeated on BigIntegers if it would overflow.
+ *
+ * @author Elon Litman
+ * @version 1.7
+ * @see EquationBalancerUtil
+ */
+public final class NullspaceUtil {
+
+    private NullspaceUtil() {
+        ;
+    }
+
+    /**
+     * A method that finds a basis of the integer nullspace of a matrix, i.e. of all x with A x = 0. Each basis vector
+     * is primitive (its entries have no common factor) and its first non-zero entry is positive.
+     *
+     * @param matrix The matrix A, by rows; it is not modified
+     * @return The basis vectors, one per free column; empty if A has full column rank
+     * @throws ArithmeticException If an entry of the basis does not fit in a long
+     */
+    public static long[][] nullspace(long[][] matrix) {
+        try {
+            return nullspaceLong(matrix);
+        } catch (ArithmeticException overflow) {
+            BigInteger[][] exact = nullspace(toBig(matrix));
+            long[][] basis = new long[exact.length][];
+            for(int k=0; k<exact.length; k++) {
+                basis[k] = new long[exact[k].length];
+                for(int j=0; j<exact[k].length; j++) {
+                    basis[k][j] = exact[k][j].longValueExact();
+                }
+            }
+            return basis;
+        }
+    }
+
+    /**
+     * A method that finds a basis of the integer nullspace of a matrix with arbitrarily large entries.
+     *
+     * @param matrix The matrix A, by rows; it is not modified
+     * @return The primitive basis vectors, one per free column
+     */
+    public static BigInteger[][] nullspace(BigInteger[][] matrix) {
+        int rows = matrix.length;
+        int cols = rows == 0 ? 0 : matrix[0].length;
+        BigInteger[][] a = new BigInteger[rows][];
+        for(int i=0; i<rows; i++) {
+            a[i] = matrix[i].clone();
+        }
+
+        int[] pivotColumns = new int[Math.min(rows, cols)];
+        int rank = 0;
+        BigInteger previous = BigInteger.ONE;
+        for(int c=0; c<cols && rank<rows; c++) {
+            int p = rank;
+            while(p < rows && a[p][c].signum() == 0) {
+                p++;
+            }
+            if(p == rows) {
+                continue;
+            }
+            BigInteger[] swap = a[p];
+            a[p] = a[rank];
+            a[rank] = swap;
+
+            BigInteger pivot = a[rank][c];
+            for(int i=0; i<rows; i++) {
+                if(i == rank) {
+                    continue;
+                }
+                BigInteger factor = a[i][c];
+                for(int j=0; j<cols; j++) {
+                    if(j != c) {
+                        a[i][j] = pivot.multiply(a[i][j]).subtract(factor.multiply(a[rank][j])).divide(previous);
+                    }
+                }
+                a[i][c] = BigInteger.ZERO;
+            }
+            previous = pivot;
+            pivotColumns[rank++] = c;
+        }
+
+        // After fraction-free Gauss-Jordan every pivot equals the last one, d, so each free column f gives the vector
+        // with d in position f and -a[i][f] in the position of pivot i
+        BigInteger[][] basis = new BigInteger[cols - rank][];
+        int k = 0;
+        boolean[] isPivot = new boolean[cols];
+        for(int i=0; i<rank; i++) {
+            isPivot[pivotColumns[i]] = true;
+        }
+        for(int f=0; f<cols; f++) {
+            if(isPivot[f]) {
+                continue;
+            }
+            BigInteger[] x = new BigInteger[cols];
+            Arrays.fill(x, BigInteger.ZERO);
+            x[f] = previous;
+            for(int i=0; i<rank; i++) {
+                x[pivotColumns[i]] = a[i][f].negate();
+            }
+            basis[k++] = normalize(x);
+        }
+        return basis;
+    }
+
+    private static long[][] nullspaceLong(long[][] matrix) {
+        int rows = matrix.length;
+        int cols = rows == 0 ? 0 : matrix[0].length;
+        long[][] a = new long[rows][];
+        for(int i=0; i<rows; i++) {
+            a[i] = matrix[i].clone();
+        }
+
+        int[] pivotColumns = new int[Math.min(rows, cols)];
+        int rank = 0;
+        long previous = 1;
+        for(int c=0; c<cols && rank<rows; c++) {
+            int p = rank;
+            while(p < rows && a[p][c] == 0) {
+                p++;
+            }
+            if(p == rows) {
+                continue;
+            }
+            long[] swap = a[p];
+            a[p] = a[rank];
+            a[rank] = swap;
+
+            long pivot = a[rank][c];
+            long[] pivotRow = a[rank];
+            for(int i=0; i<rows; i++) {
+                long factor = a[i][c];
+                if(i == rank) {
+                    continue;
+                }
+                long[] row = a[i];
+                for(int j=0; j<cols; j++) {
+                    if(j != c) {
+                        row[j] = Math.subtractExact(Math.multiplyExact(pivot, row[j]), Math.multiplyExact(factor, pivotRow[j])) / previous;
+                    }
+                }
+                row[c] = 0;
+            }
+            previous = pivot;
+            pivotColumns[rank++] = c;
+        }
+
+        long[][] basis = new long[cols - rank][];
+        int k = 0;
+        boolean[] isPivot = new boolean[cols];
+        for(int i=0; i<rank; i++) {
+            isPivot[pivotColumns[i]] = true;
+        }
+        for(int f=0; f<cols; f++) {
+            if(isPivot[f]) {
+                continue;
+            }
+            long[] x = new long[cols];
+            x[f] = previous;
+            for(int i=0; i<rank; i++) {
+                x[pivotColumns[i]] = Math.negateExact(a[i][f]);
+            }
+            basis[k++] = normalize(x);
+        }
+        return basis;
+    }
+
+    // Divide out the common factor and make the first non-zero entry positive
+    private static long[] normalize(long[] x) {
+        long gcd = 0;
+        int sign = 0;
+        for(long v : x) {
+            gcd = Rational.gcd(gcd, Math.absExact(v));
+            if(sign == 0 && v != 0) {
+                sign = Long.signum(v);
+            }
+        }
+        if(gcd > 1 || sign < 0) {
+            for(int i=0; i<x.length; i++) {
+                x[i] = x[i] / gcd * sign;
+            }
+        }
+        return x;
+    }
+
+    private static BigInteger[] normalize(BigInteger[] x) {
+        BigInteger gcd = BigInteger.ZERO;
+        int sign = 0;
+        for(BigInteger v : x) {
+            gcd = gcd.gcd(v);
+            if(sign == 0 && v.signum() != 0) {
+                sign = v.signum();
+            }
+        }
+        if(gcd.signum() != 0) {
+            BigInteger divisor = sign < 0 ? gcd.negate() : gcd;
+            for(int i=0; i<x.length; i++) {
+                x[i] = x[i].divide(divisor);
+            }
+        }
+        return x;
+    }
+
+    private static BigInteger[][] toBig(long[][] matrix) {
+        BigInteger[][] big = new BigInteger[matrix.length][];
+        for(int i=0; i<matrix.length; i++) {
+            big[i] = new BigInteger[matrix[i].length];
+            for(int j=0; j<matrix[i].length; j++) {
+                big[i][j] = BigInteger.valueOf(matrix[i][j]);
+            }
+        }
+        return big;
+    }
+}
@@ -0,0 +1,310 @@
+package io.github.monomer.Chem.Core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A process-wide registry of the chemical elements. The periodic table is loaded once from the classpath the first
+ * time it is needed, from the binary form compiled at build time (falling back to parsing PeriodicTable.csv), after
+ * which every lookup by symbol, name, or atomic number is a constant-time array or hash access returning a shared,
+ * immutable Element.
+ *
+ * @author Elon Litman
+ * @version 1.7
+ * @see Element
+ * @see ElementColumns
+ * @see Compound
+ */
+public final class PeriodicTable {
+
+    private static final String RESOURCE = "PeriodicTable.csv";
+
+    // Compiled from the CSV by the compilePeriodicTable Gradle task
+    private static final String BINARY_RESOURCE = "PeriodicTable.bin";
+
+    // Isotope masses and natural abundances, for the elements that mass spectrometry commonly deals with
+    private static final String ISOTOPE_RESOURCE = "Isotopes.csv";
+
+    private static final int BINARY_MAGIC = 0x4D505442;
+
+    // Column types of the compiled table: f = float, s = UTF string, b = boolean, - = not stored (the discovery year)
+    static final String BINARY_SCHEMA = "fssffffffsbbbbbssssffffs-fffsf";
+
+    private final Element[] byAtomicNumber;
+
+    private final Map<String, Element> bySymbol;
+
+    private final Map<String, Element> byName;
+
+    private final List<Element> elements;
+
+    private PeriodicTable(List<Element> elements) {
+        int maxAtomicNumber = 0;
+        for(Element e : elements) {
+            maxAtomicNumber = Math.max(maxAtomicNumber, (int) e.atomicNumber);
+        }
+
+        this.byAtomicNumber = new Element[maxAtomicNumber + 1];
+        this.bySymbol = new HashMap<>(elements.size() * 2);
+        this.byName = new HashMap<>(elements.size() * 2);
+        for(Element e : elements) {
+            byAtomicNumber[(int) e.atomicNumber] = e;
+            bySymbol.put(e.elementSymbol.toUpperCase(Locale.ROOT), e);
+            byName.put(e.elementName.toUpperCase(Locale.ROOT), e);
+        }
+        this.elements = Collections.unmodifiableList(elements);
+    }
+
+    // Initialization-on-demand holder: the table is loaded exactly once, on first use, without locking afterwards
+    private static final class Holder {
+        static final PeriodicTable INSTANCE = load();
+    }
+
+    // The columnar view is built separately, so plain Element lookups never pay for it
+    private static final class ColumnsHolder {
+        static final ElementColumns INSTANCE = new ElementColumns(elements(), maxAtomicNumber(), IsotopesHolder.MONOISOTOPIC_MASSES);
+    }
+
+    private static final class IsotopesHolder {
+        static final Isotope[][] ISOTOPES = loadIsotopes();
+        static final double[] MONOISOTOPIC_MASSES = monoisotopicMasses(ISOTOPES);
+    }
+
+    private static PeriodicTable load() {
+        try (InputStream in = PeriodicTable.class.getResourceAsStream(BINARY_RESOURCE)) {
+            if(in != null) {
+                return loadBinary(in);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read " + BINARY_RESOURCE, e);
+        }
+        // Not built by Gradle (e.g. running straight from an IDE): fall back to parsing the CSV
+        return loadCsv();
+    }
+
+    private static PeriodicTable loadBinary(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+        if(data.readInt() != BINARY_MAGIC || !data.readUTF().equals(BINARY_SCHEMA)) {
+            throw new IllegalStateException(BINARY_RESOURCE + " does not match this version of PeriodicTable; rebuild it with compilePeriodicTable");
+        }
+        int count = data.readInt();
+        List<Element> elements = new ArrayList<>(count);
+        for(int i=0; i<count; i++) {
+            elements.add(new Element(data));
+        }
+        return new PeriodicTable(elements);
+    }
+
+    private static PeriodicTable loadCsv() {
+        try (InputStream in = PeriodicTable.class.getResourceAsStream(RESOURCE)) {
+            if(in == null) {
+                throw new IllegalStateException("Could not find " + RESOURCE + " on the classpath");
+            }
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            List<Element> elements = new ArrayList<>(128);
+
+            // Skip the header row
+            String line = reader.readLine();
+            while ((line = reader.readLine()) != null) {
+                if(!line.isBlank()) {
+                    String[] columns = splitRow(line);
+                    // Drop the leading index column
+                    elements.add(new Element(Arrays.copyOfRange(columns, 1, columns.length)));
+                }
+            }
+            return new PeriodicTable(elements);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read " + RESOURCE, e);
+        }
+    }
+
+    private static Isotope[][] loadIsotopes() {
+        List<List<Isotope>> byElement = new ArrayList<>(Collections.nCopies(maxAtomicNumber() + 1, null));
+        try (InputStream in = PeriodicTable.class.getResourceAsStream(ISOTOPE_RESOURCE)) {
+            if(in == null) {
+                throw new IllegalStateException("Could not find " + ISOTOPE_RESOURCE + " on the classpath");
+            }
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+
+            // Skip the header row
+            String line = reader.readLine();
+            while ((line = reader.readLine()) != null) {
+                if(!line.isBlank()) {
+                    String[] columns = splitRow(line);
+                    int z = (int) lookup(columns[0]).atomicNumber;
+                    if(byElement.get(z) == null) {
+                        byElement.set(z, new ArrayList<>(4));
+                    }
+                    byElement.get(z).add(new Isotope(z, Integer.parseInt(columns[1]), Double.parseDouble(columns[2]), Double.parseDouble(columns[3])));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read " + ISOTOPE_RESOURCE, e);
+        }
+
+        Isotope[][] isotopes = new Isotope[byElement.size()][];
+        for(int z=0; z<isotopes.length; z++) {
+            isotopes[z] = byElement.get(z) == null ? new Isotope[0] : byElement.get(z).toArray(new Isotope[0]);
+        }
+        return isotopes;
+    }
+
+    // The monoisotopic mass of an element is the exact mass of its most abundant isotope
+    private static double[] monoisotopicMasses(Isotope[][] isotopes) {
+        double[] masses = new double[isotopes.length];
+        Arrays.fill(masses, Double.NaN);
+        for(int z=0; z<isotopes.length; z++) {
+            double abundance = 0;
+            for(Isotope isotope : isotopes[z]) {
+                if(isotope.abundance > abundance) {
+                    abundance = isotope.abundance;
+                    masses[z] = isotope.mass;
+                }
+            }
+        }
+        return masses;
+    }
+
+    /**
+     * Splits a CSV row on commas, keeping quoted fields (e.g. discoverers such as "Gahn, Scheele") intact.
+     */
+    private static String[] splitRow(String row) {
+        List<String> columns = new ArrayList<>(32);
+        StringBuilder column = new StringBuilder();
+        boolean quoted = false;
+        for(int i=0; i<row.length(); i++) {
+            char c = row.charAt(i);
+            if(c == '"') {
+                quoted = !quoted;
+            } else if(c == ',' && !quoted) {
+                columns.add(column.toString().strip());
+                column.setLength(0);
+            } else {
+                column.append(c);
+            }
+        }
+        columns.add(column.toString().strip());
+        return columns.toArray(new String[0]);
+    }
+
+    private static PeriodicTable instance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * A method that finds an Element by its symbol or by its name, ignoring case (e.g. "C", "c", or "Carbon").
+     *
+     * @param symbolOrName The symbol or name of the element
+     * @return The shared Element instance
+     * @throws IllegalArgumentException If no such element exists
+     */
+    public static Element lookup(String symbolOrName) {
+        String key = symbolOrName.strip().toUpperCase(Locale.ROOT);
+        Element e = instance().bySymbol.get(key);
+        if(e == null) {
+            e = instance().byName.get(key);
+        }
+        if(e == null) {
+            throw new IllegalArgumentException("Unknown element: " + symbolOrName);
+        }
+        return e;
+    }
+
+    /**
+     * A method that finds an Element by its symbol, ignoring case.
+     *
+     * @param symbol The symbol of the element (e.g. "Na")
+     * @return The shared Element instance, or null if there is no element with that symbol
+     */
+    public static Element bySymbol(String symbol) {
+        return instance().bySymbol.get(symbol.toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * A method that finds an Element by its name, ignoring case.
+     *
+     * @param name The name of the element (e.g. "Sodium")
+     * @return The shared Element instance, or null if there is no element with that name
+     */
+    public static Element byName(String name) {
+        return instance().byName.get(name.toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * A method that finds an Element by its atomic number.
+     *
+     * @param atomicNumber The atomic number (Z) of the element
+     * @return The shared Element instance
+     * @throws IllegalArgumentException If there is no element with that atomic number
+     */
+    public static Element byAtomicNumber(int atomicNumber) {
+        Element[] table = instance().byAtomicNumber;
+        if(atomicNumber <= 0 || atomicNumber >= table.length || table[atomicNumber] == null) {
+            throw new IllegalArgumentException("Unknown atomic number: " + atomicNumber);
+        }
+        return table[atomicNumber];
+    }
+
+    /**
+     * @return The highest atomic number in the table
+     */
+    public static int maxAtomicNumber() {
+        return instance().byAtomicNumber.length - 1;
+    }
+
+    /**
+     * @return Every Element in order of increasing atomic number
+     */
+    public static List<Element> elements() {
+        return instance().elements;
+    }
+
+    /**
+     * @return The shared columnar view of the table for bulk property queries
+     */
+    public static ElementColumns columns() {
+        return ColumnsHolder.INSTANCE;
+    }
+
+    /**
+     * A method that obtains the monoisotopic mass of an element, i.e. the exact mass of its most abundant isotope, as
+     * used for high-resolution mass spectrometry.
+     *
+     * @param atomicNumber The atomic number (Z) of the element
+     * @return The monoisotopic mass in Da, or NaN if no isotope data is available for the element
+     */
+    public static double monoisotopicMass(int atomicNumber) {
+        double[] masses = IsotopesHolder.MONOISOTOPIC_MASSES;
+        if(atomicNumber <= 0 || atomicNumber >= masses.length) {
+            throw new IllegalArgumentException("Unknown atomic number: " + atomicNumber);
+        }
+        return masses[atomicNumber];
+    }
+
+    /**
+     * A method that lists the naturally occurring isotopes of an element, lightest first.
+     *
+     * @param atomicNumber The atomic number (Z) of the element
+     * @return The isotopes, or an empty list if no isotope data is available for the element
+     */
+    public static List<Isotope> isotopes(int atomicNumber) {
+        Isotope[][] isotopes = IsotopesHolder.ISOTOPES;
+        if(atomicNumber <= 0 || atomicNumber >= isotopes.length) {
+            throw new IllegalArgumentException("Unknown atomic number: " + atomicNumber);
+        }
+        return List.of(isotopes[atomicNumber]);
+    }
+}
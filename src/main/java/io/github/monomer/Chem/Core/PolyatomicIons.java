@@ -0,0 +1,335 @@
+package io.github.monomer.Chem.Core;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A compiled dictionary of polyatomic ions, e.g. SO4 or NH4, that recognizes every ion in a formula in a single pass.
+ * The ions are compiled into an Aho-Corasick automaton, so matching costs one table lookup per character no matter how
+ * many ions the dictionary holds. Of overlapping matches the leftmost longest wins (HSO4 over SO4), and a match only
+ * counts if it ends on an element boundary, so ClO is not found in ClO4 nor CN in CNa.
+ *
+ * <pre>{@code
+ * PolyatomicIons ions = PolyatomicIons.common().plus("C2O4", "SiO3");
+ * int[] counts = ions.countsOf("Fe2(SO4)3");    // 3 at the index of SO4
+ * }</pre>
+ *
+ * Dictionaries are immutable and thread-safe.
+ *
+ * @author Elon Litman
+ * @version 1.7
+ * @see EquationBalancerUtil
+ */
+public final class PolyatomicIons {
+
+    // Formulas are matched character by character; anything outside ASCII sends the automaton back to the root
+    private static final int ALPHABET = 128;
+
+    private static final class CommonHolder {
+        static final PolyatomicIons COMMON = of("NH4", "C2H3O2", "HCO3", "HSO4", "ClO", "ClO3", "ClO2", "OCN", "CN",
+                "H2PO4", "OH", "NO3", "NO2", "ClO4", "MnO4", "SCN", "CO3", "CrO4", "Cr2O7", "HPO4", "SO4", "SO3", "S2O3",
+                "BO3", "PO4");
+    }
+
+    private final String[] ions;
+
+    // The automaton: transitions[node * ALPHABET + c], with failure transitions already folded in
+    private final int[] transitions;
+
+    // The ion ending at each node, or -1
+    private final int[] ionAt;
+
+    // The nearest proper suffix of each node at which an ion ends, or 0 for none
+    private final int[] outputLink;
+
+    private PolyatomicIons(String[] ions) {
+        this.ions = ions;
+
+        int capacity = 1;
+        for(String ion : ions) {
+            capacity += ion.length();
+        }
+        int[] transitions = new int[capacity * ALPHABET];
+        int[] ionAt = new int[capacity];
+        Arrays.fill(ionAt, -1);
+        int nodes = 1;
+
+        // The trie
+        for(int i=0; i<ions.length; i++) {
+            int node = 0;
+            for(int j=0; j<ions[i].length(); j++) {
+                int edge = node * ALPHABET + ions[i].charAt(j);
+                if(transitions[edge] == 0) {
+                    transitions[edge] = nodes++;
+                }
+                node = transitions[edge];
+            }
+            ionAt[node] = i;
+        }
+
+        // Failure links, breadth first, turning the trie into a complete automaton
+        int[] fail = new int[nodes];
+        int[] outputLink = new int[nodes];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for(int c=0; c<ALPHABET; c++) {
+            if(transitions[c] != 0) {
+                queue.add(transitions[c]);
+            }
+        }
+        while(!queue.isEmpty()) {
+            int node = queue.poll();
+            for(int c=0; c<ALPHABET; c++) {
+                int edge = node * ALPHABET + c;
+                int fallback = transitions[fail[node] * ALPHABET + c];
+                if(transitions[edge] == 0) {
+                    transitions[edge] = fallback;
+                } else {
+                    int child = transitions[edge];
+                    fail[child] = fallback;
+                    outputLink[child] = ionAt[fallback] >= 0 ? fallback : outputLink[fallback];
+                    queue.add(child);
+                }
+            }
+        }
+
+        this.transitions = Arrays.copyOf(transitions, nodes * ALPHABET);
+        this.ionAt = Arrays.copyOf(ionAt, nodes);
+        this.outputLink = outputLink;
+    }
+
+    /**
+     * @return The 25 common polyatomic ions: NH4, C2H3O2, HCO3, HSO4, ClO, ClO3, ClO2, OCN, CN, H2PO4, OH, NO3, NO2,
+     * ClO4, MnO4, SCN, CO3, CrO4, Cr2O7, HPO4, SO4, SO3, S2O3, BO3 and PO4
+     */
+    public static PolyatomicIons common() {
+        return CommonHolder.COMMON;
+    }
+
+    /**
+     * A method that compiles a dictionary of ions.
+     *
+     * @param ions The ions, as uncharged formulas of element symbols and counts, e.g. "SO4"
+     * @return The compiled dictionary
+     * @throws IllegalArgumentException If an ion is not a plain formula of at least two atoms
+     */
+    public static PolyatomicIons of(String... ions) {
+        return of(Arrays.asList(ions));
+    }
+
+    /**
+     * A method that compiles a dictionary of ions. Duplicates are ignored.
+     *
+     * @param ions The ions, as uncharged formulas of element symbols and counts, e.g. "SO4"
+     * @return The compiled dictionary
+     * @throws IllegalArgumentException If an ion is not a plain formula of at least two atoms
+     */
+    public static PolyatomicIons of(Collection<String> ions) {
+        List<String> distinct = new ArrayList<>(ions.size());
+        for(String ion : ions) {
+            validate(ion);
+            if(!distinct.contains(ion)) {
+                distinct.add(ion);
+            }
+        }
+        return new PolyatomicIons(distinct.toArray(new String[0]));
+    }
+
+    /**
+     * A method that extends this dictionary.
+     *
+     * @param ions The ions to add
+     * @return A new dictionary with this one's ions followed by the new ones, so existing indices are kept
+     * @throws IllegalArgumentException If an ion is not a plain formula of at least two atoms
+     */
+    public PolyatomicIons plus(String... ions) {
+        List<String> all = new ArrayList<>(this.ions.length + ions.length);
+        Collections.addAll(all, this.ions);
+        Collections.addAll(all, ions);
+        return of(all);
+    }
+
+    /**
+     * @return The number of ions
+     */
+    public int size() {
+        return ions.length;
+    }
+
+    /**
+     * @param index An ion, between 0 and size() - 1
+     * @return Its formula
+     */
+    public String ion(int index) {
+        return ions[index];
+    }
+
+    public List<String> ions() {
+        return List.of(ions);
+    }
+
+    /**
+     * A method that counts the ions in a formula.
+     *
+     * @param formula A formula, e.g. "Fe2(SO4)3"
+     * @return The number of units of each ion, indexed like this dictionary
+     */
+    public int[] countsOf(CharSequence formula) {
+        int[] counts = new int[ions.length];
+        count(formula, counts);
+        return counts;
+    }
+
+    /**
+     * A method that adds the ions in a formula to caller-owned counters, in one pass over the formula. Each ion is
+     * weighted by the counts of the groups around it and by the coefficient of its hydrate part, so Ca3(PO4)2 holds two
+     * PO4 and CuSO4·5H2O one SO4.
+     *
+     * @param formula A formula, e.g. "Fe2(SO4)3"
+     * @param counts The counters, indexed like this dictionary, that the number of units of each ion is added to
+     * @return Whether any ion was found
+     */
+    public boolean count(CharSequence formula, int[] counts) {
+        int length = formula.length();
+        // The longest valid match starting at each position, as (ion + 1), or 0
+        int[] longest = null;
+        int node = 0;
+        for(int i=0; i<length; i++) {
+            char c = formula.charAt(i);
+            node = c < ALPHABET ? transitions[node * ALPHABET + c] : 0;
+            int end = i + 1;
+            if(end < length && continuesElement(formula.charAt(end))) {
+                continue;
+            }
+            for(int v = ionAt[node] >= 0 ? node : outputLink[node]; v != 0; v = outputLink[v]) {
+                int ion = ionAt[v];
+                int start = end - ions[ion].length();
+                if(longest == null) {
+                    longest = new int[length];
+                }
+                if(longest[start] == 0 || ions[longest[start] - 1].length() < ions[ion].length()) {
+                    longest[start] = ion + 1;
+                }
+            }
+        }
+        if(longest == null) {
+            return false;
+        }
+
+        // Leftmost longest, without overlaps
+        int[] multipliers = multipliers(formula);
+        for(int i=0; i<length; ) {
+            if(longest[i] == 0) {
+                i++;
+                continue;
+            }
+            int ion = longest[i] - 1;
+            int end = i + ions[ion].length();
+            counts[ion] = Math.addExact(counts[ion], multipliers[i]);
+            i = end;
+        }
+        return true;
+    }
+
+    // Digits and lowercase letters after a match would extend its last count or symbol
+    private static boolean continuesElement(char c) {
+        return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'z');
+    }
+
+    // For every position, the product of the counts of the groups enclosing it and of the coefficient of its hydrate
+    // part, in two linear passes
+    private static int[] multipliers(CharSequence formula) {
+        int length = formula.length();
+        int[] multipliers = new int[length];
+
+        // Left to right: the coefficient of each part, and the count after each closing bracket (0 for a phase)
+        int[] closingCount = new int[length];
+        int partMultiplier = 1;
+        boolean atPartStart = true;
+        for(int i=0; i<length; i++) {
+            char c = formula.charAt(i);
+            if(atPartStart && c >= '0' && c <= '9') {
+                int j = i;
+                while(j < length && formula.charAt(j) >= '0' && formula.charAt(j) <= '9') {
+                    j++;
+                }
+                partMultiplier = Integer.parseInt(formula, i, j, 10);
+                for(; i<j; i++) {
+                    multipliers[i] = partMultiplier;
+                }
+                i--;
+                atPartStart = false;
+                continue;
+            }
+            if(isPartSeparator(c)) {
+                partMultiplier = 1;
+                atPartStart = true;
+            } else {
+                atPartStart = false;
+            }
+            multipliers[i] = partMultiplier;
+            if(c == '(' && i + 1 < length && formula.charAt(i + 1) >= 'a' && formula.charAt(i + 1) <= 'z') {
+                // A phase such as (aq)
+                while(i + 1 < length && formula.charAt(i) != ')') {
+                    multipliers[++i] = partMultiplier;
+                }
+            } else if(c == ')' || c == ']') {
+                int j = i + 1;
+                while(j < length && formula.charAt(j) >= '0' && formula.charAt(j) <= '9') {
+                    j++;
+                }
+                // After a square bracket, digits followed by a sign are a charge, e.g. [Fe(CN)6]4-
+                boolean charge = c == ']' && j < length && (formula.charAt(j) == '+' || formula.charAt(j) == '-');
+                closingCount[i] = j > i + 1 && !charge ? Integer.parseInt(formula, i + 1, j, 10) : 1;
+            }
+        }
+
+        // Right to left: multiply in the count of every group that is open
+        int[] stack = new int[8];
+        int depth = 0;
+        int product = 1;
+        for(int i=length - 1; i>=0; i--) {
+            char c = formula.charAt(i);
+            if(closingCount[i] > 0) {
+                if(depth == stack.length) {
+                    stack = Arrays.copyOf(stack, depth * 2);
+                }
+                stack[depth++] = closingCount[i];
+                product = Math.multiplyExact(product, closingCount[i]);
+            }
+            multipliers[i] = Math.multiplyExact(multipliers[i], product);
+            if((c == '(' || c == '[') && depth > 0 && !(c == '(' && i + 1 < length && formula.charAt(i + 1) >= 'a' && formula.charAt(i + 1) <= 'z')) {
+                product /= stack[--depth];
+            }
+        }
+        return multipliers;
+    }
+
+    private static boolean isPartSeparator(char c) {
+        return c == '·' || c == '•' || c == '.' || c == '*';
+    }
+
+    private static void validate(String ion) {
+        if(ion == null || ion.isEmpty() || !Character.isUpperCase(ion.charAt(0))) {
+            throw new IllegalArgumentException("An ion must start with an element symbol: " + ion);
+        }
+        for(int i=0; i<ion.length(); i++) {
+            char c = ion.charAt(i);
+            if(!((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9'))) {
+                throw new IllegalArgumentException("An ion may only hold element symbols and counts: " + ion);
+            }
+        }
+        Composition composition = FormulaParser.parse(ion);
+        if(composition.atomCount() < 2) {
+            throw new IllegalArgumentException("An ion needs at least two atoms: " + ion);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "PolyatomicIons" + Arrays.toString(ions);
+    }
+}
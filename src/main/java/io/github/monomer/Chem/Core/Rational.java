@@ -0,0 +1,438 @@
+package io.github.monomer.Chem.Core;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+
+/**
+ * An immutable, exact rational number, always in lowest terms with a positive denominator. Values are held in a pair of
+ * longs and every operation is overflow-checked; a result that does not fit is transparently promoted to BigInteger,
+ * so arithmetic is never silently wrong. Greatest common divisors use Stein's binary algorithm.
+ *
+ * For sum-of-products loops, {@link Accumulator} keeps a running total without allocating a Rational per step.
+ *
+ * @author Elon Litman
+ * @version 1.7
+ * @see Fraction
+ * @see NullspaceUtil
+ */
+public final class Rational extends Number implements Comparable<Rational> {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final Rational ZERO = new Rational(0, 1);
+
+    public static final Rational ONE = new Rational(1, 1);
+
+    private final long numerator;
+
+    private final long denominator;
+
+    // Non-null only when the value does not fit in longs
+    private final BigInteger bigNumerator;
+
+    private final BigInteger bigDenominator;
+
+    private Rational(long numerator, long denominator) {
+        this.numerator = numerator;
+        this.denominator = denominator;
+        this.bigNumerator = null;
+        this.bigDenominator = null;
+    }
+
+    private Rational(BigInteger numerator, BigInteger denominator) {
+        this.numerator = 0;
+        this.denominator = 1;
+        this.bigNumerator = numerator;
+        this.bigDenominator = denominator;
+    }
+
+    /**
+     * @param value An integer
+     * @return The Rational value/1
+     */
+    public static Rational valueOf(long value) {
+        return value == 0 ? ZERO : value == 1 ? ONE : new Rational(value, 1);
+    }
+
+    /**
+     * @param numerator The numerator
+     * @param denominator The denominator, which must not be 0
+     * @return The Rational numerator/denominator in lowest terms
+     */
+    public static Rational of(long numerator, long denominator) {
+        if(denominator == 0) {
+            throw new ArithmeticException("Zero denominator");
+        }
+        try {
+            return reduce(numerator, denominator);
+        } catch (ArithmeticException overflow) {
+            return reduce(BigInteger.valueOf(numerator), BigInteger.valueOf(denominator));
+        }
+    }
+
+    /**
+     * @param numerator The numerator
+     * @param denominator The denominator, which must not be 0
+     * @return The Rational numerator/denominator in lowest terms
+     */
+    public static Rational of(BigInteger numerator, BigInteger denominator) {
+        if(denominator.signum() == 0) {
+            throw new ArithmeticException("Zero denominator");
+        }
+        return reduce(numerator, denominator);
+    }
+
+    private static Rational reduce(long numerator, long denominator) {
+        if(denominator < 0) {
+            numerator = Math.negateExact(numerator);
+            denominator = Math.negateExact(denominator);
+        }
+        long gcd = gcd(Math.absExact(numerator), denominator);
+        if(gcd > 1) {
+            numerator /= gcd;
+            denominator /= gcd;
+        }
+        return numerator == 0 ? ZERO : new Rational(numerator, denominator);
+    }
+
+    private static Rational reduce(BigInteger numerator, BigInteger denominator) {
+        if(denominator.signum() < 0) {
+            numerator = numerator.negate();
+            denominator = denominator.negate();
+        }
+        BigInteger gcd = numerator.gcd(denominator);
+        if(!gcd.equals(BigInteger.ONE)) {
+            numerator = numerator.divide(gcd);
+            denominator = denominator.divide(gcd);
+        }
+        // Demote back to longs when the value fits again
+        if(numerator.bitLength() < Long.SIZE && denominator.bitLength() < Long.SIZE) {
+            return numerator.signum() == 0 ? ZERO : new Rational(numerator.longValue(), denominator.longValue());
+        }
+        return new Rational(numerator, denominator);
+    }
+
+    /**
+     * A method that computes the greatest common divisor of two non-negative longs with Stein's binary algorithm,
+     * which uses only shifts and subtractions.
+     *
+     * @param a The first number, at least 0
+     * @param b The second number, at least 0
+     * @return The greatest common divisor, or 0 if both are 0
+     */
+    public static long gcd(long a, long b) {
+        if(a == 0) return b;
+        if(b == 0) return a;
+        int shift = Long.numberOfTrailingZeros(a | b);
+        a >>>= Long.numberOfTrailingZeros(a);
+        while(b != 0) {
+            b >>>= Long.numberOfTrailingZeros(b);
+            if(a > b) {
+                long t = a;
+                a = b;
+                b = t;
+            }
+            b -= a;
+        }
+        return a << shift;
+    }
+
+    private boolean isBig() {
+        return bigNumerator != null;
+    }
+
+    public BigInteger numerator() {
+        return isBig() ? bigNumerator : BigInteger.valueOf(numerator);
+    }
+
+    public BigInteger denominator() {
+        return isBig() ? bigDenominator : BigInteger.valueOf(denominator);
+    }
+
+    /**
+     * @return The numerator
+     * @throws ArithmeticException If the numerator does not fit in a long
+     */
+    public long longNumerator() {
+        return isBig() ? bigNumerator.longValueExact() : numerator;
+    }
+
+    /**
+     * @return The denominator
+     * @throws ArithmeticException If the denominator does not fit in a long
+     */
+    public long longDenominator() {
+        return isBig() ? bigDenominator.longValueExact() : denominator;
+    }
+
+    public int signum() {
+        return isBig() ? bigNumerator.signum() : Long.signum(numerator);
+    }
+
+    public boolean isZero() {
+        return signum() == 0;
+    }
+
+    public boolean isInteger() {
+        return isBig() ? bigDenominator.equals(BigInteger.ONE) : denominator == 1;
+    }
+
+    public Rational add(Rational other) {
+        if(!isBig() && !other.isBig()) {
+            try {
+                if(denominator == other.denominator) {
+                    return reduce(Math.addExact(numerator, other.numerator), denominator);
+                }
+                return reduce(Math.addExact(Math.multiplyExact(numerator, other.denominator), Math.multiplyExact(other.numerator, denominator)), Math.multiplyExact(denominator, other.denominator));
+            } catch (ArithmeticException overflow) {
+                // Fall through to BigInteger
+            }
+        }
+        return reduce(numerator().multiply(other.denominator()).add(other.numerator().multiply(denominator())), denominator().multiply(other.denominator()));
+    }
+
+    public Rational subtract(Rational other) {
+        return add(other.negate());
+    }
+
+    public Rational multiply(Rational other) {
+        if(!isBig() && !other.isBig()) {
+            try {
+                if(numerator == 0 || other.numerator == 0) {
+                    return ZERO;
+                }
+                // Cross-cancel first so the products stay small
+                long g1 = gcd(Math.absExact(numerator), other.denominator);
+                long g2 = gcd(Math.absExact(other.numerator), denominator);
+                return new Rational(Math.multiplyExact(numerator / g1, other.numerator / g2), Math.multiplyExact(denominator / g2, other.denominator / g1));
+            } catch (ArithmeticException overflow) {
+                // Fall through to BigInteger
+            }
+        }
+        return reduce(numerator().multiply(other.numerator()), denominator().multiply(other.denominator()));
+    }
+
+    public Rational multiply(long factor) {
+        return multiply(valueOf(factor));
+    }
+
+    public Rational divide(Rational other) {
+        return multiply(other.reciprocal());
+    }
+
+    public Rational negate() {
+        if(!isBig() && numerator != Long.MIN_VALUE) {
+            return numerator == 0 ? ZERO : new Rational(-numerator, denominator);
+        }
+        return reduce(numerator().negate(), denominator());
+    }
+
+    public Rational reciprocal() {
+        if(signum() == 0) {
+            throw new ArithmeticException("Reciprocal of zero");
+        }
+        if(!isBig() && numerator != Long.MIN_VALUE) {
+            return numerator < 0 ? new Rational(-denominator, -numerator) : new Rational(denominator, numerator);
+        }
+        return reduce(denominator(), numerator());
+    }
+
+    public Rational abs() {
+        return signum() < 0 ? negate() : this;
+    }
+
+    @Override
+    public int compareTo(Rational other) {
+        if(!isBig() && !other.isBig()) {
+            try {
+                return Long.compare(Math.multiplyExact(numerator, other.denominator), Math.multiplyExact(other.numerator, denominator));
+            } catch (ArithmeticException overflow) {
+                // Fall through to BigInteger
+            }
+        }
+        return numerator().multiply(other.denominator()).compareTo(other.numerator().multiply(denominator()));
+    }
+
+    @Override
+    public int intValue() {
+        return (int) longValue();
+    }
+
+    /**
+     * @return The value rounded toward zero
+     */
+    @Override
+    public long longValue() {
+        return isBig() ? bigNumerator.divide(bigDenominator).longValue() : numerator / denominator;
+    }
+
+    @Override
+    public float floatValue() {
+        return (float) doubleValue();
+    }
+
+    @Override
+    public double doubleValue() {
+        if(!isBig()) {
+            return (double) numerator / denominator;
+        }
+        return new BigDecimal(bigNumerator).divide(new BigDecimal(bigDenominator), MathContext.DECIMAL64).doubleValue();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Rational rational = (Rational) o;
+        // Both sides are in lowest terms, and promoted only when they do not fit in longs
+        if(isBig() != rational.isBig()) return false;
+        return isBig() ? bigNumerator.equals(rational.bigNumerator) && bigDenominator.equals(rational.bigDenominator)
+                : numerator == rational.numerator && denominator == rational.denominator;
+    }
+
+    @Override
+    public int hashCode() {
+        return isBig() ? 31 * bigNumerator.hashCode() + bigDenominator.hashCode() : 31 * Long.hashCode(numerator) + Long.hashCode(denominator);
+    }
+
+    @Override
+    public String toString() {
+        if(isInteger()) {
+            return isBig() ? bigNumerator.toString() : Long.toString(numerator);
+        }
+        return isBig() ? bigNumerator + "/" + bigDenominator : numerator + "/" + denominator;
+    }
+
+    /**
+     * A mutable running total of rationals, for loops such as dot products that would otherwise allocate a new Rational
+     * for every term. While the total fits in longs, adding to it allocates nothing.
+     */
+    public static final class Accumulator {
+
+        private long numerator;
+
+        private long denominator = 1;
+
+        // Non-null once the total has overflowed longs
+        private BigInteger bigNumerator;
+
+        private BigInteger bigDenominator;
+
+        /**
+         * Clears the total to zero.
+         *
+         * @return This Accumulator
+         */
+        public Accumulator reset() {
+            numerator = 0;
+            denominator = 1;
+            bigNumerator = null;
+            bigDenominator = null;
+            return this;
+        }
+
+        public Accumulator add(Rational value) {
+            if(value.isBig()) {
+                return addBig(value.bigNumerator, value.bigDenominator);
+            }
+            return add(value.numerator, value.denominator);
+        }
+
+        public Accumulator add(long value) {
+            return add(value, 1);
+        }
+
+        /**
+         * Adds the product a * b to the total.
+         *
+         * @param a The first factor
+         * @param b The second factor
+         * @return This Accumulator
+         */
+        public Accumulator addProduct(Rational a, Rational b) {
+            if(!a.isBig() && !b.isBig()) {
+                try {
+                    return add(Math.multiplyExact(a.numerator, b.numerator), Math.multiplyExact(a.denominator, b.denominator));
+                } catch (ArithmeticException overflow) {
+                    // Fall through to BigInteger
+                }
+            }
+            return addBig(a.numerator().multiply(b.numerator()), a.denominator().multiply(b.denominator()));
+        }
+
+        /**
+         * Adds the product a * b to the total.
+         *
+         * @param a An integer factor
+         * @param b The second factor
+         * @return This Accumulator
+         */
+        public Accumulator addProduct(long a, Rational b) {
+            if(!b.isBig()) {
+                try {
+                    return add(Math.multiplyExact(a, b.numerator), b.denominator);
+                } catch (ArithmeticException overflow) {
+                    // Fall through to BigInteger
+                }
+            }
+            return addBig(BigInteger.valueOf(a).multiply(b.numerator()), b.denominator());
+        }
+
+        private Accumulator add(long n, long d) {
+            if(bigNumerator == null) {
+                try {
+                    long newNumerator;
+                    long newDenominator;
+                    if(d == denominator) {
+                        newNumerator = Math.addExact(numerator, n);
+                        newDenominator = d;
+                    } else {
+                        newNumerator = Math.addExact(Math.multiplyExact(numerator, d), Math.multiplyExact(n, denominator));
+                        newDenominator = Math.multiplyExact(denominator, d);
+                    }
+                    long gcd = gcd(Math.absExact(newNumerator), newDenominator);
+                    if(gcd > 1) {
+                        newNumerator /= gcd;
+                        newDenominator /= gcd;
+                    }
+                    numerator = newNumerator;
+                    denominator = newDenominator;
+                    return this;
+                } catch (ArithmeticException overflow) {
+                    // Fall through to BigInteger
+                }
+            }
+            return addBig(BigInteger.valueOf(n), BigInteger.valueOf(d));
+        }
+
+        private Accumulator addBig(BigInteger n, BigInteger d) {
+            if(bigNumerator == null) {
+                bigNumerator = BigInteger.valueOf(numerator);
+                bigDenominator = BigInteger.valueOf(denominator);
+            }
+            BigInteger newNumerator = bigNumerator.multiply(d).add(n.multiply(bigDenominator));
+            BigInteger newDenominator = bigDenominator.multiply(d);
+            BigInteger gcd = newNumerator.gcd(newDenominator);
+            if(gcd.signum() != 0 && !gcd.equals(BigInteger.ONE)) {
+                newNumerator = newNumerator.divide(gcd);
+                newDenominator = newDenominator.divide(gcd);
+            }
+            bigNumerator = newNumerator;
+            bigDenominator = newDenominator;
+            return this;
+        }
+
+        /**
+         * @return The total as an immutable Rational
+         */
+        public Rational toRational() {
+            return bigNumerator == null ? Rational.of(numerator, denominator) : Rational.of(bigNumerator, bigDenominator);
+        }
+
+        @Override
+        public String toString() {
+            return toRational().toString();
+        }
+    }
+}
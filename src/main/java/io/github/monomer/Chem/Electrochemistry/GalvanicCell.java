@@ -19,30 +19,30 @@ import java.util.Objects;
 public class GalvanicCell {
 
     public final Map<Element, Float[]> REDOX_POTENTIALS = new HashMap<>() {{
-        put(new Element("Ba"), new Float[]{-2.90f, 2f});
-        put(new Element("Ca"), new Float[]{-2.87f, 2f});
-        put(new Element("Na"), new Float[]{-2.71f, 2f});
-        put(new Element("Mg"), new Float[]{-2.37f, 2f});
-        put(new Element("Al"), new Float[]{-1.66f, 3f});
-        put(new Element("Zn"), new Float[]{-0.76f, 2f});
-        put(new Element("Fe"), new Float[]{-0.44f, 2f});
-        put(new Element("Cd"), new Float[]{-0.403f, 2f});
-        put(new Element("Co"), new Float[]{-0.277f, 2f});
-        put(new Element("Ni"), new Float[]{-0.25f, 2f});
-        put(new Element("Sn"), new Float[]{-0.136f, 2f});
-        put(new Element("Pb"), new Float[]{-0.13f, 2f});
+        put(Element.of("Ba"), new Float[]{-2.90f, 2f});
+        put(Element.of("Ca"), new Float[]{-2.87f, 2f});
+        put(Element.of("Na"), new Float[]{-2.71f, 2f});
+        put(Element.of("Mg"), new Float[]{-2.37f, 2f});
+        put(Element.of("Al"), new Float[]{-1.66f, 3f});
+        put(Element.of("Zn"), new Float[]{-0.76f, 2f});
+        put(Element.of("Fe"), new Float[]{-0.44f, 2f});
+        put(Element.of("Cd"), new Float[]{-0.403f, 2f});
+        put(Element.of("Co"), new Float[]{-0.277f, 2f});
+        put(Element.of("Ni"), new Float[]{-0.25f, 2f});
+        put(Element.of("Sn"), new Float[]{-0.136f, 2f});
+        put(Element.of("Pb"), new Float[]{-0.13f, 2f});
         // For H2
-        put(new Element("H"), new Float[]{0f, 2f});
-        put(new Element("Cu"), new Float[]{0.34f, 2f});
-        put(new Element("Ag"), new Float[]{0.80f, 1f});
+        put(Element.of("H"), new Float[]{0f, 2f});
+        put(Element.of("Cu"), new Float[]{0.34f, 2f});
+        put(Element.of("Ag"), new Float[]{0.80f, 1f});
         // For F2
-        put(new Element("F"), new Float[]{2.87f, 2f});
+        put(Element.of("F"), new Float[]{2.87f, 2f});
         // For Cl2
-        put(new Element("Cl"), new Float[]{1.36f, 2f});
+        put(Element.of("Cl"), new Float[]{1.36f, 2f});
         // For Br2
-        put(new Element("Br"), new Float[]{1.09f, 2f});
+        put(Element.of("Br"), new Float[]{1.09f, 2f});
         // For I2
-        put(new Element("I"), new Float[]{0.54f, 2f});
+        put(Element.of("I"), new Float[]{0.54f, 2f});
     }};
 
     public final String[] endings = {"2SO4", "SO4", "2(SO4)3"};
@@ -58,8 +58,8 @@ public class GalvanicCell {
     public float cellPotential;
 
     public GalvanicCell(String firstElectrode, String secondElectrode) throws IOException {
-        Element e1 = new Element(firstElectrode.replaceAll("\\d", ""));
-        Element e2 = new Element(secondElectrode.replaceAll("\\d", ""));
+        Element e1 = Element.of(firstElectrode.replaceAll("\\d", ""));
+        Element e2 = Element.of(secondElectrode.replaceAll("\\d", ""));
 
         if(REDOX_POTENTIALS.get(e1)[0] > REDOX_POTENTIALS.get(e2)[0]) {
             this.anode = e2;
@@ -87,7 +87,7 @@ public class GalvanicCell {
     public static HashMap<String, Float> electrolysis(String elementSymbol, int moles, HashMap<String, Float> keywordArgsAndValues) throws IOException {
         assert keywordArgsAndValues.keySet().size() == 2: "Expecting two args from either grams=, amps=, or seconds=";
 
-        Element e = new Element(elementSymbol);
+        Element e = Element.of(elementSymbol);
 
         if((keywordArgsAndValues.containsKey("seconds") || keywordArgsAndValues.containsKey("sec") || keywordArgsAndValues.containsKey("second") || keywordArgsAndValues.containsKey("Second")) && (keywordArgsAndValues.containsKey("amps") || keywordArgsAndValues.containsKey("amperes") || keywordArgsAndValues.containsKey("Amperes"))) {
             return new HashMap<String, Float>() {{
@@ -0,0 +1,163 @@
+package io.github.monomer.Chem.Kinetics;
+
+/**
+ * An explicit, adaptive Runge-Kutta integrator: the 5th order Dormand-Prince pair with its embedded 4th order error
+ * estimate. The last stage of each step is the first of the next, so a step costs six evaluations of the right-hand
+ * side. It is the method of choice for non-stiff systems; on stiff ones it is stable only with tiny steps, and
+ * {@link Rosenbrock} should be used instead.
+ *
+ * <pre>{@code
+ * IntegrationStats stats = new DormandPrince(1e-8, 1e-12).integrate(system, 0, y, 10, (t, state) -> { ... });
+ * }</pre>
+ *
+ * @author Elon Litman
+ * @version 1.7
+ * @see Rosenbrock
+ * @see OdeSystem
+ */
+public final class DormandPrince {
+
+    private static final double C2 = 1.0 / 5, C3 = 3.0 / 10, C4 = 4.0 / 5, C5 = 8.0 / 9;
+
+    private static final double A21 = 1.0 / 5;
+    private static final double A31 = 3.0 / 40, A32 = 9.0 / 40;
+    private static final double A41 = 44.0 / 45, A42 = -56.0 / 15, A43 = 32.0 / 9;
+    private static final double A51 = 19372.0 / 6561, A52 = -25360.0 / 2187, A53 = 64448.0 / 6561, A54 = -212.0 / 729;
+    private static final double A61 = 9017.0 / 3168, A62 = -355.0 / 33, A63 = 46732.0 / 5247, A64 = 49.0 / 176, A65 = -5103.0 / 18656;
+    private static final double A71 = 35.0 / 384, A73 = 500.0 / 1113, A74 = 125.0 / 192, A75 = -2187.0 / 6784, A76 = 11.0 / 84;
+
+    // The 5th order weights minus the 4th order ones
+    private static final double E1 = 71.0 / 57600, E3 = -71.0 / 16695, E4 = 71.0 / 1920, E5 = -17253.0 / 339200, E6 = 22.0 / 525, E7 = -1.0 / 40;
+
+    private final double relativeTolerance;
+
+    private final double absoluteTolerance;
+
+    private final long maxSteps;
+
+    /**
+     * Creates an integrator with a relative tolerance of 1e-6 and an absolute tolerance of 1e-10.
+     */
+    public DormandPrince() {
+        this(1e-6, 1e-10);
+    }
+
+    /**
+     * @param relativeTolerance The error allowed per step, relative to each component
+     * @param absoluteTolerance The error allowed per step in components near zero
+     */
+    public DormandPrince(double relativeTolerance, double absoluteTolerance) {
+        this(relativeTolerance, absoluteTolerance, 10_000_000);
+    }
+
+    /**
+     * @param relativeTolerance The error allowed per step, relative to each component
+     * @param absoluteTolerance The error allowed per step in components near zero
+     * @param maxSteps The number of steps, accepted or rejected, after which integration gives up
+     */
+    public DormandPrince(double relativeTolerance, double absoluteTolerance, long maxSteps) {
+        if(!(relativeTolerance > 0) || !(absoluteTolerance > 0) || maxSteps <= 0) {
+            throw new IllegalArgumentException("Tolerances and the step limit must be positive");
+        }
+        this.relativeTolerance = relativeTolerance;
+        this.absoluteTolerance = absoluteTolerance;
+        this.maxSteps = maxSteps;
+    }
+
+    /**
+     * A method that integrates a system from t0 to t1 (which may lie before t0), streaming every accepted step.
+     *
+     * @param system The system
+     * @param t0 The initial time
+     * @param y The initial state; it is overwritten with the state at t1
+     * @param t1 The final time
+     * @param sink Receives the initial state and the state after every accepted step
+     * @return The counters for the run
+     * @throws IllegalStateException If the step size underflows or the step limit is reached, e.g. on a stiff system
+     */
+    public IntegrationStats integrate(OdeSystem system, double t0, double[] y, double t1, TrajectorySink sink) {
+        int n = system.dimension();
+        if(y.length != n) {
+            throw new IllegalArgumentException("Expected a state of length " + n + ", but got " + y.length);
+        }
+        double[] k1 = new double[n], k2 = new double[n], k3 = new double[n], k4 = new double[n], k5 = new double[n], k6 = new double[n], k7 = new double[n];
+        double[] stage = new double[n];
+        double[] yNew = new double[n];
+        double[] error = new double[n];
+
+        double t = t0;
+        double direction = Math.signum(t1 - t0);
+        sink.accept(t, y);
+        system.derivatives(t, y, k1);
+        long evaluations = 1;
+        long accepted = 0;
+        long rejected = 0;
+        if(direction == 0) {
+            return new IntegrationStats(0, 0, evaluations, 0, 0, 0);
+        }
+        double h = StepControl.initialStep(system, t, y, k1, direction, Math.abs(t1 - t0), 5, relativeTolerance, absoluteTolerance, stage, k2);
+        evaluations++;
+        double previousError = 1e-4;
+
+        while((t1 - t) * direction > 0) {
+            if(accepted + rejected >= maxSteps) {
+                throw new IllegalStateException("Gave up at t = " + t + " after " + maxSteps + " steps; the system may be stiff");
+            }
+            if(h < StepControl.minimumStep(t)) {
+                throw new IllegalStateException("Step size underflow at t = " + t);
+            }
+            boolean last = h >= Math.abs(t1 - t);
+            double step = last ? t1 - t : direction * h;
+
+            for(int i=0; i<n; i++) {
+                stage[i] = y[i] + step * A21 * k1[i];
+            }
+            system.derivatives(t + C2 * step, stage, k2);
+            for(int i=0; i<n; i++) {
+                stage[i] = y[i] + step * (A31 * k1[i] + A32 * k2[i]);
+            }
+            system.derivatives(t + C3 * step, stage, k3);
+            for(int i=0; i<n; i++) {
+                stage[i] = y[i] + step * (A41 * k1[i] + A42 * k2[i] + A43 * k3[i]);
+            }
+            system.derivatives(t + C4 * step, stage, k4);
+            for(int i=0; i<n; i++) {
+                stage[i] = y[i] + step * (A51 * k1[i] + A52 * k2[i] + A53 * k3[i] + A54 * k4[i]);
+            }
+            system.derivatives(t + C5 * step, stage, k5);
+            for(int i=0; i<n; i++) {
+                stage[i] = y[i] + step * (A61 * k1[i] + A62 * k2[i] + A63 * k3[i] + A64 * k4[i] + A65 * k5[i]);
+            }
+            system.derivatives(t + step, stage, k6);
+            for(int i=0; i<n; i++) {
+                yNew[i] = y[i] + step * (A71 * k1[i] + A73 * k3[i] + A74 * k4[i] + A75 * k5[i] + A76 * k6[i]);
+            }
+            double tNew = last ? t1 : t + step;
+            system.derivatives(tNew, yNew, k7);
+            evaluations += 6;
+
+            for(int i=0; i<n; i++) {
+                error[i] = step * (E1 * k1[i] + E3 * k3[i] + E4 * k4[i] + E5 * k5[i] + E6 * k6[i] + E7 * k7[i]);
+            }
+            double norm = StepControl.errorNorm(error, y, yNew, relativeTolerance, absoluteTolerance);
+
+            if(norm <= 1) {
+                // PI step control, which keeps the step size from oscillating
+                double factor = norm == 0 ? 10 : 0.9 * Math.pow(norm, -0.7 / 5) * Math.pow(previousError, 0.4 / 5);
+                previousError = Math.max(norm, 1e-4);
+                h = Math.abs(step) * Math.min(10, Math.max(0.2, factor));
+                System.arraycopy(yNew, 0, y, 0, n);
+                double[] swap = k1;
+                k1 = k7;
+                k7 = swap;
+                t = tNew;
+                accepted++;
+                sink.accept(t, y);
+            } else {
+                h = Math.abs(step) * Math.max(0.2, 0.9 * Math.pow(norm, -1.0 / 5));
+                rejected++;
+            }
+        }
+        return new IntegrationStats(accepted, rejected, evaluations, 0, 0, h);
+    }
+}
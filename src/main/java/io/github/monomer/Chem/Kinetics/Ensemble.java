@@ -0,0 +1,208 @@
+package io.github.monomer.Chem.Kinetics;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Runs many independent stochastic trajectories across cores and aggregates them online: the mean and variance of every
+ * species at every grid time are accumulated with Welford's algorithm as the trajectories are produced, so no
+ * trajectory is ever stored. Each trajectory draws from its own SplittableRandom, split from one seed before the run,
+ * so results do not depend on how the work is scheduled.
+ *
+ * <pre>{@code
+ * Ensemble.Statistics stats = new Ensemble(new GibsonBruck(system)).run(x0, 0, 10, 0.1, 10_000, 42L);
+ * double meanA = stats.mean(stats.size() - 1, system.indexOf("A"));
+ * }</pre>
+ *
+ * @author Elon Litman
+ * @version 1.7
+ * @see GibsonBruck
+ * @see TauLeaping
+ */
+public final class Ensemble {
+
+    private final StochasticSimulator simulator;
+
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates an Ensemble on the common pool.
+     *
+     * @param simulator The simulator for each trajectory
+     */
+    public Ensemble(StochasticSimulator simulator) {
+        this(simulator, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param simulator The simulator for each trajectory
+     * @param pool The pool to run on
+     */
+    public Ensemble(StochasticSimulator simulator, ForkJoinPool pool) {
+        this.simulator = simulator;
+        this.pool = pool;
+    }
+
+    /**
+     * A method that simulates an ensemble of trajectories from the same initial state.
+     *
+     * @param initial The initial molecule counts; it is not modified
+     * @param t0 The initial time
+     * @param t1 The final time
+     * @param interval The spacing of the grid the statistics are kept on
+     * @param trajectories The number of trajectories
+     * @param seed The seed all random streams are split from
+     * @return The statistics of every species at every grid time
+     */
+    public Statistics run(double[] initial, double t0, double t1, double interval, int trajectories, long seed) {
+        if(trajectories <= 0) {
+            throw new IllegalArgumentException("Illegal number of trajectories: " + trajectories);
+        }
+        int gridSize = StochasticSimulator.gridSize(t0, t1, interval);
+        int n = simulator.system().dimension();
+        if(initial.length != n) {
+            throw new IllegalArgumentException("Expected a state of length " + n + ", but got " + initial.length);
+        }
+
+        // Split every stream up front and in order, so the streams do not depend on scheduling
+        SplittableRandom root = new SplittableRandom(seed);
+        SplittableRandom[] streams = new SplittableRandom[trajectories];
+        for(int i=0; i<trajectories; i++) {
+            streams[i] = root.split();
+        }
+
+        int chunks = Math.min(trajectories, 4 * pool.getParallelism());
+        return pool.submit(() -> IntStream.range(0, chunks).parallel()
+                .mapToObj(c -> {
+                    Statistics statistics = new Statistics(t0, interval, gridSize, n);
+                    double[] x = new double[n];
+                    for(int i=c * trajectories / chunks; i<(c + 1) * trajectories / chunks; i++) {
+                        System.arraycopy(initial, 0, x, 0, n);
+                        statistics.beginTrajectory();
+                        simulator.simulate(x, t0, t1, interval, statistics::accept, streams[i]);
+                    }
+                    return statistics;
+                })
+                .reduce(Statistics::merge)
+                .orElseThrow()).join();
+    }
+
+    /**
+     * The running mean and variance of every species at every grid time over a set of trajectories.
+     */
+    public static final class Statistics {
+
+        private final double start;
+
+        private final double interval;
+
+        private final int gridSize;
+
+        private final int species;
+
+        private long count;
+
+        // By grid time, then species
+        private final double[] means;
+
+        private final double[] squares;
+
+        // The grid time the trajectory in progress reports next
+        private int next;
+
+        private Statistics(double start, double interval, int gridSize, int species) {
+            this.start = start;
+            this.interval = interval;
+            this.gridSize = gridSize;
+            this.species = species;
+            this.means = new double[gridSize * species];
+            this.squares = new double[gridSize * species];
+        }
+
+        private void beginTrajectory() {
+            count++;
+            next = 0;
+        }
+
+        // Welford's update of one grid time with the trajectory in progress
+        private void accept(double t, double[] x) {
+            int offset = next++ * species;
+            for(int s=0; s<species; s++) {
+                double delta = x[s] - means[offset + s];
+                means[offset + s] += delta / count;
+                squares[offset + s] += delta * (x[s] - means[offset + s]);
+            }
+        }
+
+        // Chan et al.'s pairwise combination of two sets of running moments
+        private Statistics merge(Statistics other) {
+            long total = count + other.count;
+            for(int k=0; k<means.length; k++) {
+                double delta = other.means[k] - means[k];
+                means[k] += delta * other.count / total;
+                squares[k] += other.squares[k] + delta * delta * count * other.count / total;
+            }
+            count = total;
+            return this;
+        }
+
+        /**
+         * @return The number of trajectories
+         */
+        public long count() {
+            return count;
+        }
+
+        /**
+         * @return The number of grid times
+         */
+        public int size() {
+            return gridSize;
+        }
+
+        /**
+         * @param index A grid time, between 0 and size() - 1
+         * @return The time
+         */
+        public double time(int index) {
+            return start + index * interval;
+        }
+
+        /**
+         * @param index A grid time, between 0 and size() - 1
+         * @param species A species index
+         * @return The mean count of the species at that time
+         */
+        public double mean(int index, int species) {
+            return means[index * this.species + species];
+        }
+
+        /**
+         * @param index A grid time, between 0 and size() - 1
+         * @param species A species index
+         * @return The sample variance of the count of the species at that time
+         */
+        public double variance(int index, int species) {
+            return count < 2 ? 0 : squares[index * this.species + species] / (count - 1);
+        }
+
+        /**
+         * @param index A grid time, between 0 and size() - 1
+         * @param species A species index
+         * @return The sample standard deviation of the count of the species at that time
+         */
+        public double standardDeviation(int index, int species) {
+            return Math.sqrt(variance(index, species));
+        }
+
+        @Override
+        public String toString() {
+            return "Statistics{" +
+                    "trajectories=" + count +
+                    ", gridSize=" + gridSize +
+                    ", species=" + species +
+                    '}';
+        }
+    }
+}
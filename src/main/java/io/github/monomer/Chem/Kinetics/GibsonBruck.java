@@ -0,0 +1,229 @@
+package io.github.monomer.Chem.Kinetics;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * An exact stochastic simulator using Gibson and Bruck's next reaction method. Every reaction keeps the absolute time
+ * at which it will next fire, in an indexed priority queue, and a dependency graph records which propensities each
+ * reaction can change. A step fires the earliest reaction, then updates only its dependents, rescaling their pending
+ * times rather than drawing new ones, so it costs O(log R) for R reactions and one random number.
+ *
+ * <pre>{@code
+ * double[] x = new double[system.dimension()];
+ * x[system.indexOf("A")] = 1000;
+ * new GibsonBruck(system).simulate(x, 0, 10, 0.1, sink, new SplittableRandom(42));
+ * }</pre>
+ *
+ * @author Elon Litman
+ * @version 1.7
+ * @see TauLeaping
+ * @see Ensemble
+ */
+public final class GibsonBruck implements StochasticSimulator {
+
+    private final MassActionSystem system;
+
+    // The reactions whose propensity depends on a species that reaction r changes, and r itself
+    private final int[] dependentStart;
+
+    private final int[] dependents;
+
+    /**
+     * Creates a simulator, building the dependency graph of the system's reactions.
+     *
+     * @param system The system, whose rate constants are read as stochastic rate constants
+     */
+    public GibsonBruck(MassActionSystem system) {
+        this.system = system;
+        int n = system.dimension();
+        int m = system.reactionCount();
+
+        // Species -> the reactions it is a reactant of
+        int[] consumerStart = new int[n + 1];
+        for(int a=0; a<system.reactantSpecies.length; a++) {
+            consumerStart[system.reactantSpecies[a] + 1]++;
+        }
+        for(int s=0; s<n; s++) {
+            consumerStart[s + 1] += consumerStart[s];
+        }
+        int[] consumers = new int[system.reactantSpecies.length];
+        int[] next = Arrays.copyOf(consumerStart, n);
+        for(int r=0; r<m; r++) {
+            for(int a=system.reactantStart[r]; a<system.reactantStart[r + 1]; a++) {
+                consumers[next[system.reactantSpecies[a]]++] = r;
+            }
+        }
+
+        int[] start = new int[m + 1];
+        int[] list = new int[Math.max(16, m)];
+        int size = 0;
+        int[] mark = new int[m];
+        Arrays.fill(mark, -1);
+        for(int r=0; r<m; r++) {
+            if(size + 1 > list.length) {
+                list = Arrays.copyOf(list, list.length * 2);
+            }
+            list[size++] = r;
+            mark[r] = r;
+            for(int b=system.changeStart[r]; b<system.changeStart[r + 1]; b++) {
+                int s = system.changeSpecies[b];
+                for(int k=consumerStart[s]; k<consumerStart[s + 1]; k++) {
+                    int dependent = consumers[k];
+                    if(mark[dependent] != r) {
+                        mark[dependent] = r;
+                        if(size == list.length) {
+                            list = Arrays.copyOf(list, list.length * 2);
+                        }
+                        list[size++] = dependent;
+                    }
+                }
+            }
+            start[r + 1] = size;
+        }
+        this.dependentStart = start;
+        this.dependents = Arrays.copyOf(list, size);
+    }
+
+    @Override
+    public MassActionSystem system() {
+        return system;
+    }
+
+    @Override
+    public long simulate(double[] x, double t0, double t1, double interval, TrajectorySink sink, SplittableRandom random) {
+        int gridSize = StochasticSimulator.gridSize(t0, t1, interval);
+        int m = system.reactionCount();
+        double[] propensities = new double[m];
+        IndexedMinHeap queue = new IndexedMinHeap(m);
+        for(int r=0; r<m; r++) {
+            propensities[r] = system.propensity(r, x);
+            queue.set(r, t0 + nextTime(propensities[r], random));
+        }
+
+        double t = t0;
+        int grid = 0;
+        long events = 0;
+        while(true) {
+            int mu = queue.min();
+            double tNext = m == 0 ? Double.POSITIVE_INFINITY : queue.key(mu);
+            // Report the grid times that pass before the next event
+            while(grid < gridSize && t0 + grid * interval < tNext) {
+                sink.accept(Math.min(t0 + grid * interval, t1), x);
+                grid++;
+            }
+            if(grid == gridSize) {
+                return events;
+            }
+
+            t = tNext;
+            for(int b=system.changeStart[mu]; b<system.changeStart[mu + 1]; b++) {
+                x[system.changeSpecies[b]] += system.changeValues[b];
+            }
+            events++;
+
+            for(int d=dependentStart[mu]; d<dependentStart[mu + 1]; d++) {
+                int alpha = dependents[d];
+                double old = propensities[alpha];
+                double updated = system.propensity(alpha, x);
+                propensities[alpha] = updated;
+                if(alpha == mu || old == 0) {
+                    queue.set(alpha, t + nextTime(updated, random));
+                } else if(updated == 0) {
+                    queue.set(alpha, Double.POSITIVE_INFINITY);
+                } else {
+                    // The unused part of the waiting time carries over, rescaled to the new propensity
+                    queue.set(alpha, t + old / updated * (queue.key(alpha) - t));
+                }
+            }
+        }
+    }
+
+    private static double nextTime(double propensity, SplittableRandom random) {
+        return propensity > 0 ? -Math.log(1 - random.nextDouble()) / propensity : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * A binary min-heap of reactions keyed by their next firing time, which also tracks where each reaction sits so
+     * that any key can be changed in O(log R).
+     */
+    private static final class IndexedMinHeap {
+
+        private final int[] heap;
+
+        private final int[] position;
+
+        private final double[] keys;
+
+        private int size;
+
+        IndexedMinHeap(int capacity) {
+            this.heap = new int[capacity];
+            this.position = new int[capacity];
+            this.keys = new double[capacity];
+            Arrays.fill(position, -1);
+        }
+
+        int min() {
+            return size == 0 ? -1 : heap[0];
+        }
+
+        double key(int item) {
+            return keys[item];
+        }
+
+        void set(int item, double key) {
+            if(position[item] < 0) {
+                heap[size] = item;
+                position[item] = size;
+                keys[item] = key;
+                siftUp(size++);
+                return;
+            }
+            double old = keys[item];
+            keys[item] = key;
+            if(key < old) {
+                siftUp(position[item]);
+            } else {
+                siftDown(position[item]);
+            }
+        }
+
+        private void siftUp(int i) {
+            int item = heap[i];
+            while(i > 0) {
+                int parent = (i - 1) >> 1;
+                if(keys[heap[parent]] <= keys[item]) {
+                    break;
+                }
+                move(heap[parent], i);
+                i = parent;
+            }
+            move(item, i);
+        }
+
+        private void siftDown(int i) {
+            int item = heap[i];
+            while(true) {
+                int child = 2 * i + 1;
+                if(child >= size) {
+                    break;
+                }
+                if(child + 1 < size && keys[heap[child + 1]] < keys[heap[child]]) {
+                    child++;
+                }
+                if(keys[heap[child]] >= keys[item]) {
+                    break;
+                }
+                move(heap[child], i);
+                i = child;
+            }
+            move(item, i);
+        }
+
+        private void move(int item, int i) {
+            heap[i] = item;
+            position[item] = i;
+        }
+    }
+}
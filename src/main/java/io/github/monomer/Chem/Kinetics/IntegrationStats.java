@@ -0,0 +1,46 @@
+package io.github.monomer.Chem.Kinetics;
+
+/**
+ * Counters for a completed integration.
+ *
+ * @author Elon Litman
+ * @version 1.7
+ * @see DormandPrince
+ * @see Rosenbrock
+ */
+public final class IntegrationStats {
+
+    public final long acceptedSteps;
+
+    public final long rejectedSteps;
+
+    public final long derivativeEvaluations;
+
+    public final long jacobianEvaluations;
+
+    public final long factorizations;
+
+    // The step size the integrator would have tried next
+    public final double lastStepSize;
+
+    IntegrationStats(long acceptedSteps, long rejectedSteps, long derivativeEvaluations, long jacobianEvaluations, long factorizations, double lastStepSize) {
+        this.acceptedSteps = acceptedSteps;
+        this.rejectedSteps = rejectedSteps;
+        this.derivativeEvaluations = derivativeEvaluations;
+        this.jacobianEvaluations = jacobianEvaluations;
+        this.factorizations = factorizations;
+        this.lastStepSize = lastStepSize;
+    }
+
+    @Override
+    public String toString() {
+        return "IntegrationStats{" +
+                "acceptedSteps=" + acceptedSteps +
+                ", rejectedSteps=" + rejectedSteps +
+                ", derivativeEvaluations=" + derivativeEvaluations +
+                ", jacobianEvaluations=" + jacobianEvaluations +
+                ", factorizations=" + factorizations +
+                ", lastStepSize=" + lastStepSize +
+                '}';
+    }
+}
@@ -0,0 +1,374 @@
+package io.github.monomer.Chem.Kinetics;
+
+import io.github.monomer.Chem.Core.Compound;
+import io.github.monomer.Chem.Reactions.Reaction;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A set of reactions with mass-action rate laws, compiled into flat arrays so that the right-hand side and its sparse
+ * Jacobian are evaluated without allocating. Reaction r proceeds at rate k_r times the product of its reactants'
+ * concentrations, each raised to its stoichiometric coefficient, and changes every species by its net coefficient
+ * times that rate. Species are identified by their formula as written, in order of first appearance.
+ *
+ * <pre>{@code
+ * MassActionSystem system = MassActionSystem.builder()
+ *         .add(new Reaction("N2O4 --> NO2"), 1.0e3)
+ *         .add(new Reaction("NO2 --> N2O4"), 5.0e6)
+ *         .build();
+ * double[] y = new double[system.dimension()];
+ * y[system.indexOf("N2O4")] = 0.1;
+ * new Rosenbrock().integrate(system, 0, y, 1, TrajectorySink.every(1e-3, (t, state) -> { ... }));
+ * }</pre>
+ *
+ * @author Elon Litman
+ * @version 1.7
+ * @see Reaction
+ * @see DormandPrince
+ * @see Rosenbrock
+ */
+public final class MassActionSystem implements StiffOdeSystem {
+
+    private final String[] species;
+
+    private final Map<String, Integer> speciesIndex;
+
+    // The compiled reactions are package-private, for the stochastic simulators
+    final double[] rateConstants;
+
+    // The reactants of reaction r are reactantStart[r] until reactantStart[r + 1], with their orders
+    final int[] reactantStart;
+
+    final int[] reactantSpecies;
+
+    final int[] reactantOrders;
+
+    // The net changes of reaction r are changeStart[r] until changeStart[r + 1]
+    final int[] changeStart;
+
+    final int[] changeSpecies;
+
+    final double[] changeValues;
+
+    // The Jacobian pattern, and for every (reaction, reactant, change) in order the entry it adds to
+    private final int[] jacobianRowStart;
+
+    private final int[] jacobianColumns;
+
+    private final int[] jacobianSlots;
+
+    private MassActionSystem(Builder builder) {
+        this.species = builder.species.toArray(new String[0]);
+        this.speciesIndex = Map.copyOf(builder.speciesIndex);
+        int m = builder.rateConstants.size();
+        this.rateConstants = new double[m];
+        this.reactantStart = new int[m + 1];
+        this.changeStart = new int[m + 1];
+        int reactantCount = 0;
+        int changeCount = 0;
+        for(int r=0; r<m; r++) {
+            rateConstants[r] = builder.rateConstants.get(r);
+            reactantCount += builder.reactantPairs.get(r).length / 2;
+            changeCount += builder.changePairs.get(r).length / 2;
+            reactantStart[r + 1] = reactantCount;
+            changeStart[r + 1] = changeCount;
+        }
+        this.reactantSpecies = new int[reactantCount];
+        this.reactantOrders = new int[reactantCount];
+        this.changeSpecies = new int[changeCount];
+        this.changeValues = new double[changeCount];
+        for(int r=0; r<m; r++) {
+            long[] reactants = builder.reactantPairs.get(r);
+            for(int a=0; a<reactants.length / 2; a++) {
+                reactantSpecies[reactantStart[r] + a] = (int) reactants[2 * a];
+                reactantOrders[reactantStart[r] + a] = Math.toIntExact(reactants[2 * a + 1]);
+            }
+            long[] changes = builder.changePairs.get(r);
+            for(int b=0; b<changes.length / 2; b++) {
+                changeSpecies[changeStart[r] + b] = (int) changes[2 * b];
+                changeValues[changeStart[r] + b] = changes[2 * b + 1];
+            }
+        }
+
+        // Entry (i, j) is structurally non-zero if some reaction changes i and has j as a reactant
+        int n = species.length;
+        int slotCount = 0;
+        for(int r=0; r<m; r++) {
+            slotCount += (reactantStart[r + 1] - reactantStart[r]) * (changeStart[r + 1] - changeStart[r]);
+        }
+        long[] keys = new long[slotCount];
+        int k = 0;
+        for(int r=0; r<m; r++) {
+            for(int a=reactantStart[r]; a<reactantStart[r + 1]; a++) {
+                for(int b=changeStart[r]; b<changeStart[r + 1]; b++) {
+                    keys[k++] = (long) changeSpecies[b] * n + reactantSpecies[a];
+                }
+            }
+        }
+        long[] unique = Arrays.stream(keys).sorted().distinct().toArray();
+        this.jacobianRowStart = new int[n + 1];
+        this.jacobianColumns = new int[unique.length];
+        for(int e=0; e<unique.length; e++) {
+            jacobianRowStart[(int) (unique[e] / n) + 1]++;
+            jacobianColumns[e] = (int) (unique[e] % n);
+        }
+        for(int i=0; i<n; i++) {
+            jacobianRowStart[i + 1] += jacobianRowStart[i];
+        }
+        this.jacobianSlots = new int[slotCount];
+        for(int s=0; s<slotCount; s++) {
+            jacobianSlots[s] = Arrays.binarySearch(unique, keys[s]);
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public int dimension() {
+        return species.length;
+    }
+
+    public int reactionCount() {
+        return rateConstants.length;
+    }
+
+    /**
+     * @param index A species, between 0 and dimension() - 1
+     * @return Its formula
+     */
+    public String species(int index) {
+        return species[index];
+    }
+
+    /**
+     * @param formula The formula of a species, as written in its reactions
+     * @return Its index in the state vector, or -1 if it is not in the system
+     */
+    public int indexOf(String formula) {
+        Integer index = speciesIndex.get(formula);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * @param reaction A reaction index
+     * @return Its rate constant
+     */
+    public double rateConstant(int reaction) {
+        return rateConstants[reaction];
+    }
+
+    /**
+     * A method that evaluates the rate of every reaction.
+     *
+     * @param y The concentrations
+     * @param rates The array the rates are written into, one per reaction
+     */
+    public void rates(double[] y, double[] rates) {
+        for(int r=0; r<rateConstants.length; r++) {
+            rates[r] = rate(r, y);
+        }
+    }
+
+    @Override
+    public void derivatives(double t, double[] y, double[] dydt) {
+        Arrays.fill(dydt, 0, species.length, 0);
+        for(int r=0; r<rateConstants.length; r++) {
+            double rate = rate(r, y);
+            if(rate != 0) {
+                for(int b=changeStart[r]; b<changeStart[r + 1]; b++) {
+                    dydt[changeSpecies[b]] += changeValues[b] * rate;
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean isAutonomous() {
+        return true;
+    }
+
+    @Override
+    public int[] jacobianRowStart() {
+        return jacobianRowStart;
+    }
+
+    @Override
+    public int[] jacobianColumns() {
+        return jacobianColumns;
+    }
+
+    @Override
+    public void jacobian(double t, double[] y, double[] values) {
+        Arrays.fill(values, 0, jacobianColumns.length, 0);
+        int slot = 0;
+        for(int r=0; r<rateConstants.length; r++) {
+            for(int a=reactantStart[r]; a<reactantStart[r + 1]; a++) {
+                // ∂rate/∂y_j = k * order_j * y_j^(order_j - 1) * the product over the other reactants
+                double derivative = rateConstants[r] * reactantOrders[a] * power(y[reactantSpecies[a]], reactantOrders[a] - 1);
+                for(int o=reactantStart[r]; o<reactantStart[r + 1] && derivative != 0; o++) {
+                    if(o != a) {
+                        derivative *= power(y[reactantSpecies[o]], reactantOrders[o]);
+                    }
+                }
+                for(int b=changeStart[r]; b<changeStart[r + 1]; b++) {
+                    values[jacobianSlots[slot++]] += changeValues[b] * derivative;
+                }
+            }
+        }
+    }
+
+    private double rate(int r, double[] y) {
+        double rate = rateConstants[r];
+        for(int a=reactantStart[r]; a<reactantStart[r + 1]; a++) {
+            rate *= power(y[reactantSpecies[a]], reactantOrders[a]);
+        }
+        return rate;
+    }
+
+    // The stochastic propensity of reaction r in state x, in molecule counts: c times the number of distinct
+    // combinations of its reactant molecules
+    double propensity(int r, double[] x) {
+        double propensity = rateConstants[r];
+        for(int a=reactantStart[r]; a<reactantStart[r + 1]; a++) {
+            double count = x[reactantSpecies[a]];
+            int order = reactantOrders[a];
+            for(int i=0; i<order; i++) {
+                propensity *= (count - i) / (i + 1);
+            }
+        }
+        return propensity > 0 ? propensity : 0;
+    }
+
+    // Orders are small whole numbers, so repeated multiplication beats Math.pow
+    private static double power(double x, int n) {
+        double result = 1;
+        for(int i=0; i<n; i++) {
+            result *= x;
+        }
+        return result;
+    }
+
+    public static final class Builder {
+
+        private final List<String> species = new ArrayList<>();
+
+        private final Map<String, Integer> speciesIndex = new HashMap<>();
+
+        private final List<Double> rateConstants = new ArrayList<>();
+
+        // Per reaction, {species, order, species, order, ...} and {species, change, ...}
+        private final List<long[]> reactantPairs = new ArrayList<>();
+
+        private final List<long[]> changePairs = new ArrayList<>();
+
+        private Builder() {
+            ;
+        }
+
+        /**
+         * @param reaction A Reaction, whose balanced coefficients give the orders and changes
+         * @param rateConstant Its rate constant
+         * @return This Builder
+         * @throws IllegalArgumentException If the Reaction cannot be balanced or the rate constant is negative
+         */
+        public Builder add(Reaction reaction, double rateConstant) {
+            long[] coefficients = reaction.getCoefficients();
+            String[] reactantFormulas = new String[reaction.reactants.length];
+            long[] reactantCoefficients = new long[reactantFormulas.length];
+            for(int i=0; i<reactantFormulas.length; i++) {
+                reactantFormulas[i] = reaction.reactants[i].formula;
+                reactantCoefficients[i] = coefficients[i];
+            }
+            String[] productFormulas = new String[reaction.products.length];
+            long[] productCoefficients = new long[productFormulas.length];
+            for(int i=0; i<productFormulas.length; i++) {
+                Compound product = reaction.products[i];
+                productFormulas[i] = product.formula;
+                productCoefficients[i] = coefficients[reactantFormulas.length + i];
+            }
+            return add(reactantFormulas, reactantCoefficients, productFormulas, productCoefficients, rateConstant);
+        }
+
+        /**
+         * @param reactants The formulas of the reactants
+         * @param reactantCoefficients Their coefficients, which are also their orders in the rate law
+         * @param products The formulas of the products
+         * @param productCoefficients Their coefficients
+         * @param rateConstant The rate constant
+         * @return This Builder
+         * @throws IllegalArgumentException If a coefficient is not positive or the rate constant is negative
+         */
+        public Builder add(String[] reactants, long[] reactantCoefficients, String[] products, long[] productCoefficients, double rateConstant) {
+            if(reactants.length != reactantCoefficients.length || products.length != productCoefficients.length) {
+                throw new IllegalArgumentException("Expected one coefficient per species");
+            }
+            if(!(rateConstant >= 0) || Double.isInfinite(rateConstant)) {
+                throw new IllegalArgumentException("Illegal rate constant: " + rateConstant);
+            }
+            long[] orders = new long[0];
+            long[] changes = new long[0];
+            for(int i=0; i<reactants.length; i++) {
+                int s = index(reactants[i], reactantCoefficients[i]);
+                orders = accumulate(orders, s, reactantCoefficients[i]);
+                changes = accumulate(changes, s, -reactantCoefficients[i]);
+            }
+            for(int i=0; i<products.length; i++) {
+                changes = accumulate(changes, index(products[i], productCoefficients[i]), productCoefficients[i]);
+            }
+            rateConstants.add(rateConstant);
+            reactantPairs.add(orders);
+            changePairs.add(withoutZeros(changes));
+            return this;
+        }
+
+        public MassActionSystem build() {
+            return new MassActionSystem(this);
+        }
+
+        private int index(String formula, long coefficient) {
+            if(coefficient <= 0) {
+                throw new IllegalArgumentException("Coefficients must be positive, but " + formula + " has " + coefficient);
+            }
+            Integer index = speciesIndex.get(formula);
+            if(index == null) {
+                index = species.size();
+                species.add(formula);
+                speciesIndex.put(formula, index);
+            }
+            return index;
+        }
+
+        // Adds value to the entry for species in {species, value, species, value, ...}, appending it if missing
+        private static long[] accumulate(long[] pairs, int species, long value) {
+            for(int k=0; k<pairs.length; k+=2) {
+                if(pairs[k] == species) {
+                    pairs[k + 1] = Math.addExact(pairs[k + 1], value);
+                    return pairs;
+                }
+            }
+            pairs = Arrays.copyOf(pairs, pairs.length + 2);
+            pairs[pairs.length - 2] = species;
+            pairs[pairs.length - 1] = value;
+            return pairs;
+        }
+
+        // Drops the entries whose changes cancel, e.g. a catalyst's
+        private static long[] withoutZeros(long[] pairs) {
+            long[] kept = new long[pairs.length];
+            int k = 0;
+            for(int i=0; i<pairs.length; i+=2) {
+                if(pairs[i + 1] != 0) {
+                    kept[k++] = pairs[i];
+                    kept[k++] = pairs[i + 1];
+                }
+            }
+            return Arrays.copyOf(kept, k);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package io.github.monomer.Chem.Kinetics;
+
+/**
+ * A system of ordinary differential equations dy/dt = f(t, y) over a flat state vector.
+ *
+ * @author Elon Litman
+ * @version 1.7
+ * @see DormandPrince
+ * @see StiffOdeSystem
+ */
+public interface OdeSystem {
+
+    /**
+     * @return The length of the state vector
+     */
+    int dimension();
+
+    /**
+     * A method that evaluates the right-hand side, writing into a caller-owned array.
+     *
+     * @param t The time
+     * @param y The state; it is not modified
+     * @param dydt The array the derivatives are written into
+     */
+    void derivatives(double t, double[] y, double[] dydt);
+}
@@ -0,0 +1,184 @@
+package io.github.monomer.Chem.Kinetics;
+
+/**
+ * An implicit, adaptive integrator for stiff systems: the L-stable Rosenbrock pair of order 2(3) by Shampine and
+ * Reichelt (the method of MATLAB's ode23s). Each step evaluates the Jacobian once, factors the iteration matrix
+ * I - hdJ once with a {@link SparseLU} whose ordering and fill pattern are worked out before the first step, and solves
+ * with it three times. No Newton iterations are needed, and time constants many orders of magnitude apart cost no
+ * more steps than the slow ones require.
+ *
+ * <pre>{@code
+ * IntegrationStats stats = new Rosenbrock(1e-6, 1e-12).integrate(system, 0, y, 1e4, TrajectorySink.every(10, sink));
+ * }</pre>
+ *
+ * @author Elon Litman
+ * @version 1.7
+ * @see DormandPrince
+ * @see StiffOdeSystem
+ */
+public final class Rosenbrock {
+
+    private static final double D = 1 / (2 + Math.sqrt(2));
+
+    private static final double E32 = 6 + Math.sqrt(2);
+
+    private final double relativeTolerance;
+
+    private final double absoluteTolerance;
+
+    private final long maxSteps;
+
+    /**
+     * Creates an integrator with a relative tolerance of 1e-4 and an absolute tolerance of 1e-10.
+     */
+    public Rosenbrock() {
+        this(1e-4, 1e-10);
+    }
+
+    /**
+     * @param relativeTolerance The error allowed per step, relative to each component
+     * @param absoluteTolerance The error allowed per step in components near zero
+     */
+    public Rosenbrock(double relativeTolerance, double absoluteTolerance) {
+        this(relativeTolerance, absoluteTolerance, 10_000_000);
+    }
+
+    /**
+     * @param relativeTolerance The error allowed per step, relative to each component
+     * @param absoluteTolerance The error allowed per step in components near zero
+     * @param maxSteps The number of steps, accepted or rejected, after which integration gives up
+     */
+    public Rosenbrock(double relativeTolerance, double absoluteTolerance, long maxSteps) {
+        if(!(relativeTolerance > 0) || !(absoluteTolerance > 0) || maxSteps <= 0) {
+            throw new IllegalArgumentException("Tolerances and the step limit must be positive");
+        }
+        this.relativeTolerance = relativeTolerance;
+        this.absoluteTolerance = absoluteTolerance;
+        this.maxSteps = maxSteps;
+    }
+
+    /**
+     * A method that integrates a system from t0 to t1 (which may lie before t0), streaming every accepted step.
+     *
+     * @param system The system
+     * @param t0 The initial time
+     * @param y The initial state; it is overwritten with the state at t1
+     * @param t1 The final time
+     * @param sink Receives the initial state and the state after every accepted step
+     * @return The counters for the run
+     * @throws IllegalStateException If the step size underflows or the step limit is reached
+     */
+    public IntegrationStats integrate(StiffOdeSystem system, double t0, double[] y, double t1, TrajectorySink sink) {
+        int n = system.dimension();
+        if(y.length != n) {
+            throw new IllegalArgumentException("Expected a state of length " + n + ", but got " + y.length);
+        }
+        int[] rowStart = system.jacobianRowStart();
+        int[] columns = system.jacobianColumns();
+        SparseLU lu = new SparseLU(n, rowStart, columns);
+        double[] jacobian = new double[columns.length];
+        double[] f0 = new double[n], f1 = new double[n], f2 = new double[n];
+        double[] k1 = new double[n], k2 = new double[n], k3 = new double[n];
+        double[] dfdt = new double[n];
+        double[] stage = new double[n];
+        double[] yNew = new double[n];
+        double[] error = new double[n];
+        boolean autonomous = system.isAutonomous();
+
+        double t = t0;
+        double direction = Math.signum(t1 - t0);
+        sink.accept(t, y);
+        system.derivatives(t, y, f0);
+        long evaluations = 1;
+        long jacobians = 0;
+        long factorizations = 0;
+        long accepted = 0;
+        long rejected = 0;
+        if(direction == 0) {
+            return new IntegrationStats(0, 0, evaluations, 0, 0, 0);
+        }
+        double h = StepControl.initialStep(system, t, y, f0, direction, Math.abs(t1 - t0), 2, relativeTolerance, absoluteTolerance, stage, f1);
+        evaluations++;
+
+        boolean fresh = false;
+        while((t1 - t) * direction > 0) {
+            if(accepted + rejected >= maxSteps) {
+                throw new IllegalStateException("Gave up at t = " + t + " after " + maxSteps + " steps");
+            }
+            if(h < StepControl.minimumStep(t)) {
+                throw new IllegalStateException("Step size underflow at t = " + t);
+            }
+            // The Jacobian (and ∂f/∂t) only change when the step is accepted
+            if(!fresh) {
+                system.jacobian(t, y, jacobian);
+                jacobians++;
+                if(!autonomous) {
+                    double delta = Math.sqrt(Math.ulp(1.0)) * Math.max(Math.abs(t), Math.abs(h));
+                    system.derivatives(t + delta, y, dfdt);
+                    evaluations++;
+                    for(int i=0; i<n; i++) {
+                        dfdt[i] = (dfdt[i] - f0[i]) / delta;
+                    }
+                }
+                fresh = true;
+            }
+            boolean last = h >= Math.abs(t1 - t);
+            double step = last ? t1 - t : direction * h;
+            double tNew = last ? t1 : t + step;
+
+            factorizations++;
+            if(!lu.factor(jacobian, -step * D, 1)) {
+                h = Math.abs(step) / 2;
+                rejected++;
+                continue;
+            }
+
+            // k1 = W⁻¹ (F0 + hdT)
+            for(int i=0; i<n; i++) {
+                k1[i] = f0[i] + step * D * dfdt[i];
+            }
+            lu.solve(k1);
+            // k2 = W⁻¹ (F1 - k1) + k1
+            for(int i=0; i<n; i++) {
+                stage[i] = y[i] + 0.5 * step * k1[i];
+            }
+            system.derivatives(t + 0.5 * step, stage, f1);
+            for(int i=0; i<n; i++) {
+                k2[i] = f1[i] - k1[i];
+            }
+            lu.solve(k2);
+            for(int i=0; i<n; i++) {
+                k2[i] += k1[i];
+                yNew[i] = y[i] + step * k2[i];
+            }
+            // k3 = W⁻¹ (F2 - e32 (k2 - F1) - 2 (k1 - F0) + hdT)
+            system.derivatives(tNew, yNew, f2);
+            evaluations += 2;
+            for(int i=0; i<n; i++) {
+                k3[i] = f2[i] - E32 * (k2[i] - f1[i]) - 2 * (k1[i] - f0[i]) + step * D * dfdt[i];
+            }
+            lu.solve(k3);
+
+            for(int i=0; i<n; i++) {
+                error[i] = step / 6 * (k1[i] - 2 * k2[i] + k3[i]);
+            }
+            double norm = StepControl.errorNorm(error, y, yNew, relativeTolerance, absoluteTolerance);
+
+            if(norm <= 1) {
+                h = Math.abs(step) * Math.min(5, norm == 0 ? 5 : 0.8 * Math.pow(norm, -1.0 / 3));
+                System.arraycopy(yNew, 0, y, 0, n);
+                double[] swap = f0;
+                f0 = f2;
+                f2 = swap;
+                t = tNew;
+                fresh = false;
+                accepted++;
+                sink.accept(t, y);
+            } else {
+                h = Math.abs(step) * Math.max(0.2, 0.8 * Math.pow(norm, -1.0 / 3));
+                rejected++;
+            }
+        }
+        return new IntegrationStats(accepted, rejected, evaluations, jacobians, factorizations, h);
+    }
+}
@@ -0,0 +1,49 @@
+package io.github.monomer.Chem.Kinetics;
+
+// Linearly interpolates the states it receives onto a regular grid; see TrajectorySink.every
+final class SampledSink implements TrajectorySink {
+
+    private final double interval;
+
+    private final TrajectorySink sink;
+
+    private double[] previous;
+
+    private double[] sample;
+
+    private double previousT;
+
+    private double start;
+
+    // The index of the next grid point
+    private long next;
+
+    SampledSink(double interval, TrajectorySink sink) {
+        this.interval = interval;
+        this.sink = sink;
+    }
+
+    @Override
+    public void accept(double t, double[] y) {
+        if(previous == null) {
+            previous = y.clone();
+            sample = new double[y.length];
+            previousT = start = t;
+            sink.accept(t, y);
+            next = 1;
+            return;
+        }
+        double direction = Math.signum(t - start);
+        double gridT = start + direction * next * interval;
+        while(direction != 0 && (gridT - t) * direction <= 0) {
+            double w = (gridT - previousT) / (t - previousT);
+            for(int i=0; i<y.length; i++) {
+                sample[i] = previous[i] + w * (y[i] - previous[i]);
+            }
+            sink.accept(gridT, sample);
+            gridT = start + direction * ++next * interval;
+        }
+        System.arraycopy(y, 0, previous, 0, y.length);
+        previousT = t;
+    }
+}
@@ -0,0 +1,258 @@
+package io.github.monomer.Chem.Kinetics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * An LU factorization for matrices whose sparsity pattern is fixed while their values change, such as the iteration
+ * matrix I - hγJ of an implicit integrator. The rows and columns are reordered once, by minimum degree, to limit
+ * fill-in, and the pattern of L + U is worked out once; every numeric factorization then only touches its non-zeros.
+ * Pivots are taken from the diagonal, which suits matrices close to the identity.
+ *
+ * @author Elon Litman
+ * @version 1.7
+ * @see Rosenbrock
+ */
+final class SparseLU {
+
+    private final int n;
+
+    // Elimination order: the k-th pivot is original row and column order[k]; position[order[k]] = k
+    private final int[] order;
+
+    private final int[] position;
+
+    // L + U by rows in elimination order, columns increasing; the diagonal of row i is at diagonal[i]
+    private final int[] rowStart;
+
+    private final int[] columns;
+
+    private final int[] diagonal;
+
+    private final double[] values;
+
+    // For every entry of the input pattern, where it lands in values
+    private final int[] inputSlots;
+
+    // Scratch, by permuted column
+    private final double[] work;
+
+    private final double[] z;
+
+    /**
+     * @param n The dimension
+     * @param patternRowStart The input pattern's row starts, n + 1 of them
+     * @param patternColumns The input pattern's columns; the diagonal need not be present
+     */
+    SparseLU(int n, int[] patternRowStart, int[] patternColumns) {
+        this.n = n;
+        this.order = minimumDegreeOrder(n, patternRowStart, patternColumns);
+        this.position = new int[n];
+        for(int k=0; k<n; k++) {
+            position[order[k]] = k;
+        }
+
+        // Symbolic factorization, row by row: row i of L + U holds row i of the input, the diagonal, and for every
+        // column k < i in it (in increasing order, including fill) the upper part of row k
+        int[][] rows = new int[n][];
+        int[] upperStart = new int[n];
+        boolean[] marked = new boolean[n];
+        int[] list = new int[n];
+        PriorityQueue<Integer> lower = new PriorityQueue<>();
+        for(int i=0; i<n; i++) {
+            int size = 0;
+            int original = order[i];
+            marked[i] = true;
+            list[size++] = i;
+            for(int e=patternRowStart[original]; e<patternRowStart[original + 1]; e++) {
+                int j = position[patternColumns[e]];
+                if(!marked[j]) {
+                    marked[j] = true;
+                    list[size++] = j;
+                    if(j < i) {
+                        lower.add(j);
+                    }
+                }
+            }
+            while(!lower.isEmpty()) {
+                int k = lower.poll();
+                int[] rowK = rows[k];
+                for(int e=upperStart[k] + 1; e<rowK.length; e++) {
+                    int j = rowK[e];
+                    if(!marked[j]) {
+                        marked[j] = true;
+                        list[size++] = j;
+                        if(j < i) {
+                            lower.add(j);
+                        }
+                    }
+                }
+            }
+            int[] row = Arrays.copyOf(list, size);
+            Arrays.sort(row);
+            for(int j : row) {
+                marked[j] = false;
+            }
+            rows[i] = row;
+            upperStart[i] = Arrays.binarySearch(row, i);
+        }
+
+        this.rowStart = new int[n + 1];
+        for(int i=0; i<n; i++) {
+            rowStart[i + 1] = rowStart[i] + rows[i].length;
+        }
+        this.columns = new int[rowStart[n]];
+        this.diagonal = new int[n];
+        for(int i=0; i<n; i++) {
+            System.arraycopy(rows[i], 0, columns, rowStart[i], rows[i].length);
+            diagonal[i] = rowStart[i] + upperStart[i];
+        }
+        this.values = new double[columns.length];
+
+        this.inputSlots = new int[patternColumns.length];
+        for(int r=0; r<n; r++) {
+            int i = position[r];
+            for(int e=patternRowStart[r]; e<patternRowStart[r + 1]; e++) {
+                inputSlots[e] = Arrays.binarySearch(columns, rowStart[i], rowStart[i + 1], position[patternColumns[e]]);
+            }
+        }
+        this.work = new double[n];
+        this.z = new double[n];
+    }
+
+    /**
+     * A method that factors diagonalShift * I + scale * A, where A has the input pattern.
+     *
+     * @param inputValues The entries of A, aligned with the input pattern
+     * @param scale The factor applied to A
+     * @param diagonalShift The value added to the diagonal
+     * @return Whether the factorization succeeded, i.e. no pivot vanished
+     */
+    boolean factor(double[] inputValues, double scale, double diagonalShift) {
+        Arrays.fill(values, 0);
+        for(int e=0; e<inputSlots.length; e++) {
+            values[inputSlots[e]] += scale * inputValues[e];
+        }
+        for(int i=0; i<n; i++) {
+            values[diagonal[i]] += diagonalShift;
+        }
+
+        for(int i=0; i<n; i++) {
+            int start = rowStart[i];
+            int end = rowStart[i + 1];
+            for(int e=start; e<end; e++) {
+                work[columns[e]] = values[e];
+            }
+            // Eliminate with every earlier row, in increasing order; fill was accounted for symbolically
+            for(int e=start; e<diagonal[i]; e++) {
+                int k = columns[e];
+                double l = work[k] / values[diagonal[k]];
+                work[k] = l;
+                if(l != 0) {
+                    for(int f=diagonal[k] + 1; f<rowStart[k + 1]; f++) {
+                        work[columns[f]] -= l * values[f];
+                    }
+                }
+            }
+            for(int e=start; e<end; e++) {
+                values[e] = work[columns[e]];
+                work[columns[e]] = 0;
+            }
+            double pivot = values[diagonal[i]];
+            if(pivot == 0 || !Double.isFinite(pivot)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A method that solves the factored system in place.
+     *
+     * @param b The right-hand side, overwritten with the solution
+     */
+    void solve(double[] b) {
+        for(int i=0; i<n; i++) {
+            z[i] = b[order[i]];
+        }
+        for(int i=0; i<n; i++) {
+            double sum = z[i];
+            for(int e=rowStart[i]; e<diagonal[i]; e++) {
+                sum -= values[e] * z[columns[e]];
+            }
+            z[i] = sum;
+        }
+        for(int i=n - 1; i>=0; i--) {
+            double sum = z[i];
+            for(int e=diagonal[i] + 1; e<rowStart[i + 1]; e++) {
+                sum -= values[e] * z[columns[e]];
+            }
+            z[i] = sum / values[diagonal[i]];
+        }
+        for(int i=0; i<n; i++) {
+            b[order[i]] = z[i];
+        }
+    }
+
+    /**
+     * @return The number of non-zeros of L + U, including fill
+     */
+    int nonZeroCount() {
+        return columns.length;
+    }
+
+    // Greedy minimum degree on the symmetrized pattern: repeatedly eliminate the node with the fewest neighbours and
+    // join its neighbours into a clique, which is exactly the fill that eliminating it causes
+    private static int[] minimumDegreeOrder(int n, int[] rowStart, int[] columns) {
+        List<Set<Integer>> adjacency = new ArrayList<>(n);
+        for(int i=0; i<n; i++) {
+            adjacency.add(new HashSet<>());
+        }
+        for(int i=0; i<n; i++) {
+            for(int e=rowStart[i]; e<rowStart[i + 1]; e++) {
+                int j = columns[e];
+                if(i != j) {
+                    adjacency.get(i).add(j);
+                    adjacency.get(j).add(i);
+                }
+            }
+        }
+        // Entries are degree << 32 | node; stale ones are skipped
+        PriorityQueue<Long> queue = new PriorityQueue<>(Math.max(1, n));
+        for(int i=0; i<n; i++) {
+            queue.add((long) adjacency.get(i).size() << 32 | i);
+        }
+        boolean[] eliminated = new boolean[n];
+        int[] order = new int[n];
+        int k = 0;
+        while(k < n) {
+            long entry = queue.poll();
+            int v = (int) entry;
+            if(eliminated[v] || (entry >>> 32) != adjacency.get(v).size()) {
+                continue;
+            }
+            eliminated[v] = true;
+            order[k++] = v;
+            Integer[] neighbours = adjacency.get(v).toArray(new Integer[0]);
+            for(int a : neighbours) {
+                adjacency.get(a).remove(v);
+            }
+            for(int a=0; a<neighbours.length; a++) {
+                for(int b=a + 1; b<neighbours.length; b++) {
+                    if(adjacency.get(neighbours[a]).add(neighbours[b])) {
+                        adjacency.get(neighbours[b]).add(neighbours[a]);
+                    }
+                }
+            }
+            for(int a : neighbours) {
+                queue.add((long) adjacency.get(a).size() << 32 | a);
+            }
+            adjacency.set(v, null);
+        }
+        return order;
+    }
+}
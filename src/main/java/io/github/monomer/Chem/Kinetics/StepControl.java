@@ -0,0 +1,57 @@
+package io.github.monomer.Chem.Kinetics;
+
+// Error norms and step-size heuristics shared by the adaptive integrators
+final class StepControl {
+
+    private StepControl() {
+        ;
+    }
+
+    // The root-mean-square of the error, each component scaled by its own tolerance
+    static double errorNorm(double[] error, double[] y, double[] yNew, double relativeTolerance, double absoluteTolerance) {
+        double sum = 0;
+        for(int i=0; i<error.length; i++) {
+            double scale = absoluteTolerance + relativeTolerance * Math.max(Math.abs(y[i]), Math.abs(yNew[i]));
+            double e = error[i] / scale;
+            sum += e * e;
+        }
+        return error.length == 0 ? 0 : Math.sqrt(sum / error.length);
+    }
+
+    // Hairer, Norsett and Wanner's starting step: one explicit Euler probe to estimate the second derivative
+    static double initialStep(OdeSystem system, double t, double[] y, double[] f, double direction, double span, int order,
+                              double relativeTolerance, double absoluteTolerance, double[] scratchY, double[] scratchF) {
+        int n = y.length;
+        double d0 = 0;
+        double d1 = 0;
+        for(int i=0; i<n; i++) {
+            double scale = absoluteTolerance + relativeTolerance * Math.abs(y[i]);
+            d0 += (y[i] / scale) * (y[i] / scale);
+            d1 += (f[i] / scale) * (f[i] / scale);
+        }
+        d0 = Math.sqrt(d0 / Math.max(1, n));
+        d1 = Math.sqrt(d1 / Math.max(1, n));
+        double h0 = d0 < 1e-5 || d1 < 1e-5 ? 1e-6 : 0.01 * d0 / d1;
+        h0 = Math.min(h0, span);
+
+        for(int i=0; i<n; i++) {
+            scratchY[i] = y[i] + direction * h0 * f[i];
+        }
+        system.derivatives(t + direction * h0, scratchY, scratchF);
+        double d2 = 0;
+        for(int i=0; i<n; i++) {
+            double scale = absoluteTolerance + relativeTolerance * Math.abs(y[i]);
+            double e = (scratchF[i] - f[i]) / scale;
+            d2 += e * e;
+        }
+        d2 = Math.sqrt(d2 / Math.max(1, n)) / h0;
+
+        double h1 = Math.max(d1, d2) <= 1e-15 ? Math.max(1e-6, h0 * 1e-3) : Math.pow(0.01 / Math.max(d1, d2), 1.0 / (order + 1));
+        return Math.min(Math.min(100 * h0, h1), span);
+    }
+
+    // The step cannot shrink below the spacing of doubles around t
+    static double minimumStep(double t) {
+        return 16 * Math.ulp(Math.max(1, Math.abs(t)));
+    }
+}
@@ -0,0 +1,39 @@
+package io.github.monomer.Chem.Kinetics;
+
+/**
+ * An OdeSystem that also provides its Jacobian ∂f/∂y, in compressed sparse row form with a fixed sparsity pattern, as
+ * implicit integrators need.
+ *
+ * @author Elon Litman
+ * @version 1.7
+ * @see Rosenbrock
+ */
+public interface StiffOdeSystem extends OdeSystem {
+
+    /**
+     * @return For each row i, the position of its first entry; row i runs until the entry of row i + 1. The array has
+     * dimension() + 1 entries and must not be modified.
+     */
+    int[] jacobianRowStart();
+
+    /**
+     * @return The column of every entry, increasing within each row. The array must not be modified.
+     */
+    int[] jacobianColumns();
+
+    /**
+     * A method that evaluates the Jacobian, writing into a caller-owned array aligned with jacobianColumns().
+     *
+     * @param t The time
+     * @param y The state; it is not modified
+     * @param values The array the entries are written into
+     */
+    void jacobian(double t, double[] y, double[] values);
+
+    /**
+     * @return Whether f does not depend on t, which spares implicit integrators estimating ∂f/∂t
+     */
+    default boolean isAutonomous() {
+        return false;
+    }
+}
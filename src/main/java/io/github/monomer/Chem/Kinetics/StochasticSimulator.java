@@ -0,0 +1,52 @@
+package io.github.monomer.Chem.Kinetics;
+
+import java.util.SplittableRandom;
+
+/**
+ * Simulates one stochastic trajectory of a reaction system, in molecule counts, and reports it on a regular time grid.
+ * The state between events is constant, so the state reported at a grid time is the one in effect at that time.
+ *
+ * The rate constants of the system are read as stochastic rate constants: a reaction with reactants of orders o_i
+ * fires with propensity c times the product of C(x_i, o_i), the number of distinct combinations of its reactant
+ * molecules.
+ *
+ * @author Elon Litman
+ * @version 1.7
+ * @see GibsonBruck
+ * @see TauLeaping
+ * @see Ensemble
+ */
+public interface StochasticSimulator {
+
+    /**
+     * @return The system being simulated
+     */
+    MassActionSystem system();
+
+    /**
+     * A method that simulates one trajectory.
+     *
+     * @param x The initial molecule counts; overwritten with those at t1
+     * @param t0 The initial time
+     * @param t1 The final time
+     * @param interval The spacing of the reporting grid, which runs from t0 up to and including t1
+     * @param sink Receives the state at every grid time
+     * @param random The source of randomness, which is used by this call only
+     * @return The number of reaction events simulated
+     */
+    long simulate(double[] x, double t0, double t1, double interval, TrajectorySink sink, SplittableRandom random);
+
+    /**
+     * @param t0 The initial time
+     * @param t1 The final time
+     * @param interval The spacing of the reporting grid
+     * @return The number of grid times from t0 up to and including t1
+     */
+    static int gridSize(double t0, double t1, double interval) {
+        if(!(interval > 0) || !(t1 >= t0)) {
+            throw new IllegalArgumentException("Illegal time grid: " + t0 + " to " + t1 + " every " + interval);
+        }
+        // Tolerate rounding, so that a grid time meant to equal t1 is not lost
+        return Math.toIntExact((long) Math.floor((t1 - t0) / interval * (1 + 1e-12)) + 1);
+    }
+}
@@ -0,0 +1,283 @@
+package io.github.monomer.Chem.Kinetics;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * An approximate stochastic simulator that leaps over many events at once: over a leap of length τ, each reaction
+ * fires a Poisson-distributed number of times with mean a·τ. The leap is chosen by the rule of Cao, Gillespie and
+ * Petzold, so that no propensity is expected to change by more than a fraction ε of itself. A leap that would drive a
+ * count negative is halved and retried, and when the allowed leap is only a few events long the simulator falls back
+ * to exact steps.
+ *
+ * @author Elon Litman
+ * @version 1.7
+ * @see GibsonBruck
+ * @see Ensemble
+ */
+public final class TauLeaping implements StochasticSimulator {
+
+    // Leaps shorter than this many expected events are not worth their error, and exact steps are taken instead
+    private static final double EXACT_THRESHOLD = 10;
+
+    private static final int EXACT_STEPS = 100;
+
+    // log k!, below which Stirling's series is not used
+    private static final double[] LOG_FACTORIALS = {0, 0, Math.log(2), Math.log(6), Math.log(24), Math.log(120),
+            Math.log(720), Math.log(5040), Math.log(40320), Math.log(362880)};
+
+    private final MassActionSystem system;
+
+    private final double epsilon;
+
+    // The highest order of any reaction each species is a reactant of, and its own order in that reaction
+    private final int[] highestOrder;
+
+    private final int[] ownOrder;
+
+    /**
+     * Creates a simulator with ε = 0.03.
+     *
+     * @param system The system
+     */
+    public TauLeaping(MassActionSystem system) {
+        this(system, 0.03);
+    }
+
+    /**
+     * @param system The system
+     * @param epsilon The largest relative change in any propensity a leap may cause, typically 0.01 to 0.05
+     */
+    public TauLeaping(MassActionSystem system, double epsilon) {
+        if(!(epsilon > 0 && epsilon < 1)) {
+            throw new IllegalArgumentException("Illegal epsilon: " + epsilon);
+        }
+        this.system = system;
+        this.epsilon = epsilon;
+        int n = system.dimension();
+        this.highestOrder = new int[n];
+        this.ownOrder = new int[n];
+        for(int r=0; r<system.reactionCount(); r++) {
+            int order = 0;
+            for(int a=system.reactantStart[r]; a<system.reactantStart[r + 1]; a++) {
+                order += system.reactantOrders[a];
+            }
+            for(int a=system.reactantStart[r]; a<system.reactantStart[r + 1]; a++) {
+                int s = system.reactantSpecies[a];
+                if(order > highestOrder[s] || (order == highestOrder[s] && system.reactantOrders[a] > ownOrder[s])) {
+                    highestOrder[s] = order;
+                    ownOrder[s] = system.reactantOrders[a];
+                }
+            }
+        }
+    }
+
+    @Override
+    public MassActionSystem system() {
+        return system;
+    }
+
+    @Override
+    public long simulate(double[] x, double t0, double t1, double interval, TrajectorySink sink, SplittableRandom random) {
+        int gridSize = StochasticSimulator.gridSize(t0, t1, interval);
+        int n = system.dimension();
+        int m = system.reactionCount();
+        double[] propensities = new double[m];
+        double[] mean = new double[n];
+        double[] variance = new double[n];
+        int[] firings = new int[m];
+
+        double t = t0;
+        int grid = 0;
+        long events = 0;
+        while(grid < gridSize && t < t1) {
+            double total = 0;
+            for(int r=0; r<m; r++) {
+                propensities[r] = system.propensity(r, x);
+                total += propensities[r];
+            }
+            if(total == 0) {
+                break;
+            }
+
+            double tau = Math.min(leap(x, propensities, mean, variance), t1 - t);
+            if(tau * total < EXACT_THRESHOLD) {
+                // A handful of exact steps by the direct method
+                for(int step=0; step<EXACT_STEPS && grid < gridSize; step++) {
+                    if(step > 0) {
+                        total = 0;
+                        for(int r=0; r<m; r++) {
+                            propensities[r] = system.propensity(r, x);
+                            total += propensities[r];
+                        }
+                        if(total == 0) {
+                            break;
+                        }
+                    }
+                    double tNext = t - Math.log(1 - random.nextDouble()) / total;
+                    grid = report(x, t0, t1, interval, gridSize, grid, tNext, sink);
+                    if(grid == gridSize) {
+                        break;
+                    }
+                    double target = random.nextDouble() * total;
+                    int mu = 0;
+                    while(mu < m - 1 && (target -= propensities[mu]) >= 0) {
+                        mu++;
+                    }
+                    fire(x, mu, 1);
+                    events++;
+                    t = tNext;
+                }
+                continue;
+            }
+
+            // Leap, halving until no count goes negative
+            while(true) {
+                boolean valid = true;
+                long fired = 0;
+                for(int r=0; r<m; r++) {
+                    firings[r] = propensities[r] > 0 ? poisson(propensities[r] * tau, random) : 0;
+                    fired += firings[r];
+                    if(firings[r] > 0) {
+                        fire(x, r, firings[r]);
+                    }
+                }
+                for(int s=0; s<n && valid; s++) {
+                    valid = x[s] >= 0;
+                }
+                if(valid) {
+                    // The counts before the leap hold until it ends
+                    for(int r=0; r<m; r++) {
+                        fire(x, r, -firings[r]);
+                    }
+                    grid = report(x, t0, t1, interval, gridSize, grid, t + tau, sink);
+                    for(int r=0; r<m; r++) {
+                        fire(x, r, firings[r]);
+                    }
+                    events += fired;
+                    t = tau == t1 - t ? t1 : t + tau;
+                    break;
+                }
+                for(int r=0; r<m; r++) {
+                    fire(x, r, -firings[r]);
+                }
+                tau /= 2;
+            }
+        }
+        // At t1, or nothing can fire any more, so the state holds until t1
+        report(x, t0, t1, interval, gridSize, grid, Double.POSITIVE_INFINITY, sink);
+        return events;
+    }
+
+    // Reports the grid times before tNext, returning the next unreported one
+    private static int report(double[] x, double t0, double t1, double interval, int gridSize, int grid, double tNext, TrajectorySink sink) {
+        while(grid < gridSize && t0 + grid * interval < tNext) {
+            sink.accept(Math.min(t0 + grid * interval, t1), x);
+            grid++;
+        }
+        return grid;
+    }
+
+    private void fire(double[] x, int r, int times) {
+        for(int b=system.changeStart[r]; b<system.changeStart[r + 1]; b++) {
+            x[system.changeSpecies[b]] += times * system.changeValues[b];
+        }
+    }
+
+    // The largest τ for which the expected change, and its standard deviation, of every reactant species stays below
+    // ε x / g, where g accounts for how strongly the species' highest order reaction responds to it
+    private double leap(double[] x, double[] propensities, double[] mean, double[] variance) {
+        Arrays.fill(mean, 0);
+        Arrays.fill(variance, 0);
+        for(int r=0; r<propensities.length; r++) {
+            double a = propensities[r];
+            if(a == 0) {
+                continue;
+            }
+            for(int b=system.changeStart[r]; b<system.changeStart[r + 1]; b++) {
+                double v = system.changeValues[b];
+                mean[system.changeSpecies[b]] += v * a;
+                variance[system.changeSpecies[b]] += v * v * a;
+            }
+        }
+        double tau = Double.POSITIVE_INFINITY;
+        for(int s=0; s<x.length; s++) {
+            if(highestOrder[s] == 0 || (mean[s] == 0 && variance[s] == 0)) {
+                continue;
+            }
+            double bound = Math.max(epsilon * x[s] / g(s, x[s]), 1);
+            if(mean[s] != 0) {
+                tau = Math.min(tau, bound / Math.abs(mean[s]));
+            }
+            if(variance[s] != 0) {
+                tau = Math.min(tau, bound * bound / variance[s]);
+            }
+        }
+        return tau;
+    }
+
+    private double g(int s, double count) {
+        int order = highestOrder[s];
+        int own = ownOrder[s];
+        if(order == 1) {
+            return 1;
+        }
+        if(order == 2) {
+            return own == 2 && count > 1 ? 2 + 1 / (count - 1) : 2;
+        }
+        if(order == 3) {
+            if(own == 3 && count > 2) {
+                return 3 + 1 / (count - 1) + 2 / (count - 2);
+            }
+            return own == 2 && count > 1 ? 1.5 * (2 + 1 / (count - 1)) : 3;
+        }
+        return order;
+    }
+
+    // Knuth's product of uniforms for small means, Hörmann's transformed rejection (PTRS) for large ones
+    static int poisson(double mean, SplittableRandom random) {
+        if(mean < 10) {
+            double limit = Math.exp(-mean);
+            double product = random.nextDouble();
+            int k = 0;
+            while(product > limit) {
+                product *= random.nextDouble();
+                k++;
+            }
+            return k;
+        }
+        double root = Math.sqrt(mean);
+        double logMean = Math.log(mean);
+        double b = 0.931 + 2.53 * root;
+        double a = -0.059 + 0.02483 * b;
+        double inverseAlpha = 1.1239 + 1.1328 / (b - 3.4);
+        double vr = 0.9277 - 3.6224 / (b - 2);
+        while(true) {
+            double u = random.nextDouble() - 0.5;
+            double v = random.nextDouble();
+            double us = 0.5 - Math.abs(u);
+            long k = (long) Math.floor((2 * a / us + b) * u + mean + 0.43);
+            if(us >= 0.07 && v <= vr) {
+                return Math.toIntExact(k);
+            }
+            if(k < 0 || (us < 0.013 && v > us)) {
+                continue;
+            }
+            if(Math.log(v) + Math.log(inverseAlpha) - Math.log(a / (us * us) + b) <= -mean + k * logMean - logFactorial(k)) {
+                return Math.toIntExact(k);
+            }
+        }
+    }
+
+    // Stirling's series beyond the table
+    private static double logFactorial(long k) {
+        if(k < LOG_FACTORIALS.length) {
+            return LOG_FACTORIALS[(int) k];
+        }
+        double x = k;
+        double inverse = 1 / x;
+        double inverseSquared = inverse * inverse;
+        return x * Math.log(x) - x + 0.5 * Math.log(2 * Math.PI * x)
+                + inverse * (1.0 / 12 - inverseSquared * (1.0 / 360 - inverseSquared / 1260));
+    }
+}
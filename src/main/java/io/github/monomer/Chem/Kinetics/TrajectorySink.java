@@ -0,0 +1,42 @@
+package io.github.monomer.Chem.Kinetics;
+
+/**
+ * Receives the states of an integration as they are computed, so that long trajectories never have to be held in
+ * memory. The state array is the integrator's own and is only valid during the call; copy it to keep it.
+ *
+ * @author Elon Litman
+ * @version 1.7
+ * @see DormandPrince
+ * @see Rosenbrock
+ */
+@FunctionalInterface
+public interface TrajectorySink {
+
+    /**
+     * @param t The time
+     * @param y The state at that time; it must not be modified
+     */
+    void accept(double t, double[] y);
+
+    /**
+     * A method that resamples a trajectory onto a regular time grid, starting at the first state received, by linear
+     * interpolation between consecutive states.
+     *
+     * @param interval The spacing of the grid
+     * @param sink Receives the resampled states
+     * @return A sink to integrate into
+     */
+    static TrajectorySink every(double interval, TrajectorySink sink) {
+        if(!(interval > 0)) {
+            throw new IllegalArgumentException("Illegal interval: " + interval);
+        }
+        return new SampledSink(interval, sink);
+    }
+
+    /**
+     * @return A sink that ignores every state
+     */
+    static TrajectorySink discard() {
+        return (t, y) -> { };
+    }
+}
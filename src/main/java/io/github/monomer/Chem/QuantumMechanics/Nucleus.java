@@ -25,7 +25,7 @@ public class Nucleus {
     public float[] coordinates;
 
     public Nucleus(String element, int charge, float mass, float[] coordinates) throws IOException {
-        this.element = new Element(element);
+        this.element = Element.of(element);
         this.charge = charge;
         this.mass = mass;
         this.coordinates = coordinates;
@@ -1,23 +1,70 @@
 package io.github.monomer.Chem.Reactions;
 
 import io.github.monomer.Chem.Core.Compound;
+import io.github.monomer.Chem.Core.EquationBalancerUtil;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
- * A class for instantiating a Combustion Reaction.
+ * A class for instantiating a Combustion Reaction. The fuel burns completely to H2O and CO2 (and NO2 and SO2 if it
+ * contains nitrogen or sulfur), and the coefficients are found in closed form by {@link CombustionCalculator} rather
+ * than by the general balancer.
  *
  * @author Elon Litman
  * @version 1.7
  * @see Reaction
+ * @see CombustionCalculator
  */
 public non-sealed class Combustion extends Reaction {
 
+    // The products in the order they are listed, and their positions in CombustionCalculator.coefficients
+    private static final String[] PRODUCTS = {"H2O", "CO2", "NO2", "SO2"};
+
+    private static final int[] PRODUCT_SLOTS = {3, 2, 4, 5};
+
     public Combustion(Compound compound) throws IOException {
-        super(new Compound[]{compound, new Compound("O2")}, new Compound[]{new Compound("H2O"), new Compound("CO2")});
+        if(compound.charge != 0) {
+            throw new IllegalArgumentException("Only neutral fuels can be burned, but got " + compound.formula);
+        }
+        long[] balanced = CombustionCalculator.coefficients(compound.composition);
+
+        List<Compound> products = new ArrayList<>(PRODUCTS.length);
+        List<Long> productCoefficients = new ArrayList<>(PRODUCTS.length);
+        for(int i=0; i<PRODUCTS.length; i++) {
+            if(balanced[PRODUCT_SLOTS[i]] != 0) {
+                products.add(Compound.of(PRODUCTS[i]));
+                productCoefficients.add(balanced[PRODUCT_SLOTS[i]]);
+            }
+        }
+        long[] coefficients = new long[2 + products.size()];
+        coefficients[0] = balanced[0];
+        coefficients[1] = balanced[1];
+        for(int i=0; i<products.size(); i++) {
+            coefficients[2 + i] = productCoefficients.get(i);
+        }
+
+        this.reactants = new Compound[]{compound, Compound.of("O2")};
+        this.products = products.toArray(new Compound[0]);
+        this.coefficients = new int[coefficients.length];
+        for(int i=0; i<coefficients.length; i++) {
+            this.coefficients[i] = Math.toIntExact(coefficients[i]);
+        }
+        this.equation = EquationBalancerUtil.writeEquation(this.reactants, this.products, coefficients);
+        this.isBalanced = true;
     }
 
     public Combustion(String compound) throws IOException {
-        super(compound + " + " + "O2" + " --> " + "H2O" + " + " + "CO2");
+        this(Compound.of(compound));
+    }
+
+    /**
+     * A method that burns one mole of the fuel in closed form.
+     *
+     * @return Its oxygen demand, exhaust, air/fuel ratio and (without an enthalpy of formation, NaN) heating values
+     */
+    public CombustionCalculator.Result burn() {
+        return CombustionCalculator.burn(reactants[0].composition);
     }
 }
@@ -0,0 +1,330 @@
+package io.github.monomer.Chem.Reactions;
+
+import io.github.monomer.Chem.Core.Composition;
+import io.github.monomer.Chem.Core.PeriodicTable;
+import io.github.monomer.Chem.Core.Rational;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Complete combustion in closed form. A fuel CxHyOzNwSv burns as
+ * <pre>
+ * CxHyOzNwSv + (x + y/4 + w + v - z/2) O2 --> x CO2 + y/2 H2O + w NO2 + v SO2
+ * </pre>
+ * so its oxygen demand, exhaust, stoichiometric air/fuel ratio, and heat release follow directly from its Composition,
+ * with no equation to write, parse, or balance. Because every quantity per mole is linear in the fuel, blends of many
+ * fuels are evaluated as mole-fraction-weighted sums of the per-fuel results, in parallel.
+ *
+ * <pre>{@code
+ * CombustionCalculator.Result octane = CombustionCalculator.burn(Compound.of("C8H18").composition, -250.1);
+ * double afr = octane.airFuelRatio;  // ≈ 15.1
+ *
+ * CombustionCalculator.Blends blends = CombustionCalculator.blend(fuels, enthalpies, methaneFractions, ethaneFractions);
+ * double[] ratios = blends.column(CombustionCalculator.Quantity.AIR_FUEL_RATIO);
+ * }</pre>
+ *
+ * @author Elon Litman
+ * @version 1.7
+ * @see Combustion
+ */
+public final class CombustionCalculator {
+
+    /**
+     * The number of blends evaluated together by one task.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 4096;
+
+    // Dry air: the mole fraction of O2, and the mean molar mass in g/mol
+    public static final double OXYGEN_IN_AIR = 0.20946;
+
+    public static final double AIR_MOLAR_MASS = 28.9647;
+
+    // Standard enthalpies of formation at 298.15 K, in kJ/mol
+    private static final double CARBON_DIOXIDE_FORMATION = -393.51;
+
+    private static final double LIQUID_WATER_FORMATION = -285.83;
+
+    private static final double WATER_VAPOR_FORMATION = -241.83;
+
+    private static final double NITROGEN_DIOXIDE_FORMATION = 33.10;
+
+    private static final double SULFUR_DIOXIDE_FORMATION = -296.84;
+
+    private static final int CARBON = 6;
+
+    private static final int HYDROGEN = 1;
+
+    private static final int NITROGEN = 7;
+
+    private static final int OXYGEN = 8;
+
+    private static final int SULFUR = 16;
+
+    private CombustionCalculator() {
+        ;
+    }
+
+    /**
+     * The quantities evaluated per fuel or blend. Amounts are per mole of fuel, heats in kJ per mole of fuel.
+     */
+    public enum Quantity {
+        OXYGEN_DEMAND,
+        CARBON_DIOXIDE,
+        WATER,
+        NITROGEN_DIOXIDE,
+        SULFUR_DIOXIDE,
+        MOLAR_MASS,
+        // Grams of air per gram of fuel
+        AIR_FUEL_RATIO,
+        // With the water condensed, or as vapor; NaN if the fuel's enthalpy of formation is not known
+        HIGHER_HEATING_VALUE,
+        LOWER_HEATING_VALUE,
+    }
+
+    /**
+     * The complete combustion of one mole of a fuel.
+     */
+    public static final class Result {
+
+        // Moles per mole of fuel; a negative oxygen demand means the fuel carries more oxygen than it needs
+        public final double oxygenDemand;
+
+        public final double carbonDioxide;
+
+        public final double water;
+
+        public final double nitrogenDioxide;
+
+        public final double sulfurDioxide;
+
+        // g/mol
+        public final double molarMass;
+
+        public final double airFuelRatio;
+
+        // kJ/mol
+        public final double higherHeatingValue;
+
+        public final double lowerHeatingValue;
+
+        private Result(double oxygenDemand, double carbonDioxide, double water, double nitrogenDioxide, double sulfurDioxide, double molarMass, double airFuelRatio, double higherHeatingValue, double lowerHeatingValue) {
+            this.oxygenDemand = oxygenDemand;
+            this.carbonDioxide = carbonDioxide;
+            this.water = water;
+            this.nitrogenDioxide = nitrogenDioxide;
+            this.sulfurDioxide = sulfurDioxide;
+            this.molarMass = molarMass;
+            this.airFuelRatio = airFuelRatio;
+            this.higherHeatingValue = higherHeatingValue;
+            this.lowerHeatingValue = lowerHeatingValue;
+        }
+
+        /**
+         * @param quantity A Quantity
+         * @return Its value
+         */
+        public double get(Quantity quantity) {
+            return switch (quantity) {
+                case OXYGEN_DEMAND -> oxygenDemand;
+                case CARBON_DIOXIDE -> carbonDioxide;
+                case WATER -> water;
+                case NITROGEN_DIOXIDE -> nitrogenDioxide;
+                case SULFUR_DIOXIDE -> sulfurDioxide;
+                case MOLAR_MASS -> molarMass;
+                case AIR_FUEL_RATIO -> airFuelRatio;
+                case HIGHER_HEATING_VALUE -> higherHeatingValue;
+                case LOWER_HEATING_VALUE -> lowerHeatingValue;
+            };
+        }
+
+        @Override
+        public String toString() {
+            return "Result{" +
+                    "oxygenDemand=" + oxygenDemand +
+                    ", carbonDioxide=" + carbonDioxide +
+                    ", water=" + water +
+                    ", nitrogenDioxide=" + nitrogenDioxide +
+                    ", sulfurDioxide=" + sulfurDioxide +
+                    ", molarMass=" + molarMass +
+                    ", airFuelRatio=" + airFuelRatio +
+                    ", higherHeatingValue=" + higherHeatingValue +
+                    ", lowerHeatingValue=" + lowerHeatingValue +
+                    '}';
+        }
+    }
+
+    /**
+     * A method that burns one mole of a fuel whose enthalpy of formation is not known, so its heating values are NaN.
+     *
+     * @param fuel The Composition of a fuel made of C, H, O, N and S only
+     * @return The Result
+     * @throws IllegalArgumentException If the fuel has any other element
+     */
+    public static Result burn(Composition fuel) {
+        return burn(fuel, Double.NaN);
+    }
+
+    /**
+     * A method that burns one mole of a fuel.
+     *
+     * @param fuel The Composition of a fuel made of C, H, O, N and S only
+     * @param enthalpyOfFormation The fuel's standard enthalpy of formation in kJ/mol, or NaN if not known
+     * @return The Result
+     * @throws IllegalArgumentException If the fuel has any other element
+     */
+    public static Result burn(Composition fuel, double enthalpyOfFormation) {
+        checkElements(fuel);
+        int x = fuel.countOf(CARBON), y = fuel.countOf(HYDROGEN), z = fuel.countOf(OXYGEN), w = fuel.countOf(NITROGEN), v = fuel.countOf(SULFUR);
+        double oxygen = x + y / 4.0 + w + v - z / 2.0;
+        double molarMass = fuel.molarMass();
+        double air = oxygen / OXYGEN_IN_AIR * AIR_MOLAR_MASS;
+        double products = x * CARBON_DIOXIDE_FORMATION + w * NITROGEN_DIOXIDE_FORMATION + v * SULFUR_DIOXIDE_FORMATION;
+        double higher = enthalpyOfFormation - products - y / 2.0 * LIQUID_WATER_FORMATION;
+        double lower = enthalpyOfFormation - products - y / 2.0 * WATER_VAPOR_FORMATION;
+        return new Result(oxygen, x, y / 2.0, w, v, molarMass, air / molarMass, higher, lower);
+    }
+
+    /**
+     * A method that finds the smallest whole-number coefficients of a complete combustion.
+     *
+     * @param fuel The Composition of a fuel made of C, H, O, N and S only
+     * @return The coefficients of the fuel, O2, CO2, H2O, NO2 and SO2, in that order; a product the fuel cannot form has 0
+     * @throws IllegalArgumentException If the fuel has any other element or needs no oxygen to burn
+     */
+    public static long[] coefficients(Composition fuel) {
+        checkElements(fuel);
+        long x = fuel.countOf(CARBON), y = fuel.countOf(HYDROGEN), z = fuel.countOf(OXYGEN), w = fuel.countOf(NITROGEN), v = fuel.countOf(SULFUR);
+        // Four moles of fuel clear every fraction in the oxygen demand
+        long[] coefficients = {4, 4 * x + y + 4 * w + 4 * v - 2 * z, 4 * x, 2 * y, 4 * w, 4 * v};
+        if(coefficients[1] <= 0) {
+            throw new IllegalArgumentException("The fuel " + fuel.toHillFormula() + " needs no oxygen to burn");
+        }
+        long gcd = 0;
+        for(long coefficient : coefficients) {
+            gcd = Rational.gcd(gcd, coefficient);
+        }
+        for(int i=0; i<coefficients.length; i++) {
+            coefficients[i] /= gcd;
+        }
+        return coefficients;
+    }
+
+    /**
+     * The results for a run of blends, as primitive columns.
+     */
+    public static final class Blends {
+
+        private final int size;
+
+        // columns[quantity.ordinal()][blend]
+        private final double[][] columns;
+
+        private Blends(int size, double[][] columns) {
+            this.size = size;
+            this.columns = columns;
+        }
+
+        /**
+         * @return The number of blends
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * @param quantity A Quantity
+         * @param blend The row of a blend
+         * @return The value of the quantity for the blend, per mole of blend
+         */
+        public double get(Quantity quantity, int blend) {
+            return columns[quantity.ordinal()][blend];
+        }
+
+        /**
+         * @param quantity A Quantity
+         * @return A copy of its column
+         */
+        public double[] column(Quantity quantity) {
+            return Arrays.copyOf(columns[quantity.ordinal()], size);
+        }
+    }
+
+    /**
+     * A method that evaluates many blends of the same fuels in parallel. The fractions of each blend are normalized by
+     * their sum, so they may also be given as moles.
+     *
+     * @param fuels The Compositions of the fuels
+     * @param enthalpiesOfFormation The standard enthalpy of formation of each fuel in kJ/mol, or null if not known
+     * @param fractions One column per fuel, in order, holding its mole fraction in each blend; all of the same length
+     * @return The results per mole of blend, aligned with the rows of the input; a blend with no fuel is NaN throughout
+     * @throws IllegalArgumentException If a fuel cannot be burned or the columns do not match the fuels
+     */
+    public static Blends blend(Composition[] fuels, double[] enthalpiesOfFormation, double[]... fractions) {
+        if(fractions.length != fuels.length || (enthalpiesOfFormation != null && enthalpiesOfFormation.length != fuels.length)) {
+            throw new IllegalArgumentException("Expected one column and one enthalpy per fuel");
+        }
+        int n = fuels.length == 0 ? 0 : fractions[0].length;
+        for(double[] column : fractions) {
+            if(column.length != n) {
+                throw new IllegalArgumentException("Expected every column to have " + n + " rows, but got " + column.length);
+            }
+        }
+
+        // The linear quantities of each fuel, per mole; the air/fuel ratio is a ratio of two of them and is done last
+        Quantity[] quantities = Quantity.values();
+        int airFuelRatio = Quantity.AIR_FUEL_RATIO.ordinal();
+        double[][] perFuel = new double[fuels.length][quantities.length];
+        for(int f=0; f<fuels.length; f++) {
+            Result result = burn(fuels[f], enthalpiesOfFormation == null ? Double.NaN : enthalpiesOfFormation[f]);
+            for(Quantity quantity : quantities) {
+                perFuel[f][quantity.ordinal()] = result.get(quantity);
+            }
+        }
+
+        double[][] columns = new double[quantities.length][n];
+        int chunks = (n + DEFAULT_CHUNK_SIZE - 1) / DEFAULT_CHUNK_SIZE;
+        IntStream.range(0, chunks).parallel().forEach(c -> {
+            int from = c * DEFAULT_CHUNK_SIZE;
+            int to = Math.min(n, from + DEFAULT_CHUNK_SIZE);
+            double[] total = new double[to - from];
+            for(double[] column : fractions) {
+                for(int row=from; row<to; row++) {
+                    total[row - from] += column[row];
+                }
+            }
+            for(int q=0; q<quantities.length; q++) {
+                if(q == airFuelRatio) {
+                    continue;
+                }
+                double[] out = columns[q];
+                for(int f=0; f<fuels.length; f++) {
+                    double[] column = fractions[f];
+                    double value = perFuel[f][q];
+                    for(int row=from; row<to; row++) {
+                        out[row] += column[row] * value;
+                    }
+                }
+                for(int row=from; row<to; row++) {
+                    out[row] /= total[row - from];
+                }
+            }
+            double[] oxygen = columns[Quantity.OXYGEN_DEMAND.ordinal()];
+            double[] molarMass = columns[Quantity.MOLAR_MASS.ordinal()];
+            double[] ratio = columns[airFuelRatio];
+            for(int row=from; row<to; row++) {
+                ratio[row] = oxygen[row] / OXYGEN_IN_AIR * AIR_MOLAR_MASS / molarMass[row];
+            }
+        });
+        return new Blends(n, columns);
+    }
+
+    private static void checkElements(Composition fuel) {
+        for(int k=0; k<fuel.size(); k++) {
+            int z = fuel.atomicNumberAt(k);
+            if(z != CARBON && z != HYDROGEN && z != OXYGEN && z != NITROGEN && z != SULFUR) {
+                throw new IllegalArgumentException("Only fuels of C, H, O, N and S can be burned, but got " + PeriodicTable.byAtomicNumber(z).elementSymbol);
+            }
+        }
+    }
+}
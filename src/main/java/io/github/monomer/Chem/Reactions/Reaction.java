@@ -1,13 +1,14 @@
 package io.github.monomer.Chem.Reactions;
 
 import io.github.monomer.Chem.Core.Compound;
+import io.github.monomer.Chem.Core.Constants;
+import io.github.monomer.Chem.Core.Equation;
 import io.github.monomer.Chem.Core.EquationBalancerUtil;
+import io.github.monomer.Chem.Core.EquationParseException;
+import io.github.monomer.Chem.Core.EquationParser;
 
 import java.io.IOException;
-import java.lang.reflect.Array;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * A class for instantiating a Reaction with a set of reactant and product Compounds.
@@ -25,119 +26,158 @@ public sealed class Reaction permits Combustion {
 
     public String equation;
 
+    // The balanced coefficients of the reactants followed by those of the products, filled in once by the balancer, or
+    // on first use for a Reaction whose Compounds were assigned directly; not public, as equals and hashCode read it
+    int[] coefficients;
+
     public boolean isBalanced;
 
     /**
      * Instantiate a Reaction object using a string to represent the formula.
      *
-     * @param equation A formula String, where the formulae of reactants are separated by + signs on the left side of the arrow -->, and on the right side of the arrow, the formulae of products are separated by + signs.
+     * @param equation A formula String, where the formulae of reactants are separated by + signs on the left side of the arrow -->, and on the right side of the arrow, the formulae of products are separated by + signs. Any coefficients and phases are ignored.
+     * @throws EquationParseException If the equation is malformed
      */
     public Reaction(String equation) throws IOException {
-        // Strip any coefficients
-        if(EquationBalancerUtil.isBalanced(equation)) {
-            equation = equation.replaceAll("(?<=\\ )\\d*(?=\\w)", " ").replaceAll("(\\ )+", " ");
-        }
-
-        // Match all reactants
-        Pattern patternReactants = Pattern.compile("\\ ?.+(?=-->)\\ ?", Pattern.CASE_INSENSITIVE);
-
-        Matcher reactantsMatcher = patternReactants.matcher(equation);
-        reactantsMatcher.find();
-        String[] reactantsStrArr = reactantsMatcher.group().replaceAll("\\s+","").split("\\+");
-
-        // Match all products
-        Pattern patternProducts = Pattern.compile("\\ ?(?<=-->).+\\ ?", Pattern.CASE_INSENSITIVE);
-
-        Matcher productsMatcher = patternProducts.matcher(equation);
-        productsMatcher.find();
-        String[] productsStrArr = productsMatcher.group().replaceAll("\\s+", "").split("\\+");
+        Equation parsed = EquationParser.parse(equation);
 
         // Make Compound arrays to hold reactants and products
-        Compound[] reactants = new Compound[reactantsStrArr.length];
-        Compound[] products = new Compound[productsStrArr.length];
-
-        // Instantiate Compound objects using those reactants
-        for(int i=0; i<reactantsStrArr.length; i++) {
-            reactants[i] = new Compound(reactantsStrArr[i]);
+        Compound[] reactants = new Compound[parsed.reactantCount()];
+        Compound[] products = new Compound[parsed.productCount()];
+        for(int i=0; i<parsed.size(); i++) {
+            Compound compound = Compound.of(parsed.term(i).formula);
+            if(parsed.isReactant(i)) {
+                reactants[i] = compound;
+            } else {
+                products[i - reactants.length] = compound;
+            }
         }
 
-        for(int i=0; i<productsStrArr.length; i++) {
-            products[i] = new Compound(productsStrArr[i]);
-        }
+        // Balance (a memo lookup for reactions seen before)
+        this.reactants = reactants;
+        this.products = products;
+        balance();
+    }
 
-        // Balance
-        if(!EquationBalancerUtil.isBalanced(equation)) {
-            equation = EquationBalancerUtil.getBalancedReaction(equation);
+    public Reaction(String[] reactants, String[] products) throws IOException {
+        this.reactants = new Compound[reactants.length];
+        for(int i=0; i<reactants.length; i++) {
+            this.reactants[i] = Compound.of(reactants[i]);
+        }
+        this.products = new Compound[products.length];
+        for(int i=0; i<products.length; i++) {
+            this.products[i] = Compound.of(products[i]);
         }
+        balance();
+    }
 
-        // Assignment to fields
+    public Reaction(Compound[] reactants, Compound[] products) throws IOException {
         this.reactants = reactants;
         this.products = products;
-        this.equation = equation;
-        this.isBalanced = EquationBalancerUtil.isBalanced(equation);
+        balance();
     }
 
-    public Reaction(String[] reactants, String[] products) throws IOException {
-        String equation = String.join(" + ", reactants) + " --> " + String.join(" + ", products);
+    public Reaction() {
+        ;
+    }
 
-        // Balance
-        if(!EquationBalancerUtil.isBalanced(equation)) {
-            equation = EquationBalancerUtil.getBalancedReaction(equation);
-        }
+    private void balance() {
+        long[] balanced = EquationBalancerUtil.getCoefficients(reactants, products);
+        this.equation = EquationBalancerUtil.writeEquation(reactants, products, balanced);
+        this.coefficients = narrow(balanced);
+        this.isBalanced = true;
+    }
 
-        List<Compound> tempReactants = null;
-        List<Compound> tempProducts = null;
-        for(String reactant : reactants) {
-            tempReactants.add(new Compound(reactant));
+    // The stored coefficients, balancing and storing them first if they were never filled in
+    private int[] coefficients() {
+        if(coefficients == null) {
+            coefficients = narrow(EquationBalancerUtil.getCoefficients(reactants, products));
         }
-        for(String product : products) {
-            tempProducts.add(new Compound(product));
-        }
-        assert tempReactants != null;
-        assert tempProducts != null;
-        this.reactants = tempReactants.toArray(new Compound[tempReactants.size()]);
-        this.products = tempProducts.toArray(new Compound[tempProducts.size()]);
-        this.equation = equation;
-        this.isBalanced = EquationBalancerUtil.isBalanced(equation);
+        return coefficients;
     }
 
-    public Reaction(Compound[] reactants, Compound[] products) throws IOException {
-        String[] reactantsStr = new String[reactants.length];
-        for(int i=0; i<reactants.length; i++) {
-            reactantsStr[i] = reactants[i].formula;
-        }
-        String[] productsStr = new String[products.length];
-        for(int i=0; i<products.length; i++) {
-            productsStr[i] = products[i].formula;
+    private static int[] narrow(long[] balanced) {
+        int[] coefficients = new int[balanced.length];
+        for(int i=0; i<balanced.length; i++) {
+            if(balanced[i] > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("The coefficients of this equation are too large to represent");
+            }
+            coefficients[i] = (int) balanced[i];
         }
+        return coefficients;
+    }
 
-        String equation = String.join(" + ", reactantsStr) + " --> " + String.join(" + ", productsStr);
-
-        // Balance
-        if(!EquationBalancerUtil.isBalanced(equation)) {
-            equation = EquationBalancerUtil.getBalancedReaction(equation);
+    /**
+     * A method that finds a Compound in the Reaction by its formula, ignoring case if no formula matches exactly.
+     *
+     * @param formula The formula of a reactant or product
+     * @return Its index among the reactants followed by the products
+     * @throws IllegalArgumentException If the Reaction has no such Compound
+     */
+    public int indexOf(String formula) {
+        int count = reactants.length + products.length;
+        for(int i=0; i<count; i++) {
+            if(compound(i).formula.equals(formula)) {
+                return i;
+            }
+        }
+        for(int i=0; i<count; i++) {
+            if(compound(i).formula.equalsIgnoreCase(formula)) {
+                return i;
+            }
         }
+        throw new IllegalArgumentException(formula + " does not take part in this reaction");
+    }
 
-        this.equation = equation;
-        this.reactants = reactants;
-        this.products = products;
-        this.isBalanced = EquationBalancerUtil.isBalanced(equation);
+    /**
+     * @param index An index among the reactants followed by the products
+     * @return The Compound at that index
+     */
+    public Compound compound(int index) {
+        return index < reactants.length ? reactants[index] : products[index - reactants.length];
     }
 
-    public Reaction() {
-        ;
+    /**
+     * A method that gets the balanced coefficients, balancing the Reaction and storing them if they were never filled in.
+     *
+     * @return A copy of the coefficients of the reactants followed by those of the products
+     * @throws IllegalArgumentException If the Reaction has no stored coefficients and cannot be balanced
+     */
+    public long[] getCoefficients() {
+        return widen(coefficients());
     }
 
-    private <T> T[] concatenate(T[] a, T[] b) {
-        int aLen = a.length;
-        int bLen = b.length;
+    /**
+     * @return A copy of the stored coefficients of the reactants followed by those of the products, or null if the
+     * Reaction was never balanced
+     */
+    public long[] getStoredCoefficients() {
+        return coefficients == null ? null : widen(coefficients);
+    }
 
-        @SuppressWarnings("unchecked")
-        T[] c = (T[]) Array.newInstance(a.getClass().getComponentType(), aLen + bLen);
-        System.arraycopy(a, 0, c, 0, aLen);
-        System.arraycopy(b, 0, c, aLen, bLen);
+    private static long[] widen(int[] coefficients) {
+        long[] widened = new long[coefficients.length];
+        for(int i=0; i<coefficients.length; i++) {
+            widened[i] = coefficients[i];
+        }
+        return widened;
+    }
 
-        return c;
+    /**
+     * A method that calculates the stoichiometric moles of every Compound in the reaction given the moles of one.
+     *
+     * @param index The index of the chosen Compound among the reactants followed by the products
+     * @param moles The moles of the chosen Compound
+     * @param out Receives the moles of each Compound, aligned with the reactants followed by the products
+     * @return out
+     */
+    public float[] getMoles(int index, float moles, float[] out) {
+        int[] coefficients = coefficients();
+        float perUnit = moles / coefficients[index];
+        for(int i=0; i<coefficients.length; i++) {
+            out[i] = coefficients[i] * perUnit;
+        }
+        return out;
     }
 
     /**
@@ -149,45 +189,12 @@ public sealed class Reaction permits Combustion {
      * @return The amounts of each Compound in the reaction as a List of HashMaps
      */
     public ArrayList<HashMap<String, Float>> getAmounts(String compoundNameArg, String unitArg, float quantity) throws IOException {
-        ArrayList<HashMap<String, Float>> stoichiometricAmounts = new ArrayList<>();
-
-        compoundNameArg = compoundNameArg.substring(0, 1).toUpperCase() + compoundNameArg.substring(1).toLowerCase();
-        unitArg = unitArg.substring(0, 1).toUpperCase() + unitArg.substring(1).toLowerCase();
-
-        Compound[] allCompounds = concatenate(reactants, products);
-        Map<String, Float> indexMoles = new Compound(compoundNameArg).getAmounts(unitArg, quantity);
-
-        Compound indexCompound = new Compound(compoundNameArg);
-
-        float indexAmount = indexCompound.getAmounts(unitArg, quantity).get("Moles");
-
-        Pattern indexCoefficientPattern = Pattern.compile("\\ ?\\d+(?=" + indexCompound.formula + ")\\ ?", Pattern.CASE_INSENSITIVE);
-
-        Matcher indexCoefficientMatcher = indexCoefficientPattern.matcher(equation);
-        indexCoefficientMatcher.find();
+        int index = indexOf(compoundNameArg);
+        float[] moles = getMoles(index, toMoles(compound(index), unitArg, quantity), new float[reactants.length + products.length]);
 
-        float indexCoefficient;
-        try {
-            indexCoefficient = Integer.parseInt(indexCoefficientMatcher.group().strip());
-        } catch (IllegalStateException ignored) {
-            indexCoefficient = 1;
-        }
-
-        for(int i=0; i<allCompounds.length; i++) {
-            // Check coefficients
-            Pattern patternCoefficients = Pattern.compile("\\ ?\\d+(?=" + allCompounds[i].formula + ")\\ ?", Pattern.CASE_INSENSITIVE);
-
-            Matcher coefficientsMatcher = patternCoefficients.matcher(equation);
-            coefficientsMatcher.find();
-
-            int coefficient = 1;
-            try {
-                coefficient = Integer.parseInt(coefficientsMatcher.group().strip());
-            } catch (IllegalStateException ignored) {
-                ;
-            }
-            HashMap<String, Float> compoundAmounts = allCompounds[i].getAmounts("Moles", (coefficient / indexCoefficient) * indexMoles.get("Moles"));
-            stoichiometricAmounts.add(compoundAmounts);
+        ArrayList<HashMap<String, Float>> stoichiometricAmounts = new ArrayList<>(moles.length);
+        for(int i=0; i<moles.length; i++) {
+            stoichiometricAmounts.add(compound(i).getAmounts("Moles", moles[i]));
         }
         return stoichiometricAmounts;
     }
@@ -200,46 +207,47 @@ public sealed class Reaction permits Combustion {
      * @return The limiting reagent
      */
     public Compound getLimitingReagent(String unitArg, float... quantities) {
-        HashMap<Compound, Float> compoundToMoleMap = new HashMap<>();
+        return reactants[getLimitingReagentIndex(unitArg, quantities)];
+    }
 
-        for(int i=0; i<quantities.length; i++) {
-            float moles = reactants[i].getAmounts(unitArg, quantities[i]).get("Moles");
-            compoundToMoleMap.put(reactants[i], moles);
+    /**
+     * A method for obtaining the index of the limiting reagent, the reactant with the fewest moles per unit of its
+     * coefficient.
+     *
+     * @param unitArg The units of each amount (can either be "Grams", "Moles", or "Molecules")
+     * @param quantities The positional amounts of each reactant to use in the Reaction; missing ones are not limiting
+     * @return The index of the limiting reagent among the reactants
+     */
+    public int getLimitingReagentIndex(String unitArg, float... quantities) {
+        int count = Math.min(quantities.length, reactants.length);
+        if(count == 0) {
+            throw new IllegalArgumentException("Expected the amount of at least one reactant");
         }
-
-        HashMap<Compound, Float> compoundMolesToMolesOfProduct = new HashMap<>();
-        HashMap<Compound, Float> compoundMolesOccurrences = new HashMap<>();
-
-        constructCompoundMolesOccurrencesMap(compoundMolesOccurrences, reactants);
-
-        constructCompoundMolesOccurrencesMap(compoundMolesOccurrences, products);
-
-        for(Compound c : compoundMolesOccurrences.keySet()) {
-            try {
-                compoundMolesToMolesOfProduct.put(c, compoundToMoleMap.get(c) * (compoundMolesOccurrences.get(products[0]) / compoundMolesOccurrences.get(c)));
-            } catch(NullPointerException ignored) {
-                ;
+        int[] coefficients = coefficients();
+        int limiting = 0;
+        float fewest = Float.POSITIVE_INFINITY;
+        for(int i=0; i<count; i++) {
+            float extent = toMoles(reactants[i], unitArg, quantities[i]) / coefficients[i];
+            if(extent < fewest) {
+                fewest = extent;
+                limiting = i;
             }
         }
-
-        return Collections.min(compoundMolesToMolesOfProduct.entrySet(), Map.Entry.comparingByValue()).getKey();
+        return limiting;
     }
 
-    private void constructCompoundMolesOccurrencesMap(HashMap<Compound, Float> compoundMolesOccurrences, Compound[] compounds) {
-        for(Compound c : compounds) {
-            Pattern coefficientPattern = Pattern.compile("\\ ?\\d+(?=" + c.formula + ")\\ ?", Pattern.CASE_INSENSITIVE);
-
-            Matcher coefficientMatcher = coefficientPattern.matcher(equation);
-            coefficientMatcher.find();
-
-            float coefficient;
-            try {
-                coefficient = Integer.parseInt(coefficientMatcher.group().strip());
-            } catch (IllegalStateException ignored) {
-                coefficient = 1;
-            }
-            compoundMolesOccurrences.put(c, coefficient);
+    // The same conversions as Compound.getAmounts, without building a map
+    private static float toMoles(Compound compound, String unitArg, float quantity) {
+        if(unitArg.equalsIgnoreCase("Moles")) {
+            return quantity;
+        }
+        if(unitArg.equalsIgnoreCase("Grams")) {
+            return quantity / compound.getMolarMass();
+        }
+        if(unitArg.equalsIgnoreCase("Molecules")) {
+            return quantity / Constants.AVOGADRO_CONSTANT.getValue();
         }
+        throw new IllegalArgumentException("Unknown unit: " + unitArg);
     }
 
     @Override
@@ -247,7 +255,7 @@ public sealed class Reaction permits Combustion {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         Reaction reaction = (Reaction) o;
-        return isBalanced == reaction.isBalanced && Arrays.equals(reactants, reaction.reactants) && Arrays.equals(products, reaction.products) && equation.equals(reaction.equation);
+        return isBalanced == reaction.isBalanced && Arrays.equals(reactants, reaction.reactants) && Arrays.equals(products, reaction.products) && equation.equals(reaction.equation) && Arrays.equals(coefficients, reaction.coefficients);
     }
 
     @Override
@@ -255,6 +263,7 @@ public sealed class Reaction permits Combustion {
         int result = Objects.hash(equation, isBalanced);
         result = 31 * result + Arrays.hashCode(reactants);
         result = 31 * result + Arrays.hashCode(products);
+        result = 31 * result + Arrays.hashCode(coefficients);
         return result;
     }
 
@@ -264,6 +273,7 @@ public sealed class Reaction permits Combustion {
                 "reactants=" + Arrays.toString(reactants) +
                 ", products=" + Arrays.toString(products) +
                 ", equation='" + equation + '\'' +
+                ", coefficients=" + Arrays.toString(coefficients) +
                 ", isBalanced=" + isBalanced +
                 '}';
     }
@@ -0,0 +1,638 @@
+package io.github.monomer.Chem.Reactions;
+
+import io.github.monomer.Chem.Core.Compound;
+import io.github.monomer.Chem.Core.Rational;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A network of many reactions, held as its sparse species-by-reaction stoichiometric matrix N: entry (s, r) is the net
+ * number of molecules of species s that reaction r produces (negative if it consumes them). N is stored twice, by column
+ * (CSC, one reaction at a time) and by row (CSR, one species at a time), so both are scanned without searching. Species
+ * are identified by their formula as written, in order of first appearance.
+ *
+ * <pre>{@code
+ * ReactionNetwork network = ReactionNetwork.builder()
+ *         .add(new Reaction("H2 + O2 --> H2O"))
+ *         .add(new Reaction("H2O2 --> H2O + O2"))
+ *         .build();
+ * List<ReactionNetwork.ConservationLaw> laws = network.conservationLaws();
+ * }</pre>
+ *
+ * Conservation laws (the left nullspace of N) and dependent reactions are found by sparse Gaussian elimination in exact
+ * rational arithmetic over the reactions, so memory grows with the non-zeros of the reduced matrix rather than with the
+ * square of the number of species.
+ *
+ * @author Elon Litman
+ * @version 1.7
+ * @see Reaction
+ * @see Rational
+ */
+public final class ReactionNetwork {
+
+    private final String[] species;
+
+    private final Map<String, Integer> speciesIndex;
+
+    // Null for reactions added by stoichiometry alone
+    private final Reaction[] reactions;
+
+    // CSC: the entries of reaction r are columnStart[r] until columnStart[r + 1], by increasing species
+    private final int[] columnStart;
+
+    private final int[] columnSpecies;
+
+    private final long[] columnValues;
+
+    // CSR: the entries of species s are rowStart[s] until rowStart[s + 1], by increasing reaction
+    private final int[] rowStart;
+
+    private final int[] rowReactions;
+
+    private final long[] rowValues;
+
+    // Built on first use; racing threads may each build one, but all fields of Analysis are final, so none sees it half built
+    private Analysis analysis;
+
+    private ReactionNetwork(Builder builder) {
+        this.species = builder.species.toArray(new String[0]);
+        this.speciesIndex = Map.copyOf(builder.speciesIndex);
+        this.reactions = builder.reactions.toArray(new Reaction[0]);
+        this.columnStart = Arrays.copyOf(builder.columnStart, reactions.length + 1);
+        this.columnSpecies = Arrays.copyOf(builder.entrySpecies, builder.size);
+        this.columnValues = Arrays.copyOf(builder.entryValues, builder.size);
+
+        // Transpose by counting sort; scanning columns in order leaves every row sorted by reaction
+        int nonZeros = columnSpecies.length;
+        this.rowStart = new int[species.length + 1];
+        for(int k=0; k<nonZeros; k++) {
+            rowStart[columnSpecies[k] + 1]++;
+        }
+        for(int s=0; s<species.length; s++) {
+            rowStart[s + 1] += rowStart[s];
+        }
+        this.rowReactions = new int[nonZeros];
+        this.rowValues = new long[nonZeros];
+        int[] next = Arrays.copyOf(rowStart, species.length);
+        for(int r=0; r<reactions.length; r++) {
+            for(int k=columnStart[r]; k<columnStart[r + 1]; k++) {
+                int at = next[columnSpecies[k]]++;
+                rowReactions[at] = r;
+                rowValues[at] = columnValues[k];
+            }
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * A method that builds a network from balanced Reactions.
+     *
+     * @param reactions The Reactions, which become the columns of N in order
+     * @return The network
+     */
+    public static ReactionNetwork of(List<Reaction> reactions) {
+        Builder builder = builder();
+        for(Reaction reaction : reactions) {
+            builder.add(reaction);
+        }
+        return builder.build();
+    }
+
+    public int speciesCount() {
+        return species.length;
+    }
+
+    public int reactionCount() {
+        return reactions.length;
+    }
+
+    /**
+     * @return The number of non-zero entries of N
+     */
+    public int nonZeroCount() {
+        return columnSpecies.length;
+    }
+
+    /**
+     * @param index A species, between 0 and speciesCount() - 1
+     * @return Its formula
+     */
+    public String species(int index) {
+        return species[index];
+    }
+
+    /**
+     * @param formula The formula of a species, as written in its reactions
+     * @return Its index, or -1 if it is not in the network
+     */
+    public int indexOf(String formula) {
+        Integer index = speciesIndex.get(formula);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * @param index A reaction, between 0 and reactionCount() - 1
+     * @return The Reaction, or null if it was added by its stoichiometry alone
+     */
+    public Reaction reaction(int index) {
+        return reactions[index];
+    }
+
+    /**
+     * @param species A species index
+     * @param reaction A reaction index
+     * @return Entry (species, reaction) of N
+     */
+    public long coefficient(int species, int reaction) {
+        int k = Arrays.binarySearch(columnSpecies, columnStart[reaction], columnStart[reaction + 1], species);
+        return k < 0 ? 0 : columnValues[k];
+    }
+
+    /**
+     * @param reaction A reaction index
+     * @return The position of the first entry of its column; the column runs until columnStart(reaction + 1)
+     */
+    public int columnStart(int reaction) {
+        return columnStart[reaction];
+    }
+
+    /**
+     * @param k A position in the columns, between columnStart(r) and columnStart(r + 1) - 1
+     * @return The species of that entry
+     */
+    public int columnSpecies(int k) {
+        return columnSpecies[k];
+    }
+
+    /**
+     * @param k A position in the columns, between columnStart(r) and columnStart(r + 1) - 1
+     * @return The value of that entry
+     */
+    public long columnValue(int k) {
+        return columnValues[k];
+    }
+
+    /**
+     * @param species A species index
+     * @return The position of the first entry of its row; the row runs until rowStart(species + 1)
+     */
+    public int rowStart(int species) {
+        return rowStart[species];
+    }
+
+    /**
+     * @param k A position in the rows, between rowStart(s) and rowStart(s + 1) - 1
+     * @return The reaction of that entry
+     */
+    public int rowReaction(int k) {
+        return rowReactions[k];
+    }
+
+    /**
+     * @param k A position in the rows, between rowStart(s) and rowStart(s + 1) - 1
+     * @return The value of that entry
+     */
+    public long rowValue(int k) {
+        return rowValues[k];
+    }
+
+    /**
+     * @return The rank of N, i.e. the number of independent reactions
+     */
+    public int rank() {
+        return analysis().rank;
+    }
+
+    /**
+     * A method that finds the reactions that are linear combinations of earlier ones, e.g. the sum of two reactions
+     * already in the network. Removing them all leaves an independent set with the same rank.
+     *
+     * @return The indices of the dependent reactions, in increasing order
+     */
+    public int[] dependentReactions() {
+        return analysis().dependent.clone();
+    }
+
+    /**
+     * A method that finds a basis of the conservation laws of the network: the integer vectors y with yᵀN = 0, i.e. the
+     * weighted sums of species that no reaction changes, such as the total of each element or of each moiety.
+     *
+     * @return One law per dimension of the left nullspace of N
+     * @throws ArithmeticException If a coefficient of a law does not fit in a long
+     */
+    public List<ConservationLaw> conservationLaws() {
+        Analysis a = analysis();
+        int[] pivotOf = a.pivotOf;
+        List<ConservationLaw> laws = new ArrayList<>(species.length - a.rank);
+        Rational[] y = new Rational[species.length];
+        int[] support = new int[species.length];
+        for(int free=0; free<species.length; free++) {
+            if(pivotOf[free] >= 0) {
+                continue;
+            }
+            // Back substitution with y[free] = 1 and every other free species 0, from the last row to the first: each
+            // row only holds its own pivot, free species, and the pivots of later rows
+            int size = 0;
+            y[free] = Rational.ONE;
+            support[size++] = free;
+            for(int i=a.rank - 1; i>=0; i--) {
+                int[] columns = a.rowColumns[i];
+                Rational[] values = a.rowValues[i];
+                Rational.Accumulator sum = null;
+                for(int j=0; j<columns.length; j++) {
+                    if(columns[j] != a.pivots[i] && y[columns[j]] != null) {
+                        if(sum == null) {
+                            sum = new Rational.Accumulator();
+                        }
+                        sum.addProduct(values[j], y[columns[j]]);
+                    }
+                }
+                if(sum != null) {
+                    Rational value = sum.toRational().negate();
+                    if(!value.isZero()) {
+                        y[a.pivots[i]] = value;
+                        support[size++] = a.pivots[i];
+                    }
+                }
+            }
+
+            int[] indices = Arrays.copyOf(support, size);
+            Arrays.sort(indices);
+            laws.add(new ConservationLaw(this, indices, toPrimitiveIntegers(y, indices)));
+            for(int k=0; k<size; k++) {
+                y[support[k]] = null;
+            }
+        }
+        return laws;
+    }
+
+    // Scale by the common denominator and divide out the common factor, making the first entry positive
+    private static long[] toPrimitiveIntegers(Rational[] y, int[] indices) {
+        BigInteger lcm = BigInteger.ONE;
+        for(int s : indices) {
+            BigInteger d = y[s].denominator();
+            lcm = lcm.divide(lcm.gcd(d)).multiply(d);
+        }
+        BigInteger[] scaled = new BigInteger[indices.length];
+        BigInteger gcd = BigInteger.ZERO;
+        for(int k=0; k<indices.length; k++) {
+            scaled[k] = y[indices[k]].numerator().multiply(lcm.divide(y[indices[k]].denominator()));
+            gcd = gcd.gcd(scaled[k]);
+        }
+        if(scaled.length > 0 && scaled[0].signum() < 0) {
+            gcd = gcd.negate();
+        }
+        long[] coefficients = new long[indices.length];
+        for(int k=0; k<indices.length; k++) {
+            coefficients[k] = scaled[k].divide(gcd).longValueExact();
+        }
+        return coefficients;
+    }
+
+    private Analysis analysis() {
+        Analysis a = analysis;
+        if(a == null) {
+            a = new Analysis(this);
+            analysis = a;
+        }
+        return a;
+    }
+
+    /**
+     * A conservation law: a weighted sum of species amounts that stays constant under every reaction of the network.
+     * The weights are held sparsely, by increasing species index.
+     */
+    public static final class ConservationLaw {
+
+        private final ReactionNetwork network;
+
+        public final int[] species;
+
+        public final long[] coefficients;
+
+        private ConservationLaw(ReactionNetwork network, int[] species, long[] coefficients) {
+            this.network = network;
+            this.species = species;
+            this.coefficients = coefficients;
+        }
+
+        /**
+         * @param index A species index
+         * @return The weight of that species in the law, often 0
+         */
+        public long coefficientOf(int index) {
+            int k = Arrays.binarySearch(species, index);
+            return k < 0 ? 0 : coefficients[k];
+        }
+
+        /**
+         * A method that evaluates the conserved quantity for a state of the network.
+         *
+         * @param amounts The amount of every species, indexed like the network
+         * @return The weighted sum
+         */
+        public double evaluate(double[] amounts) {
+            double sum = 0;
+            for(int k=0; k<species.length; k++) {
+                sum += coefficients[k] * amounts[species[k]];
+            }
+            return sum;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            for(int k=0; k<species.length; k++) {
+                long c = coefficients[k];
+                if(k > 0) {
+                    sb.append(c < 0 ? " - " : " + ");
+                } else if(c < 0) {
+                    sb.append('-');
+                }
+                if(Math.abs(c) != 1) {
+                    sb.append(Math.abs(c));
+                }
+                sb.append(network.species[species[k]]);
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * The row echelon form of Nᵀ (one row per independent reaction), built one reaction at a time. Each new reaction is
+     * reduced by the earlier pivot rows in the order they were created, which never brings back a pivot already
+     * eliminated, since every row was itself reduced by all earlier ones. A reaction that reduces to nothing is
+     * dependent; otherwise it becomes a row, pivoting on the species that occurs in the fewest reactions to limit
+     * fill-in, scaled so the pivot is 1.
+     */
+    private static final class Analysis {
+
+        final int rank;
+
+        final int[] pivots;
+
+        // The row with its pivot on each species, or -1
+        final int[] pivotOf;
+
+        final int[][] rowColumns;
+
+        final Rational[][] rowValues;
+
+        final int[] dependent;
+
+        Analysis(ReactionNetwork network) {
+            int n = network.species.length;
+            int m = network.reactions.length;
+            this.pivotOf = new int[n];
+            Arrays.fill(pivotOf, -1);
+            // Filled in locals and published through the final fields at the end
+            int rank = 0;
+            int[] pivots = new int[Math.min(n, m)];
+            int[][] rowColumns = new int[pivots.length][];
+            Rational[][] rowValues = new Rational[pivots.length][];
+            int[] dependent = new int[m];
+            int dependentCount = 0;
+
+            // A sparse accumulator for the reaction being reduced
+            Rational[] work = new Rational[n];
+            int[] touched = new int[n];
+            int touchedCount;
+            // A min-heap of the rows whose pivots occur in it
+            int[] heap = new int[Math.max(1, pivots.length)];
+            boolean[] queued = new boolean[pivots.length];
+            int heapSize;
+
+            for(int r=0; r<m; r++) {
+                touchedCount = 0;
+                heapSize = 0;
+                for(int k=network.columnStart[r]; k<network.columnStart[r + 1]; k++) {
+                    int s = network.columnSpecies[k];
+                    work[s] = Rational.valueOf(network.columnValues[k]);
+                    touched[touchedCount++] = s;
+                    if(pivotOf[s] >= 0) {
+                        heapSize = push(heap, heapSize, pivotOf[s]);
+                        queued[pivotOf[s]] = true;
+                    }
+                }
+
+                while(heapSize > 0) {
+                    int i = heap[0];
+                    heapSize = pop(heap, heapSize);
+                    queued[i] = false;
+                    Rational factor = work[pivots[i]];
+                    if(factor == null || factor.isZero()) {
+                        continue;
+                    }
+                    int[] columns = rowColumns[i];
+                    Rational[] values = rowValues[i];
+                    for(int j=0; j<columns.length; j++) {
+                        int s = columns[j];
+                        if(work[s] == null) {
+                            work[s] = Rational.ZERO;
+                            touched[touchedCount++] = s;
+                        }
+                        work[s] = work[s].subtract(factor.multiply(values[j]));
+                        int row = pivotOf[s];
+                        if(row > i && !queued[row] && !work[s].isZero()) {
+                            heapSize = push(heap, heapSize, row);
+                            queued[row] = true;
+                        }
+                    }
+                }
+
+                // Gather what is left, and clear the accumulator
+                int size = 0;
+                int pivot = -1;
+                for(int t=0; t<touchedCount; t++) {
+                    int s = touched[t];
+                    if(!work[s].isZero()) {
+                        touched[size++] = s;
+                        if(pivot < 0 || degree(network, s) < degree(network, pivot)) {
+                            pivot = s;
+                        }
+                    } else {
+                        work[s] = null;
+                    }
+                }
+                if(size == 0) {
+                    dependent[dependentCount++] = r;
+                    continue;
+                }
+                int[] columns = Arrays.copyOf(touched, size);
+                Arrays.sort(columns);
+                Rational[] values = new Rational[size];
+                Rational scale = work[pivot].reciprocal();
+                for(int j=0; j<size; j++) {
+                    values[j] = columns[j] == pivot ? Rational.ONE : work[columns[j]].multiply(scale);
+                    work[columns[j]] = null;
+                }
+                pivots[rank] = pivot;
+                pivotOf[pivot] = rank;
+                rowColumns[rank] = columns;
+                rowValues[rank] = values;
+                rank++;
+            }
+            this.rank = rank;
+            this.pivots = pivots;
+            this.rowColumns = rowColumns;
+            this.rowValues = rowValues;
+            this.dependent = Arrays.copyOf(dependent, dependentCount);
+        }
+
+        private static int degree(ReactionNetwork network, int species) {
+            return network.rowStart[species + 1] - network.rowStart[species];
+        }
+
+        private static int push(int[] heap, int size, int value) {
+            int i = size;
+            heap[i] = value;
+            while(i > 0 && heap[(i - 1) >> 1] > heap[i]) {
+                int parent = (i - 1) >> 1;
+                heap[i] = heap[parent];
+                heap[parent] = value;
+                i = parent;
+            }
+            return size + 1;
+        }
+
+        private static int pop(int[] heap, int size) {
+            int last = heap[--size];
+            int i = 0;
+            while(true) {
+                int child = 2 * i + 1;
+                if(child >= size) {
+                    break;
+                }
+                if(child + 1 < size && heap[child + 1] < heap[child]) {
+                    child++;
+                }
+                if(heap[child] >= last) {
+                    break;
+                }
+                heap[i] = heap[child];
+                i = child;
+            }
+            if(size > 0) {
+                heap[i] = last;
+            }
+            return size;
+        }
+    }
+
+    public static final class Builder {
+
+        private final List<String> species = new ArrayList<>();
+
+        private final Map<String, Integer> speciesIndex = new HashMap<>();
+
+        private final List<Reaction> reactions = new ArrayList<>();
+
+        private int[] columnStart = new int[17];
+
+        private int[] entrySpecies = new int[64];
+
+        private long[] entryValues = new long[64];
+
+        private int size;
+
+        private Builder() {
+            ;
+        }
+
+        /**
+         * @param reaction A Reaction, whose coefficients are its balanced ones
+         * @return This Builder
+         * @throws IllegalArgumentException If the Reaction cannot be balanced
+         */
+        public Builder add(Reaction reaction) {
+            long[] coefficients = reaction.getCoefficients();
+            int count = coefficients.length;
+            String[] formulas = new String[count];
+            long[] stoichiometry = new long[count];
+            for(int i=0; i<count; i++) {
+                boolean reactant = i < reaction.reactants.length;
+                Compound compound = reactant ? reaction.reactants[i] : reaction.products[i - reaction.reactants.length];
+                formulas[i] = compound.formula;
+                stoichiometry[i] = reactant ? -coefficients[i] : coefficients[i];
+            }
+            return addColumn(reaction, formulas, stoichiometry);
+        }
+
+        /**
+         * @param species The formulas of the species the reaction changes; a species may be listed more than once
+         * @param stoichiometry The net number of molecules of each that the reaction produces, negative if consumed
+         * @return This Builder
+         */
+        public Builder add(String[] species, long[] stoichiometry) {
+            if(species.length != stoichiometry.length) {
+                throw new IllegalArgumentException("Expected one coefficient per species, but got " + stoichiometry.length + " for " + species.length);
+            }
+            return addColumn(null, species, stoichiometry);
+        }
+
+        private Builder addColumn(Reaction reaction, String[] formulas, long[] stoichiometry) {
+            int start = size;
+            for(int i=0; i<formulas.length; i++) {
+                Integer index = speciesIndex.get(formulas[i]);
+                if(index == null) {
+                    index = species.size();
+                    species.add(formulas[i]);
+                    speciesIndex.put(formulas[i], index);
+                }
+                if(size == entrySpecies.length) {
+                    entrySpecies = Arrays.copyOf(entrySpecies, size * 2);
+                    entryValues = Arrays.copyOf(entryValues, size * 2);
+                }
+                entrySpecies[size] = index;
+                entryValues[size++] = stoichiometry[i];
+            }
+
+            // Sort the new column by species (insertion sort: reactions have a handful of species), merging repeats
+            // such as a catalyst on both sides, and dropping zeros
+            int end = start;
+            for(int k=start; k<size; k++) {
+                int s = entrySpecies[k];
+                long v = entryValues[k];
+                int j = end;
+                while(j > start && entrySpecies[j - 1] > s) {
+                    j--;
+                }
+                if(j > start && entrySpecies[j - 1] == s) {
+                    entryValues[j - 1] = Math.addExact(entryValues[j - 1], v);
+                    continue;
+                }
+                System.arraycopy(entrySpecies, j, entrySpecies, j + 1, end - j);
+                System.arraycopy(entryValues, j, entryValues, j + 1, end - j);
+                entrySpecies[j] = s;
+                entryValues[j] = v;
+                end++;
+            }
+            size = start;
+            for(int k=start; k<end; k++) {
+                if(entryValues[k] != 0) {
+                    entrySpecies[size] = entrySpecies[k];
+                    entryValues[size++] = entryValues[k];
+                }
+            }
+
+            reactions.add(reaction);
+            if(reactions.size() + 1 > columnStart.length) {
+                columnStart = Arrays.copyOf(columnStart, columnStart.length * 2);
+            }
+            columnStart[reactions.size()] = size;
+            return this;
+        }
+
+        public ReactionNetwork build() {
+            return new ReactionNetwork(this);
+        }
+    }
+}
@@ -0,0 +1,612 @@
+package io.github.monomer.Chem.Reactions;
+
+import io.github.monomer.Chem.Core.Compound;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A read-only corpus of Reactions indexed by species, for queries such as "every reaction that consumes NH3 and
+ * produces N2". Every distinct Compound gets an integer id, and has two posting lists: the ascending ids of the
+ * reactions that consume it, and of those that produce it. A query intersects the lists of its species, smallest
+ * first, skipping through the longer ones block by block rather than decoding them whole.
+ *
+ * <pre>{@code
+ * ReactionStore.write(Path.of("corpus.rxs"), reactions);
+ * ReactionStore store = ReactionStore.open(Path.of("corpus.rxs"));
+ * for(int id : store.search(new String[]{"NH3"}, new String[]{"N2"})) {
+ *     System.out.println(store.equation(id));
+ * }
+ * }</pre>
+ *
+ * Posting lists are cut into blocks of {@value #BLOCK} ids. The first id of each block is kept in a skip table, with
+ * where the block starts, and the rest are stored as varint gaps, so most postings take a single byte. The file is
+ * memory-mapped rather than loaded, so a store of millions of reactions reopens instantly; a store can also be built on
+ * the heap with {@link #of(List)}. The file is laid out as a header followed by the columns, each mapped separately:
+ * <pre>
+ * int magic, int version, int reactions, int species, int skipEntries, int postingBytes, int formulaBytes, int equationBytes
+ * int[species + 1]       offsets of each species' formula
+ * byte[formulaBytes]     formulas, UTF-8, in ascending byte order, which is the order of the species ids
+ * int[2 * species]       posting counts: the reactant list of species s at 2s, and its product list at 2s + 1
+ * int[2 * species + 1]   offsets of each list's skip entries
+ * int[2 * skipEntries]   the first id of each block, and the offset of the gaps after it
+ * byte[postingBytes]     gaps, varint
+ * int[reactions + 1]     offsets of each reaction's equation
+ * byte[equationBytes]    balanced equations, UTF-8
+ * </pre>
+ *
+ * @author Elon Litman
+ * @version 1.7
+ * @see Reaction
+ * @see io.github.monomer.Chem.Core.MassIndex
+ */
+public final class ReactionStore {
+
+    private static final int MAGIC = 0x4D525853;
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_BYTES = 8 * Integer.BYTES;
+
+    // Postings per block of a posting list
+    private static final int BLOCK = 128;
+
+    // The id of an exhausted Cursor
+    private static final int NO_MORE = Integer.MAX_VALUE;
+
+    private final int reactionCount;
+
+    private final int speciesCount;
+
+    private final IntBuffer formulaOffsets;
+
+    private final ByteBuffer formulas;
+
+    private final IntBuffer counts;
+
+    private final IntBuffer skipOffsets;
+
+    private final IntBuffer skips;
+
+    private final ByteBuffer postings;
+
+    private final IntBuffer equationOffsets;
+
+    private final ByteBuffer equations;
+
+    private ReactionStore(int reactionCount, int speciesCount, IntBuffer formulaOffsets, ByteBuffer formulas, IntBuffer counts, IntBuffer skipOffsets, IntBuffer skips, ByteBuffer postings, IntBuffer equationOffsets, ByteBuffer equations) {
+        this.reactionCount = reactionCount;
+        this.speciesCount = speciesCount;
+        this.formulaOffsets = formulaOffsets;
+        this.formulas = formulas;
+        this.counts = counts;
+        this.skipOffsets = skipOffsets;
+        this.skips = skips;
+        this.postings = postings;
+        this.equationOffsets = equationOffsets;
+        this.equations = equations;
+    }
+
+    /**
+     * A method that builds a store on the heap. Reactions are numbered from 0 in the order given.
+     *
+     * @param reactions The Reactions
+     * @return The ReactionStore
+     */
+    public static ReactionStore of(List<Reaction> reactions) {
+        Columns columns = encode(reactions);
+        return new ReactionStore(columns.reactions, columns.species, IntBuffer.wrap(columns.formulaOffsets), ByteBuffer.wrap(columns.formulas),
+                IntBuffer.wrap(columns.counts), IntBuffer.wrap(columns.skipOffsets), IntBuffer.wrap(columns.skips),
+                ByteBuffer.wrap(columns.postings, 0, columns.postingBytes).slice(), IntBuffer.wrap(columns.equationOffsets), ByteBuffer.wrap(columns.equations));
+    }
+
+    /**
+     * A method that builds a store file. Reactions are numbered from 0 in the order given.
+     *
+     * @param file The file to write
+     * @param reactions The Reactions
+     * @throws IOException If the file cannot be written
+     */
+    public static void write(Path file, List<Reaction> reactions) throws IOException {
+        Columns columns = encode(reactions);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(columns.reactions);
+            out.writeInt(columns.species);
+            out.writeInt(columns.skips.length / 2);
+            out.writeInt(columns.postingBytes);
+            out.writeInt(columns.formulas.length);
+            out.writeInt(columns.equations.length);
+            writeInts(out, columns.formulaOffsets);
+            out.write(columns.formulas);
+            writeInts(out, columns.counts);
+            writeInts(out, columns.skipOffsets);
+            writeInts(out, columns.skips);
+            out.write(columns.postings, 0, columns.postingBytes);
+            writeInts(out, columns.equationOffsets);
+            out.write(columns.equations);
+        }
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        for(int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    /**
+     * A method that memory-maps a store file. The file is not read up front, and stays mapped for as long as the
+     * ReactionStore is reachable.
+     *
+     * @param file A store file written by {@link #write(Path, List)}
+     * @return The ReactionStore
+     * @throws IOException If the file cannot be read or is not a store file
+     */
+    public static ReactionStore open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if(channel.size() < HEADER_BYTES) {
+                throw new IOException(file + " is not a version " + VERSION + " reaction store");
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+            if(header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException(file + " is not a version " + VERSION + " reaction store");
+            }
+            int reactions = header.getInt();
+            int species = header.getInt();
+            int skipEntries = header.getInt();
+            int postingBytes = header.getInt();
+            int formulaBytes = header.getInt();
+            int equationBytes = header.getInt();
+
+            long[] lengths = {(species + 1L) * Integer.BYTES, formulaBytes, 2L * species * Integer.BYTES, (2L * species + 1) * Integer.BYTES,
+                    2L * skipEntries * Integer.BYTES, postingBytes, (reactions + 1L) * Integer.BYTES, equationBytes};
+            long end = HEADER_BYTES;
+            for(long length : lengths) {
+                end += length;
+            }
+            if(end != channel.size()) {
+                throw new IOException(file + " is truncated or corrupt");
+            }
+            ByteBuffer[] sections = new ByteBuffer[lengths.length];
+            long position = HEADER_BYTES;
+            for(int i=0; i<lengths.length; i++) {
+                sections[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, lengths[i]);
+                position += lengths[i];
+            }
+            return new ReactionStore(reactions, species, sections[0].asIntBuffer(), sections[1], sections[2].asIntBuffer(), sections[3].asIntBuffer(),
+                    sections[4].asIntBuffer(), sections[5], sections[6].asIntBuffer(), sections[7]);
+        }
+    }
+
+    /**
+     * @return The number of reactions in the store
+     */
+    public int size() {
+        return reactionCount;
+    }
+
+    /**
+     * @return The number of distinct species in the store
+     */
+    public int speciesCount() {
+        return speciesCount;
+    }
+
+    /**
+     * A method that finds the id of a species by binary search over the formulas, without decoding them.
+     *
+     * @param formula The formula of a Compound, as it appears in the stored Reactions
+     * @return Its id, or -1 if no stored reaction has it
+     */
+    public int speciesId(String formula) {
+        byte[] key = formula.getBytes(StandardCharsets.UTF_8);
+        int lo = 0;
+        int hi = speciesCount - 1;
+        while(lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compareFormula(mid, key);
+            if(cmp < 0) {
+                lo = mid + 1;
+            } else if(cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    // Compares the formula of a species with a key, byte by byte as unsigned values
+    private int compareFormula(int species, byte[] key) {
+        int from = formulaOffsets.get(species);
+        int length = formulaOffsets.get(species + 1) - from;
+        int common = Math.min(length, key.length);
+        for(int i=0; i<common; i++) {
+            int cmp = Integer.compare(formulas.get(from + i) & 0xff, key[i] & 0xff);
+            if(cmp != 0) {
+                return cmp;
+            }
+        }
+        return Integer.compare(length, key.length);
+    }
+
+    /**
+     * @param species A species id between 0 and speciesCount() - 1
+     * @return Its formula
+     */
+    public String formula(int species) {
+        if(species < 0 || species >= speciesCount) {
+            throw new IndexOutOfBoundsException("Index " + species + " out of bounds for length " + speciesCount);
+        }
+        return text(formulas, formulaOffsets, species);
+    }
+
+    /**
+     * @param species A species id between 0 and speciesCount() - 1
+     * @return The number of reactions that consume it
+     */
+    public int consumerCount(int species) {
+        return counts.get(2 * species);
+    }
+
+    /**
+     * @param species A species id between 0 and speciesCount() - 1
+     * @return The number of reactions that produce it
+     */
+    public int producerCount(int species) {
+        return counts.get(2 * species + 1);
+    }
+
+    /**
+     * @param reaction A reaction id between 0 and size() - 1
+     * @return Its balanced equation
+     */
+    public String equation(int reaction) {
+        if(reaction < 0 || reaction >= reactionCount) {
+            throw new IndexOutOfBoundsException("Index " + reaction + " out of bounds for length " + reactionCount);
+        }
+        return text(equations, equationOffsets, reaction);
+    }
+
+    /**
+     * @param reaction A reaction id between 0 and size() - 1
+     * @return The Reaction, parsed again from its balanced equation
+     * @throws IOException If the Reaction cannot be constructed
+     */
+    public Reaction reaction(int reaction) throws IOException {
+        return new Reaction(equation(reaction));
+    }
+
+    /**
+     * @param formulas The formulas of some species
+     * @return The ascending ids of the reactions that consume all of them
+     */
+    public int[] consuming(String... formulas) {
+        return search(formulas, new String[0]);
+    }
+
+    /**
+     * @param formulas The formulas of some species
+     * @return The ascending ids of the reactions that produce all of them
+     */
+    public int[] producing(String... formulas) {
+        return search(new String[0], formulas);
+    }
+
+    /**
+     * A method that finds the reactions with all of some species on each side.
+     *
+     * @param consumed The formulas of species that must be reactants
+     * @param produced The formulas of species that must be products
+     * @return The ascending ids of the matching reactions; every reaction if no species are given
+     */
+    public int[] search(String[] consumed, String[] produced) {
+        int[] lists = new int[consumed.length + produced.length];
+        for(int i=0; i<lists.length; i++) {
+            boolean isProduct = i >= consumed.length;
+            int species = speciesId(isProduct ? produced[i - consumed.length] : consumed[i]);
+            if(species < 0) {
+                return new int[0];
+            }
+            lists[i] = 2 * species + (isProduct ? 1 : 0);
+        }
+        if(lists.length == 0) {
+            int[] all = new int[reactionCount];
+            for(int i=0; i<reactionCount; i++) {
+                all[i] = i;
+            }
+            return all;
+        }
+        return intersect(lists);
+    }
+
+    // Leapfrog intersection: the shortest list proposes candidates, and every other list skips ahead to meet them
+    private int[] intersect(int[] lists) {
+        for(int i=1; i<lists.length; i++) {
+            int list = lists[i];
+            int j = i - 1;
+            while(j >= 0 && counts.get(lists[j]) > counts.get(list)) {
+                lists[j + 1] = lists[j];
+                j--;
+            }
+            lists[j + 1] = list;
+        }
+        Cursor[] cursors = new Cursor[lists.length];
+        for(int i=0; i<lists.length; i++) {
+            cursors[i] = new Cursor(lists[i]);
+        }
+        int[] hits = new int[cursors[0].count];
+        int size = 0;
+        int candidate = cursors[0].next();
+        while(candidate != NO_MORE) {
+            boolean agreed = true;
+            for(int i=1; i<cursors.length; i++) {
+                int id = cursors[i].advance(candidate);
+                if(id != candidate) {
+                    candidate = id == NO_MORE ? NO_MORE : cursors[0].advance(id);
+                    agreed = false;
+                    break;
+                }
+            }
+            if(agreed) {
+                hits[size++] = candidate;
+                candidate = cursors[0].next();
+            }
+        }
+        return Arrays.copyOf(hits, size);
+    }
+
+    /**
+     * A forward-only reader of one posting list.
+     */
+    private final class Cursor {
+
+        private final int count;
+
+        private final int firstEntry;
+
+        private final int blocks;
+
+        private int block = -1;
+
+        // Gaps left in the current block
+        private int remaining;
+
+        private int position;
+
+        private int current = -1;
+
+        private Cursor(int list) {
+            this.count = counts.get(list);
+            this.firstEntry = skipOffsets.get(list);
+            this.blocks = skipOffsets.get(list + 1) - firstEntry;
+        }
+
+        // The next id, or NO_MORE
+        private int next() {
+            if(remaining == 0) {
+                return block + 1 < blocks ? enter(block + 1) : (current = NO_MORE);
+            }
+            remaining--;
+            int gap = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = postings.get(position++);
+                gap |= (b & 0x7f) << shift;
+                shift += 7;
+            } while(b < 0);
+            return current += gap;
+        }
+
+        // The first id at or after target, or NO_MORE
+        private int advance(int target) {
+            if(current >= target) {
+                return current;
+            }
+            // Jump to the last later block that starts at or before the target, if there is one
+            int lo = block + 1;
+            int hi = blocks - 1;
+            int found = -1;
+            while(lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if(skips.get(2 * (firstEntry + mid)) <= target) {
+                    found = mid;
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            if(found >= 0) {
+                enter(found);
+            }
+            while(current < target) {
+                next();
+            }
+            return current;
+        }
+
+        private int enter(int block) {
+            this.block = block;
+            this.remaining = Math.min(BLOCK, count - block * BLOCK) - 1;
+            this.position = skips.get(2 * (firstEntry + block) + 1);
+            return current = skips.get(2 * (firstEntry + block));
+        }
+    }
+
+    private static String text(ByteBuffer bytes, IntBuffer offsets, int i) {
+        int from = offsets.get(i);
+        byte[] text = new byte[offsets.get(i + 1) - from];
+        bytes.get(from, text);
+        return new String(text, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The columns of a store, as arrays, before they are written or wrapped.
+     */
+    private static final class Columns {
+
+        private int reactions;
+
+        private int species;
+
+        private int[] formulaOffsets;
+
+        private byte[] formulas;
+
+        private int[] counts;
+
+        private int[] skipOffsets;
+
+        private int[] skips;
+
+        private byte[] postings;
+
+        private int postingBytes;
+
+        private int[] equationOffsets;
+
+        private byte[] equations;
+    }
+
+    private static Columns encode(List<Reaction> reactions) {
+        int n = reactions.size();
+
+        // Number the species in order of first appearance, then renumber them in byte order of their formulas
+        Map<String, Integer> seen = new HashMap<>();
+        for(Reaction reaction : reactions) {
+            for(Compound compound : reaction.reactants) {
+                seen.putIfAbsent(compound.formula, seen.size());
+            }
+            for(Compound compound : reaction.products) {
+                seen.putIfAbsent(compound.formula, seen.size());
+            }
+        }
+        int s = seen.size();
+        byte[][] encoded = new byte[s][];
+        for(Map.Entry<String, Integer> entry : seen.entrySet()) {
+            encoded[entry.getValue()] = entry.getKey().getBytes(StandardCharsets.UTF_8);
+        }
+        Integer[] byFormula = new Integer[s];
+        for(int i=0; i<s; i++) {
+            byFormula[i] = i;
+        }
+        Arrays.sort(byFormula, (a, b) -> Arrays.compareUnsigned(encoded[a], encoded[b]));
+        int[] rank = new int[s];
+        for(int i=0; i<s; i++) {
+            rank[byFormula[i]] = i;
+        }
+
+        Columns columns = new Columns();
+        columns.reactions = n;
+        columns.species = s;
+        columns.formulaOffsets = new int[s + 1];
+        long formulaBytes = 0;
+        for(int i=0; i<s; i++) {
+            formulaBytes += encoded[byFormula[i]].length;
+            columns.formulaOffsets[i + 1] = checkedSize(formulaBytes, "Formula text");
+        }
+        columns.formulas = new byte[(int) formulaBytes];
+        for(int i=0; i<s; i++) {
+            System.arraycopy(encoded[byFormula[i]], 0, columns.formulas, columns.formulaOffsets[i], encoded[byFormula[i]].length);
+        }
+
+        // Posting lists, counted and then filled; a species listed twice on one side is posted once
+        int[] counts = new int[2 * s];
+        int[] last = new int[2 * s];
+        Arrays.fill(last, -1);
+        for(int r=0; r<n; r++) {
+            post(reactions.get(r), r, seen, rank, counts, last, null);
+        }
+        int[][] lists = new int[2 * s][];
+        for(int list=0; list<2 * s; list++) {
+            lists[list] = new int[counts[list]];
+        }
+        Arrays.fill(counts, 0);
+        Arrays.fill(last, -1);
+        for(int r=0; r<n; r++) {
+            post(reactions.get(r), r, seen, rank, counts, last, lists);
+        }
+        columns.counts = counts;
+
+        columns.skipOffsets = new int[2 * s + 1];
+        for(int list=0; list<2 * s; list++) {
+            columns.skipOffsets[list + 1] = columns.skipOffsets[list] + (counts[list] + BLOCK - 1) / BLOCK;
+        }
+        columns.skips = new int[2 * columns.skipOffsets[2 * s]];
+        byte[] gaps = new byte[Math.max(16, n * 4)];
+        int size = 0;
+        for(int list=0; list<2 * s; list++) {
+            int[] ids = lists[list];
+            for(int i=0; i<ids.length; i++) {
+                if(i % BLOCK == 0) {
+                    int entry = columns.skipOffsets[list] + i / BLOCK;
+                    columns.skips[2 * entry] = ids[i];
+                    columns.skips[2 * entry + 1] = size;
+                    continue;
+                }
+                if(size + 5 > gaps.length) {
+                    gaps = Arrays.copyOf(gaps, checkedSize(gaps.length * 2L, "Posting data"));
+                }
+                int gap = ids[i] - ids[i - 1];
+                while((gap & ~0x7f) != 0) {
+                    gaps[size++] = (byte) (gap | 0x80);
+                    gap >>>= 7;
+                }
+                gaps[size++] = (byte) gap;
+            }
+        }
+        columns.postings = gaps;
+        columns.postingBytes = size;
+
+        columns.equationOffsets = new int[n + 1];
+        byte[][] text = new byte[n][];
+        long equationBytes = 0;
+        for(int r=0; r<n; r++) {
+            text[r] = reactions.get(r).equation.getBytes(StandardCharsets.UTF_8);
+            equationBytes += text[r].length;
+            columns.equationOffsets[r + 1] = checkedSize(equationBytes, "Equation text");
+        }
+        columns.equations = new byte[(int) equationBytes];
+        for(int r=0; r<n; r++) {
+            System.arraycopy(text[r], 0, columns.equations, columns.equationOffsets[r], text[r].length);
+        }
+        return columns;
+    }
+
+    // Counts the postings of one reaction, or if lists is given, appends them
+    private static void post(Reaction reaction, int r, Map<String, Integer> seen, int[] rank, int[] counts, int[] last, int[][] lists) {
+        for(int side=0; side<2; side++) {
+            for(Compound compound : side == 0 ? reaction.reactants : reaction.products) {
+                int list = 2 * rank[seen.get(compound.formula)] + side;
+                if(last[list] != r) {
+                    last[list] = r;
+                    if(lists != null) {
+                        lists[list][counts[list]] = r;
+                    }
+                    counts[list]++;
+                }
+            }
+        }
+    }
+
+    private static int checkedSize(long bytes, String what) {
+        if(bytes > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException(what + " exceeds 2 GB");
+        }
+        return (int) bytes;
+    }
+}
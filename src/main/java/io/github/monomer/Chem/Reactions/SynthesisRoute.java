@@ -0,0 +1,531 @@
+package io.github.monomer.Chem.Reactions;
+
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * A multi-step synthesis planned over a directed acyclic graph of Reactions, where a product of one step feeds a
+ * reactant of another and every step has its own yield. Quantities are propagated in both directions, each in one pass
+ * over the steps in topological order, using every Reaction's stored coefficients:
+ * <ul>
+ *     <li>Forwards, from the moles charged at each step, to the moles every step is expected to produce</li>
+ *     <li>Backwards, from the moles wanted of some products, to the moles every step must run and the raw materials it
+ *     must be charged with</li>
+ * </ul>
+ * When a yield, charge, or target changes, only the steps downstream (forwards) or upstream (backwards) of it are
+ * re-evaluated, in topological order, and propagation stops wherever a step's result does not change.
+ *
+ * <pre>{@code
+ * SynthesisRoute route = SynthesisRoute.builder()
+ *         .step(nitration, 0.85)
+ *         .step(reduction, 0.9)
+ *         .feed(0, 1, "C6H5NO2")
+ *         .build();
+ * route.setTarget(1, "C6H5NH2", 10);
+ * double benzene = route.required(0, "C6H6");
+ * route.setYield(0, 0.8);  // re-evaluates steps 0 and 1 forwards, and step 0 backwards
+ * }</pre>
+ *
+ * The extent of a step is how many times its balanced equation runs, in moles; a step with extent e and yield y consumes
+ * ν e of a reactant with coefficient ν, and produces ν e y of a product. Forwards, the feeds of one reactant add up;
+ * backwards, what a step needs of a reactant is asked of its feeds in equal shares. A SynthesisRoute is not thread-safe.
+ *
+ * @author Elon Litman
+ * @version 1.7
+ * @see Reaction
+ * @see ReactionNetwork
+ */
+public final class SynthesisRoute {
+
+    private final Reaction[] reactions;
+
+    // The stored coefficients of each step, reactants followed by products
+    private final double[][] coefficients;
+
+    private final double[] yields;
+
+    // Feeds: edge e carries fraction[e] of product edgeProduct[e] of step edgeFrom[e] to reactant edgeReactant[e] of
+    // step edgeTo[e]; species are indices into the step's coefficients
+    private final int[] edgeFrom;
+
+    private final int[] edgeTo;
+
+    private final int[] edgeProduct;
+
+    private final int[] edgeReactant;
+
+    private final double[] edgeFraction;
+
+    // CSR: the feeds out of step i are outEdges[outStart[i]] until outStart[i + 1], and likewise into it
+    private final int[] outStart;
+
+    private final int[] outEdges;
+
+    private final int[] inStart;
+
+    private final int[] inEdges;
+
+    // order[k] is the k-th step in topological order; position[order[k]] = k
+    private final int[] order;
+
+    private final int[] position;
+
+    // Per step and reactant: the moles charged (NaN if none, i.e. in excess), and how many feeds supply it
+    private final double[][] charges;
+
+    private final int[][] feeds;
+
+    // Per step and species: the moles of product wanted (0 if none)
+    private final double[][] targets;
+
+    private final double[] expected;
+
+    private final double[] required;
+
+    // Scratch for the inflow of each reactant of one step
+    private final double[] inflow;
+
+    private SynthesisRoute(Builder builder) {
+        int n = builder.reactions.size();
+        int m = builder.edges;
+        this.reactions = builder.reactions.toArray(new Reaction[0]);
+        this.yields = new double[n];
+        this.coefficients = new double[n][];
+        this.charges = new double[n][];
+        this.feeds = new int[n][];
+        this.targets = new double[n][];
+        int widest = 0;
+        for(int i=0; i<n; i++) {
+            yields[i] = builder.yields.get(i);
+            long[] stored = reactions[i].getCoefficients();
+            coefficients[i] = new double[stored.length];
+            for(int k=0; k<stored.length; k++) {
+                coefficients[i][k] = stored[k];
+            }
+            charges[i] = new double[reactions[i].reactants.length];
+            Arrays.fill(charges[i], Double.NaN);
+            feeds[i] = new int[reactions[i].reactants.length];
+            targets[i] = new double[stored.length];
+            widest = Math.max(widest, stored.length);
+        }
+        this.inflow = new double[widest];
+
+        this.edgeFrom = Arrays.copyOf(builder.edgeFrom, m);
+        this.edgeTo = Arrays.copyOf(builder.edgeTo, m);
+        this.edgeProduct = Arrays.copyOf(builder.edgeProduct, m);
+        this.edgeReactant = Arrays.copyOf(builder.edgeReactant, m);
+        this.edgeFraction = Arrays.copyOf(builder.edgeFraction, m);
+        this.outStart = new int[n + 1];
+        this.inStart = new int[n + 1];
+        for(int e=0; e<m; e++) {
+            outStart[edgeFrom[e] + 1]++;
+            inStart[edgeTo[e] + 1]++;
+            feeds[edgeTo[e]][edgeReactant[e]]++;
+        }
+        for(int i=0; i<n; i++) {
+            outStart[i + 1] += outStart[i];
+            inStart[i + 1] += inStart[i];
+        }
+        this.outEdges = new int[m];
+        this.inEdges = new int[m];
+        int[] nextOut = Arrays.copyOf(outStart, n);
+        int[] nextIn = Arrays.copyOf(inStart, n);
+        for(int e=0; e<m; e++) {
+            outEdges[nextOut[edgeFrom[e]]++] = e;
+            inEdges[nextIn[edgeTo[e]]++] = e;
+        }
+
+        // No product may be fed out more than once over
+        Map<Long, Double> fedOut = new HashMap<>();
+        for(int e=0; e<m; e++) {
+            double total = fedOut.merge((long) edgeFrom[e] << 32 | edgeProduct[e], edgeFraction[e], Double::sum);
+            if(total > 1 + 1e-9) {
+                throw new IllegalArgumentException("The feeds of " + reactions[edgeFrom[e]].compound(edgeProduct[e]).formula + " from step " + edgeFrom[e] + " take more than all of it");
+            }
+        }
+
+        // Kahn's algorithm, taking ready steps in the order they were added
+        this.order = new int[n];
+        this.position = new int[n];
+        int[] remaining = new int[n];
+        for(int i=0; i<n; i++) {
+            remaining[i] = inStart[i + 1] - inStart[i];
+        }
+        PriorityQueue<Integer> ready = new PriorityQueue<>();
+        for(int i=0; i<n; i++) {
+            if(remaining[i] == 0) {
+                ready.add(i);
+            }
+        }
+        int k = 0;
+        while(!ready.isEmpty()) {
+            int i = ready.poll();
+            position[i] = k;
+            order[k++] = i;
+            for(int a=outStart[i]; a<outStart[i + 1]; a++) {
+                if(--remaining[edgeTo[outEdges[a]]] == 0) {
+                    ready.add(edgeTo[outEdges[a]]);
+                }
+            }
+        }
+        if(k < n) {
+            throw new IllegalArgumentException("The route has a cycle through " + (n - k) + " steps");
+        }
+
+        this.expected = new double[n];
+        this.required = new double[n];
+        for(int p=0; p<n; p++) {
+            expected[order[p]] = forward(order[p]);
+        }
+        for(int p=n - 1; p>=0; p--) {
+            required[order[p]] = backward(order[p]);
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return The number of steps
+     */
+    public int stepCount() {
+        return reactions.length;
+    }
+
+    public Reaction reaction(int step) {
+        return reactions[step];
+    }
+
+    public double yield(int step) {
+        return yields[step];
+    }
+
+    /**
+     * @return The steps in the topological order quantities are propagated in
+     */
+    public int[] topologicalOrder() {
+        return order.clone();
+    }
+
+    /**
+     * A method that changes the yield of a step, re-evaluating the steps downstream of it forwards and the steps
+     * upstream of it backwards.
+     *
+     * @param step A step
+     * @param yield The fraction of the theoretical amount of every product the step delivers, in (0, 1]
+     */
+    public void setYield(int step, double yield) {
+        checkYield(yield);
+        if(yields[step] == yield) {
+            return;
+        }
+        yields[step] = yield;
+        propagateForward(step, true);
+        propagateBackward(step);
+    }
+
+    /**
+     * A method that sets how much of a reactant is charged at a step, for forward propagation. Reactants that are
+     * neither charged nor fed are taken to be in excess.
+     *
+     * @param step A step
+     * @param formula The formula of one of its reactants that no other step feeds
+     * @param moles The moles charged, or NaN to take it to be in excess again
+     */
+    public void setCharge(int step, String formula, double moles) {
+        int reactant = reactantIndex(step, formula);
+        if(feeds[step][reactant] > 0) {
+            throw new IllegalArgumentException(formula + " is fed to step " + step + " by another step and cannot be charged");
+        }
+        if(moles < 0) {
+            throw new IllegalArgumentException("Illegal charge: " + moles);
+        }
+        charges[step][reactant] = moles;
+        propagateForward(step, false);
+    }
+
+    /**
+     * A method that sets how much of a product is wanted from a step, for backward propagation.
+     *
+     * @param step A step
+     * @param formula The formula of one of its products
+     * @param moles The moles wanted, or 0 for none
+     */
+    public void setTarget(int step, String formula, double moles) {
+        int product = reactions[step].indexOf(formula);
+        if(product < reactions[step].reactants.length) {
+            throw new IllegalArgumentException(formula + " is not a product of step " + step);
+        }
+        if(!(moles >= 0)) {
+            throw new IllegalArgumentException("Illegal target: " + moles);
+        }
+        targets[step][product] = moles;
+        propagateBackward(step);
+    }
+
+    /**
+     * @param step A step
+     * @return The extent the step is expected to run at, given what is charged and fed to it
+     */
+    public double expectedExtent(int step) {
+        return expected[step];
+    }
+
+    /**
+     * @param step A step
+     * @param formula The formula of one of its reactants or products
+     * @return The moles of the reactant it is expected to consume, or of the product it is expected to deliver
+     */
+    public double expected(int step, String formula) {
+        return amount(step, formula, expected[step]);
+    }
+
+    /**
+     * @param step A step
+     * @return The extent the step must run at to meet every target downstream of it
+     */
+    public double requiredExtent(int step) {
+        return required[step];
+    }
+
+    /**
+     * @param step A step
+     * @param formula The formula of one of its reactants or products
+     * @return The moles of the reactant it must be supplied with, or of the product it must deliver, to meet every
+     * target downstream of it
+     */
+    public double required(int step, String formula) {
+        return amount(step, formula, required[step]);
+    }
+
+    /**
+     * A method that totals the reactants that no step feeds, i.e. what has to be bought, to meet every target.
+     *
+     * @return The moles of each raw material, by formula, in topological order of first use
+     */
+    public Map<String, Double> rawMaterials() {
+        Map<String, Double> materials = new LinkedHashMap<>();
+        for(int step : order) {
+            for(int r=0; r<feeds[step].length; r++) {
+                if(feeds[step][r] == 0 && required[step] > 0) {
+                    materials.merge(reactions[step].reactants[r].formula, coefficients[step][r] * required[step], Double::sum);
+                }
+            }
+        }
+        return Collections.unmodifiableMap(materials);
+    }
+
+    private double amount(int step, String formula, double extent) {
+        int species = reactions[step].indexOf(formula);
+        double moles = coefficients[step][species] * extent;
+        return species < reactions[step].reactants.length ? moles : moles * yields[step];
+    }
+
+    // The extent a step can run at: limited by every charged or fed reactant, and 0 if nothing limits it
+    private double forward(int step) {
+        double[] c = coefficients[step];
+        int reactantCount = charges[step].length;
+        double extent = Double.POSITIVE_INFINITY;
+        for(int r=0; r<reactantCount; r++) {
+            if(!Double.isNaN(charges[step][r])) {
+                extent = Math.min(extent, charges[step][r] / c[r]);
+            }
+            inflow[r] = 0;
+        }
+        for(int a=inStart[step]; a<inStart[step + 1]; a++) {
+            int e = inEdges[a];
+            int from = edgeFrom[e];
+            inflow[edgeReactant[e]] += edgeFraction[e] * coefficients[from][edgeProduct[e]] * expected[from] * yields[from];
+        }
+        for(int r=0; r<reactantCount; r++) {
+            if(feeds[step][r] > 0) {
+                extent = Math.min(extent, inflow[r] / c[r]);
+            }
+        }
+        return extent == Double.POSITIVE_INFINITY ? 0 : extent;
+    }
+
+    // The extent a step must run at: enough for its own targets, and for every feed out of it to carry an equal share of
+    // what its consumer needs of that reactant, within the feed's fraction
+    private double backward(int step) {
+        double[] c = coefficients[step];
+        double y = yields[step];
+        double extent = 0;
+        for(int p=charges[step].length; p<c.length; p++) {
+            if(targets[step][p] > 0) {
+                extent = Math.max(extent, targets[step][p] / (c[p] * y));
+            }
+        }
+        for(int a=outStart[step]; a<outStart[step + 1]; a++) {
+            int e = outEdges[a];
+            int to = edgeTo[e];
+            double demand = coefficients[to][edgeReactant[e]] * required[to] / feeds[to][edgeReactant[e]];
+            extent = Math.max(extent, demand / (edgeFraction[e] * c[edgeProduct[e]] * y));
+        }
+        return extent;
+    }
+
+    // Re-evaluates a step and, in topological order, every step downstream whose inflow changed
+    private void propagateForward(int step, boolean outflowChanged) {
+        PriorityQueue<Integer> queue = new PriorityQueue<>();
+        boolean[] queued = new boolean[reactions.length];
+        queue.add(position[step]);
+        queued[step] = true;
+        while(!queue.isEmpty()) {
+            int i = order[queue.poll()];
+            queued[i] = false;
+            double extent = forward(i);
+            boolean changed = extent != expected[i] || (i == step && outflowChanged);
+            expected[i] = extent;
+            if(changed) {
+                for(int a=outStart[i]; a<outStart[i + 1]; a++) {
+                    int to = edgeTo[outEdges[a]];
+                    if(!queued[to]) {
+                        queued[to] = true;
+                        queue.add(position[to]);
+                    }
+                }
+            }
+        }
+    }
+
+    // Re-evaluates a step and, in reverse topological order, every step upstream whose demand changed
+    private void propagateBackward(int step) {
+        PriorityQueue<Integer> queue = new PriorityQueue<>(Collections.reverseOrder());
+        boolean[] queued = new boolean[reactions.length];
+        queue.add(position[step]);
+        queued[step] = true;
+        while(!queue.isEmpty()) {
+            int i = order[queue.poll()];
+            queued[i] = false;
+            double extent = backward(i);
+            if(extent != required[i]) {
+                required[i] = extent;
+                for(int a=inStart[i]; a<inStart[i + 1]; a++) {
+                    int from = edgeFrom[inEdges[a]];
+                    if(!queued[from]) {
+                        queued[from] = true;
+                        queue.add(position[from]);
+                    }
+                }
+            }
+        }
+    }
+
+    private int reactantIndex(int step, String formula) {
+        int reactant = reactions[step].indexOf(formula);
+        if(reactant >= reactions[step].reactants.length) {
+            throw new IllegalArgumentException(formula + " is not a reactant of step " + step);
+        }
+        return reactant;
+    }
+
+    private static void checkYield(double yield) {
+        if(!(yield > 0 && yield <= 1)) {
+            throw new IllegalArgumentException("Illegal yield: " + yield);
+        }
+    }
+
+    public static final class Builder {
+
+        private final List<Reaction> reactions = new ArrayList<>();
+
+        private final List<Double> yields = new ArrayList<>();
+
+        private int edges;
+
+        private int[] edgeFrom = new int[16];
+
+        private int[] edgeTo = new int[16];
+
+        private int[] edgeProduct = new int[16];
+
+        private int[] edgeReactant = new int[16];
+
+        private double[] edgeFraction = new double[16];
+
+        private Builder() {
+            ;
+        }
+
+        /**
+         * @param reaction A balanced Reaction, which becomes the next step; steps are numbered from 0 in order
+         * @param yield The fraction of the theoretical amount of every product the step delivers, in (0, 1]
+         * @return This Builder
+         */
+        public Builder step(Reaction reaction, double yield) {
+            checkYield(yield);
+            reactions.add(reaction);
+            yields.add(yield);
+            return this;
+        }
+
+        /**
+         * A method that feeds all of a product of one step to another.
+         *
+         * @param from The producing step
+         * @param to The consuming step
+         * @param formula The formula of a product of from, and a reactant of to
+         * @return This Builder
+         */
+        public Builder feed(int from, int to, String formula) {
+            return feed(from, to, formula, 1);
+        }
+
+        /**
+         * A method that feeds part of a product of one step to another.
+         *
+         * @param from The producing step
+         * @param to The consuming step
+         * @param formula The formula of a product of from, and a reactant of to
+         * @param fraction The fraction of the product that goes to the consuming step, in (0, 1]
+         * @return This Builder
+         */
+        public Builder feed(int from, int to, String formula, double fraction) {
+            if(from < 0 || from >= reactions.size() || to < 0 || to >= reactions.size()) {
+                throw new IllegalArgumentException("Steps " + from + " and " + to + " must both be added first");
+            }
+            if(!(fraction > 0 && fraction <= 1)) {
+                throw new IllegalArgumentException("Illegal fraction: " + fraction);
+            }
+            Reaction producer = reactions.get(from);
+            Reaction consumer = reactions.get(to);
+            int product = producer.indexOf(formula);
+            if(product < producer.reactants.length) {
+                throw new IllegalArgumentException(formula + " is not a product of step " + from);
+            }
+            int reactant = consumer.indexOf(formula);
+            if(reactant >= consumer.reactants.length) {
+                throw new IllegalArgumentException(formula + " is not a reactant of step " + to);
+            }
+            if(edges == edgeFrom.length) {
+                edgeFrom = Arrays.copyOf(edgeFrom, edges * 2);
+                edgeTo = Arrays.copyOf(edgeTo, edges * 2);
+                edgeProduct = Arrays.copyOf(edgeProduct, edges * 2);
+                edgeReactant = Arrays.copyOf(edgeReactant, edges * 2);
+                edgeFraction = Arrays.copyOf(edgeFraction, edges * 2);
+            }
+            edgeFrom[edges] = from;
+            edgeTo[edges] = to;
+            edgeProduct[edges] = product;
+            edgeReactant[edges] = reactant;
+            edgeFraction[edges++] = fraction;
+            return this;
+        }
+
+        /**
+         * @return The route, with every quantity propagated once
+         * @throws IllegalArgumentException If the feeds form a cycle or a product is fed out more than once over
+         */
+        public SynthesisRoute build() {
+            return new SynthesisRoute(this);
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package io.github.monomer.Chem.Reactions;
+
+import io.github.monomer.Chem.Core.Compound;
+import io.github.monomer.Chem.Core.Constants;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * A bulk engine for what-if stoichiometry: the limiting reagent, theoretical yields, and leftover excesses of one
+ * Reaction over many combinations of reactant quantities at once. The molar masses and coefficients are read once, the
+ * quantities are given as one primitive column per reactant, and chunks of rows are evaluated in parallel with no
+ * Compound, HashMap, or String work per row.
+ *
+ * <pre>{@code
+ * YieldBatch batch = new YieldBatch(new Reaction("H2 + O2 --> H2O"));
+ * YieldBatch.Result result = batch.evaluate("Grams", hydrogenGrams, oxygenGrams);
+ * double water = result.theoreticalYield(0, row);
+ * }</pre>
+ *
+ * @author Elon Litman
+ * @version 1.7
+ * @see Reaction
+ */
+public final class YieldBatch {
+
+    /**
+     * The number of rows evaluated together by one task.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 4096;
+
+    private final int reactantCount;
+
+    private final int productCount;
+
+    private final long[] coefficients;
+
+    private final double[] molarMasses;
+
+    /**
+     * @param reaction A balanced Reaction
+     * @throws IllegalArgumentException If the Reaction has no coefficients and cannot be balanced
+     */
+    public YieldBatch(Reaction reaction) {
+        this.reactantCount = reaction.reactants.length;
+        this.productCount = reaction.products.length;
+        this.coefficients = reaction.getCoefficients();
+        this.molarMasses = new double[coefficients.length];
+        for(int i=0; i<coefficients.length; i++) {
+            Compound compound = reaction.compound(i);
+            molarMasses[i] = compound.composition.molarMass();
+        }
+    }
+
+    /**
+     * The results for a run of rows, as primitive columns.
+     */
+    public static final class Result {
+
+        private final int size;
+
+        // The index of the limiting reactant of each row
+        private final int[] limiting;
+
+        // The moles of reaction each row can run, i.e. the limiting reactant's moles over its coefficient
+        private final double[] extent;
+
+        // By product, then row, in the unit of the input
+        private final double[][] yields;
+
+        // By reactant, then row, in the unit of the input
+        private final double[][] leftovers;
+
+        private Result(int size, int[] limiting, double[] extent, double[][] yields, double[][] leftovers) {
+            this.size = size;
+            this.limiting = limiting;
+            this.extent = extent;
+            this.yields = yields;
+            this.leftovers = leftovers;
+        }
+
+        /**
+         * @return The number of rows
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * @param row A row
+         * @return The index of its limiting reagent among the reactants
+         */
+        public int limitingReagent(int row) {
+            return limiting[row];
+        }
+
+        /**
+         * @param row A row
+         * @return The moles of reaction it can run
+         */
+        public double extent(int row) {
+            return extent[row];
+        }
+
+        /**
+         * @param product The index of a product
+         * @param row A row
+         * @return The theoretical yield of the product, in the unit of the input
+         */
+        public double theoreticalYield(int product, int row) {
+            return yields[product][row];
+        }
+
+        /**
+         * @param reactant The index of a reactant
+         * @param row A row
+         * @return The amount of the reactant left over, in the unit of the input; 0 for the limiting reagent
+         */
+        public double leftover(int reactant, int row) {
+            return leftovers[reactant][row];
+        }
+
+        /**
+         * @return A copy of the limiting reagent column
+         */
+        public int[] limitingReagents() {
+            return Arrays.copyOf(limiting, size);
+        }
+
+        /**
+         * @return A copy of the extent column
+         */
+        public double[] extents() {
+            return Arrays.copyOf(extent, size);
+        }
+
+        /**
+         * @param product The index of a product
+         * @return A copy of its theoretical yield column
+         */
+        public double[] theoreticalYields(int product) {
+            return Arrays.copyOf(yields[product], size);
+        }
+
+        /**
+         * @param reactant The index of a reactant
+         * @return A copy of its leftover column
+         */
+        public double[] leftovers(int reactant) {
+            return Arrays.copyOf(leftovers[reactant], size);
+        }
+    }
+
+    /**
+     * A method that evaluates many combinations of reactant quantities in parallel.
+     *
+     * @param unitArg The unit of every quantity, and of the results (either "Grams", "Moles", or "Molecules")
+     * @param quantities One column per reactant, in order, all of the same length; missing quantities are not allowed
+     * @return The results, aligned with the rows of the input
+     * @throws IllegalArgumentException If the unit is unknown or the columns do not match the reactants
+     */
+    public Result evaluate(String unitArg, double[]... quantities) {
+        if(quantities.length != reactantCount) {
+            throw new IllegalArgumentException("Expected " + reactantCount + " reactant columns, but got " + quantities.length);
+        }
+        int n = reactantCount == 0 ? 0 : quantities[0].length;
+        for(double[] column : quantities) {
+            if(column.length != n) {
+                throw new IllegalArgumentException("Expected every column to have " + n + " rows, but got " + column.length);
+            }
+        }
+
+        // The amount, in the input's unit, of one mole of each species, and of each species per mole of reaction
+        double[] perMole = new double[coefficients.length];
+        double[] perExtent = new double[coefficients.length];
+        for(int i=0; i<coefficients.length; i++) {
+            perMole[i] = unitsPerMole(unitArg, molarMasses[i]);
+            perExtent[i] = perMole[i] * coefficients[i];
+        }
+
+        int[] limiting = new int[n];
+        double[] extent = new double[n];
+        double[][] yields = new double[productCount][n];
+        double[][] leftovers = new double[reactantCount][n];
+        int chunks = (n + DEFAULT_CHUNK_SIZE - 1) / DEFAULT_CHUNK_SIZE;
+        IntStream.range(0, chunks).parallel().forEach(c -> {
+            int from = c * DEFAULT_CHUNK_SIZE;
+            int to = Math.min(n, from + DEFAULT_CHUNK_SIZE);
+            // Column by column, so that each inner loop streams through one array
+            Arrays.fill(extent, from, to, Double.POSITIVE_INFINITY);
+            for(int i=0; i<reactantCount; i++) {
+                double[] column = quantities[i];
+                double scale = 1 / perExtent[i];
+                for(int row=from; row<to; row++) {
+                    double e = column[row] * scale;
+                    if(e < extent[row]) {
+                        extent[row] = e;
+                        limiting[row] = i;
+                    }
+                }
+            }
+            for(int p=0; p<productCount; p++) {
+                double[] yield = yields[p];
+                double scale = perExtent[reactantCount + p];
+                for(int row=from; row<to; row++) {
+                    yield[row] = extent[row] * scale;
+                }
+            }
+            for(int i=0; i<reactantCount; i++) {
+                double[] column = quantities[i];
+                double[] leftover = leftovers[i];
+                double scale = perExtent[i];
+                for(int row=from; row<to; row++) {
+                    leftover[row] = limiting[row] == i ? 0 : column[row] - extent[row] * scale;
+                }
+            }
+        });
+        return new Result(n, limiting, extent, yields, leftovers);
+    }
+
+    // The same conversions as Compound.getAmounts
+    private static double unitsPerMole(String unitArg, double molarMass) {
+        if(unitArg.equalsIgnoreCase("Moles")) {
+            return 1;
+        }
+        if(unitArg.equalsIgnoreCase("Grams")) {
+            return molarMass;
+        }
+        if(unitArg.equalsIgnoreCase("Molecules")) {
+            return Constants.AVOGADRO_CONSTANT.getValue();
+        }
+        throw new IllegalArgumentException("Unknown unit: " + unitArg);
+    }
+}
@@ -26,7 +26,7 @@ public class Solution {
      * @param molarity The number of moles of solute per liter of solution
      */
     public Solution(String solute, float molarity) throws IOException {
-        this.solute = new Compound(solute);
+        this.solute = Compound.of(solute);
         this.molarity = molarity;
     }
 
@@ -38,7 +38,7 @@ public class Solution {
      * @param litersOfSolution The number of liters of solution
      */
     public Solution(String solute, float gramsOfSolute, float litersOfSolution) throws IOException {
-        this.solute = new Compound(solute);
+        this.solute = Compound.of(solute);
         this.molarity = this.solute.getAmounts("Grams", gramsOfSolute).get("Moles") / litersOfSolution;
     }
 